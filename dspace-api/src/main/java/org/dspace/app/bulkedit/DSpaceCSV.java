@@ -109,132 +109,148 @@ public class DSpaceCSV implements Serializable
             input = new BufferedReader(new InputStreamReader(new FileInputStream(f),"UTF-8"));
 
             // Read the heading line
-            String head = input.readLine();
-            String[] headingElements = head.split(escapedFieldSeparator);
-            int columnCounter = 0;
-            for (String element : headingElements)
+            readHeadings(input.readLine(), c);
+
+            // Read each subsequent line
+            String record;
+            while ((record = readRecord(input)) != null)
+            {
+                addItem(record);
+            }
+        }
+        finally
+        {
+            if (input != null)
             {
-                columnCounter++;
+                input.close();
+            }
+        }
+    }
 
-                // Remove surrounding quotes if there are any
-                if ((element.startsWith("\"")) && (element.endsWith("\"")))
-                {
-                    element = element.substring(1, element.length() - 1);
-                }
+    /**
+     * Read and check the heading line of a CSV file.
+     *
+     * @param head The heading line
+     * @param c The DSpace Context
+     *
+     * @throws Exception thrown if a heading is not in the metadata registry
+     */
+    final void readHeadings(String head, Context c) throws Exception
+    {
+        String[] headingElements = head.split(escapedFieldSeparator);
+        int columnCounter = 0;
+        for (String element : headingElements)
+        {
+            columnCounter++;
 
+            // Remove surrounding quotes if there are any
+            if ((element.startsWith("\"")) && (element.endsWith("\"")))
+            {
+                element = element.substring(1, element.length() - 1);
+            }
+
+            // Store the heading
+            if ("collection".equals(element))
+            {
                 // Store the heading
-                if ("collection".equals(element))
-                {
-                    // Store the heading
-                    headings.add(element);
-                }
-                // Store the action
-                else if ("action".equals(element))
-                {
-                    // Store the heading
-                    headings.add(element);
+                headings.add(element);
+            }
+            // Store the action
+            else if ("action".equals(element))
+            {
+                // Store the heading
+                headings.add(element);
+            }
+            else if (!"id".equals(element))
+            {
+                String authorityPrefix = "";
+                AuthorityValue authorityValueType = MetadataImport.getAuthorityValueType(element);
+                if (authorityValueType != null) {
+                    String authorityType = authorityValueType.getAuthorityType();
+                    authorityPrefix = element.substring(0, authorityType.length() + 1);
+                    element = element.substring(authorityPrefix.length());
                 }
-                else if (!"id".equals(element))
-                {
-                    String authorityPrefix = "";
-                    AuthorityValue authorityValueType = MetadataImport.getAuthorityValueType(element);
-                    if (authorityValueType != null) {
-                        String authorityType = authorityValueType.getAuthorityType();
-                        authorityPrefix = element.substring(0, authorityType.length() + 1);
-                        element = element.substring(authorityPrefix.length());
-                    }
 
-                    // Verify that the heading is valid in the metadata registry
-                    String[] clean = element.split("\\[");
-                    String[] parts = clean[0].split("\\.");
+                // Verify that the heading is valid in the metadata registry
+                String[] clean = element.split("\\[");
+                String[] parts = clean[0].split("\\.");
 
-                    if (parts.length < 2) {
-                        throw new MetadataImportInvalidHeadingException(element,
-                                                                        MetadataImportInvalidHeadingException.ENTRY,
-                                                                        columnCounter);
-                    }
-
-                    String metadataSchema = parts[0];
-                    String metadataElement = parts[1];
-                    String metadataQualifier = null;
-                    if (parts.length > 2) {
-                        metadataQualifier = parts[2];
-                    }
+                if (parts.length < 2) {
+                    throw new MetadataImportInvalidHeadingException(element,
+                                                                    MetadataImportInvalidHeadingException.ENTRY,
+                                                                    columnCounter);
+                }
 
-                    // Check that the scheme exists
-                    MetadataSchema foundSchema = MetadataSchema.find(c, metadataSchema);
-                    if (foundSchema == null) {
-                        throw new MetadataImportInvalidHeadingException(clean[0],
-                                                                        MetadataImportInvalidHeadingException.SCHEMA,
-                                                                        columnCounter);
-                    }
+                String metadataSchema = parts[0];
+                String metadataElement = parts[1];
+                String metadataQualifier = null;
+                if (parts.length > 2) {
+                    metadataQualifier = parts[2];
+                }
 
-                    // Check that the metadata element exists in the schema
-                    int schemaID = foundSchema.getSchemaID();
-                    MetadataField foundField = MetadataField.findByElement(c, schemaID, metadataElement, metadataQualifier);
-                    if (foundField == null) {
-                        throw new MetadataImportInvalidHeadingException(clean[0],
-                                                                        MetadataImportInvalidHeadingException.ELEMENT,
-                                                                        columnCounter);
-                    }
+                // Check that the scheme exists
+                MetadataSchema foundSchema = MetadataSchema.find(c, metadataSchema);
+                if (foundSchema == null) {
+                    throw new MetadataImportInvalidHeadingException(clean[0],
+                                                                    MetadataImportInvalidHeadingException.SCHEMA,
+                                                                    columnCounter);
+                }
 
-                    // Store the heading
-                    headings.add(authorityPrefix + element);
+                // Check that the metadata element exists in the schema
+                int schemaID = foundSchema.getSchemaID();
+                MetadataField foundField = MetadataField.findByElement(c, schemaID, metadataElement, metadataQualifier);
+                if (foundField == null) {
+                    throw new MetadataImportInvalidHeadingException(clean[0],
+                                                                    MetadataImportInvalidHeadingException.ELEMENT,
+                                                                    columnCounter);
                 }
+
+                // Store the heading
+                headings.add(authorityPrefix + element);
             }
+        }
+    }
 
-            // Read each subsequent line
-            StringBuilder lineBuilder = new StringBuilder();
-            String lineRead;
+    /**
+     * Read the next record from a CSV file. A record spans several lines
+     * when a quoted value contains line breaks.
+     *
+     * @param input The reader, positioned after the previous record
+     * @return The record, or null at the end of the file or at a blank line
+     *
+     * @throws IOException Thrown if an error occurs when reading the file
+     */
+    static String readRecord(BufferedReader input) throws IOException
+    {
+        StringBuilder lineBuilder = new StringBuilder();
+        int quoteCount = 0;
+        String lineRead;
 
-            while (StringUtils.isNotBlank(lineRead = input.readLine()))
+        while (StringUtils.isNotBlank(lineRead = input.readLine()))
+        {
+            if (lineBuilder.length() > 0)
             {
-                if (lineBuilder.length() > 0) {
-                    // Already have a previously read value - add this line
-                    lineBuilder.append("\n").append(lineRead);
-
-                    // Count the number of quotes in the buffer
-                    int quoteCount = 0;
-                    for (int pos = 0; pos < lineBuilder.length(); pos++) {
-                        if (lineBuilder.charAt(pos) == '"') {
-                            quoteCount++;
-                        }
-                    }
-
-                    if (quoteCount % 2 == 0) {
-                        // Number of quotes is a multiple of 2, add the item
-                        addItem(lineBuilder.toString());
-                        lineBuilder = new StringBuilder();
-                    }
-                } else if (lineRead.indexOf('"') > -1) {
-                    // Get the number of quotes in the line
-                    int quoteCount = 0;
-                    for (int pos = 0; pos < lineRead.length(); pos++) {
-                        if (lineRead.charAt(pos) == '"') {
-                            quoteCount++;
-                        }
-                    }
-
-                    if (quoteCount % 2 == 0) {
-                        // Number of quotes is a multiple of 2, add the item
-                        addItem(lineRead);
-                    } else {
-                        // Uneven quotes - add to the buffer and leave for later
-                        lineBuilder.append(lineRead);
-                    }
-                } else {
-                    // No previously read line, and no quotes in the line - add item
-                    addItem(lineRead);
-                }
+                // Already have a previously read value - add this line
+                lineBuilder.append("\n").append(lineRead);
             }
-        }
-        finally
-        {
-            if (input != null)
+            else if (lineRead.indexOf('"') == -1)
             {
-                input.close();
+                // No previously read line, and no quotes in the line
+                return lineRead;
+            }
+            else
+            {
+                lineBuilder.append(lineRead);
+            }
+
+            // A record is complete once its quotes are balanced
+            quoteCount += StringUtils.countMatches(lineRead, "\"");
+            if (quoteCount % 2 == 0)
+            {
+                return lineBuilder.toString();
             }
         }
+        return null;
     }
 
     /**
@@ -399,11 +415,30 @@ public class DSpaceCSV implements Serializable
      * @throws Exception if something goes wrong with adding the Item
      */
     public final void addItem(Item i) throws Exception
+    {
+        DSpaceCSVLine line = toLine(i);
+        if (line != null)
+        {
+            lines.add(line);
+            counter++;
+        }
+    }
+
+    /**
+     * Create the CSV line of a DSpace item, adding any new metadata
+     * keys to the headings
+     *
+     * @param i The DSpace item
+     * @return The line, or null if the item has no owning collection
+     *
+     * @throws Exception if something goes wrong with reading the Item
+     */
+    final DSpaceCSVLine toLine(Item i) throws Exception
     {
         // If the item does not have an "owningCollection" the the below "getHandle()" call will fail
         // This should not happen but is here for safety.
         if (i.getOwningCollection() == null) {
-            return;
+            return null;
         }
 
         // Create the CSV line
@@ -460,8 +495,7 @@ public class DSpaceCSV implements Serializable
                 }
             }
         }
-        lines.add(line);
-        counter++;
+        return line;
     }
 
     /**
@@ -471,6 +505,19 @@ public class DSpaceCSV implements Serializable
      * @throws Exception Thrown if an error occurs when adding the item
      */
     public final void addItem(String line) throws Exception
+    {
+        lines.add(parseLine(line));
+        counter++;
+    }
+
+    /**
+     * Create a CSV line holder from a CSV line of elements
+     *
+     * @param line The line of elements
+     * @return The line holder
+     * @throws Exception Thrown if an error occurs when parsing the line
+     */
+    final DSpaceCSVLine parseLine(String line) throws Exception
     {
         // Check to see if the last character is a field separator, which hides the last empty column
         boolean last = false;
@@ -587,8 +634,7 @@ public class DSpaceCSV implements Serializable
             }
             i++;
         }
-        lines.add(csvLine);
-        counter++;
+        return csvLine;
     }
 
     /**
@@ -611,13 +657,8 @@ public class DSpaceCSV implements Serializable
     {
         // Create the headings line
         String[] csvLines = new String[counter + 1];
-        csvLines[0] = "id" + fieldSeparator + "collection";
-        List<String> headingsCopy = new ArrayList<String>(headings);
-        Collections.sort(headingsCopy);
-        for (String value : headingsCopy)
-        {
-            csvLines[0] = csvLines[0] + fieldSeparator + value;
-        }
+        List<String> headingsCopy = getSortedHeadings();
+        csvLines[0] = toHeadingLine(headingsCopy);
 
         Iterator<DSpaceCSVLine> i = lines.iterator();
         int c = 1;
@@ -629,6 +670,34 @@ public class DSpaceCSV implements Serializable
         return csvLines;
     }
 
+    /**
+     * Get a sorted copy of the headings, in the order they are written out
+     *
+     * @return The sorted headings
+     */
+    final List<String> getSortedHeadings()
+    {
+        List<String> headingsCopy = new ArrayList<String>(headings);
+        Collections.sort(headingsCopy);
+        return headingsCopy;
+    }
+
+    /**
+     * Get the first line of a CSV file with the given headings
+     *
+     * @param sortedHeadings The headings, as returned by getSortedHeadings()
+     * @return The CSV formatted heading line
+     */
+    static String toHeadingLine(List<String> sortedHeadings)
+    {
+        StringBuilder line = new StringBuilder("id").append(fieldSeparator).append("collection");
+        for (String value : sortedHeadings)
+        {
+            line.append(fieldSeparator).append(value);
+        }
+        return line.toString();
+    }
+
     /**
      * Save the CSV file to the given filename
      *
@@ -642,8 +711,10 @@ public class DSpaceCSV implements Serializable
         BufferedWriter out = new BufferedWriter(
                              new OutputStreamWriter(
                              new FileOutputStream(filename), "UTF-8"));
-        for (String csvLine : getCSVLinesAsStringArray()) {
-            out.write(csvLine + "\n");
+        List<String> headingsCopy = getSortedHeadings();
+        out.write(toHeadingLine(headingsCopy) + "\n");
+        for (DSpaceCSVLine csvLine : lines) {
+            out.write(csvLine.toCSV(headingsCopy) + "\n");
         }
         out.flush();
         out.close();
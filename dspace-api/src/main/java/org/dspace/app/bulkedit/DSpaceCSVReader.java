@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.bulkedit;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import org.dspace.core.Context;
+
+/**
+ * Reads a CSV file one line at a time, so that files of any size can be
+ * imported in a fixed amount of memory. The headings are read and checked
+ * against the metadata registry when the file is opened, just as by
+ * {@link DSpaceCSV#DSpaceCSV(File, Context)}.
+ */
+public class DSpaceCSVReader implements Closeable
+{
+    /** Holds the headings and separators of the file */
+    private final DSpaceCSV csv;
+
+    /** The CSV file */
+    private final BufferedReader input;
+
+    /** The number of lines read so far, not counting the headings */
+    private int counter;
+
+    /**
+     * Open a CSV file and read its headings
+     *
+     * @param f The file to read from
+     * @param c The DSpace Context
+     *
+     * @throws Exception thrown if there is an error reading the file or a heading is invalid
+     */
+    public DSpaceCSVReader(File f, Context c) throws Exception
+    {
+        csv = new DSpaceCSV(false);
+        input = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        try
+        {
+            csv.readHeadings(input.readLine(), c);
+        }
+        catch (Exception e)
+        {
+            input.close();
+            throw e;
+        }
+        counter = 0;
+    }
+
+    /**
+     * Read the next line of the file
+     *
+     * @return The line, or null at the end of the file
+     *
+     * @throws Exception thrown if there is an error reading or parsing the line
+     */
+    public DSpaceCSVLine next() throws Exception
+    {
+        String record = DSpaceCSV.readRecord(input);
+        if (record == null)
+        {
+            return null;
+        }
+        counter++;
+        return csv.parseLine(record);
+    }
+
+    /**
+     * Get the number of lines read so far, not counting the headings
+     *
+     * @return The number of lines
+     */
+    public int getLineCount()
+    {
+        return counter;
+    }
+
+    /**
+     * Decide if this CSV file has an 'action' header
+     *
+     * @return Whether or not there is an 'action' header
+     */
+    public boolean hasActions()
+    {
+        return csv.hasActions();
+    }
+
+    /**
+     * Get the headings used in this CSV file
+     *
+     * @return The headings
+     */
+    public List<String> getHeadings()
+    {
+        return csv.getHeadings();
+    }
+
+    /**
+     * Close the file
+     *
+     * @throws IOException Thrown if an error occurs when closing the file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        input.close();
+    }
+}
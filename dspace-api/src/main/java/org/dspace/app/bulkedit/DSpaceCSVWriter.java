@@ -0,0 +1,207 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.bulkedit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.dspace.content.Item;
+
+/**
+ * Writes a CSV file of any number of items in a fixed amount of memory.
+ * <P>
+ * The headings of a CSV file are all the metadata keys used by its items,
+ * so they are only known once every item has been seen. Items are therefore
+ * spooled to a temporary file as they are added, and written out as CSV
+ * lines after the headings once they are all in. Only the headings are
+ * kept in memory.
+ */
+public class DSpaceCSVWriter implements Closeable
+{
+    /** Holds the headings, separators and the fields to ignore */
+    private final DSpaceCSV csv;
+
+    /** The spool of lines */
+    private final File spool;
+
+    /** The spool, while lines are added */
+    private DataOutputStream out;
+
+    /** The number of lines spooled */
+    private int counter;
+
+    /**
+     * Create a new writer
+     *
+     * @param exportAll Whether to export all metadata such as handles and provenance information
+     *
+     * @throws IOException Thrown if the spool file cannot be created
+     */
+    public DSpaceCSVWriter(boolean exportAll) throws IOException
+    {
+        csv = new DSpaceCSV(exportAll);
+        spool = File.createTempFile("dspace-csv", ".spool");
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool)));
+        counter = 0;
+    }
+
+    /**
+     * Add a DSpace item to the CSV file. The item is not referenced afterwards.
+     *
+     * @param i The DSpace item
+     *
+     * @throws Exception if something goes wrong with adding the Item
+     */
+    public void addItem(Item i) throws Exception
+    {
+        if (out == null)
+        {
+            throw new IllegalStateException("Items cannot be added once the CSV has been written");
+        }
+        DSpaceCSVLine line = csv.toLine(i);
+        if (line == null)
+        {
+            return;
+        }
+
+        out.writeInt(line.getID());
+        out.writeInt(line.keys().size());
+        for (String key : line.keys())
+        {
+            List<String> values = line.get(key);
+            writeString(out, key);
+            out.writeInt(values.size());
+            for (String value : values)
+            {
+                writeString(out, value);
+            }
+        }
+        counter++;
+    }
+
+    /**
+     * Get the number of items added
+     *
+     * @return The number of items
+     */
+    public int getItemCount()
+    {
+        return counter;
+    }
+
+    /**
+     * Write the CSV file to a stream, which is flushed but not closed. No
+     * items may be added afterwards.
+     *
+     * @param os The stream to write to
+     *
+     * @throws IOException Thrown if an error occurs when writing
+     */
+    public void write(OutputStream os) throws IOException
+    {
+        if (out != null)
+        {
+            out.close();
+            out = null;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        List<String> headings = csv.getSortedHeadings();
+        writer.write(DSpaceCSV.toHeadingLine(headings) + "\n");
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spool)));
+        try
+        {
+            for (int l = 0; l < counter; l++)
+            {
+                DSpaceCSVLine line = new DSpaceCSVLine(in.readInt());
+                int keys = in.readInt();
+                for (int k = 0; k < keys; k++)
+                {
+                    String key = readString(in);
+                    int values = in.readInt();
+                    line.add(key, null);
+                    for (int v = 0; v < values; v++)
+                    {
+                        line.add(key, readString(in));
+                    }
+                }
+                writer.write(line.toCSV(headings) + "\n");
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Save the CSV file to the given filename
+     *
+     * @param filename The filename to save the CSV file to
+     *
+     * @throws IOException Thrown if an error occurs when writing the file
+     */
+    public void save(String filename) throws IOException
+    {
+        OutputStream os = new FileOutputStream(filename);
+        try
+        {
+            write(os);
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    /**
+     * Remove the spool file
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (out != null)
+        {
+            out.close();
+            out = null;
+        }
+        if (spool.exists() && !spool.delete())
+        {
+            spool.deleteOnExit();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        // not writeUTF, which is limited to 64K
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
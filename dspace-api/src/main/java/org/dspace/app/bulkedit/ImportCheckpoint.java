@@ -0,0 +1,218 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.bulkedit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The lines of a CSV file which a metadata import has committed, kept in a
+ * file so that a failed import can be resumed without applying any line
+ * twice. A parallel import commits its chunks in whatever order they finish,
+ * so besides the number of lines committed from the start of the file, the
+ * checkpoint records each range of lines committed beyond them.
+ * <P>
+ * Line numbers are those of {@link DSpaceCSVReader#getLineCount()}.
+ */
+class ImportCheckpoint
+{
+    /** The file the checkpoint is kept in */
+    private final File file;
+
+    /** Every line up to and including this one has been committed */
+    private int lines = 0;
+
+    /** Ranges of lines committed after <code>lines</code>: first line to last line */
+    private final TreeMap<Integer, Integer> ranges = new TreeMap<Integer, Integer>();
+
+    private ImportCheckpoint(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Read a checkpoint file, or start a new checkpoint if it does not exist.
+     *
+     * @param file The checkpoint file
+     * @return The checkpoint
+     * @throws MetadataImportException if the checkpoint cannot be read
+     */
+    static ImportCheckpoint read(File file) throws MetadataImportException
+    {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file);
+        if (!file.exists())
+        {
+            return checkpoint;
+        }
+
+        Properties props = new Properties();
+        try
+        {
+            InputStream in = new FileInputStream(file);
+            try
+            {
+                props.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+            checkpoint.lines = Integer.parseInt(props.getProperty("lines", "0"));
+            String ranges = props.getProperty("ranges", "").trim();
+            if (ranges.length() > 0)
+            {
+                for (String range : ranges.split(","))
+                {
+                    String[] ends = range.trim().split("-");
+                    checkpoint.add(Integer.parseInt(ends[0]), Integer.parseInt(ends[1]));
+                }
+            }
+        }
+        catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e)
+        {
+            throw new MetadataImportException("Unable to read checkpoint " + file.getAbsolutePath(), e);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @param line A line number
+     * @return Whether the line has been committed
+     */
+    synchronized boolean isDone(int line)
+    {
+        if (line <= lines)
+        {
+            return true;
+        }
+        Map.Entry<Integer, Integer> range = ranges.floorEntry(line);
+        return (range != null) && (line <= range.getValue());
+    }
+
+    /**
+     * @return The number of lines committed from the start of the file
+     */
+    synchronized int getLines()
+    {
+        return lines;
+    }
+
+    /**
+     * @return Whether any lines have been committed beyond the first
+     *         <code>getLines()</code>
+     */
+    synchronized boolean hasGaps()
+    {
+        return !ranges.isEmpty();
+    }
+
+    /**
+     * Record a range of lines as committed, and write the checkpoint file.
+     * The file is replaced in one step, so it is never left half written.
+     *
+     * @param first The first line of the range
+     * @param last The last line of the range
+     * @throws IOException if the checkpoint cannot be written
+     */
+    synchronized void commit(int first, int last) throws IOException
+    {
+        add(first, last);
+        write();
+    }
+
+    /**
+     * Remove the checkpoint file.
+     *
+     * @return Whether the file is gone
+     */
+    boolean delete()
+    {
+        return !file.exists() || file.delete();
+    }
+
+    /**
+     * @return The checkpoint file
+     */
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Add a range of lines, merging it with the ranges it overlaps or
+     * touches, and with the lines committed from the start of the file.
+     */
+    private void add(int first, int last)
+    {
+        if (last < first || last <= lines)
+        {
+            return;
+        }
+
+        Map.Entry<Integer, Integer> before = ranges.floorEntry(first);
+        if ((before != null) && (before.getValue() >= first - 1))
+        {
+            first = before.getKey();
+            last = Math.max(last, before.getValue());
+            ranges.remove(before.getKey());
+        }
+        Map.Entry<Integer, Integer> after;
+        while (((after = ranges.ceilingEntry(first)) != null) && (after.getKey() <= last + 1))
+        {
+            last = Math.max(last, after.getValue());
+            ranges.remove(after.getKey());
+        }
+
+        if (first <= lines + 1)
+        {
+            lines = last;
+        }
+        else
+        {
+            ranges.put(first, last);
+        }
+    }
+
+    private void write() throws IOException
+    {
+        Properties props = new Properties();
+        props.setProperty("lines", String.valueOf(lines));
+        StringBuilder list = new StringBuilder();
+        for (Map.Entry<Integer, Integer> range : ranges.entrySet())
+        {
+            if (list.length() > 0)
+            {
+                list.append(',');
+            }
+            list.append(range.getKey()).append('-').append(range.getValue());
+        }
+        props.setProperty("ranges", list.toString());
+
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try
+        {
+            props.store(out, "metadata-import checkpoint");
+        }
+        finally
+        {
+            out.close();
+        }
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+        {
+            throw new IOException("Unable to write checkpoint " + file.getAbsolutePath());
+        }
+    }
+}
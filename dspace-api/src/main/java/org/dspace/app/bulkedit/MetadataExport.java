@@ -16,7 +16,9 @@ import org.dspace.handle.HandleManager;
 
 import java.util.ArrayList;
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Metadata exporter to allow the batch export of metadata into a file
@@ -57,7 +59,8 @@ public class MetadataExport
         try
         {
             // Try to export the community
-            this.toExport = new ItemIterator(c, buildFromCommunity(toExport, new ArrayList<Integer>(), 0));
+            this.toExport = new ItemIterator(c, buildFromCommunity(toExport, new ArrayList<Integer>(),
+                                                                   new HashSet<Integer>(), 0));
             this.exportAll = exportAll;
         }
         catch (SQLException sqle)
@@ -74,12 +77,13 @@ public class MetadataExport
      *
      * @param community The community to build from
      * @param itemIDs The itemID (used for recursion - use an empty ArrayList)
+     * @param seen The same item ids, for quick lookup (use an empty HashSet)
      * @param indent How many spaces to use when writing out the names of items added
      * @return The list of item ids
      * @throws SQLException
      */
-    private List<Integer> buildFromCommunity(Community community, List<Integer> itemIDs, int indent)
-                                                                               throws SQLException
+    private List<Integer> buildFromCommunity(Community community, List<Integer> itemIDs, Set<Integer> seen,
+                                             int indent) throws SQLException
     {
         // Add all the collections
         Collection[] collections = community.getCollections();
@@ -93,9 +97,9 @@ public class MetadataExport
             ItemIterator items = collection.getAllItems();
             while (items.hasNext())
             {
-                int id = items.next().getID();
+                int id = items.nextID();
                 // Only add if not already included (so mapped items only appear once)
-                if (!itemIDs.contains(id))
+                if (seen.add(id))
                 {
                     itemIDs.add(id);
                 }
@@ -110,7 +114,7 @@ public class MetadataExport
             {
                 System.out.print(" ");
             }
-            buildFromCommunity(subCommunity, itemIDs, indent + 1);
+            buildFromCommunity(subCommunity, itemIDs, seen, indent + 1);
         }
 
         return itemIDs;
@@ -144,6 +148,24 @@ public class MetadataExport
         }
     }
 
+    /**
+     * Run the export, passing the items one at a time to a writer and
+     * removing each from the context cache once written, so that the
+     * memory used does not grow with the number of items
+     *
+     * @param writer The writer to add the items to
+     * @throws Exception if an item cannot be read or written
+     */
+    public void export(DSpaceCSVWriter writer) throws Exception
+    {
+        while (toExport.hasNext())
+        {
+            Item item = toExport.next();
+            writer.addItem(item);
+            item.decache();
+        }
+    }
+
     /**
      * Print the help message
      *
@@ -256,11 +278,17 @@ public class MetadataExport
             }
         }
 
-        // Perform the export
-        DSpaceCSV csv = exporter.export();
-
-        // Save the files to the file
-        csv.save(filename);        
+        // Perform the export, then save the file
+        DSpaceCSVWriter writer = new DSpaceCSVWriter(exportAll);
+        try
+        {
+            exporter.export(writer);
+            writer.save(filename);
+        }
+        finally
+        {
+            writer.close();
+        }
 
         // Finish off and tidy up
         c.restoreAuthSystemState();
@@ -27,15 +27,24 @@ import org.dspace.workflow.WorkflowManager;
 import org.dspace.xmlworkflow.XmlWorkflowManager;
 
 import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.sql.SQLException;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Metadata importer to allow the batch import of metadata from a file
@@ -53,6 +62,15 @@ public class MetadataImport
     /** The lines to import */
     List<DSpaceCSVLine> toImport;
 
+    /** The reader of the lines to import, when they are streamed */
+    DSpaceCSVReader reader;
+
+    /** Whether the lines have an 'action' column */
+    boolean hasActions;
+
+    /** Whether each new item is committed as soon as it is created, rather than with its chunk */
+    boolean commitEachItem;
+
     /** The authority controlled fields */
     private static Set<String> authorityControlled;
     static
@@ -81,6 +99,37 @@ public class MetadataImport
         this.c = c;
         csv = toImport;
         this.toImport = toImport.getCSVLines();
+        hasActions = csv.hasActions();
+        commitEachItem = true;
+    }
+
+    /**
+     * Create an instance of the metadata importer which reads its CSV lines
+     * one at a time, so that a file of any size may be imported.
+     *
+     * @param c The context
+     * @param reader The reader of the CSV lines to examine
+     */
+    public MetadataImport(Context c, DSpaceCSVReader reader)
+    {
+        this.c = c;
+        this.reader = reader;
+        hasActions = reader.hasActions();
+        commitEachItem = false;
+    }
+
+    /**
+     * Create an instance of the metadata importer for a worker of a parallel
+     * import, which is given its lines a chunk at a time.
+     *
+     * @param c The worker's context
+     * @param hasActions Whether the lines have an 'action' column
+     */
+    private MetadataImport(Context c, boolean hasActions)
+    {
+        this.c = c;
+        this.hasActions = hasActions;
+        commitEachItem = false;
     }
 
     /**
@@ -109,298 +158,538 @@ public class MetadataImport
             // Process each change
             for (DSpaceCSVLine line : toImport)
             {
-                // Get the DSpace item to compare with
-                int id = line.getID();
+                BulkEditChange whatHasChanged = importLine(line, change, useWorkflow, workflowNotify, useTemplate);
+                if (whatHasChanged != null)
+                {
+                    changes.add(whatHasChanged);
+                }
+            }
+        }
+        catch (MetadataImportException mie)
+        {
+            throw mie;
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+
+        // Return the changes
+        return changes;
+    }
+
+    /**
+     * Run an import of the lines of a streaming reader. The changes are
+     * written to a summary as they are found rather than being returned. When
+     * writing changes they are committed every <code>chunkSize</code> lines,
+     * so memory use does not grow with the size of the file, or, if
+     * <code>chunkSize</code> is 0, all together at the end, as the list based
+     * import does.
+     * <P>
+     * If a checkpoint file is given, the lines committed are recorded in it
+     * after each chunk, and lines which it records as done are skipped, so
+     * that a failed import can be resumed. It is removed once all lines have
+     * been written.
+     *
+     * @param change Whether or not to write the changes to the database
+     * @param useWorkflow Whether the workflows should be used when creating new items
+     * @param workflowNotify If the workflows should be used, whether to send notifications or not
+     * @param useTemplate Use collection template if create new item
+     * @param chunkSize The number of lines to import between commits, or 0
+     * @param checkpoint The checkpoint file, or null
+     * @param summary The stream to write the changes to
+     * @return The number of items that have changed
+     *
+     * @throws MetadataImportException if something goes wrong
+     */
+    public int runImport(boolean change,
+                         boolean useWorkflow,
+                         boolean workflowNotify,
+                         boolean useTemplate,
+                         int chunkSize,
+                         File checkpoint,
+                         PrintStream summary) throws MetadataImportException
+    {
+        if (reader == null)
+        {
+            throw new IllegalStateException("A streaming import needs a DSpaceCSVReader");
+        }
+
+        // Without chunks new items are committed as they are created, as in
+        // the list based import
+        commitEachItem = (chunkSize == 0);
+
+        int changeCounter = 0;
+        ImportCheckpoint done = (checkpoint != null) ? ImportCheckpoint.read(checkpoint) : null;
+        int chunkStart = 1;
+        try
+        {
+            DSpaceCSVLine line;
+            while ((line = reader.next()) != null)
+            {
+                // Skip the lines imported before a resume
+                if ((done != null) && done.isDone(reader.getLineCount()))
+                {
+                    continue;
+                }
+
+                BulkEditChange whatHasChanged = importLine(line, change, useWorkflow, workflowNotify, useTemplate);
+                if ((whatHasChanged != null) && displayChange(whatHasChanged, change, summary))
+                {
+                    changeCounter++;
+                }
+
+                if ((chunkSize > 0) && (reader.getLineCount() % chunkSize == 0))
+                {
+                    endChunk(change, done, chunkStart);
+                    chunkStart = reader.getLineCount() + 1;
+                }
+            }
+            endChunk(change, done, chunkStart);
+        }
+        catch (MetadataImportException mie)
+        {
+            throw mie;
+        }
+        catch (Exception e)
+        {
+            throw new MetadataImportException("Error importing line " + reader.getLineCount() + ": " + e.getMessage(), e);
+        }
+        finally
+        {
+            summary.flush();
+        }
+
+        if (change && (checkpoint != null) && checkpoint.exists() && !checkpoint.delete())
+        {
+            log.warn("Unable to remove checkpoint " + checkpoint.getAbsolutePath());
+        }
+        return changeCounter;
+    }
+
+    /**
+     * Finish a chunk of lines: commit its changes, record them in the
+     * checkpoint, and release the objects cached while importing them.
+     *
+     * @param change Whether or not changes are being written
+     * @param checkpoint The checkpoint, or null
+     * @param chunkStart The first line of the chunk
+     * @throws SQLException if the changes cannot be committed
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void endChunk(boolean change, ImportCheckpoint checkpoint, int chunkStart)
+            throws SQLException, IOException
+    {
+        if (change)
+        {
+            c.commit();
+            if (checkpoint != null)
+            {
+                checkpoint.commit(chunkStart, reader.getLineCount());
+            }
+        }
+        c.clearCache();
+    }
 
-                // Is there an action column?
-                if (csv.hasActions() && (!"".equals(line.getAction())) && (id == -1))
+    /**
+     * Run an import of the lines of a streaming reader with several threads.
+     * The lines are split into chunks of <code>chunkSize</code>, and each
+     * chunk is imported by a worker in its own context, which is committed
+     * (or, when only detecting changes, aborted) at the end of the chunk.
+     * Events are therefore dispatched once per chunk, so that the search and
+     * browse indexes see one batch of updates per chunk rather than one per
+     * item.
+     * <P>
+     * The summary is written in the order of the file: a chunk's changes are
+     * written once it and every chunk before it have been imported. Chunks
+     * are committed as they finish, so the checkpoint records the lines of
+     * each chunk committed, and a resumed import skips exactly those, even if
+     * a chunk before them failed. Lines for the same item should not appear
+     * in different chunks, as the order in which they are applied is not
+     * defined.
+     *
+     * @param change Whether or not to write the changes to the database
+     * @param useWorkflow Whether the workflows should be used when creating new items
+     * @param workflowNotify If the workflows should be used, whether to send notifications or not
+     * @param useTemplate Use collection template if create new item
+     * @param chunkSize The number of lines in each chunk
+     * @param threads The number of workers
+     * @param checkpoint The checkpoint file, or null
+     * @param summary The stream to write the changes to
+     * @return The number of items that have changed
+     *
+     * @throws MetadataImportException if something goes wrong
+     */
+    public int runImport(boolean change,
+                         boolean useWorkflow,
+                         boolean workflowNotify,
+                         boolean useTemplate,
+                         int chunkSize,
+                         int threads,
+                         File checkpoint,
+                         PrintStream summary) throws MetadataImportException
+    {
+        if (reader == null)
+        {
+            throw new IllegalStateException("A streaming import needs a DSpaceCSVReader");
+        }
+
+        ImportCheckpoint done = (checkpoint != null) ? ImportCheckpoint.read(checkpoint) : null;
+        ParallelImport run = new ParallelImport(change, useWorkflow, workflowNotify, useTemplate,
+                                                threads, done, summary);
+        try
+        {
+            List<DSpaceCSVLine> chunk = new ArrayList<DSpaceCSVLine>(chunkSize);
+            int chunkStart = 0;
+            DSpaceCSVLine line;
+            while ((line = reader.next()) != null)
+            {
+                // Skip the lines imported before a resume
+                if ((done != null) && done.isDone(reader.getLineCount()))
                 {
-                    throw new MetadataImportException("'action' not allowed for new items!");
+                    continue;
                 }
 
-                // Is this a new item?
-                if (id != -1)
+                if (chunk.isEmpty())
                 {
-                    // Get the item
-                    Item item = Item.find(c, id);
-                    if (item == null)
+                    chunkStart = reader.getLineCount();
+                }
+                chunk.add(line);
+                if (chunk.size() == chunkSize)
+                {
+                    if (!run.submit(chunk, chunkStart, reader.getLineCount()))
                     {
-                        throw new MetadataImportException("Unknown item ID " + id);
+                        break;
                     }
+                    chunk = new ArrayList<DSpaceCSVLine>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty())
+            {
+                run.submit(chunk, chunkStart, reader.getLineCount());
+            }
+        }
+        catch (MetadataImportException mie)
+        {
+            run.abandon();
+            throw mie;
+        }
+        catch (Exception e)
+        {
+            run.abandon();
+            throw new MetadataImportException("Error reading line " + reader.getLineCount() + ": " + e.getMessage(), e);
+        }
 
-                    // Record changes
-                    BulkEditChange whatHasChanged = new BulkEditChange(item);
+        int changeCounter = run.finish();
+        if (change && (checkpoint != null) && checkpoint.exists() && !checkpoint.delete())
+        {
+            log.warn("Unable to remove checkpoint " + checkpoint.getAbsolutePath());
+        }
+        return changeCounter;
+    }
 
-                    // Has it moved collection?
-                    List<String> collections = line.get("collection");
-                    if (collections != null)
-                    {
-                        // Sanity check we're not orphaning it
-                        if (collections.size() == 0)
+    /**
+     * Import a single line of a CSV file, either to detect its changes, or to
+     * write them.
+     *
+     * @param line The line to import
+     * @param change Whether or not to write the changes to the database
+     * @param useWorkflow Whether the workflows should be used when creating new items
+     * @param workflowNotify If the workflows should be used, whether to send notifications or not
+     * @param useTemplate Use collection template if create new item
+     * @return The changes of the line's item, or null if it has not changed
+     *
+     * @throws Exception if something goes wrong
+     */
+    private BulkEditChange importLine(DSpaceCSVLine line,
+                                      boolean change,
+                                      boolean useWorkflow,
+                                      boolean workflowNotify,
+                                      boolean useTemplate) throws Exception
+    {
+        // Get the DSpace item to compare with
+        int id = line.getID();
+
+        // Is there an action column?
+        if (hasActions && (!"".equals(line.getAction())) && (id == -1))
+        {
+            throw new MetadataImportException("'action' not allowed for new items!");
+        }
+
+        // Is this a new item?
+        if (id != -1)
+        {
+            // Get the item
+            Item item = Item.find(c, id);
+            if (item == null)
+            {
+                throw new MetadataImportException("Unknown item ID " + id);
+            }
+
+            // Record changes
+            BulkEditChange whatHasChanged = new BulkEditChange(item);
+
+            // Has it moved collection?
+            List<String> collections = line.get("collection");
+            if (collections != null)
+            {
+                // Sanity check we're not orphaning it
+                if (collections.size() == 0)
+                {
+                    throw new MetadataImportException("Missing collection from item " + item.getHandle());
+                }
+                Collection[] actualCollections = item.getCollections();
+                compare(item, collections, actualCollections, whatHasChanged, change);
+            }
+
+            // Iterate through each metadata element in the csv line
+            for (String md : line.keys())
+            {
+                // Get the values we already have
+                if (!"id".equals(md))
+                {
+                    // Get the values from the CSV
+                    String[] fromCSV = line.get(md).toArray(new String[line.get(md).size()]);
+                    // Remove authority unless the md is not authority controlled
+                    if (!isAuthorityControlledField(md))
+                    { 
+                        for (int i=0; i<fromCSV.length; i++)
                         {
-                            throw new MetadataImportException("Missing collection from item " + item.getHandle());
+                            int pos = fromCSV[i].indexOf(DSpaceCSV.authoritySeparator);
+                            if (pos > -1)
+                            {
+                                fromCSV[i] = fromCSV[i].substring(0, pos);
+                            }
                         }
-                        Collection[] actualCollections = item.getCollections();
-                        compare(item, collections, actualCollections, whatHasChanged, change);
                     }
 
-                    // Iterate through each metadata element in the csv line
-                    for (String md : line.keys())
-                    {
-                        // Get the values we already have
-                        if (!"id".equals(md))
-                        {
-                            // Get the values from the CSV
-                            String[] fromCSV = line.get(md).toArray(new String[line.get(md).size()]);
-                            // Remove authority unless the md is not authority controlled
-                            if (!isAuthorityControlledField(md))
-                            { 
-                                for (int i=0; i<fromCSV.length; i++)
-                                {
-                                    int pos = fromCSV[i].indexOf(DSpaceCSV.authoritySeparator);
-                                    if (pos > -1)
-                                    {
-                                        fromCSV[i] = fromCSV[i].substring(0, pos);
-                                    }
-                                }
-                            }
+                    // Compare
+                    compare(item, fromCSV, change, md, whatHasChanged, line);
+                }
+            }
 
-                            // Compare
-                            compare(item, fromCSV, change, md, whatHasChanged, line);
-                        }
+            if (hasActions)
+            {
+                // Perform the action
+                String action = line.getAction();
+                if ("".equals(action))
+                {
+                    // Do nothing
+                }
+                else if ("expunge".equals(action))
+                {
+                    // Does the configuration allow deletes?
+                    if (!ConfigurationManager.getBooleanProperty("bulkedit", "allowexpunge", false))
+                    {
+                        throw new MetadataImportException("'expunge' action denied by configuration");
                     }
 
-                    if (csv.hasActions())
+                    // Remove the item
+                    Collection[] owners = item.getCollections();
+                    for (Collection owner : owners)
                     {
-                        // Perform the action
-                        String action = line.getAction();
-                        if ("".equals(action))
+                        if (change)
                         {
-                            // Do nothing
+                            owner.removeItem(item);
                         }
-                        else if ("expunge".equals(action))
+                    }
+                    whatHasChanged.setDeleted();
+                }
+                else if ("withdraw".equals(action))
+                {
+                    // Withdraw the item
+                    if (!item.isWithdrawn())
+                    {
+                        if (change)
                         {
-                            // Does the configuration allow deletes?
-                            if (!ConfigurationManager.getBooleanProperty("bulkedit", "allowexpunge", false))
-                            {
-                                throw new MetadataImportException("'expunge' action denied by configuration");
-                            }
-
-                            // Remove the item
-                            Collection[] owners = item.getCollections();
-                            for (Collection owner : owners)
-                            {
-                                if (change)
-                                {
-                                    owner.removeItem(item);
-                                }
-                            }
-                            whatHasChanged.setDeleted();
+                            item.withdraw();
                         }
-                        else if ("withdraw".equals(action))
+                        whatHasChanged.setWithdrawn();
+                    }
+                }
+                else if ("reinstate".equals(action))
+                {
+                    // Reinstate the item
+                    if (item.isWithdrawn())
+                    {
+                        if (change)
                         {
-                            // Withdraw the item
-                            if (!item.isWithdrawn())
-                            {
-                                if (change)
-                                {
-                                    item.withdraw();
-                                }
-                                whatHasChanged.setWithdrawn();
-                            }
+                            item.reinstate();
                         }
-                        else if ("reinstate".equals(action))
+                        whatHasChanged.setReinstated();
+                    }
+                }
+                else {
+                    // Unknown action!
+                    throw new MetadataImportException("Unknown action: " + action);
+                }
+            }
+
+            // Only record if changes have been made
+            if (whatHasChanged.hasChanges())
+            {
+                return whatHasChanged;
+            }
+        }
+        else
+        {
+            // This is marked as a new item, so no need to compare
+
+            // First check a user is set, otherwise this can't happen
+            if (c.getCurrentUser() == null)
+            {
+                throw new MetadataImportException("When adding new items, a user must be specified with the -e option");
+            }
+
+            // Iterate through each metadata element in the csv line
+            BulkEditChange whatHasChanged = new BulkEditChange();
+            for (String md : line.keys())
+            {
+                // Get the values we already have
+                if (!"id".equals(md))
+                {
+                    // Get the values from the CSV
+                    String[] fromCSV = line.get(md).toArray(new String[line.get(md).size()]);
+
+                    // Remove authority unless the md is not authority controlled
+                    if (!isAuthorityControlledField(md))
+                    { 
+                        for (int i=0; i<fromCSV.length; i++)
                         {
-                            // Reinstate the item
-                            if (item.isWithdrawn())
+                            int pos = fromCSV[i].indexOf(DSpaceCSV.authoritySeparator);
+                            if (pos > -1)
                             {
-                                if (change)
-                                {
-                                    item.reinstate();
-                                }
-                                whatHasChanged.setReinstated();
+                                fromCSV[i] = fromCSV[i].substring(0, pos);
                             }
                         }
-                        else {
-                            // Unknown action!
-                            throw new MetadataImportException("Unknown action: " + action);
-                        }
                     }
 
-                    // Only record if changes have been made
-                    if (whatHasChanged.hasChanges())
-                    {
-                        changes.add(whatHasChanged);
-                    }
+                    // Add all the values from the CSV line
+                    add(fromCSV, md, whatHasChanged);
                 }
-                else
+            }
+
+            // Check it has an owning collection
+            List<String> collections = line.get("collection");
+            if (collections == null)
+            {
+                throw new MetadataImportException("New items must have a 'collection' assigned in the form of a handle");
+            }
+
+            // Check collections are really collections
+            ArrayList<Collection> check = new ArrayList<Collection>();
+            Collection collection;
+            for (String handle : collections)
+            {
+                try
                 {
-                    // This is marked as a new item, so no need to compare
+                    // Resolve the handle to the collection
+                    collection = (Collection)HandleManager.resolveToObject(c, handle);
 
-                    // First check a user is set, otherwise this can't happen
-                    if (c.getCurrentUser() == null)
+                    // Check it resolved OK
+                    if (collection == null)
                     {
-                        throw new MetadataImportException("When adding new items, a user must be specified with the -e option");
+                        throw new MetadataImportException("'" + handle + "' is not a Collection! You must specify a valid collection for new items");
                     }
 
-                    // Iterate through each metadata element in the csv line
-                    BulkEditChange whatHasChanged = new BulkEditChange();
-                    for (String md : line.keys())
+                    // Check for duplicate
+                    if (check.contains(collection))
                     {
-                        // Get the values we already have
-                        if (!"id".equals(md))
-                        {
-                            // Get the values from the CSV
-                            String[] fromCSV = line.get(md).toArray(new String[line.get(md).size()]);
-
-                            // Remove authority unless the md is not authority controlled
-                            if (!isAuthorityControlledField(md))
-                            { 
-                                for (int i=0; i<fromCSV.length; i++)
-                                {
-                                    int pos = fromCSV[i].indexOf(DSpaceCSV.authoritySeparator);
-                                    if (pos > -1)
-                                    {
-                                        fromCSV[i] = fromCSV[i].substring(0, pos);
-                                    }
-                                }
-                            }
-
-                            // Add all the values from the CSV line
-                            add(fromCSV, md, whatHasChanged);
-                        }
+                        throw new MetadataImportException("Duplicate collection assignment detected in new item! " + handle);
                     }
-
-                    // Check it has an owning collection
-                    List<String> collections = line.get("collection");
-                    if (collections == null)
+                    else
                     {
-                        throw new MetadataImportException("New items must have a 'collection' assigned in the form of a handle");
+                        check.add(collection);
                     }
+                }
+                catch (Exception ex)
+                {
+                    throw new MetadataImportException("'" + handle + "' is not a Collection! You must specify a valid collection for new items", ex);
+                }
+            }
 
-                    // Check collections are really collections
-                    ArrayList<Collection> check = new ArrayList<Collection>();
-                    Collection collection;
-                    for (String handle : collections)
-                    {
-                        try
-                        {
-                            // Resolve the handle to the collection
-                            collection = (Collection)HandleManager.resolveToObject(c, handle);
+            // Record the addition to collections
+            boolean first = true;
+            for (String handle : collections)
+            {
+                Collection extra = (Collection)HandleManager.resolveToObject(c, handle);
+                if (first)
+                {
+                    whatHasChanged.setOwningCollection(extra);
+                }
+                else
+                {
+                    whatHasChanged.registerNewMappedCollection(extra);
+                }
+                first = false;
+            }
 
-                            // Check it resolved OK
-                            if (collection == null)
-                            {
-                                throw new MetadataImportException("'" + handle + "' is not a Collection! You must specify a valid collection for new items");
-                            }
+            // Create the new item?
+            if (change)
+            {
+                // Create the item
+                String collectionHandle = line.get("collection").get(0);
+                collection = (Collection)HandleManager.resolveToObject(c, collectionHandle);
+                WorkspaceItem wsItem = WorkspaceItem.create(c, collection, useTemplate);
+                Item item = wsItem.getItem();
+
+                // Add the metadata to the item
+                for (Metadatum dcv : whatHasChanged.getAdds())
+                {
+                    item.addMetadata(dcv.schema,
+                                     dcv.element,
+                                     dcv.qualifier,
+                                     dcv.language,
+                                     dcv.value,
+                                     dcv.authority,
+                                     dcv.confidence);
+                }
 
-                            // Check for duplicate
-                            if (check.contains(collection))
-                            {
-                                throw new MetadataImportException("Duplicate collection assignment detected in new item! " + handle);
-                            }
-                            else
-                            {
-                                check.add(collection);
-                            }
+                // Should the workflow be used?
+                if(useWorkflow){
+                    if (ConfigurationManager.getProperty("workflow", "workflow.framework").equals("xmlworkflow")) {
+                        if (workflowNotify) {
+                            XmlWorkflowManager.start(c, wsItem);
+                        } else {
+                            XmlWorkflowManager.startWithoutNotify(c, wsItem);
                         }
-                        catch (Exception ex)
-                        {
-                            throw new MetadataImportException("'" + handle + "' is not a Collection! You must specify a valid collection for new items", ex);
+                    } else {
+                        if (workflowNotify) {
+                            WorkflowManager.start(c, wsItem);
+                        } else {
+                            WorkflowManager.startWithoutNotify(c, wsItem);
                         }
                     }
+                }
+                else
+                {
+                    // Install the item
+                    InstallItem.installItem(c, wsItem);
+                }
 
-                    // Record the addition to collections
-                    boolean first = true;
-                    for (String handle : collections)
+                // Add to extra collections
+                if (line.get("collection").size() > 0)
+                {
+                    for (int i = 1; i < collections.size(); i++)
                     {
+                        String handle = collections.get(i);
                         Collection extra = (Collection)HandleManager.resolveToObject(c, handle);
-                        if (first)
-                        {
-                            whatHasChanged.setOwningCollection(extra);
-                        }
-                        else
-                        {
-                            whatHasChanged.registerNewMappedCollection(extra);
-                        }
-                        first = false;
-                    }
-
-                    // Create the new item?
-                    if (change)
-                    {
-                        // Create the item
-                        String collectionHandle = line.get("collection").get(0);
-                        collection = (Collection)HandleManager.resolveToObject(c, collectionHandle);
-                        WorkspaceItem wsItem = WorkspaceItem.create(c, collection, useTemplate);
-                        Item item = wsItem.getItem();
-
-                        // Add the metadata to the item
-                        for (Metadatum dcv : whatHasChanged.getAdds())
-                        {
-                            item.addMetadata(dcv.schema,
-                                             dcv.element,
-                                             dcv.qualifier,
-                                             dcv.language,
-                                             dcv.value,
-                                             dcv.authority,
-                                             dcv.confidence);
-                        }
-
-                        // Should the workflow be used?
-                        if(useWorkflow){
-                            if (ConfigurationManager.getProperty("workflow", "workflow.framework").equals("xmlworkflow")) {
-                                if (workflowNotify) {
-                                    XmlWorkflowManager.start(c, wsItem);
-                                } else {
-                                    XmlWorkflowManager.startWithoutNotify(c, wsItem);
-                                }
-                            } else {
-                                if (workflowNotify) {
-                                    WorkflowManager.start(c, wsItem);
-                                } else {
-                                    WorkflowManager.startWithoutNotify(c, wsItem);
-                                }
-                            }
-                        }
-                        else
-                        {
-                            // Install the item
-                            InstallItem.installItem(c, wsItem);
-                        }
-
-                        // Add to extra collections
-                        if (line.get("collection").size() > 0)
-                        {
-                            for (int i = 1; i < collections.size(); i++)
-                            {
-                                String handle = collections.get(i);
-                                Collection extra = (Collection)HandleManager.resolveToObject(c, handle);
-                                extra.addItem(item);
-                            }
-                        }
-
-                        // Commit changes to the object
-                        c.commit();
-                        whatHasChanged.setItem(item);
+                        extra.addItem(item);
                     }
+                }
 
-                    // Record the changes
-                    changes.add(whatHasChanged);
+                // Commit changes to the object, unless the whole chunk is committed at once
+                if (commitEachItem)
+                {
+                    c.commit();
                 }
+                whatHasChanged.setItem(item);
             }
-        }
-        catch (MetadataImportException mie)
-        {
-            throw mie;
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
 
-        // Return the changes
-        return changes;
+            // Record the changes
+            return whatHasChanged;
+        }
+        return null;
     }
 
     /**
@@ -930,9 +1219,233 @@ public class MetadataImport
         {
             return null;
         }
-        
-        // Remove newlines as different operating systems sometimes use different formats
-        return in.replaceAll("\r\n", "").replaceAll("\n", "").trim();
+        
+        // Remove newlines as different operating systems sometimes use different formats
+        return in.replaceAll("\r\n", "").replaceAll("\n", "").trim();
+    }
+
+    /**
+     * The chunks of a parallel import, the workers importing them, and the
+     * results of the chunks, which are written in the order of the file.
+     */
+    private class ParallelImport
+    {
+        private final boolean change;
+        private final boolean useWorkflow;
+        private final boolean workflowNotify;
+        private final boolean useTemplate;
+        private final ImportCheckpoint checkpoint;
+        private final PrintStream summary;
+        private final ExecutorService pool;
+        // chunks submitted and not yet written, so that results wait for at most this many
+        private final Semaphore pending;
+        // results of chunks imported out of order, by sequence number
+        private final Map<Integer, ChunkResult> results = new HashMap<Integer, ChunkResult>();
+        private int submitted = 0;
+        private int nextToWrite = 0;
+        private int changeCounter = 0;
+        private int linesDone = 0;
+        private int linesImported = 0;
+        private final long start = System.currentTimeMillis();
+        // first failure of a worker
+        private volatile MetadataImportException failure = null;
+
+        ParallelImport(boolean change, boolean useWorkflow, boolean workflowNotify, boolean useTemplate,
+                       int threads, ImportCheckpoint checkpoint, PrintStream summary)
+        {
+            this.change = change;
+            this.useWorkflow = useWorkflow;
+            this.workflowNotify = workflowNotify;
+            this.useTemplate = useTemplate;
+            this.checkpoint = checkpoint;
+            this.summary = summary;
+            pool = Executors.newFixedThreadPool(threads);
+            pending = new Semaphore(threads * 2);
+        }
+
+        /**
+         * Queue a chunk for the workers, waiting while too many are pending.
+         *
+         * @param lines The lines of the chunk
+         * @param firstLine The line number of the first line of the chunk
+         * @param lastLine The line number of the last line of the chunk
+         * @return false if a worker has failed, and no more chunks should be submitted
+         */
+        boolean submit(final List<DSpaceCSVLine> lines, final int firstLine, final int lastLine)
+                throws InterruptedException
+        {
+            while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS))
+            {
+                if (failure != null)
+                {
+                    return false;
+                }
+            }
+            if (failure != null)
+            {
+                pending.release();
+                return false;
+            }
+
+            final int sequence = submitted++;
+            pool.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    importChunk(sequence, lines, firstLine, lastLine);
+                }
+            });
+            return true;
+        }
+
+        /**
+         * Stop the workers after a failure to read the file
+         */
+        void abandon()
+        {
+            pool.shutdownNow();
+        }
+
+        /**
+         * Wait for the workers to import the chunks submitted.
+         *
+         * @return The number of items that have changed
+         * @throws MetadataImportException the first failure of a worker
+         */
+        int finish() throws MetadataImportException
+        {
+            pool.shutdown();
+            try
+            {
+                while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+                {
+                    log.info("Waiting for " + (submitted - nextToWrite) + " chunks to be imported");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new MetadataImportException("Interrupted while waiting for workers", e);
+            }
+            summary.flush();
+            if (failure != null)
+            {
+                throw failure;
+            }
+            return changeCounter;
+        }
+
+        private void importChunk(int sequence, List<DSpaceCSVLine> lines, int firstLine, int lastLine)
+        {
+            int lineNumber = firstLine - 1;
+            Context ctx = null;
+            try
+            {
+                ctx = c.createWorkerContext();
+                MetadataImport importer = new MetadataImport(ctx, hasActions);
+
+                ChunkResult result = new ChunkResult();
+                result.lastLine = lastLine;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                PrintStream out = new PrintStream(bytes, false, "UTF-8");
+                for (DSpaceCSVLine line : lines)
+                {
+                    if (failure != null)
+                    {
+                        return;
+                    }
+                    lineNumber++;
+                    while ((checkpoint != null) && checkpoint.isDone(lineNumber))
+                    {
+                        // a line skipped on resume
+                        lineNumber++;
+                    }
+                    BulkEditChange whatHasChanged = importer.importLine(line, change, useWorkflow,
+                                                                        workflowNotify, useTemplate);
+                    if ((whatHasChanged != null) && displayChange(whatHasChanged, change, out))
+                    {
+                        result.changes++;
+                    }
+                }
+                out.flush();
+                result.summary = bytes.toByteArray();
+                result.lines = lines.size();
+
+                // Commit the chunk, dispatching its events together, and
+                // record it at once: chunks after a failed one may already
+                // have been committed, and must not be imported again
+                if (change)
+                {
+                    ctx.complete();
+                    if (checkpoint != null)
+                    {
+                        checkpoint.commit(firstLine, lastLine);
+                    }
+                }
+                chunkDone(sequence, result);
+            }
+            catch (MetadataImportException mie)
+            {
+                fail(new MetadataImportException("Error importing line " + lineNumber + ": " + mie.getMessage(), mie));
+            }
+            catch (Exception e)
+            {
+                log.error("Error importing line " + lineNumber, e);
+                fail(new MetadataImportException("Error importing line " + lineNumber + ": " + e.getMessage(), e));
+            }
+            finally
+            {
+                if (ctx != null && ctx.isValid())
+                {
+                    ctx.abort();
+                }
+            }
+        }
+
+        /**
+         * Record the result of a chunk, and write out the summaries of every
+         * chunk now imported along with all the chunks before it.
+         */
+        private synchronized void chunkDone(int sequence, ChunkResult result) throws IOException
+        {
+            results.put(sequence, result);
+            ChunkResult next;
+            while ((next = results.remove(nextToWrite)) != null)
+            {
+                summary.write(next.summary);
+                changeCounter += next.changes;
+                linesDone = next.lastLine;
+                linesImported += next.lines;
+                nextToWrite++;
+                pending.release();
+            }
+
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            log.info(LogManager.getHeader(c, "metadata_import_progress",
+                    "lines=" + linesDone + ",lines_per_second=" + (linesImported * 1000L / elapsed)));
+        }
+
+        private void fail(MetadataImportException mie)
+        {
+            synchronized (this)
+            {
+                if (failure == null)
+                {
+                    failure = mie;
+                }
+            }
+        }
+    }
+
+    /** The result of importing a chunk of lines */
+    private static class ChunkResult
+    {
+        int lastLine;
+        int lines;
+        int changes;
+        byte[] summary;
     }
 
     /**
@@ -951,216 +1464,214 @@ public class MetadataImport
     }
 
     /**
-     * Display the changes that have been detected, or that have been made
+     * Display the changes that have been detected, or that have been made, for one item
      *
-     * @param changes The changes detected
+     * @param change The changes detected
      * @param changed Whether or not the changes have been made
-     * @return The number of items that have changed
+     * @param out The stream to display the changes on
+     * @return Whether the item has changed
      */
-    private static int displayChanges(List<BulkEditChange> changes, boolean changed)
+    private static boolean displayChange(BulkEditChange change, boolean changed, PrintStream out)
     {
-        // Display the changes
-        int changeCounter = 0;
-        for (BulkEditChange change : changes)
-        {
-            // Get the changes
-            List<Metadatum> adds = change.getAdds();
-            List<Metadatum> removes = change.getRemoves();
-            List<Collection> newCollections = change.getNewMappedCollections();
-            List<Collection> oldCollections = change.getOldMappedCollections();
-            if ((adds.size() > 0) || (removes.size() > 0) ||
-                (newCollections.size() > 0) || (oldCollections.size() > 0) ||
-                (change.getNewOwningCollection() != null) || (change.getOldOwningCollection() != null) ||
-                (change.isDeleted()) || (change.isWithdrawn()) || (change.isReinstated()))
-            {
-                // Show the item
-                Item i = change.getItem();
-
-                System.out.println("-----------------------------------------------------------");
-                if (!change.isNewItem())
-                {
-                    System.out.println("Changes for item: " + i.getID() + " (" + i.getHandle() + ")");
-                }
-                else
+        boolean hasChanged = false;
+
+        // Get the changes
+        List<Metadatum> adds = change.getAdds();
+        List<Metadatum> removes = change.getRemoves();
+        List<Collection> newCollections = change.getNewMappedCollections();
+        List<Collection> oldCollections = change.getOldMappedCollections();
+        if ((adds.size() > 0) || (removes.size() > 0) ||
+            (newCollections.size() > 0) || (oldCollections.size() > 0) ||
+            (change.getNewOwningCollection() != null) || (change.getOldOwningCollection() != null) ||
+            (change.isDeleted()) || (change.isWithdrawn()) || (change.isReinstated()))
+        {
+            // Show the item
+            Item i = change.getItem();
+
+            out.println("-----------------------------------------------------------");
+            if (!change.isNewItem())
+            {
+                out.println("Changes for item: " + i.getID() + " (" + i.getHandle() + ")");
+            }
+            else
+            {
+                out.print("New item: ");
+                if (i != null)
                 {
-                    System.out.print("New item: ");
-                    if (i != null)
+                    if (i.getHandle() != null)
                     {
-                        if (i.getHandle() != null)
-                        {
-                            System.out.print(i.getID() + " (" + i.getHandle() + ")");
-                        }
-                        else
-                        {
-                            System.out.print(i.getID() + " (in workflow)");
-                        }
+                        out.print(i.getID() + " (" + i.getHandle() + ")");
+                    }
+                    else
+                    {
+                        out.print(i.getID() + " (in workflow)");
                     }
-                    System.out.println();
                 }
-                changeCounter++;
+                out.println();
             }
+            hasChanged = true;
+        }
 
-            // Show actions
-            if (change.isDeleted())
+        // Show actions
+        if (change.isDeleted())
+        {
+            if (changed)
             {
-                if (changed)
-                {
-                    System.out.println(" - EXPUNGED!");
-                }
-                else
-                {
-                    System.out.println(" - EXPUNGE!");
-                }
+                out.println(" - EXPUNGED!");
             }
-            if (change.isWithdrawn())
+            else
             {
-                if (changed)
-                {
-                    System.out.println(" - WITHDRAWN!");
-                }
-                else
-                {
-                    System.out.println(" - WITHDRAW!");
-                }
+                out.println(" - EXPUNGE!");
             }
-            if (change.isReinstated())
+        }
+        if (change.isWithdrawn())
+        {
+            if (changed)
             {
-                if (changed)
-                {
-                    System.out.println(" - REINSTATED!");
-                }
-                else
-                {
-                    System.out.println(" - REINSTATE!");
-                }
+                out.println(" - WITHDRAWN!");
             }
-
-            if (change.getNewOwningCollection() != null)
+            else
             {
-                Collection c = change.getNewOwningCollection();
-                if (c != null)
-                {
-                    String cHandle = c.getHandle();
-                    String cName = c.getName();
-                    if (!changed)
-                    {
-                        System.out.print(" + New owning collection (" + cHandle + "): ");
-                    }
-                    else
-                    {
-                        System.out.print(" + New owning collection  (" + cHandle + "): ");
-                    }
-                    System.out.println(cName);
-                }
-
-                c = change.getOldOwningCollection();
-                if (c != null)
-                {
-                    String cHandle = c.getHandle();
-                    String cName = c.getName();
-                    if (!changed)
-                    {
-                        System.out.print(" + Old owning collection (" + cHandle + "): ");
-                    }
-                    else
-                    {
-                        System.out.print(" + Old owning collection  (" + cHandle + "): ");
-                    }
-                    System.out.println(cName);
-                }
+                out.println(" - WITHDRAW!");
+            }
+        }
+        if (change.isReinstated())
+        {
+            if (changed)
+            {
+                out.println(" - REINSTATED!");
+            }
+            else
+            {
+                out.println(" - REINSTATE!");
             }
+        }
 
-            // Show new mapped collections
-            for (Collection c : newCollections)
+        if (change.getNewOwningCollection() != null)
+        {
+            Collection c = change.getNewOwningCollection();
+            if (c != null)
             {
                 String cHandle = c.getHandle();
                 String cName = c.getName();
                 if (!changed)
                 {
-                    System.out.print(" + Map to collection (" + cHandle + "): ");
+                    out.print(" + New owning collection (" + cHandle + "): ");
                 }
                 else
                 {
-                    System.out.print(" + Mapped to collection  (" + cHandle + "): ");
+                    out.print(" + New owning collection  (" + cHandle + "): ");
                 }
-                System.out.println(cName);
+                out.println(cName);
             }
 
-            // Show old mapped collections
-            for (Collection c : oldCollections)
+            c = change.getOldOwningCollection();
+            if (c != null)
             {
                 String cHandle = c.getHandle();
                 String cName = c.getName();
                 if (!changed)
                 {
-                    System.out.print(" + Un-map from collection (" + cHandle + "): ");
+                    out.print(" + Old owning collection (" + cHandle + "): ");
                 }
                 else
                 {
-                    System.out.print(" + Un-mapped from collection  (" + cHandle + "): ");
+                    out.print(" + Old owning collection  (" + cHandle + "): ");
                 }
-                System.out.println(cName);
+                out.println(cName);
             }
+        }
 
-            // Show additions
-            for (Metadatum dcv : adds)
+        // Show new mapped collections
+        for (Collection c : newCollections)
+        {
+            String cHandle = c.getHandle();
+            String cName = c.getName();
+            if (!changed)
             {
-                String md = dcv.schema + "." + dcv.element;
-                if (dcv.qualifier != null)
-                {
-                    md += "." + dcv.qualifier;
-                }
-                if (dcv.language != null)
-                {
-                    md += "[" + dcv.language + "]";
-                }
-                if (!changed)
-                {
-                    System.out.print(" + Add    (" + md + "): ");
-                }
-                else
-                {
-                    System.out.print(" + Added   (" + md + "): ");
-                }
-                System.out.print(dcv.value);
-                if (isAuthorityControlledField(md))
-                {
-                    System.out.print(", authority = " + dcv.authority);
-                    System.out.print(", confidence = " + dcv.confidence);
-                }
-                System.out.println("");
+                out.print(" + Map to collection (" + cHandle + "): ");
+            }
+            else
+            {
+                out.print(" + Mapped to collection  (" + cHandle + "): ");
             }
+            out.println(cName);
+        }
 
-            // Show removals
-            for (Metadatum dcv : removes)
+        // Show old mapped collections
+        for (Collection c : oldCollections)
+        {
+            String cHandle = c.getHandle();
+            String cName = c.getName();
+            if (!changed)
             {
-                String md = dcv.schema + "." + dcv.element;
-                if (dcv.qualifier != null)
-                {
-                    md += "." + dcv.qualifier;
-                }
-                if (dcv.language != null)
-                {
-                    md += "[" + dcv.language + "]";
-                }
-                if (!changed)
-                {
-                    System.out.print(" - Remove (" + md + "): ");
-                }
-                else
-                {
-                    System.out.print(" - Removed (" + md + "): ");
-                }
-                System.out.print(dcv.value);
-                if (isAuthorityControlledField(md))
-                {
-                    System.out.print(", authority = " + dcv.authority);
-                    System.out.print(", confidence = " + dcv.confidence);
-                }
-                System.out.println("");
+                out.print(" + Un-map from collection (" + cHandle + "): ");
+            }
+            else
+            {
+                out.print(" + Un-mapped from collection  (" + cHandle + "): ");
             }
+            out.println(cName);
         }
-        return changeCounter;
+
+        // Show additions
+        for (Metadatum dcv : adds)
+        {
+            String md = dcv.schema + "." + dcv.element;
+            if (dcv.qualifier != null)
+            {
+                md += "." + dcv.qualifier;
+            }
+            if (dcv.language != null)
+            {
+                md += "[" + dcv.language + "]";
+            }
+            if (!changed)
+            {
+                out.print(" + Add    (" + md + "): ");
+            }
+            else
+            {
+                out.print(" + Added   (" + md + "): ");
+            }
+            out.print(dcv.value);
+            if (isAuthorityControlledField(md))
+            {
+                out.print(", authority = " + dcv.authority);
+                out.print(", confidence = " + dcv.confidence);
+            }
+            out.println("");
+        }
+
+        // Show removals
+        for (Metadatum dcv : removes)
+        {
+            String md = dcv.schema + "." + dcv.element;
+            if (dcv.qualifier != null)
+            {
+                md += "." + dcv.qualifier;
+            }
+            if (dcv.language != null)
+            {
+                md += "[" + dcv.language + "]";
+            }
+            if (!changed)
+            {
+                out.print(" - Remove (" + md + "): ");
+            }
+            else
+            {
+                out.print(" - Removed (" + md + "): ");
+            }
+            out.print(dcv.value);
+            if (isAuthorityControlledField(md))
+            {
+                out.print(", authority = " + dcv.authority);
+                out.print(", confidence = " + dcv.confidence);
+            }
+            out.println("");
+        }
+        return hasChanged;
     }
 
     /**
@@ -1193,6 +1704,81 @@ public class MetadataImport
         }
     }
 
+    /**
+     * Read and import a CSV file one line at a time, exiting with an error
+     * message if it cannot be read or imported.
+     *
+     * @return The number of items that have changed
+     */
+    private static int importFile(Context c, String filename,
+                                  boolean change, boolean useWorkflow, boolean workflowNotify, boolean useTemplate,
+                                  int chunkSize, int threads, File checkpoint, PrintStream summary)
+    {
+        DSpaceCSVReader reader;
+        try
+        {
+            reader = new DSpaceCSVReader(new File(filename), c);
+        }
+        catch (MetadataImportInvalidHeadingException miihe)
+        {
+            System.err.println(miihe.getMessage());
+            System.exit(1);
+            return 0;
+        }
+        catch (Exception e)
+        {
+            System.err.println("Error reading file: " + e.getMessage());
+            System.exit(1);
+            return 0;
+        }
+
+        try
+        {
+            MetadataImport importer = new MetadataImport(c, reader);
+            long start = System.currentTimeMillis();
+            int changeCounter;
+            if (threads > 1)
+            {
+                changeCounter = importer.runImport(change, useWorkflow, workflowNotify, useTemplate,
+                                                   chunkSize, threads, checkpoint, summary);
+            }
+            else
+            {
+                changeCounter = importer.runImport(change, useWorkflow, workflowNotify, useTemplate,
+                                                   chunkSize, checkpoint, summary);
+            }
+
+            // Report the throughput
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+            System.out.println((change ? "Imported " : "Checked ") + reader.getLineCount() + " lines in "
+                    + (elapsed / 1000) + "s (" + (reader.getLineCount() * 1000L / elapsed) + " lines/s)");
+            return changeCounter;
+        }
+        catch (MetadataImportException mie)
+        {
+            System.err.println("Error: " + mie.getMessage());
+            if (change && (checkpoint != null))
+            {
+                System.err.println("Lines committed so far are recorded in " + checkpoint.getAbsolutePath()
+                        + ", use -r to resume");
+            }
+            c.abort();
+            System.exit(1);
+            return 0;
+        }
+        finally
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException ioe)
+            {
+                log.warn("Unable to close " + filename, ioe);
+            }
+        }
+    }
+
     /**
 	 * main method to run the metadata exporter
 	 *
@@ -1211,6 +1797,10 @@ public class MetadataImport
         options.addOption("w", "workflow", false, "workflow - when adding new items, use collection workflow");
         options.addOption("n", "notify", false, "notify - when adding new items using a workflow, send notification emails");
         options.addOption("t", "template", false, "template - when adding new items, use the collection template (if it exists)");        
+        options.addOption("c", "chunk", true, "chunk - commit every this many lines, recording them in <file>.checkpoint (by default all lines are committed at the end)");
+        options.addOption("r", "resume", false, "resume - skip the lines recorded in <file>.checkpoint by a previous chunked run (chunks of 1000 lines unless -c is given)");
+        options.addOption("o", "summary", true, "summary - append the changes to this file rather than displaying them");
+        options.addOption("p", "parallel", true, "parallel - import chunks with this many threads, each committing its own chunks (chunks of 1000 lines unless -c is given)");
         options.addOption("h", "help", false, "help");
 
         // Parse the command line arguments
@@ -1263,6 +1853,82 @@ public class MetadataImport
             System.exit(1);
         }
 
+        // Number of lines to import between commits: by default there is a
+        // single transaction, unless chunks are asked for or needed
+        boolean chunked = line.hasOption('c') || line.hasOption('r') || line.hasOption('p');
+        int chunkSize = chunked ? 1000 : 0;
+        if (line.hasOption('c'))
+        {
+            try
+            {
+                chunkSize = Integer.parseInt(line.getOptionValue('c'));
+            }
+            catch (NumberFormatException nfe)
+            {
+                chunkSize = 0;
+            }
+            if (chunkSize < 1)
+            {
+                System.err.println("Invalid option 'c': (chunk) must be a positive number of lines.");
+                System.exit(1);
+            }
+        }
+
+        // Number of threads importing chunks
+        int threads = 1;
+        if (line.hasOption('p'))
+        {
+            try
+            {
+                threads = Integer.parseInt(line.getOptionValue('p'));
+            }
+            catch (NumberFormatException nfe)
+            {
+                threads = 0;
+            }
+            if (threads < 1)
+            {
+                System.err.println("Invalid option 'p': (parallel) must be a positive number of threads.");
+                System.exit(1);
+            }
+        }
+
+        // Resume from the checkpoint of a previous run, or start afresh. A
+        // single transaction has nothing to record.
+        File checkpoint = null;
+        if (chunked)
+        {
+            checkpoint = new File(filename + ".checkpoint");
+            if (line.hasOption('r'))
+            {
+                if (checkpoint.exists())
+                {
+                    System.out.println("Resuming from " + checkpoint.getAbsolutePath());
+                }
+            }
+            else if (checkpoint.exists() && !checkpoint.delete())
+            {
+                System.err.println("Unable to remove old checkpoint " + checkpoint.getAbsolutePath());
+                System.exit(1);
+            }
+        }
+
+        // Where to write the changes
+        PrintStream summary = System.out;
+        if (line.hasOption('o'))
+        {
+            try
+            {
+                summary = new PrintStream(new FileOutputStream(line.getOptionValue('o'), true), false, "UTF-8");
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("Unable to open summary file: " + ioe.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
         // Create a context
         Context c;
         try
@@ -1310,45 +1976,12 @@ public class MetadataImport
         // Is this a silent run?
         boolean change = false;
 
-        // Read lines from the CSV file
-        DSpaceCSV csv;
-        try
-        {
-            csv = new DSpaceCSV(new File(filename), c);
-        }
-        catch (MetadataImportInvalidHeadingException miihe)
-        {
-            System.err.println(miihe.getMessage());
-            System.exit(1);
-            return;
-        }
-        catch (Exception e)
-        {
-            System.err.println("Error reading file: " + e.getMessage());
-            System.exit(1);
-            return;
-        }
-
         // Perform the first import - just highlight differences
-        MetadataImport importer = new MetadataImport(c, csv);
-        List<BulkEditChange> changes;
-
         if (!line.hasOption('s'))
         {
             // See what has changed
-            try
-            {
-                changes = importer.runImport(false, useWorkflow, workflowNotify, useTemplate);
-            }
-            catch (MetadataImportException mie)
-            {
-                System.err.println("Error: " + mie.getMessage());
-                System.exit(1);
-                return;
-            }
-
-            // Display the changes
-            int changeCounter = displayChanges(changes, false);
+            int changeCounter = importFile(c, filename, false, useWorkflow, workflowNotify, useTemplate,
+                                           chunkSize, threads, checkpoint, summary);
 
             // If there were changes, ask if we should execute them
             if (changeCounter > 0)
@@ -1390,26 +2023,16 @@ public class MetadataImport
             // If required, make the change
             if (change)
             {
-                try
-                {
-                    // Make the changes
-                    changes = importer.runImport(true, useWorkflow, workflowNotify, useTemplate);
-                }
-                catch (MetadataImportException mie)
-                {
-                    System.err.println("Error: " + mie.getMessage());
-                    System.exit(1);
-                    return;
-                }
-
-                // Display the changes
-                displayChanges(changes, true);
-
-                // Commit the change to the DB
-                c.commit();
+                // Make the changes, committing them by chunks or all at the end
+                importFile(c, filename, true, useWorkflow, workflowNotify, useTemplate,
+                           chunkSize, threads, checkpoint, summary);
             }
 
             // Finsh off and tidy up
+            if (summary != System.out)
+            {
+                summary.close();
+            }
             c.restoreAuthSystemState();
             c.complete();
         }
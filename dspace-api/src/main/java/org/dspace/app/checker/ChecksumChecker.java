@@ -78,6 +78,10 @@ public final class ChecksumChecker
      *            <dd>Report only errors in the logs</dd>
      *            <dt>-p</dt>
      *            <dd>Don't prune results before running checker</dd>
+     *            <dt>-t [threads]</dt>
+     *            <dd>number of threads checking bitstreams</dd>
+     *            <dt>-r [bytes]</dt>
+     *            <dd>maximum bytes read per second, e.g. 50M</dd>
      *            </dl>
      */
     public static void main(String[] args) throws SQLException {
@@ -96,6 +100,8 @@ public final class ChecksumChecker
         options.addOption("c", "count", true, "Check count");
         options.addOption("a", "handle", true, "Specify a handle to check");
         options.addOption("v", "verbose", false, "Report all processing");
+        options.addOption("t", "threads", true, "Number of threads checking bitstreams");
+        options.addOption("r", "rate", true, "Maximum bytes read per second (K, M or G suffix allowed)");
 
         OptionBuilder.withArgName("bitstream-ids").hasArgs().withDescription(
                 "Space separated list of bitstream ids");
@@ -228,6 +234,15 @@ public final class ChecksumChecker
             checker.setReportVerbose(true);
         }
 
+        if (line.hasOption('t'))
+        {
+            checker.setThreads(Integer.parseInt(line.getOptionValue('t')));
+        }
+        if (line.hasOption('r'))
+        {
+            checker.setMaxBytesPerSecond(CheckerCommand.parseBytes(line.getOptionValue('r')));
+        }
+
         checker.setProcessStartDate(processStart);
         checker.setDispatcher(dispatcher);
         checker.setCollector(logger);
@@ -238,6 +253,7 @@ public final class ChecksumChecker
             context.commit();
             context.complete();
         }
+        System.out.println(checker.getThroughputReport());
         System.exit(0);
     }
 
@@ -265,6 +281,7 @@ public final class ChecksumChecker
         System.out
                 .println("\nCheck a defined number of bitstreams: ChecksumChecker -c 10");
         System.out.println("\nReport all processing (verbose)(default reports only errors): ChecksumChecker -v");
+        System.out.println("\nCheck with 4 threads, reading at most 50 MB per second: ChecksumChecker -l -t 4 -r 50M");
         System.out.println("\nDefault (no arguments) is equivalent to '-c 1'");
         System.exit(0);
     }
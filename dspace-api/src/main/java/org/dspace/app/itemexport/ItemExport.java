@@ -15,6 +15,7 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
@@ -23,7 +24,6 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -402,15 +402,8 @@ public class ItemExport
     private static void writeMetadata(Context c, Item i, File destDir, boolean migrate)
             throws Exception
     {
-        Set<String> schemas = new HashSet<String>();
-        Metadatum[] dcValues = i.getMetadata(Item.ANY, Item.ANY, Item.ANY, Item.ANY);
-        for (Metadatum dcValue : dcValues)
-        {
-            schemas.add(dcValue.schema);
-        }
-
         // Save each of the schemas into it's own metadata file
-        for (String schema : schemas)
+        for (String schema : getMetadataSchemas(i))
         {
             writeMetadata(c, schema, i, destDir, migrate);
         }
@@ -420,17 +413,7 @@ public class ItemExport
     private static void writeMetadata(Context c, String schema, Item i,
             File destDir, boolean migrate) throws Exception
     {
-        String filename;
-        if (schema.equals(MetadataSchema.DC_SCHEMA))
-        {
-            filename = "dublin_core.xml";
-        }
-        else
-        {
-            filename = "metadata_" + schema + ".xml";
-        }
-
-        File outFile = new File(destDir, filename);
+        File outFile = new File(destDir, getMetadataFileName(schema));
 
         System.out.println("Attempting to create file " + outFile);
 
@@ -438,97 +421,150 @@ public class ItemExport
         {
             BufferedOutputStream out = new BufferedOutputStream(
                     new FileOutputStream(outFile));
+            try
+            {
+                writeMetadata(schema, i, out, migrate);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        else
+        {
+            throw new Exception("Cannot create dublin_core.xml in " + destDir);
+        }
+    }
 
-            Metadatum[] dcorevalues = i.getMetadata(schema, Item.ANY, Item.ANY,
-                    Item.ANY);
+    /**
+     * Get the name of the file the metadata of a schema is exported to.
+     *
+     * @param schema the short name of the schema
+     * @return the file name
+     */
+    static String getMetadataFileName(String schema)
+    {
+        if (schema.equals(MetadataSchema.DC_SCHEMA))
+        {
+            return "dublin_core.xml";
+        }
+        return "metadata_" + schema + ".xml";
+    }
 
-            // XML preamble
-            byte[] utf8 = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n"
-                    .getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
+    /**
+     * Get the short names of the schemas of an item's metadata.
+     *
+     * @param i the item
+     * @return the schemas
+     */
+    static Set<String> getMetadataSchemas(Item i)
+    {
+        Set<String> schemas = new HashSet<String>();
+        Metadatum[] dcValues = i.getMetadata(Item.ANY, Item.ANY, Item.ANY, Item.ANY);
+        for (Metadatum dcValue : dcValues)
+        {
+            schemas.add(dcValue.schema);
+        }
+        return schemas;
+    }
 
-            String dcTag = "<dublin_core schema=\"" + schema + "\">\n";
-            utf8 = dcTag.getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
+    /**
+     * Write the metadata of an item in one schema, in the format of the
+     * dublin_core.xml file.
+     *
+     * @param schema the short name of the schema
+     * @param i the item
+     * @param out where to write it; not closed
+     * @param migrate whether to leave out the values which are set again
+     *            when the item is imported
+     * @throws IOException
+     */
+    static void writeMetadata(String schema, Item i, OutputStream out,
+            boolean migrate) throws IOException
+    {
+        Metadatum[] dcorevalues = i.getMetadata(schema, Item.ANY, Item.ANY,
+                Item.ANY);
 
-            String dateIssued = null;
-            String dateAccessioned = null;
+        // XML preamble
+        byte[] utf8 = "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n"
+                .getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
 
-            for (Metadatum dcv : dcorevalues)
-            {
-                String qualifier = dcv.qualifier;
+        String dcTag = "<dublin_core schema=\"" + schema + "\">\n";
+        utf8 = dcTag.getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
 
-                if (qualifier == null)
-                {
-                    qualifier = "none";
-                }
+        String dateIssued = null;
+        String dateAccessioned = null;
 
-                String language = dcv.language;
+        for (Metadatum dcv : dcorevalues)
+        {
+            String qualifier = dcv.qualifier;
 
-                if (language != null)
-                {
-                    language = " language=\"" + language + "\"";
-                }
-                else
-                {
-                    language = "";
-                }
+            if (qualifier == null)
+            {
+                qualifier = "none";
+            }
 
-                utf8 = ("  <dcvalue element=\"" + dcv.element + "\" "
-                        + "qualifier=\"" + qualifier + "\""
-                        + language + ">"
-                        + Utils.addEntities(dcv.value) + "</dcvalue>\n")
-                        .getBytes("UTF-8");
-
-                if ((!migrate) ||
-                    (migrate && !(
-                     ("date".equals(dcv.element) && "issued".equals(qualifier)) ||
-                     ("date".equals(dcv.element) && "accessioned".equals(qualifier)) ||
-                     ("date".equals(dcv.element) && "available".equals(qualifier)) ||
-                     ("identifier".equals(dcv.element) && "uri".equals(qualifier) &&
-                      (dcv.value != null && dcv.value.startsWith("http://hdl.handle.net/" +
-                       HandleManager.getPrefix() + "/"))) ||
-                     ("description".equals(dcv.element) && "provenance".equals(qualifier)) ||
-                     ("format".equals(dcv.element) && "extent".equals(qualifier)) ||
-                     ("format".equals(dcv.element) && "mimetype".equals(qualifier)))))
-                {
-                    out.write(utf8, 0, utf8.length);
-                }
+            String language = dcv.language;
 
-                // Store the date issued and accession to see if they are different
-                // because we need to keep date.issued if they are, when migrating
-                if (("date".equals(dcv.element) && "issued".equals(qualifier)))
-                {
-                    dateIssued = dcv.value;
-                }
-                if (("date".equals(dcv.element) && "accessioned".equals(qualifier)))
-                {
-                    dateAccessioned = dcv.value;
-                }
+            if (language != null)
+            {
+                language = " language=\"" + language + "\"";
             }
+            else
+            {
+                language = "";
+            }
+
+            utf8 = ("  <dcvalue element=\"" + dcv.element + "\" "
+                    + "qualifier=\"" + qualifier + "\""
+                    + language + ">"
+                    + Utils.addEntities(dcv.value) + "</dcvalue>\n")
+                    .getBytes("UTF-8");
 
-            // When migrating, only keep date.issued if it is different to date.accessioned
-            if ((migrate) &&
-                (dateIssued != null) &&
-                (dateAccessioned != null) &&
-                (!dateIssued.equals(dateAccessioned)))
+            if ((!migrate) ||
+                (migrate && !(
+                 ("date".equals(dcv.element) && "issued".equals(qualifier)) ||
+                 ("date".equals(dcv.element) && "accessioned".equals(qualifier)) ||
+                 ("date".equals(dcv.element) && "available".equals(qualifier)) ||
+                 ("identifier".equals(dcv.element) && "uri".equals(qualifier) &&
+                  (dcv.value != null && dcv.value.startsWith("http://hdl.handle.net/" +
+                   HandleManager.getPrefix() + "/"))) ||
+                 ("description".equals(dcv.element) && "provenance".equals(qualifier)) ||
+                 ("format".equals(dcv.element) && "extent".equals(qualifier)) ||
+                 ("format".equals(dcv.element) && "mimetype".equals(qualifier)))))
             {
-                utf8 = ("  <dcvalue element=\"date\" "
-                        + "qualifier=\"issued\">"
-                        + Utils.addEntities(dateIssued) + "</dcvalue>\n")
-                        .getBytes("UTF-8");
                 out.write(utf8, 0, utf8.length);
             }
 
-            utf8 = "</dublin_core>\n".getBytes("UTF-8");
-            out.write(utf8, 0, utf8.length);
-
-            out.close();
+            // Store the date issued and accession to see if they are different
+            // because we need to keep date.issued if they are, when migrating
+            if (("date".equals(dcv.element) && "issued".equals(qualifier)))
+            {
+                dateIssued = dcv.value;
+            }
+            if (("date".equals(dcv.element) && "accessioned".equals(qualifier)))
+            {
+                dateAccessioned = dcv.value;
+            }
         }
-        else
+
+        // When migrating, only keep date.issued if it is different to date.accessioned
+        if ((migrate) &&
+            (dateIssued != null) &&
+            (dateAccessioned != null) &&
+            (!dateIssued.equals(dateAccessioned)))
         {
-            throw new Exception("Cannot create dublin_core.xml in " + destDir);
+            utf8 = ("  <dcvalue element=\"date\" "
+                    + "qualifier=\"issued\">"
+                    + Utils.addEntities(dateIssued) + "</dcvalue>\n")
+                    .getBytes("UTF-8");
+            out.write(utf8, 0, utf8.length);
         }
+
+        utf8 = "</dublin_core>\n".getBytes("UTF-8");
+        out.write(utf8, 0, utf8.length);
     }
 
     // create the file 'handle' which contains the handle assigned to the item
@@ -590,8 +626,6 @@ public class ItemExport
                 // bundles can have multiple bitstreams now...
                 Bitstream[] bitstreams = bundles[j].getBitstreams();
 
-                String bundleName = bundles[j].getName();
-
                 for (int k = 0; k < bitstreams.length; k++)
                 {
                     Bitstream b = bitstreams[k];
@@ -599,20 +633,6 @@ public class ItemExport
                     String myName = b.getName();
                     String oldName = myName;
 
-                    String description = b.getDescription();
-                    if (!StringUtils.isEmpty(description))
-                    {
-                        description = "\tdescription:" + description;
-                    } else
-                    {
-                        description = "";
-                    }
-
-                    String primary = "";
-                    if (bundles[j].getPrimaryBitstreamID() == b.getID()) {
-                        primary = "\tprimary:true ";
-                    }
-
                     int myPrefix = 1; // only used with name conflict
 
                     InputStream is = b.retrieve();
@@ -645,18 +665,7 @@ public class ItemExport
                             fos.close();
 
                             // write the manifest file entry
-                            if (b.isRegisteredBitstream())
-                            {
-                                out.println("-r -s " + b.getStoreNumber()
-                                        + " -f " + myName +
-                                        "\tbundle:" + bundleName +
-                                        primary + description);
-                            }
-                            else
-                            {
-                                out.println(myName + "\tbundle:" + bundleName +
-                                            primary + description);
-                            }
+                            out.println(getContentsLine(bundles[j], b, myName));
 
                             isDone = true;
                         }
@@ -683,7 +692,43 @@ public class ItemExport
     }
 
     /**
-     * Method to perform an export and save it as a zip file.
+     * Get the line of the contents file which lists a bitstream.
+     *
+     * @param bundle the bundle the bitstream is in
+     * @param b the bitstream
+     * @param name the name it is exported as
+     * @return the line
+     */
+    static String getContentsLine(Bundle bundle, Bitstream b, String name)
+    {
+        String description = b.getDescription();
+        if (!StringUtils.isEmpty(description))
+        {
+            description = "\tdescription:" + description;
+        } else
+        {
+            description = "";
+        }
+
+        String primary = "";
+        if (bundle.getPrimaryBitstreamID() == b.getID()) {
+            primary = "\tprimary:true ";
+        }
+
+        if (b.isRegisteredBitstream())
+        {
+            return "-r -s " + b.getStoreNumber()
+                    + " -f " + name +
+                    "\tbundle:" + bundle.getName() +
+                    primary + description;
+        }
+        return name + "\tbundle:" + bundle.getName() +
+               primary + description;
+    }
+
+    /**
+     * Method to perform an export and save it as a zip file. The items are
+     * written straight into the zip file, see {@link ItemExportZipWriter}.
      *
      * @param context The DSpace Context
      * @param items The items to export
@@ -697,27 +742,84 @@ public class ItemExport
                                    String destDirName, String zipFileName,
                                    int seqStart, boolean migrate) throws Exception
     {
-        String workDir = getExportWorkDirectory() +
-                         System.getProperty("file.separator") +
-                         zipFileName;
-
-        File wkDir = new File(workDir);
-        if (!wkDir.exists() && !wkDir.mkdirs())
-        {
-            log.error("Unable to create working direcory");
-        }
-
         File dnDir = new File(destDirName);
         if (!dnDir.exists() && !dnDir.mkdirs())
         {
             log.error("Unable to create destination directory");
         }
 
-        // export the items using normal export method
-        exportItem(context, items, workDir, seqStart, migrate);
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        try
+        {
+            int id;
+            while ((id = items.nextID()) != -1)
+            {
+                itemIDs.add(id);
+            }
+        }
+        finally
+        {
+            items.close();
+        }
+
+        System.out.println("Beginning export");
+        Map<String, List<Integer>> itemsMap = new HashMap<String, List<Integer>>();
+        itemsMap.put(null, itemIDs);
+        writeZip(context, itemsMap, seqStart, migrate,
+                destDirName + System.getProperty("file.separator") + zipFileName);
+    }
+
+    /**
+     * Export items straight into a zip file. The file is written under a
+     * temporary name and renamed once it is complete.
+     *
+     * @param context The DSpace Context
+     * @param itemsMap The IDs of the items to export, by the directory of
+     *            the zip file to put them in (null for the top)
+     * @param seqStart The first number in the sequence, in each directory
+     * @param migrate Whether to use the migrate option or not
+     * @param target The name of the zip file
+     * @throws Exception
+     */
+    private static void writeZip(Context context, Map<String, List<Integer>> itemsMap,
+            int seqStart, boolean migrate, String target) throws Exception
+    {
+        File tempFile = new File(target + "_tmp");
+        ItemExportZipWriter writer = new ItemExportZipWriter(context,
+                new BufferedOutputStream(new FileOutputStream(tempFile)), migrate);
+        boolean done = false;
+        try
+        {
+            for (Map.Entry<String, List<Integer>> entry : itemsMap.entrySet())
+            {
+                writer.writeItems(entry.getKey(), entry.getValue(), seqStart);
+            }
+            writer.close();
+            done = true;
+        }
+        finally
+        {
+            if (!done)
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch (IOException e)
+                {
+                    log.warn("Unable to close zip file " + tempFile, e);
+                }
+                if (!tempFile.delete())
+                {
+                    log.error("Unable to delete file: " + tempFile.getName());
+                }
+            }
+        }
 
-        // now zip up the export directory created above
-        zip(workDir, destDirName + System.getProperty("file.separator") + zipFileName);
+        if (!tempFile.renameTo(new File(target)))
+        {
+            log.error("Unable to rename file");
+        }
     }
 
     /**
@@ -965,7 +1067,6 @@ public class ItemExport
                 public void run()
                 {
                     Context context = null;
-                    ItemIterator iitems = null;
                     try
                     {
                         // create a new dspace context
@@ -975,9 +1076,6 @@ public class ItemExport
 
                         String fileName = assembleFileName("item", eperson,
                                 new Date());
-                        String workParentDir = getExportWorkDirectory()
-                                + System.getProperty("file.separator")
-                                + fileName;
                         String downloadDir = getExportDownloadDirectory(eperson
                                 .getID());
                         File dnDir = new File(downloadDir);
@@ -986,30 +1084,8 @@ public class ItemExport
                             log.error("Unable to create download directory");
                         }
 
-                        Iterator<String> iter = itemsMap.keySet().iterator();
-                        while(iter.hasNext())
-                        {
-                            String keyName = iter.next();
-                            iitems = new ItemIterator(context, itemsMap.get(keyName));
-
-                            String workDir = workParentDir 
-                                    + System.getProperty("file.separator")
-                                    + keyName;
-
-                            File wkDir = new File(workDir);
-                            if (!wkDir.exists() && !wkDir.mkdirs())
-                            {
-                                log.error("Unable to create working directory");
-                            }
-
-
-                            // export the items using normal export method
-                            exportItem(context, iitems, workDir, 1, migrate);
-                            iitems.close();
-                        }
-
-                        // now zip up the export directory created above
-                        zip(workParentDir, downloadDir
+                        // export the items straight into the zip file
+                        writeZip(context, itemsMap, 1, migrate, downloadDir
                                 + System.getProperty("file.separator")
                                 + fileName + ".zip");
                         // email message letting user know the file is ready for
@@ -1032,11 +1108,6 @@ public class ItemExport
                     }
                     finally
                     {
-                        if (iitems != null)
-                        {
-                            iitems.close();
-                        }
-
                         // Make sure the database connection gets closed in all conditions.
                     	try {
 							context.complete();
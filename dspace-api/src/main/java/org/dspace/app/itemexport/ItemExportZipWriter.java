@@ -0,0 +1,414 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.itemexport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.log4j.Logger;
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bitstream;
+import org.dspace.content.BitstreamFormat;
+import org.dspace.content.Bundle;
+import org.dspace.content.Item;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.core.Utils;
+import org.dspace.storage.bitstore.BitstreamStorageManager;
+
+/**
+ * Writes item exports straight into a ZIP stream, in the same layout as
+ * {@link ItemExport} writes them to disk, without staging them in a work
+ * directory first. The stream may be a file or, say, an HTTP response.
+ * <P>
+ * Bitstreams whose format is already compressed (see
+ * <code>org.dspace.app.itemexport.zip.store</code>) are written without
+ * compressing them again. Everything but the bitstream content of an item
+ * can be prepared by several threads at once (see
+ * <code>org.dspace.app.itemexport.zip.threads</code>), each with its own
+ * Context; the items are still written in the order given.
+ * <P>
+ * The writer reads the bitstreams in the Context it is given, which should
+ * not be used for anything else meanwhile.
+ */
+public class ItemExportZipWriter
+{
+    /** log4j logger */
+    private static final Logger log = Logger.getLogger(ItemExportZipWriter.class);
+
+    /** MIME types which are stored as they are, by default */
+    private static final String DEFAULT_STORE =
+            "application/pdf, application/zip, application/x-gzip, "
+            + "application/epub+zip, application/vnd.openxmlformats-officedocument.*, "
+            + "application/vnd.oasis.opendocument.*, image/jpeg, image/png, image/gif, "
+            + "image/jp2, audio/*, video/*";
+
+    private final Context context;
+    private final ZipOutputStream zip;
+    private final boolean migrate;
+    private final int level;
+    private final int threads;
+
+    /** MIME types to store, and prefixes of them ending in '/' or '.' */
+    private final Set<String> storeTypes = new HashSet<String>();
+    private final List<String> storePrefixes = new ArrayList<String>();
+
+    /** Threads preparing items, if there is more than one */
+    private ExecutorService pool = null;
+
+    /** Worker contexts, to close at the end */
+    private final List<Context> workerContexts =
+            Collections.synchronizedList(new ArrayList<Context>());
+
+    /**
+     * @param context the context to read bitstreams with
+     * @param out where to write the ZIP; closed by {@link #close()}
+     * @param migrate whether to export the items for migration
+     */
+    public ItemExportZipWriter(Context context, OutputStream out, boolean migrate)
+    {
+        this.context = context;
+        this.zip = new ZipOutputStream(out);
+        this.migrate = migrate;
+        this.level = ConfigurationManager.getIntProperty(
+                "org.dspace.app.itemexport.zip.level", Deflater.DEFAULT_COMPRESSION);
+        this.threads = Math.max(1, ConfigurationManager.getIntProperty(
+                "org.dspace.app.itemexport.zip.threads", 1));
+        zip.setLevel(level);
+
+        String store = ConfigurationManager.getProperty("org.dspace.app.itemexport.zip.store");
+        for (String type : (store == null ? DEFAULT_STORE : store).split(","))
+        {
+            type = type.trim().toLowerCase();
+            if (type.endsWith("*"))
+            {
+                storePrefixes.add(type.substring(0, type.length() - 1));
+            }
+            else if (type.length() > 0)
+            {
+                storeTypes.add(type);
+            }
+        }
+    }
+
+    /**
+     * Export items into a directory of the ZIP, one subdirectory per item
+     * named by its sequence number.
+     *
+     * @param dir the directory, or null for the top of the ZIP
+     * @param itemIDs the database IDs of the items
+     * @param seqStart the sequence number of the first item
+     * @throws Exception
+     */
+    public void writeItems(String dir, List<Integer> itemIDs, int seqStart)
+            throws Exception
+    {
+        String prefix = (dir == null || dir.length() == 0) ? "" : dir + "/";
+        if (threads == 1 || itemIDs.size() == 1)
+        {
+            int seq = seqStart;
+            for (Integer id : itemIDs)
+            {
+                write(prefix + seq++, prepare(context, id));
+            }
+            return;
+        }
+
+        if (pool == null)
+        {
+            pool = Executors.newFixedThreadPool(threads);
+        }
+
+        // keep a few items prepared ahead of the one being written
+        Queue<Future<PreparedItem>> pending = new ArrayDeque<Future<PreparedItem>>();
+        int next = 0;
+        int seq = seqStart;
+        try
+        {
+            while (next < itemIDs.size() || !pending.isEmpty())
+            {
+                while (next < itemIDs.size() && pending.size() < threads * 2)
+                {
+                    pending.add(pool.submit(new Preparer(itemIDs.get(next++))));
+                }
+
+                PreparedItem item;
+                try
+                {
+                    item = pending.remove().get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof Exception)
+                    {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+                write(prefix + seq++, item);
+            }
+        }
+        finally
+        {
+            for (Future<PreparedItem> future : pending)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Finish the ZIP and close the stream, and the worker contexts.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException
+    {
+        try
+        {
+            zip.close();
+        }
+        finally
+        {
+            if (pool != null)
+            {
+                pool.shutdownNow();
+                try
+                {
+                    pool.awaitTermination(1, TimeUnit.MINUTES);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                pool = null;
+            }
+            synchronized (workerContexts)
+            {
+                for (Context c : workerContexts)
+                {
+                    if (c.isValid())
+                    {
+                        c.abort();
+                    }
+                }
+                workerContexts.clear();
+            }
+        }
+    }
+
+    /**
+     * Everything about an item which goes into the export, but the content
+     * of its bitstreams.
+     */
+    static final class PreparedItem
+    {
+        final int id;
+
+        /** Contents of the metadata, contents and handle files, by name */
+        final Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+
+        /** Bitstreams to export, by the name they are exported as */
+        final Map<String, PreparedBitstream> bitstreams =
+                new LinkedHashMap<String, PreparedBitstream>();
+
+        PreparedItem(int id)
+        {
+            this.id = id;
+        }
+    }
+
+    static final class PreparedBitstream
+    {
+        final int id;
+        final boolean store;
+
+        PreparedBitstream(int id, boolean store)
+        {
+            this.id = id;
+            this.store = store;
+        }
+    }
+
+    /**
+     * Prepares an item in a Context of the thread's own.
+     */
+    private class Preparer implements Callable<PreparedItem>
+    {
+        private final int id;
+
+        Preparer(int id)
+        {
+            this.id = id;
+        }
+
+        public PreparedItem call() throws Exception
+        {
+            return prepare(getWorkerContext(), id);
+        }
+    }
+
+    private final ThreadLocal<Context> workerContext = new ThreadLocal<Context>();
+
+    private Context getWorkerContext() throws SQLException
+    {
+        Context c = workerContext.get();
+        if (c == null)
+        {
+            c = context.createWorkerContext();
+            workerContext.set(c);
+            workerContexts.add(c);
+        }
+        return c;
+    }
+
+    /**
+     * Read an item and build its files, checking that its bitstreams may be
+     * read. Names are made unique the way ItemExport does on disk.
+     */
+    PreparedItem prepare(Context c, int id) throws Exception
+    {
+        Item item = Item.find(c, id);
+        if (item == null)
+        {
+            throw new Exception("Error, item cannot be found: " + id);
+        }
+
+        PreparedItem prepared = new PreparedItem(id);
+        for (String schema : ItemExport.getMetadataSchemas(item))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ItemExport.writeMetadata(schema, item, out, migrate);
+            prepared.files.put(ItemExport.getMetadataFileName(schema), out.toByteArray());
+        }
+
+        Set<String> names = new HashSet<String>(prepared.files.keySet());
+        names.add("contents");
+        names.add("handle");
+
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(contents, "UTF-8"));
+        for (Bundle bundle : item.getBundles())
+        {
+            for (Bitstream b : bundle.getBitstreams())
+            {
+                AuthorizeManager.authorizeAction(c, b, Constants.READ);
+
+                String name = b.getName();
+                for (int myPrefix = 1; !names.add(name); myPrefix++)
+                {
+                    name = myPrefix + "_" + b.getName();
+                }
+                out.println(ItemExport.getContentsLine(bundle, b, name));
+                prepared.bitstreams.put(name, new PreparedBitstream(b.getID(), isStored(b)));
+            }
+        }
+        out.close();
+        prepared.files.put("contents", contents.toByteArray());
+
+        if (!migrate && item.getHandle() != null)
+        {
+            prepared.files.put("handle", (item.getHandle() + "\n").getBytes("UTF-8"));
+        }
+
+        item.decache();
+        return prepared;
+    }
+
+    /**
+     * Whether a bitstream is in a format which is already compressed.
+     */
+    boolean isStored(Bitstream b)
+    {
+        BitstreamFormat format = b.getFormat();
+        return isStored(format == null ? null : format.getMIMEType());
+    }
+
+    /**
+     * Whether a MIME type is one of those stored as they are.
+     */
+    boolean isStored(String type)
+    {
+        if (type == null)
+        {
+            return false;
+        }
+        type = type.toLowerCase();
+        if (storeTypes.contains(type))
+        {
+            return true;
+        }
+        for (String prefix : storePrefixes)
+        {
+            if (type.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void write(String dir, PreparedItem item) throws Exception
+    {
+        log.debug("Writing item " + item.id + " to " + dir);
+        for (Map.Entry<String, byte[]> file : item.files.entrySet())
+        {
+            zip.putNextEntry(new ZipEntry(dir + "/" + file.getKey()));
+            zip.write(file.getValue());
+            zip.closeEntry();
+        }
+
+        for (Map.Entry<String, PreparedBitstream> bitstream : item.bitstreams.entrySet())
+        {
+            PreparedBitstream b = bitstream.getValue();
+            if (b.store)
+            {
+                zip.setLevel(Deflater.NO_COMPRESSION);
+            }
+            InputStream is = BitstreamStorageManager.retrieve(context, b.id);
+            try
+            {
+                zip.putNextEntry(new ZipEntry(dir + "/" + bitstream.getKey()));
+                Utils.bufferedCopy(is, zip);
+                zip.closeEntry();
+            }
+            finally
+            {
+                is.close();
+                if (b.store)
+                {
+                    zip.setLevel(level);
+                }
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.TreeMap;
 import org.dspace.core.ConfigurationManager;
 import org.dspace.servicemanager.DSpaceKernelImpl;
 import org.dspace.servicemanager.DSpaceKernelInit;
+import org.dspace.statistics.SolrLoggerQueue;
 import org.dspace.services.RequestService;
 import org.jdom.Document;
 import org.jdom.Element;
@@ -77,6 +78,9 @@ public class ScriptLauncher
         int status;
         status = runOneCommand(args);
 
+        // Send the usage events the command queued, if any
+        SolrLoggerQueue.closeAll(10000);
+
         // Destroy the service kernel if it is still alive
         if (kernelImpl != null)
         {
@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counts and times of the bitstreams handled by each media filter during a
+ * run of the MediaFilterManager, for reporting the throughput of each
+ * filter and how its latencies are spread. Safe to use from several
+ * filtering threads.
+ */
+public class FilterStatistics
+{
+    /** What became of a bitstream given to a filter */
+    public enum Outcome
+    {
+        /** A new rendition was made */
+        FILTERED,
+        /** There was nothing to do, or the filter could not make anything */
+        SKIPPED,
+        /** The filter failed */
+        FAILED
+    }
+
+    /** Upper bounds of the latency histogram buckets, in milliseconds */
+    static final long[] BUCKETS = { 10, 100, 1000, 10000, 60000 };
+
+    /** When counting started */
+    private final long start = System.currentTimeMillis();
+
+    /** Counts of each filter, by name */
+    private final Map<String, Counts> filters = new TreeMap<String, Counts>();
+
+    /** Counts of a single filter */
+    static final class Counts
+    {
+        final long[] outcomes = new long[Outcome.values().length];
+        final long[] histogram = new long[BUCKETS.length + 1];
+        long millis;
+
+        long total()
+        {
+            long total = 0;
+            for (long n : outcomes)
+            {
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Record a bitstream handled by a filter.
+     *
+     * @param filter the name of the filter
+     * @param millis how long the filter took
+     * @param outcome what became of the bitstream
+     */
+    public synchronized void record(String filter, long millis, Outcome outcome)
+    {
+        Counts counts = filters.get(filter);
+        if (counts == null)
+        {
+            counts = new Counts();
+            filters.put(filter, counts);
+        }
+        counts.outcomes[outcome.ordinal()]++;
+        counts.millis += millis;
+
+        int bucket = 0;
+        while (bucket < BUCKETS.length && millis >= BUCKETS[bucket])
+        {
+            bucket++;
+        }
+        counts.histogram[bucket]++;
+    }
+
+    /**
+     * Get the number of bitstreams a filter has handled with an outcome.
+     *
+     * @param filter the name of the filter
+     * @param outcome the outcome
+     * @return the number of bitstreams
+     */
+    public synchronized long getCount(String filter, Outcome outcome)
+    {
+        Counts counts = filters.get(filter);
+        return counts == null ? 0 : counts.outcomes[outcome.ordinal()];
+    }
+
+    /**
+     * Get the latency histogram of a filter: the number of bitstreams it
+     * took less than each of {@link #BUCKETS} milliseconds over, and in the
+     * last place the number which took longer than all of them.
+     *
+     * @param filter the name of the filter
+     * @return the histogram
+     */
+    public synchronized long[] getHistogram(String filter)
+    {
+        Counts counts = filters.get(filter);
+        return counts == null ? new long[BUCKETS.length + 1] : counts.histogram.clone();
+    }
+
+    /**
+     * Print the counts, throughput and latencies of each filter.
+     *
+     * @param out where to print them
+     */
+    public synchronized void report(PrintStream out)
+    {
+        double elapsed = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        for (Map.Entry<String, Counts> entry : filters.entrySet())
+        {
+            Counts counts = entry.getValue();
+            long filtered = counts.outcomes[Outcome.FILTERED.ordinal()];
+            out.println(entry.getKey() + ": "
+                    + filtered + " filtered, "
+                    + counts.outcomes[Outcome.SKIPPED.ordinal()] + " skipped, "
+                    + counts.outcomes[Outcome.FAILED.ordinal()] + " failed; "
+                    + String.format("%.2f", filtered / elapsed) + " filtered/s, "
+                    + "mean " + (counts.millis / Math.max(1, counts.total())) + " ms");
+
+            StringBuilder histogram = new StringBuilder("  latency:");
+            for (int i = 0; i < counts.histogram.length; i++)
+            {
+                histogram.append(i < BUCKETS.length ? " <" + formatMillis(BUCKETS[i]) : " >=" + formatMillis(BUCKETS[i - 1]))
+                         .append(" ").append(counts.histogram[i])
+                         .append(i < BUCKETS.length ? "," : "");
+            }
+            out.println(histogram);
+        }
+    }
+
+    private static String formatMillis(long millis)
+    {
+        return millis < 1000 ? millis + "ms" : (millis / 1000) + "s";
+    }
+}
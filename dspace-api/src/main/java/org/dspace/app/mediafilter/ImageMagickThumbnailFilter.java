@@ -122,11 +122,25 @@ public abstract class ImageMagickThumbnailFilter extends MediaFilter {
                 if (MediaFilterManager.isVerbose) {
                         System.out.println("IM Thumbnail Param: " + op);
                 }
-                cmd.run(op);
+                MediaFilterManager.acquireExternalProcess();
+                try {
+                        cmd.run(op);
+                } finally {
+                        MediaFilterManager.releaseExternalProcess();
+                }
                 return f2;
         }
 
         public static File getImageFile(File f, int page) throws IOException, InterruptedException, IM4JavaException {
+                MediaFilterManager.acquireExternalProcess();
+                try {
+                        return convertImageFile(f, page);
+                } finally {
+                        MediaFilterManager.releaseExternalProcess();
+                }
+        }
+
+        private static File convertImageFile(File f, int page) throws IOException, InterruptedException, IM4JavaException {
                 File f2 = new File(f.getParentFile(), f.getName() + ".jpg");
                 f2.deleteOnExit();
                 ConvertCmd cmd = new ConvertCmd();
@@ -14,6 +14,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -53,6 +57,18 @@ import org.dspace.search.DSIndexer;
  * recreate index after processing bitstreams; -i [identifier] limits processing 
  * scope to a community, collection or item; and -m [max] limits processing to a
  * maximum number of items.
+ * <P>
+ * With -t [threads] greater than 1 the items are filtered in parallel: the
+ * main thread walks the items and queues them, and each filtering thread
+ * works on the items it takes from the queue with its own Context,
+ * committing every -c [commit] items. -e [external] limits how many external
+ * tools (pdftotext, ImageMagick...) are run at once, whatever the number of
+ * threads; filters which run one should call
+ * {@link #acquireExternalProcess()} and {@link #releaseExternalProcess()}
+ * around it. The filters are shared by the threads, so they must be
+ * thread-safe to be used in parallel. As the main thread cannot tell which
+ * queued items will need filtering, -m then limits the number of items
+ * queued rather than the number filtered.
  */
 public class MediaFilterManager
 {
@@ -77,9 +93,23 @@ public class MediaFilterManager
     
     static int max2Process = Integer.MAX_VALUE;  // maximum number items to process
     
-    static int processed = 0;   // number items processed
-    
-    private static Item currentItem = null;   // current item being processed
+    static final AtomicInteger processed = new AtomicInteger();   // number items processed
+
+    static final AtomicInteger queued = new AtomicInteger();   // number items queued for the filtering threads
+
+    static int threads = 1;   // number of filtering threads
+
+    static int commitInterval = 10;   // items filtered between commits, in parallel
+
+    static final FilterStatistics statistics = new FilterStatistics();   // counts and times of each filter
+
+    private static final ThreadLocal<Item> currentItem = new ThreadLocal<Item>();   // current item being processed
+
+    private static BlockingQueue<Integer> workQueue = null;   // items waiting for the filtering threads
+
+    private static final AtomicInteger failures = new AtomicInteger();   // items the filtering threads failed on
+
+    private static volatile Semaphore externalProcesses = null;   // permits to run external tools
     
     private static FormatFilter[] filterClasses = null;
     
@@ -125,6 +155,13 @@ public class MediaFilterManager
         		"ONLY process bitstreams belonging to identifier");
         options.addOption("m", "maximum", true,
 				"process no more than maximum items");
+        options.addOption("t", "threads", true,
+                "filter items with this many threads (default 1)");
+        options.addOption("e", "external", true,
+                "with threads, run at most this many external tools (pdftotext, ImageMagick...) at once"
+                + " (default: number of processors)");
+        options.addOption("c", "commit", true,
+                "with threads, commit after filtering this many items (default 10)");
         options.addOption("h", "help", false, "help");
 
         //create a "plugin" option (to specify specific MediaFilter plugins to run)
@@ -199,6 +236,30 @@ public class MediaFilterManager
         	}
         }
 
+        int external = Runtime.getRuntime().availableProcessors();
+        try
+        {
+            if (line.hasOption('t'))
+            {
+                threads = Math.max(1, Integer.parseInt(line.getOptionValue('t')));
+            }
+            if (line.hasOption('e'))
+            {
+                external = Math.max(1, Integer.parseInt(line.getOptionValue('e')));
+            }
+            if (line.hasOption('c'))
+            {
+                commitInterval = Math.max(1, Integer.parseInt(line.getOptionValue('c')));
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            System.err.println("\nERROR: -t, -e and -c take a number: " + e.getMessage());
+            HelpFormatter myhelp = new HelpFormatter();
+            myhelp.printHelp("MediaFilterManager\n", options);
+            System.exit(1);
+        }
+
         String filterNames[] = null;
         if(line.hasOption('p'))
         {
@@ -334,32 +395,57 @@ public class MediaFilterManager
             // have to be super-user to do the filtering
             c.turnOffAuthorisationSystem();
 
-            // now apply the filters
-            if (identifier == null)
+            Thread[] workers = null;
+            if (threads > 1)
             {
-            	applyFiltersAllItems(c);
+                workers = startWorkers(threads, external);
             }
-            else  // restrict application scope to identifier
+
+            try
             {
-            	DSpaceObject dso = HandleManager.resolveToObject(c, identifier);
-            	if (dso == null)
-            	{
-            		throw new IllegalArgumentException("Cannot resolve "
-                                + identifier + " to a DSpace object");
-            	}
-            	
-            	switch (dso.getType())
-            	{
-            		case Constants.COMMUNITY:
-            						applyFiltersCommunity(c, (Community)dso);
-            						break;					
-            		case Constants.COLLECTION:
-            						applyFiltersCollection(c, (Collection)dso);
-            						break;						
-            		case Constants.ITEM:
-            						applyFiltersItem(c, (Item)dso);
-            						break;
-            	}
+                // now apply the filters
+                if (identifier == null)
+                {
+                    applyFiltersAllItems(c);
+                }
+                else  // restrict application scope to identifier
+                {
+                    DSpaceObject dso = HandleManager.resolveToObject(c, identifier);
+                    if (dso == null)
+                    {
+                        throw new IllegalArgumentException("Cannot resolve "
+                                    + identifier + " to a DSpace object");
+                    }
+
+                    switch (dso.getType())
+                    {
+                        case Constants.COMMUNITY:
+                                        applyFiltersCommunity(c, (Community)dso);
+                                        break;
+                        case Constants.COLLECTION:
+                                        applyFiltersCollection(c, (Collection)dso);
+                                        break;
+                        case Constants.ITEM:
+                                        applyFiltersItem(c, (Item)dso);
+                                        break;
+                    }
+                }
+            }
+            finally
+            {
+                if (workers != null)
+                {
+                    finishWorkers(workers);
+                }
+                if (!isQuiet)
+                {
+                    statistics.report(System.out);
+                }
+            }
+
+            if (failures.get() > 0)
+            {
+                throw new IllegalStateException(failures.get() + " items could not be filtered");
             }
 
             c.complete();
@@ -379,6 +465,173 @@ public class MediaFilterManager
         System.exit(status);
     }
 
+    /**
+     * Start the threads which filter the items queued by
+     * {@link #applyFiltersItem}, each with its own Context.
+     *
+     * @param count the number of threads
+     * @param external the most external tools to run at once
+     * @return the threads
+     */
+    static Thread[] startWorkers(int count, int external)
+    {
+        workQueue = new ArrayBlockingQueue<Integer>(count * 4);
+        externalProcesses = new Semaphore(external);
+        failures.set(0);
+        queued.set(0);
+
+        Thread[] workers = new Thread[count];
+        for (int i = 0; i < count; i++)
+        {
+            workers[i] = new Thread(new Worker(), "filter-media-" + i);
+            workers[i].start();
+        }
+        return workers;
+    }
+
+    /**
+     * Wait for the filtering threads to finish the queued items.
+     *
+     * @param workers the threads
+     */
+    static void finishWorkers(Thread[] workers) throws InterruptedException
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            // one end marker per thread
+            workQueue.put(-1);
+        }
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+        workQueue = null;
+        externalProcesses = null;
+    }
+
+    /**
+     * A filtering thread. It commits its Context every commitInterval
+     * filtered items; if an item fails, the items filtered since the last
+     * commit are lost with it, and will be filtered again on the next run.
+     */
+    private static final class Worker implements Runnable
+    {
+        public void run()
+        {
+            Context context = null;
+            int uncommitted = 0;
+            boolean ended = false;
+            try
+            {
+                context = newWorkerContext();
+                for (int id = workQueue.take(); id >= 0; id = workQueue.take())
+                {
+                    try
+                    {
+                        Item item = Item.find(context, id);
+                        if (item == null)
+                        {
+                            continue;
+                        }
+                        currentItem.set(item);
+                        if (filterItem(context, item))
+                        {
+                            processed.incrementAndGet();
+                            if (++uncommitted >= commitInterval)
+                            {
+                                context.commit();
+                                uncommitted = 0;
+                            }
+                        }
+                        item.decache();
+                    }
+                    catch (Exception e)
+                    {
+                        failures.incrementAndGet();
+                        log.error("Error filtering item " + id, e);
+                        System.out.println("ERROR filtering item " + id + ", losing "
+                                + uncommitted + " uncommitted items: " + e);
+                        context.abort();
+                        context = newWorkerContext();
+                        uncommitted = 0;
+                    }
+                    finally
+                    {
+                        currentItem.remove();
+                    }
+                }
+                ended = true;
+                context.complete();
+                context = null;
+            }
+            catch (Exception e)
+            {
+                failures.incrementAndGet();
+                log.error("Filtering thread failed", e);
+                System.out.println("ERROR in filtering thread: " + e);
+            }
+            finally
+            {
+                if (context != null && context.isValid())
+                {
+                    context.abort();
+                }
+            }
+
+            if (!ended)
+            {
+                // keep taking items, so that the main thread is not blocked
+                // on a full queue
+                try
+                {
+                    while (workQueue.take() >= 0)
+                    {
+                        failures.incrementAndGet();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private static Context newWorkerContext() throws java.sql.SQLException
+        {
+            Context context = new Context();
+            context.turnOffAuthorisationSystem();
+            return context;
+        }
+    }
+
+    /**
+     * Wait for a permit to run an external tool, if the number run at once
+     * is limited. Each call must be followed by one to
+     * {@link #releaseExternalProcess()}, in a finally block.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void acquireExternalProcess() throws InterruptedException
+    {
+        Semaphore permits = externalProcesses;
+        if (permits != null)
+        {
+            permits.acquire();
+        }
+    }
+
+    /**
+     * Give back the permit to run an external tool.
+     */
+    public static void releaseExternalProcess()
+    {
+        Semaphore permits = externalProcesses;
+        if (permits != null)
+        {
+            permits.release();
+        }
+    }
+
     public static void applyFiltersAllItems(Context c) throws Exception
     {
         if(skipList!=null)
@@ -398,7 +651,7 @@ public class MediaFilterManager
             ItemIterator i = Item.findAll(c);
             try
             {
-                while (i.hasNext() && processed < max2Process)
+                while (i.hasNext() && !isMaxReached())
                 {
                     applyFiltersItem(c, i.next());
                 }
@@ -441,7 +694,7 @@ public class MediaFilterManager
             ItemIterator i = collection.getItems();
             try
             {
-                while (i.hasNext() && processed < max2Process)
+                while (i.hasNext() && !isMaxReached())
                 {
                     applyFiltersItem(c, i.next());
                 }
@@ -456,25 +709,44 @@ public class MediaFilterManager
         }
     }
        
+    /**
+     * Whether the maximum number of items (-m) has been reached: the items
+     * filtered, or with filtering threads, the items queued for them.
+     */
+    static boolean isMaxReached()
+    {
+        AtomicInteger count = (workQueue != null) ? queued : processed;
+        return count.get() >= max2Process;
+    }
+
     public static void applyFiltersItem(Context c, Item item) throws Exception
     {
         //only apply filters if item not in skip-list
         if(!inSkipList(item.getHandle()))
         {
+          if (workQueue != null)
+          {
+              // leave it to the filtering threads
+              workQueue.put(item.getID());
+              queued.incrementAndGet();
+              item.decache();
+              return;
+          }
+
     	  //cache this item in MediaFilterManager
     	  //so it can be accessed by MediaFilters as necessary
-    	  currentItem = item;
+    	  currentItem.set(item);
     	
           if (filterItem(c, item))
           {
         	  // commit changes after each filtered item
         	  c.commit();
               // increment processed count
-              ++processed;
+              processed.incrementAndGet();
           }
           // clear item objects from context cache and internal cache
           item.decache();
-          currentItem = null;
+          currentItem.remove();
         }  
     }
 
@@ -544,6 +816,7 @@ public class MediaFilterManager
     	   
     	    if (fmts.contains(myBitstream.getFormat().getShortDescription()))
     		{
+            	long start = System.currentTimeMillis();
             	try
             	{
 		            // only update item if bitstream not skipped
@@ -552,10 +825,16 @@ public class MediaFilterManager
 		           		myItem.update(); // Make sure new bitstream has a sequence
 		                                 	// number
 		           		filtered = true;
+		           		record(filterClasses[i], start, FilterStatistics.Outcome.FILTERED);
+		            }
+		            else
+		            {
+		                record(filterClasses[i], start, FilterStatistics.Outcome.SKIPPED);
 		            }
             	}
                 catch (Exception e)
                 {
+                	record(filterClasses[i], start, FilterStatistics.Outcome.FAILED);
                 	String handle = myItem.getHandle();
                 	Bundle[] bundles = myBitstream.getBundles();
                 	long size = myBitstream.getSize();
@@ -632,6 +911,7 @@ public class MediaFilterManager
                 // Filter claims to handle this type of file, so attempt to apply it
                 if (applyFilter)
                 {
+                    long start = System.currentTimeMillis();
                     try
                     {
                         // only update item if bitstream not skipped
@@ -640,10 +920,16 @@ public class MediaFilterManager
                                myItem.update(); // Make sure new bitstream has a sequence
                                                  // number
                                filtered = true;
+                               record(filterClasses[i], start, FilterStatistics.Outcome.FILTERED);
+                        }
+                        else
+                        {
+                            record(filterClasses[i], start, FilterStatistics.Outcome.SKIPPED);
                         }
                     }
                     catch (Exception e)
                     {
+                        record(filterClasses[i], start, FilterStatistics.Outcome.FAILED);
                         System.out.println("ERROR filtering, skipping bitstream #"
                                 + myBitstream.getID() + " " + e);
                         e.printStackTrace();
@@ -654,6 +940,19 @@ public class MediaFilterManager
         return filtered;
     }
     
+    /**
+     * Record in the statistics the time a filter took over a bitstream.
+     */
+    private static void record(FormatFilter filter, long start, FilterStatistics.Outcome outcome)
+    {
+        String name = filter.getClass().getSimpleName();
+        if (filter instanceof SelfNamedPlugin)
+        {
+            name = ((SelfNamedPlugin) filter).getPluginInstanceName();
+        }
+        statistics.record(name, System.currentTimeMillis() - start, outcome);
+    }
+
     /**
      * A utility class that calls the virtual methods
      * from the current MediaFilter class.
@@ -819,7 +1118,7 @@ public class MediaFilterManager
      */
     public static Item getCurrentItem()
     {
-        return currentItem;
+        return currentItem.get();
     }
     
     /**
@@ -8,15 +8,17 @@
 package org.dspace.app.mediafilter;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.log4j.Logger;
+import org.apache.pdfbox.io.RandomAccessFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.dspace.core.ConfigurationManager;
@@ -63,6 +65,14 @@ public class PDFFilter extends MediaFilter
     }
 
     /**
+     * Extract the text of a PDF. The text is kept in memory up to
+     * <code>pdffilter.memorythreshold</code> bytes (1 MB by default), and
+     * beyond that is spooled to a temporary file, which is deleted when the
+     * returned stream is closed; with <code>pdffilter.largepdfs</code> it
+     * always goes to the file, and PDFBox parses the document with a
+     * scratch file too. <code>pdffilter.maxpages</code>, if set, limits
+     * the extraction to the first pages of the document.
+     *
      * @param source
      *            source input stream
      *
@@ -74,31 +84,39 @@ public class PDFFilter extends MediaFilter
         try
         {
             boolean useTemporaryFile = ConfigurationManager.getBooleanProperty("pdffilter.largepdfs", false);
+            int threshold = useTemporaryFile ? 0
+                    : ConfigurationManager.getIntProperty("pdffilter.memorythreshold", 1024 * 1024);
+            int maxPages = ConfigurationManager.getIntProperty("pdffilter.maxpages", 0);
 
             // get input stream from bitstream
             // pass to filter, get string back
             PDFTextStripper pts = new PDFTextStripper();
-            PDDocument pdfDoc = null;
-            Writer writer = null;
-            File tempTextFile = null;
-            ByteArrayOutputStream byteStream = null;
-
-            if (useTemporaryFile)
-            {
-                tempTextFile = File.createTempFile("dspacepdfextract" + source.hashCode(), ".txt");
-                tempTextFile.deleteOnExit();
-                writer = new OutputStreamWriter(new FileOutputStream(tempTextFile));
-            }
-            else
+            if (maxPages > 0)
             {
-                byteStream = new ByteArrayOutputStream();
-                writer = new OutputStreamWriter(byteStream);
+                pts.setEndPage(maxPages);
             }
-            
+            PDDocument pdfDoc = null;
+            File scratchFile = null;
+            RandomAccessFile scratch = null;
+            DeferredFileOutputStream spool = new DeferredFileOutputStream(threshold,
+                    "dspacepdfextract", ".txt", null);
+            Writer writer = new OutputStreamWriter(spool);
+            boolean extracted = false;
+
             try
             {
-                pdfDoc = PDDocument.load(source);
+                if (useTemporaryFile)
+                {
+                    scratchFile = File.createTempFile("dspacepdfscratch", ".tmp");
+                    scratch = new RandomAccessFile(scratchFile, "rw");
+                    pdfDoc = PDDocument.load(source, scratch);
+                }
+                else
+                {
+                    pdfDoc = PDDocument.load(source);
+                }
                 pts.writeText(pdfDoc, writer);
+                extracted = true;
             }
             finally
             {
@@ -122,17 +140,48 @@ public class PDFFilter extends MediaFilter
                 {
                    log.error("Error closing temporary extract file: " + e.getMessage(), e);
                 }
+
+                if (scratchFile != null)
+                {
+                    try
+                    {
+                        scratch.close();
+                    }
+                    catch(Exception e)
+                    {
+                       log.error("Error closing scratch file: " + e.getMessage(), e);
+                    }
+                    if (!scratchFile.delete())
+                    {
+                        log.error("Unable to delete scratch file " + scratchFile);
+                    }
+                }
+
+                if (!extracted && !spool.isInMemory() && !spool.getFile().delete())
+                {
+                    // failed, so nobody will read the extract
+                    log.error("Unable to delete temporary extract file " + spool.getFile());
+                }
             }
 
-            if (useTemporaryFile)
+            if (spool.isInMemory())
             {
-                return new FileInputStream(tempTextFile);
+                return new ByteArrayInputStream(spool.getData());
             }
-            else
+
+            final File tempTextFile = spool.getFile();
+            return new FilterInputStream(new FileInputStream(tempTextFile))
             {
-                byte[] bytes = byteStream.toByteArray();
-                return new ByteArrayInputStream(bytes);
-            }
+                @Override
+                public void close() throws IOException
+                {
+                    super.close();
+                    if (!tempTextFile.delete())
+                    {
+                        log.error("Unable to delete temporary extract file " + tempTextFile);
+                    }
+                }
+            };
         }
         catch (OutOfMemoryError oome)
         {
@@ -108,14 +108,22 @@ public class XPDF2Text extends MediaFilter
             pdfCmd[4] = sourceTmp.toString();
 
             log.debug("Running command: "+Arrays.deepToString(pdfCmd));
-            Process pdfProc = Runtime.getRuntime().exec(pdfCmd);
-            InputStream stdout = pdfProc.getInputStream();
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            Utils.copy(new BufferedInputStream(stdout), baos);
-            stdout.close();
-            baos.close();
+            MediaFilterManager.acquireExternalProcess();
+            try
+            {
+                Process pdfProc = Runtime.getRuntime().exec(pdfCmd);
+                InputStream stdout = pdfProc.getInputStream();
+                Utils.copy(new BufferedInputStream(stdout), baos);
+                stdout.close();
+                baos.close();
 
-            status = pdfProc.waitFor();
+                status = pdfProc.waitFor();
+            }
+            finally
+            {
+                MediaFilterManager.releaseExternalProcess();
+            }
             String msg = null;
             if (status == 1)
             {
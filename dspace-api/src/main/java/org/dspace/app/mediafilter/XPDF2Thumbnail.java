@@ -182,19 +182,28 @@ public class XPDF2Thumbnail extends MediaFilter
             try
             {
                 MatchResult mediaBox = null;
-                Process pdfProc = Runtime.getRuntime().exec(pdfinfoCmd);
-                lr = new BufferedReader(new InputStreamReader(pdfProc.getInputStream()));
-                String line;
-                for (line = lr.readLine(); line != null; line = lr.readLine())
+                int istatus;
+                MediaFilterManager.acquireExternalProcess();
+                try
                 {
-                    // if (line.matches(MEDIABOX_PATT))
-                    Matcher mm = MEDIABOX_PATT.matcher(line);
-                    if (mm.matches())
+                    Process pdfProc = Runtime.getRuntime().exec(pdfinfoCmd);
+                    lr = new BufferedReader(new InputStreamReader(pdfProc.getInputStream()));
+                    String line;
+                    for (line = lr.readLine(); line != null; line = lr.readLine())
                     {
-                        mediaBox = mm.toMatchResult();
+                        // if (line.matches(MEDIABOX_PATT))
+                        Matcher mm = MEDIABOX_PATT.matcher(line);
+                        if (mm.matches())
+                        {
+                            mediaBox = mm.toMatchResult();
+                        }
                     }
+                    istatus = pdfProc.waitFor();
+                }
+                finally
+                {
+                    MediaFilterManager.releaseExternalProcess();
                 }
-                int istatus = pdfProc.waitFor();
                 if (istatus != 0)
                 {
                     log.error("XPDF pdfinfo proc failed, exit status=" + istatus + ", file=" + sourceTmp);
@@ -251,8 +260,16 @@ public class XPDF2Thumbnail extends MediaFilter
             log.debug("Running xpdf command: "+Arrays.deepToString(pdfCmd));
             try
             {
-                Process pdfProc = Runtime.getRuntime().exec(pdfCmd);
-                status = pdfProc.waitFor();
+                MediaFilterManager.acquireExternalProcess();
+                try
+                {
+                    Process pdfProc = Runtime.getRuntime().exec(pdfCmd);
+                    status = pdfProc.waitFor();
+                }
+                finally
+                {
+                    MediaFilterManager.releaseExternalProcess();
+                }
                 if (!outf.exists()) outf = new File(outPrefix+"-00001.ppm");
                 if (!outf.exists()) outf = new File(outPrefix+"-0001.ppm");
                 if (!outf.exists()) outf = new File(outPrefix+"-001.ppm");
@@ -0,0 +1,721 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.UUID;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bitstream;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.storage.bitstore.BitstreamStorageManager;
+
+/**
+ * Sends the bits of a bitstream in answer to an HTTP GET, shared by the web
+ * applications. It supports:
+ * <ul>
+ * <li>conditional requests: <code>If-None-Match</code> against an ETag made
+ * from the stored checksum, and <code>If-Modified-Since</code> against the
+ * last modification date given by the caller;</li>
+ * <li>byte ranges: <code>Range</code> (one or more ranges, the latter sent as
+ * <code>multipart/byteranges</code>) and <code>If-Range</code>, so that
+ * interrupted downloads can be resumed;</li>
+ * <li>reading straight from the requested position of the asset store
+ * file with {@link FileChannel#transferTo}, when the bitstream is kept in a
+ * local file, rather than reading and discarding the bytes before a range.
+ * The servlet output stream is not a channel, so the bytes are still copied
+ * through a buffer on their way out: this saves the skipping, not the
+ * copy.</li>
+ * </ul>
+ * <p>
+ * The bitstream is opened when the delivery is created, so the
+ * {@link Context} may be completed before the bits are written:
+ *
+ * <pre>
+ * BitstreamDelivery delivery = new BitstreamDelivery(context, bitstream);
+ * delivery.evaluate(request);
+ * delivery.setHeaders(response);
+ * context.complete();
+ * try
+ * {
+ *     delivery.write(response.getOutputStream());
+ * }
+ * finally
+ * {
+ *     delivery.close();
+ * }
+ * </pre>
+ *
+ * @see <a href="http://tools.ietf.org/html/rfc7233">RFC 7233</a>
+ */
+public class BitstreamDelivery implements Closeable
+{
+    private static Logger log = Logger.getLogger(BitstreamDelivery.class);
+
+    /**
+     * Most ranges served in one response. Requests for more are answered
+     * with the whole bitstream, as RFC 7233 allows.
+     */
+    public static final int MAX_RANGES = 32;
+
+    /** Buffer size when copying from a stream */
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String CRLF = "\r\n";
+
+    /** Size of the bitstream in bytes, or -1 if unknown */
+    private final long size;
+
+    /** Strong entity tag, or null if there is none */
+    private final String etag;
+
+    /** The asset store file, if the bitstream is kept in a local file */
+    private FileChannel channel;
+
+    /** The bits otherwise */
+    private InputStream stream;
+
+    /** Bytes of stream already read */
+    private long streamPosition = 0;
+
+    private String contentType;
+
+    private long lastModified = -1;
+
+    private int status = HttpServletResponse.SC_OK;
+
+    /** Whether Range requests are answered */
+    private boolean acceptRanges = true;
+
+    /** Ranges to send, in ascending order, or null for the whole bitstream */
+    private List<long[]> ranges;
+
+    /** Separates the ranges of a multipart response */
+    private String boundary;
+
+    /**
+     * Open a bitstream for delivery.
+     *
+     * @param context
+     *            The current context
+     * @param bitstream
+     *            The bitstream to send
+     * @throws AuthorizeException
+     *             If the current user may not read the bitstream
+     */
+    public BitstreamDelivery(Context context, Bitstream bitstream)
+            throws SQLException, IOException, AuthorizeException
+    {
+        AuthorizeManager.authorizeAction(context, bitstream, Constants.READ);
+
+        this.size = bitstream.getSize();
+        this.etag = toETag(bitstream.getChecksum());
+        this.contentType = bitstream.getFormat().getMIMEType();
+
+        // opened last, so that nothing after it can fail and leave it open
+        File file = BitstreamStorageManager.retrieveLocalFile(context, bitstream.getID());
+        if (file != null)
+        {
+            this.channel = new FileInputStream(file).getChannel();
+        }
+        else
+        {
+            this.stream = BitstreamStorageManager.retrieve(context, bitstream.getID());
+            if (this.stream == null)
+            {
+                throw new IOException("Bitstream " + bitstream.getID() + " has no bits");
+            }
+        }
+    }
+
+    /**
+     * Open a file for delivery, e.g. a rendition generated from a bitstream.
+     * There is no ETag.
+     *
+     * @param file
+     *            The file to send
+     * @param contentType
+     *            Its MIME type
+     */
+    public BitstreamDelivery(File file, String contentType) throws IOException
+    {
+        this.size = file.length();
+        this.etag = null;
+        this.contentType = contentType;
+        this.channel = new FileInputStream(file).getChannel();
+    }
+
+    /**
+     * Set the date sent as <code>Last-Modified</code> and compared with
+     * <code>If-Modified-Since</code>. Leave it unset when the response
+     * should not be cached, e.g. because it depends on authorization.
+     *
+     * @param lastModified
+     *            Milliseconds since the epoch
+     */
+    public void setLastModified(long lastModified)
+    {
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Turn answering <code>Range</code> requests on or off. When off, the
+     * whole bitstream is always sent and <code>Accept-Ranges</code> is not.
+     * It is on by default.
+     */
+    public void setAcceptRanges(boolean acceptRanges)
+    {
+        this.acceptRanges = acceptRanges;
+    }
+
+    /**
+     * Override the MIME type of the bitstream format.
+     */
+    public void setContentType(String contentType)
+    {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Decide the response to a request, from its conditional and range
+     * headers.
+     *
+     * @return the status of the response
+     */
+    public int evaluate(HttpServletRequest request)
+    {
+        long ifModifiedSince;
+        try
+        {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        }
+        catch (IllegalArgumentException e)
+        {
+            ifModifiedSince = -1;
+        }
+        return evaluate(request.getMethod(), request.getHeader("If-None-Match"), ifModifiedSince,
+                request.getHeader("Range"), request.getHeader("If-Range"));
+    }
+
+    /**
+     * Decide the response to a request, from its conditional and range
+     * headers.
+     *
+     * @param method
+     *            The request method, <code>null</code> for GET
+     * @param ifNoneMatch
+     *            The <code>If-None-Match</code> header, or null
+     * @param ifModifiedSince
+     *            The <code>If-Modified-Since</code> date, or -1
+     * @param range
+     *            The <code>Range</code> header, or null
+     * @param ifRange
+     *            The <code>If-Range</code> header, or null
+     * @return the status of the response
+     */
+    public int evaluate(String method, String ifNoneMatch, long ifModifiedSince, String range, String ifRange)
+    {
+        status = HttpServletResponse.SC_OK;
+        ranges = null;
+        boundary = null;
+
+        boolean get = (method == null || "GET".equals(method) || "HEAD".equals(method));
+        if (!get)
+        {
+            return status;
+        }
+
+        if (ifNoneMatch != null)
+        {
+            if (etag != null && matches(ifNoneMatch, etag))
+            {
+                status = HttpServletResponse.SC_NOT_MODIFIED;
+                return status;
+            }
+        }
+        else if (ifModifiedSince != -1 && lastModified != -1
+                && lastModified / 1000 <= ifModifiedSince / 1000)
+        {
+            status = HttpServletResponse.SC_NOT_MODIFIED;
+            return status;
+        }
+
+        if (!acceptRanges || range == null || size < 0 || (ifRange != null && !ifRangeMatches(ifRange)))
+        {
+            return status;
+        }
+
+        List<long[]> requested = parseRange(range, size);
+        if (requested == null)
+        {
+            // Invalid syntax: ignore the header
+            log.debug("Ignoring invalid range " + range);
+        }
+        else if (requested.isEmpty())
+        {
+            status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+        }
+        else
+        {
+            List<long[]> coalesced = coalesce(requested);
+            if (coalesced.size() <= MAX_RANGES)
+            {
+                ranges = coalesced;
+                status = HttpServletResponse.SC_PARTIAL_CONTENT;
+                if (ranges.size() > 1)
+                {
+                    boundary = UUID.randomUUID().toString();
+                }
+            }
+        }
+        return status;
+    }
+
+    /**
+     * @return the status of the response
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return true if the response has a body, i.e. it is not a 304 or 416
+     */
+    public boolean hasBody()
+    {
+        return status == HttpServletResponse.SC_OK || status == HttpServletResponse.SC_PARTIAL_CONTENT;
+    }
+
+    /**
+     * Whether the response sends the start of the bitstream. Usage events
+     * are best recorded only then, not for each range fetched by a player
+     * or a download manager.
+     */
+    public boolean includesStart()
+    {
+        return status == HttpServletResponse.SC_OK
+                || (status == HttpServletResponse.SC_PARTIAL_CONTENT && ranges.get(0)[0] == 0);
+    }
+
+    /**
+     * @return the ETag, quoted, or null if there is none
+     */
+    public String getETag()
+    {
+        return etag;
+    }
+
+    /**
+     * @return the last modification date, or -1 if not set
+     */
+    public long getLastModified()
+    {
+        return lastModified;
+    }
+
+    /**
+     * @return the <code>Content-Type</code> of the response
+     */
+    public String getContentType()
+    {
+        return (boundary != null) ? "multipart/byteranges; boundary=" + boundary : contentType;
+    }
+
+    /**
+     * @return the <code>Content-Length</code> of the response, or -1 if
+     *         unknown
+     */
+    public long getContentLength()
+    {
+        if (!hasBody())
+        {
+            return 0;
+        }
+        if (ranges == null)
+        {
+            return size;
+        }
+        if (boundary == null)
+        {
+            return ranges.get(0)[1] - ranges.get(0)[0] + 1;
+        }
+        long length = 0;
+        for (long[] r : ranges)
+        {
+            length += partHeader(r).length() + r[1] - r[0] + 1;
+        }
+        return length + closingBoundary().length();
+    }
+
+    /**
+     * @return the <code>Content-Range</code> of the response, or null if
+     *         there is none
+     */
+    public String getContentRange()
+    {
+        if (status == HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+        {
+            return "bytes */" + size;
+        }
+        if (ranges != null && boundary == null)
+        {
+            return contentRange(ranges.get(0));
+        }
+        return null;
+    }
+
+    /**
+     * Set the status and headers of the response, as decided by
+     * {@link #evaluate}.
+     */
+    public void setHeaders(HttpServletResponse response)
+    {
+        response.setStatus(status);
+        if (acceptRanges && size >= 0)
+        {
+            response.setHeader("Accept-Ranges", "bytes");
+        }
+        if (etag != null)
+        {
+            response.setHeader("ETag", etag);
+        }
+        if (lastModified != -1)
+        {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        if (status == HttpServletResponse.SC_NOT_MODIFIED)
+        {
+            return;
+        }
+        if (getContentRange() != null)
+        {
+            response.setHeader("Content-Range", getContentRange());
+        }
+        if (hasBody())
+        {
+            response.setContentType(getContentType());
+        }
+        long length = getContentLength();
+        if (length >= 0)
+        {
+            response.setHeader("Content-Length", String.valueOf(length));
+        }
+    }
+
+    /**
+     * Write the body of the response, as decided by {@link #evaluate}. Does
+     * not need the Context.
+     */
+    public void write(OutputStream out) throws IOException
+    {
+        if (!hasBody())
+        {
+            return;
+        }
+        // a wrapper copying into out, not a channel the kernel can write to
+        WritableByteChannel target = (channel != null) ? Channels.newChannel(out) : null;
+        if (ranges == null)
+        {
+            copy(out, target, 0, size);
+        }
+        else if (boundary == null)
+        {
+            long[] r = ranges.get(0);
+            copy(out, target, r[0], r[1] - r[0] + 1);
+        }
+        else
+        {
+            for (long[] r : ranges)
+            {
+                out.write(partHeader(r).getBytes("ISO-8859-1"));
+                copy(out, target, r[0], r[1] - r[0] + 1);
+            }
+            out.write(closingBoundary().getBytes("ISO-8859-1"));
+        }
+        out.flush();
+    }
+
+    /**
+     * Close the bitstream.
+     */
+    @Override
+    public void close()
+    {
+        try
+        {
+            if (channel != null)
+            {
+                channel.close();
+            }
+            if (stream != null)
+            {
+                stream.close();
+            }
+        }
+        catch (IOException e)
+        {
+            log.warn("Caught IO exception when closing a bitstream: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copy <code>count</code> bytes from <code>position</code>, or
+     * everything from there if <code>count</code> is negative. Positions
+     * must ascend from one call to the next.
+     */
+    private void copy(OutputStream out, WritableByteChannel target, long position, long count)
+            throws IOException
+    {
+        if (channel != null)
+        {
+            long end = (count < 0) ? channel.size() : position + count;
+            while (position < end)
+            {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0)
+                {
+                    throw new EOFException("Bitstream ended at " + position + " of " + end + " bytes");
+                }
+                position += sent;
+            }
+            return;
+        }
+
+        while (streamPosition < position)
+        {
+            long skipped = stream.skip(position - streamPosition);
+            if (skipped <= 0)
+            {
+                if (stream.read() < 0)
+                {
+                    throw new EOFException("Bitstream ended at " + streamPosition + " bytes");
+                }
+                skipped = 1;
+            }
+            streamPosition += skipped;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = count;
+        while (count < 0 || remaining > 0)
+        {
+            int wanted = (count < 0) ? buffer.length : (int) Math.min(buffer.length, remaining);
+            int length = stream.read(buffer, 0, wanted);
+            if (length < 0)
+            {
+                if (count < 0)
+                {
+                    return;
+                }
+                throw new EOFException("Bitstream ended at " + streamPosition + " bytes");
+            }
+            out.write(buffer, 0, length);
+            streamPosition += length;
+            remaining -= length;
+        }
+    }
+
+    private String contentRange(long[] r)
+    {
+        return "bytes " + r[0] + "-" + r[1] + "/" + size;
+    }
+
+    private String partHeader(long[] r)
+    {
+        return CRLF + "--" + boundary + CRLF
+                + "Content-Type: " + contentType + CRLF
+                + "Content-Range: " + contentRange(r) + CRLF + CRLF;
+    }
+
+    private String closingBoundary()
+    {
+        return CRLF + "--" + boundary + "--" + CRLF;
+    }
+
+    /**
+     * Whether <code>If-Range</code> holds, i.e. the entity it names is the
+     * one we have. A date is compared with the last modification date.
+     */
+    private boolean ifRangeMatches(String ifRange)
+    {
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+        {
+            // Weak tags never match
+            return etag != null && etag.equals(ifRange);
+        }
+        if (lastModified == -1)
+        {
+            return false;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try
+        {
+            return lastModified / 1000 == format.parse(ifRange).getTime() / 1000;
+        }
+        catch (ParseException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return the ETag for a checksum, or null if there is no checksum
+     */
+    static String toETag(String checksum)
+    {
+        return (checksum == null || checksum.length() == 0) ? null : "\"" + checksum + "\"";
+    }
+
+    /**
+     * Whether an <code>If-None-Match</code> header lists the ETag. Weak
+     * comparison, as RFC 7232 requires.
+     */
+    static boolean matches(String ifNoneMatch, String etag)
+    {
+        for (String tag : ifNoneMatch.split(","))
+        {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+            {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a <code>Range</code> header.
+     *
+     * @param range
+     *            The header
+     * @param size
+     *            The size of the bitstream
+     * @return the satisfiable ranges, as inclusive <code>{first, last}</code>
+     *         positions in the order requested; an empty list if there are
+     *         none; or null if the header is invalid
+     */
+    static List<long[]> parseRange(String range, long size)
+    {
+        range = range.trim();
+        if (!range.regionMatches(true, 0, "bytes=", 0, 6))
+        {
+            return null;
+        }
+        List<long[]> result = new ArrayList<long[]>();
+        try
+        {
+            for (String spec : range.substring(6).split(","))
+            {
+                spec = spec.trim();
+                if (spec.length() == 0)
+                {
+                    continue;
+                }
+                int dash = spec.indexOf('-');
+                if (dash < 0)
+                {
+                    return null;
+                }
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.length() == 0)
+                {
+                    // The final bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix < 0)
+                    {
+                        return null;
+                    }
+                    if (suffix > 0 && size > 0)
+                    {
+                        result.add(new long[] { Math.max(0, size - suffix), size - 1 });
+                    }
+                }
+                else
+                {
+                    long start = Long.parseLong(first);
+                    long end = (last.length() == 0) ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || end < start)
+                    {
+                        return null;
+                    }
+                    if (start < size)
+                    {
+                        result.add(new long[] { start, Math.min(end, size - 1) });
+                    }
+                }
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Sort ranges and merge those which overlap or touch, so that no byte
+     * is sent twice and a stream can be read forward only.
+     */
+    static List<long[]> coalesce(List<long[]> ranges)
+    {
+        List<long[]> sorted = new ArrayList<long[]>(ranges);
+        Collections.sort(sorted, new Comparator<long[]>()
+        {
+            @Override
+            public int compare(long[] a, long[] b)
+            {
+                return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>();
+        for (long[] r : sorted)
+        {
+            long[] previous = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (previous != null && r[0] <= previous[1] + 1)
+            {
+                previous[1] = Math.max(previous[1], r[1]);
+            }
+            else
+            {
+                merged.add(new long[] { r[0], r[1] });
+            }
+        }
+        return merged;
+    }
+}
@@ -8,6 +8,9 @@
 package org.dspace.app.util;
 
 import org.dspace.core.ConfigurationManager;
+import org.dspace.core.PluginManager;
+import org.dspace.statistics.SolrLoggerQueue;
+import org.dspace.statistics.util.SpiderDetector;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.apache.log4j.Logger;
 
@@ -133,6 +136,17 @@ public class DSpaceContextListener implements ServletContextListener
         } catch (IllegalAccessException ex) {
             event.getServletContext().log("Can't create webapp MBean:  " + ex.getMessage());
         }
+
+        /**
+         * Stage 4
+         *
+         * Load the plugin classes, so that the first requests do not wait
+         * on the class loader.
+         */
+        if (ConfigurationManager.getBooleanProperty("pluginmanager.warmup", false))
+        {
+            PluginManager.warmUp();
+        }
     }
 
     /**
@@ -147,6 +161,12 @@ public class DSpaceContextListener implements ServletContextListener
 
         try
         {
+            // Send the usage events still queued
+            SolrLoggerQueue.closeAll(10000);
+
+            // Stop checking the spider files for changes
+            SpiderDetector.stopReloading();
+
             // Remove the database pool
             DatabaseManager.shutdown();
 
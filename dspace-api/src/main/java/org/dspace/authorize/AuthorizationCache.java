@@ -0,0 +1,193 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.authorize;
+
+import java.sql.SQLException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.dspace.core.Context;
+import org.dspace.eperson.EPerson;
+import org.dspace.eperson.Group;
+
+/**
+ * Per Context memory of authorization work, so that a request which checks
+ * many objects does not repeat the same queries over and over:
+ * <ul>
+ * <li>the effective groups of an EPerson (direct memberships, special groups
+ * and all their parent groups), computed once and kept as an immutable
+ * {@link EffectiveGroups} bit set;</li>
+ * <li>the decisions taken by {@link AuthorizeManager}, keyed on user, object
+ * type, object ID and action.</li>
+ * </ul>
+ * Decisions are forgotten whenever the Context sees something which might
+ * change them: a policy written or deleted, a content or group event, a new
+ * current user or special group. Group memberships are forgotten whenever a
+ * group changes.
+ * <P>
+ * Not thread safe, like the Context which owns it.
+ *
+ * @see Context#getAuthorizationCache()
+ */
+public class AuthorizationCache
+{
+    /** Decisions kept before the memo is simply started afresh */
+    private static final int MAX_DECISIONS = 10000;
+
+    /** Kinds of decision in the memo */
+    static final int AUTHORIZE = 0;
+    static final int AUTHORIZE_INHERITED = 1;
+    static final int ADMIN = 2;
+
+    private final Map<Integer, EffectiveGroups> groups = new HashMap<Integer, EffectiveGroups>();
+
+    private final Map<Decision, Boolean> decisions = new HashMap<Decision, Boolean>();
+
+    /**
+     * Get the effective groups of an EPerson, computing them on first use.
+     *
+     * @param c context
+     * @param e the EPerson, or <code>null</code> for anonymous
+     * @return the groups <code>e</code> is a member of
+     * @throws SQLException if there's a database problem
+     */
+    public EffectiveGroups getEffectiveGroups(Context c, EPerson e) throws SQLException
+    {
+        Integer key = Integer.valueOf(e == null ? -1 : e.getID());
+        EffectiveGroups effective = groups.get(key);
+        if (effective == null)
+        {
+            effective = new EffectiveGroups(Group.allMemberGroupIDs(c, e));
+            groups.put(key, effective);
+        }
+        return effective;
+    }
+
+    /**
+     * Look up a decision taken earlier in this Context.
+     *
+     * @return the decision, or <code>null</code> if there is none
+     */
+    Boolean getDecision(int kind, int userID, int type, int id, int action)
+    {
+        return decisions.get(new Decision(kind, userID, type, id, action));
+    }
+
+    /**
+     * Remember a decision for the rest of this Context.
+     */
+    void putDecision(int kind, int userID, int type, int id, int action, boolean allowed)
+    {
+        if (decisions.size() >= MAX_DECISIONS)
+        {
+            decisions.clear();
+        }
+        decisions.put(new Decision(kind, userID, type, id, action), Boolean.valueOf(allowed));
+    }
+
+    /**
+     * Forget every decision, e.g. because a policy has changed.
+     */
+    public void invalidateDecisions()
+    {
+        decisions.clear();
+    }
+
+    /**
+     * Forget every decision and every computed group membership, e.g.
+     * because a group or the current user has changed.
+     */
+    public void invalidate()
+    {
+        decisions.clear();
+        groups.clear();
+    }
+
+    /**
+     * Immutable set of the IDs of the groups an EPerson is a member of.
+     */
+    public static final class EffectiveGroups
+    {
+        private final BitSet members;
+
+        EffectiveGroups(Set<Integer> groupIDs)
+        {
+            BitSet bits = new BitSet();
+            for (Integer id : groupIDs)
+            {
+                if (id.intValue() >= 0)
+                {
+                    bits.set(id.intValue());
+                }
+            }
+            members = bits;
+        }
+
+        /**
+         * @param groupID ID of a group
+         * @return <code>true</code> if the EPerson is a member of the group
+         */
+        public boolean contains(int groupID)
+        {
+            return groupID >= 0 && members.get(groupID);
+        }
+
+        /**
+         * @return number of groups the EPerson is a member of
+         */
+        public int size()
+        {
+            return members.cardinality();
+        }
+    }
+
+    /**
+     * Key of a decision in the memo.
+     */
+    private static final class Decision
+    {
+        private final int kind;
+        private final int userID;
+        private final int type;
+        private final int id;
+        private final int action;
+
+        Decision(int kind, int userID, int type, int id, int action)
+        {
+            this.kind = kind;
+            this.userID = userID;
+            this.type = type;
+            this.id = id;
+            this.action = action;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Decision))
+            {
+                return false;
+            }
+            Decision other = (Decision) obj;
+            return kind == other.kind && userID == other.userID && type == other.type
+                    && id == other.id && action == other.action;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = id;
+            hash = 31 * hash + type;
+            hash = 31 * hash + action;
+            hash = 31 * hash + userID;
+            return 31 * hash + kind;
+        }
+    }
+}
@@ -10,7 +10,9 @@ package org.dspace.authorize;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.dspace.content.*;
 import org.dspace.core.Constants;
@@ -39,6 +41,9 @@ import org.dspace.workflow.WorkflowItem;
  */
 public class AuthorizeManager
 {
+    /** Most objects whose policies are loaded in one query */
+    public static final int BULK_QUERY_SIZE = 500;
+
     /**
      * Utility method, checks that the current user of the given context can
      * perform all of the specified actions on the given object. An
@@ -243,6 +248,88 @@ public class AuthorizeManager
         return isAuthorized;
     }
 
+    /**
+     * Same as {@link #authorizeActionBoolean(Context, DSpaceObject, int)} for
+     * many objects at once. The policies of all the objects are loaded with
+     * one query per object type (and per {@link #BULK_QUERY_SIZE} objects),
+     * rather than one query per object.
+     *
+     * @param c
+     *         DSpace context, containing current user
+     * @param objects
+     *         DSpaceObjects to check, <code>null</code> entries are denied
+     * @param a
+     *         action being attempted, from
+     *         <code>org.dspace.core.Constants</code>
+     * @return for each object, in the same order, <code>true</code> if the
+     *         current user is authorized to perform the action on it
+     * @throws SQLException
+     *         if there's a database problem
+     */
+    public static boolean[] authorizeActionBoolean(Context c, List<DSpaceObject> objects,
+                                                   int a) throws SQLException
+    {
+        boolean[] result = new boolean[objects.size()];
+        if (c.ignoreAuthorization())
+        {
+            for (int i = 0; i < result.length; i++)
+            {
+                result[i] = objects.get(i) != null;
+            }
+            return result;
+        }
+
+        EPerson e = c.getCurrentUser();
+        int userid = (e == null) ? 0 : e.getID();
+        AuthorizationCache cache = c.getAuthorizationCache();
+
+        // Only load policies for objects without a remembered decision
+        Map<Integer, List<Integer>> idsByType = new HashMap<Integer, List<Integer>>();
+        for (DSpaceObject o : objects)
+        {
+            if (o != null && cache.getDecision(AuthorizationCache.AUTHORIZE_INHERITED,
+                    userid, o.getType(), o.getID(), a) == null)
+            {
+                List<Integer> ids = idsByType.get(o.getType());
+                if (ids == null)
+                {
+                    ids = new ArrayList<Integer>();
+                    idsByType.put(o.getType(), ids);
+                }
+                ids.add(o.getID());
+            }
+        }
+
+        Map<Integer, Map<Integer, List<ResourcePolicy>>> policies =
+                new HashMap<Integer, Map<Integer, List<ResourcePolicy>>>();
+        for (Map.Entry<Integer, List<Integer>> entry : idsByType.entrySet())
+        {
+            policies.put(entry.getKey(), getPoliciesActionFilter(c, entry.getKey(), entry.getValue(), a));
+        }
+
+        for (int i = 0; i < result.length; i++)
+        {
+            DSpaceObject o = objects.get(i);
+            if (o == null)
+            {
+                continue;
+            }
+            List<ResourcePolicy> objectPolicies = null;
+            Map<Integer, List<ResourcePolicy>> ofType = policies.get(o.getType());
+            if (ofType != null)
+            {
+                objectPolicies = ofType.get(o.getID());
+                if (objectPolicies == null)
+                {
+                    objectPolicies = new ArrayList<ResourcePolicy>();
+                }
+            }
+            result[i] = authorize(c, o, a, e, true, objectPolicies);
+        }
+
+        return result;
+    }
+
     /**
      * Check to see if the given user can perform the given action on the given
      * object. Always returns true if the ignore authorization flat is set in
@@ -267,6 +354,22 @@ public class AuthorizeManager
      */
     private static boolean authorize(Context c, DSpaceObject o, int action,
                                      EPerson e, boolean useInheritance) throws SQLException
+    {
+        return authorize(c, o, action, e, useInheritance, null);
+    }
+
+    /**
+     * Check to see if the given user can perform the given action on the given
+     * object, remembering the decision in the context.
+     *
+     * @param policies
+     *         the policies of <code>o</code> for <code>action</code> if they
+     *         have already been loaded, <code>null</code> to query them
+     * @see #authorize(Context, DSpaceObject, int, EPerson, boolean)
+     */
+    private static boolean authorize(Context c, DSpaceObject o, int action,
+                                     EPerson e, boolean useInheritance,
+                                     List<ResourcePolicy> policies) throws SQLException
     {
         // return FALSE if there is no DSpaceObject
         if (o == null)
@@ -281,6 +384,22 @@ public class AuthorizeManager
         }
 
         // is eperson set? if not, userid = 0 (anonymous)
+        int userid = (e == null) ? 0 : e.getID();
+        int kind = useInheritance ? AuthorizationCache.AUTHORIZE_INHERITED : AuthorizationCache.AUTHORIZE;
+        AuthorizationCache cache = c.getAuthorizationCache();
+        Boolean decision = cache.getDecision(kind, userid, o.getType(), o.getID(), action);
+        if (decision == null)
+        {
+            decision = Boolean.valueOf(decide(c, o, action, e, useInheritance, policies));
+            cache.putDecision(kind, userid, o.getType(), o.getID(), action, decision.booleanValue());
+        }
+        return decision.booleanValue();
+    }
+
+    private static boolean decide(Context c, DSpaceObject o, int action,
+                                  EPerson e, boolean useInheritance,
+                                  List<ResourcePolicy> policies) throws SQLException
+    {
         int userid = 0;
         if (e != null)
         {
@@ -326,7 +445,11 @@ public class AuthorizeManager
             }
         }
         
-        for (ResourcePolicy rp : getPoliciesActionFilter(c, o, action))
+        if (policies == null)
+        {
+            policies = getPoliciesActionFilter(c, o, action);
+        }
+        for (ResourcePolicy rp : policies)
         {
             if (ignoreCustomPolicies 
                     && ResourcePolicy.TYPE_CUSTOM.equals(rp.getRpType()))
@@ -414,6 +537,20 @@ public class AuthorizeManager
             userid = e.getID();
         }
 
+        AuthorizationCache cache = c.getAuthorizationCache();
+        Boolean decision = cache.getDecision(AuthorizationCache.ADMIN, userid, o.getType(), o.getID(),
+                Constants.ADMIN);
+        if (decision == null)
+        {
+            decision = Boolean.valueOf(isAdminOf(c, o, userid));
+            cache.putDecision(AuthorizationCache.ADMIN, userid, o.getType(), o.getID(), Constants.ADMIN,
+                    decision.booleanValue());
+        }
+        return decision.booleanValue();
+    }
+
+    private static boolean isAdminOf(Context c, DSpaceObject o, int userid) throws SQLException
+    {
         //
         // First, check all Resource Policies directly on this object
         //
@@ -790,6 +927,77 @@ public class AuthorizeManager
         return policies;
     }
 
+    /**
+     * Return the policies of many objects of the same type that match the
+     * action, loaded with one query per {@link #BULK_QUERY_SIZE} objects.
+     *
+     * @param c
+     *         context
+     * @param type
+     *         type of the objects (defined in class Constants)
+     * @param ids
+     *         IDs of the objects
+     * @param actionID
+     *         action (defined in class Constants)
+     * @return the policies, keyed on object ID. Objects without policies
+     *         have no entry.
+     * @throws SQLException
+     *         if there's a database problem
+     */
+    public static Map<Integer, List<ResourcePolicy>> getPoliciesActionFilter(Context c, int type,
+                                                                           List<Integer> ids, int actionID)
+            throws SQLException
+    {
+        Map<Integer, List<ResourcePolicy>> policies = new HashMap<Integer, List<ResourcePolicy>>();
+
+        for (int from = 0; from < ids.size(); from += BULK_QUERY_SIZE)
+        {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + BULK_QUERY_SIZE));
+
+            StringBuilder query = new StringBuilder(
+                    "SELECT * FROM resourcepolicy WHERE resource_type_id= ? AND action_id= ? AND resource_id IN (");
+            Object[] parameters = new Object[chunk.size() + 2];
+            parameters[0] = type;
+            parameters[1] = actionID;
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                query.append(i == 0 ? "?" : ", ?");
+                parameters[i + 2] = chunk.get(i);
+            }
+            query.append(")");
+
+            TableRowIterator tri = DatabaseManager.queryTable(c, "resourcepolicy", query.toString(), parameters);
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next(c);
+
+                    ResourcePolicy rp = (ResourcePolicy) c.fromCache(
+                            ResourcePolicy.class, row.getIntColumn("policy_id"));
+                    if (rp == null)
+                    {
+                        rp = new ResourcePolicy(c, row);
+                    }
+
+                    Integer resourceID = row.getIntColumn("resource_id");
+                    List<ResourcePolicy> forObject = policies.get(resourceID);
+                    if (forObject == null)
+                    {
+                        forObject = new ArrayList<ResourcePolicy>();
+                        policies.put(resourceID, forObject);
+                    }
+                    forObject.add(rp);
+                }
+            } finally
+            {
+                tri.close();
+            }
+        }
+
+        return policies;
+    }
+
     /**
      * Add policies to an object to match those from a previous object
      *
@@ -880,6 +1088,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? ",
                 o.getType(), o.getID());
+        c.getAuthorizationCache().invalidateDecisions();
         
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
@@ -902,6 +1111,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND (rptype <> ? OR rptype IS NULL)",
                 o.getType(), o.getID(), type);
+        c.getAuthorizationCache().invalidateDecisions();
     }
 
 
@@ -923,6 +1133,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND rptype=? ",
                 o.getType(), o.getID(), type);
+        c.getAuthorizationCache().invalidateDecisions();
     }
     
 	/**
@@ -975,6 +1186,7 @@ public class AuthorizeManager
                     "DELETE FROM resourcepolicy WHERE resource_type_id= ? AND " +
                             "resource_id= ? AND action_id= ? ",
                     dso.getType(), dso.getID(), actionID);
+            context.getAuthorizationCache().invalidateDecisions();
         }
         
         context.turnOffAuthorisationSystem();
@@ -998,6 +1210,7 @@ public class AuthorizeManager
     {
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "epersongroup_id= ? ", groupID);
+        c.getAuthorizationCache().invalidateDecisions();
     }
 
     /**
@@ -1019,6 +1232,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND epersongroup_id= ? ",
                 o.getType(), o.getID(), g.getID());
+        c.getAuthorizationCache().invalidateDecisions();
         
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
@@ -1044,6 +1258,7 @@ public class AuthorizeManager
         DatabaseManager.updateQuery(c, "DELETE FROM resourcepolicy WHERE "
                 + "resource_type_id= ? AND resource_id= ? AND eperson_id= ? ",
                 o.getType(), o.getID(), e.getID());
+        c.getAuthorizationCache().invalidateDecisions();
         
         c.turnOffAuthorisationSystem();
         o.updateLastModified();
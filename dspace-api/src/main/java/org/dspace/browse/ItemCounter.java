@@ -12,7 +12,7 @@ import org.dspace.content.Community;
 import org.dspace.content.Collection;
 import org.dspace.core.Context;
 import org.dspace.content.DSpaceObject;
-import org.dspace.core.ConfigurationManager;
+import org.dspace.core.ConfigurationSetting;
 
 import java.sql.SQLException;
 
@@ -35,6 +35,10 @@ public class ItemCounter
 {
 	/** Log4j logger */
 	private static Logger log = Logger.getLogger(ItemCounter.class);
+
+	/** Whether to use the cached counts, read for every container shown */
+	private static final ConfigurationSetting.BooleanSetting useCache =
+			new ConfigurationSetting.BooleanSetting(null, "webui.strengths.cache", true);
 	
 	/** DAO to use to store and retrieve data */
 	private ItemCountDAO dao;
@@ -110,10 +114,7 @@ public class ItemCounter
 	public int getCount(DSpaceObject dso)
 		throws ItemCountException
 	{
-		boolean useCache = ConfigurationManager.getBooleanProperty(
-				"webui.strengths.cache", true);
-		
-		if (useCache)
+		if (useCache.get())
 		{
 			return dao.getCount(dso);
 		}
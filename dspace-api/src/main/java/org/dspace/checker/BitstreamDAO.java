@@ -7,6 +7,7 @@
  */
 package org.dspace.checker;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.SQLException;
@@ -66,4 +67,28 @@ public class BitstreamDAO
 
         return is;
     }
+
+    /**
+     * Returns the local file holding the bitstream, which can be read faster
+     * than the stream.
+     * 
+     * @param context
+     *            the current context
+     * @param id
+     *            the bitstream id.
+     * 
+     * @return the file, or null if the bitstream is not kept in a local file
+     * 
+     * @throws IOException
+     *             Rethrown from BitstreamStorageManager
+     * @throws SQLException
+     *             Rethrown from BitstreamStorageManager
+     * 
+     * @see org.dspace.storage.bitstore.BitstreamStorageManager#retrieveLocalFile(Context,
+     *      int)
+     */
+    public File getLocalFile(Context context, int id) throws IOException, SQLException
+    {
+        return BitstreamStorageManager.retrieveLocalFile(context, id);
+    }
 }
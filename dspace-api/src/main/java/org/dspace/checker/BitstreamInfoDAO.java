@@ -7,14 +7,18 @@
  */
 package org.dspace.checker;
 
+import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.Bitstream;
@@ -186,6 +190,23 @@ public final class BitstreamInfoDAO extends DAOSupport
                     "BitstreamInfo parameter may not be null");
         }
 
+        update(Collections.singletonList(info));
+    }
+
+    /**
+     * Updates most_recent_checksum with the latest checksums and results of
+     * several checks, in one batch and one transaction.
+     * 
+     * @param infos
+     *            The BitstreamInfos to update.
+     */
+    public void update(List<BitstreamInfo> infos)
+    {
+        if (infos.isEmpty())
+        {
+            return;
+        }
+
         Connection conn = null;
         PreparedStatement stmt = null;
 
@@ -193,19 +214,23 @@ public final class BitstreamInfoDAO extends DAOSupport
         {
             conn = DatabaseManager.getConnection();
             stmt = conn.prepareStatement(UPDATE_CHECKSUM);
-            stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
-                    .getCalculatedChecksum() : "");
-            stmt.setString(2, info.getStoredChecksum());
-            stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
-                    .getChecksumCheckResult()));
-            stmt.setBoolean(4, info.getToBeProcessed());
-            stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
-                    .getTime()));
-            stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
-                    .getTime()));
-            stmt.setString(7, info.getChecksumCheckResult());
-            stmt.setInt(8, info.getBitstreamId());
-            stmt.executeUpdate();
+            for (BitstreamInfo info : infos)
+            {
+                stmt.setString(1, (info.getCalculatedChecksum() != null) ? info
+                        .getCalculatedChecksum() : "");
+                stmt.setString(2, info.getStoredChecksum());
+                stmt.setBoolean(3, ChecksumCheckResults.CHECKSUM_MATCH.equals(info
+                        .getChecksumCheckResult()));
+                stmt.setBoolean(4, info.getToBeProcessed());
+                stmt.setTimestamp(5, new Timestamp(info.getProcessStartDate()
+                        .getTime()));
+                stmt.setTimestamp(6, new Timestamp(info.getProcessEndDate()
+                        .getTime()));
+                stmt.setString(7, info.getChecksumCheckResult());
+                stmt.setInt(8, info.getBitstreamId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
             conn.commit();
         }
         catch (SQLException e)
@@ -431,6 +456,88 @@ public final class BitstreamInfoDAO extends DAOSupport
         }
     }
 
+    /**
+     * Returns a page of bitstreams in order of last processing end date,
+     * starting after the given bitstream in that order. Unlike
+     * {@link #getOldestBitstream()}, a page can be read before the results
+     * for the previous one are recorded, so several bitstreams can be
+     * checked at once.
+     * 
+     * @param lessThanDate
+     *            if not null, only bitstreams last checked before this date
+     * @param afterDate
+     *            the last processing end date of the last bitstream of the
+     *            previous page, or null for the first page
+     * @param afterId
+     *            the id of the last bitstream of the previous page
+     * @param limit
+     *            the size of the page
+     * @return the ids of the bitstreams, in order, with their last processing
+     *         end dates
+     */
+    public Map<Integer, Timestamp> getOldestBitstreams(Timestamp lessThanDate, Timestamp afterDate,
+            int afterId, int limit)
+    {
+        Connection conn = null;
+        PreparedStatement prepStmt = null;
+        ResultSet rs = null;
+
+        StringBuffer query = new StringBuffer("select bitstream_id, last_process_end_date "
+                + "from most_recent_checksum where to_be_processed = "
+                + (DatabaseManager.isOracle() ? "1" : "true"));
+        List<Serializable> params = new ArrayList<Serializable>();
+        if (lessThanDate != null)
+        {
+            query.append(" and last_process_start_date < ?");
+            params.add(lessThanDate);
+        }
+        if (afterDate != null)
+        {
+            query.append(" and (last_process_end_date > ? "
+                    + "or (last_process_end_date = ? and bitstream_id > ?))");
+            params.add(afterDate);
+            params.add(afterDate);
+            params.add(Integer.valueOf(afterId));
+        }
+        query.append(" order by last_process_end_date, bitstream_id");
+        DatabaseManager.applyOffsetAndLimit(query, params, 0, limit);
+
+        try
+        {
+            conn = DatabaseManager.getConnection();
+            prepStmt = conn.prepareStatement(query.toString());
+            for (int i = 0; i < params.size(); i++)
+            {
+                if (params.get(i) instanceof Timestamp)
+                {
+                    prepStmt.setTimestamp(i + 1, (Timestamp) params.get(i));
+                }
+                else
+                {
+                    prepStmt.setInt(i + 1, ((Integer) params.get(i)).intValue());
+                }
+            }
+            rs = prepStmt.executeQuery();
+
+            Map<Integer, Timestamp> bitstreams = new LinkedHashMap<Integer, Timestamp>();
+            while (rs.next())
+            {
+                bitstreams.put(Integer.valueOf(rs.getInt("bitstream_id")),
+                        rs.getTimestamp("last_process_end_date"));
+            }
+            return bitstreams;
+        }
+        catch (SQLException e)
+        {
+            LOG.error("Problem with get oldest bitstreams " + e.getMessage(), e);
+            throw new IllegalStateException("Oldest bitstreams error. " + e.getMessage(), e);
+        }
+        finally
+        {
+            cleanup(prepStmt, conn, rs);
+        }
+    }
+
     /**
      * Returns the oldest bitstream that in the set of bitstreams that are less
      * than the specified date. If no bitstreams are found -1 is returned.
@@ -7,15 +7,30 @@
  */
 package org.dspace.checker;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Context;
 import org.dspace.core.Utils;
 
@@ -26,6 +41,15 @@ import org.dspace.core.Utils;
  * against the last calculated checksum for that bitstream.
  * </p>
  * 
+ * <p>
+ * Several threads may check bitstreams at once (<code>checker.threads</code>),
+ * each taking ids from the dispatcher. Bitstreams in a local asset store are
+ * read from their file through a large buffer. The results are recorded in
+ * batches (<code>checker.batch-size</code>), and the rate at which the asset
+ * store is read can be limited (<code>checker.max-bytes-per-second</code>).
+ * The throughput of each asset store is logged at the end of the run.
+ * </p>
+ * 
  * @author Jim Downing
  * @author Grace Carpenter
  * @author Nathan Sarr
@@ -42,8 +66,8 @@ public final class CheckerCommand
     /** Default digest algorithm (MD5). */
     private static final String DEFAULT_DIGEST_ALGORITHM = "MD5";
 
-    /** 4 Meg byte array for reading file. */
-    private int BYTE_ARRAY_SIZE = 4 * 1024;
+    /** 1 Meg buffer for reading file, one per thread. */
+    private static final int BUFFER_SIZE = 1024 * 1024;
 
     /** BitstreamInfoDAO dependency. */
     private BitstreamInfoDAO bitstreamInfoDAO = null;
@@ -72,6 +96,30 @@ public final class CheckerCommand
     /** Report all processing */
     private boolean reportVerbose = false;
 
+    /** Number of threads checking bitstreams. */
+    private int threads = ConfigurationManager.getIntProperty("checker.threads", 1);
+
+    /** Number of results recorded in one batch. */
+    private int batchSize = ConfigurationManager.getIntProperty("checker.batch-size", 100);
+
+    /** Limits the rate at which bitstreams are read. */
+    private Throttle throttle = new Throttle(
+            parseBytes(ConfigurationManager.getProperty("checker.max-bytes-per-second")));
+
+    /** Results not yet recorded in the db. */
+    private final List<BitstreamInfo> pending = new ArrayList<BitstreamInfo>();
+
+    /** Throughput per asset store number. */
+    private final Map<Integer, StoreThroughput> throughput = new TreeMap<Integer, StoreThroughput>();
+
+    /** Set to stop the threads after a failure. */
+    private volatile boolean stopped = false;
+
+    /** Start and end of the last run, in milliseconds. */
+    private long runStart = 0;
+
+    private long runEnd = 0;
+
     /**
      * Default constructor uses DSpace plugin manager to construct dependencies.
      */
@@ -112,32 +160,144 @@ public final class CheckerCommand
         // bitstream table - this always done.
         bitstreamInfoDAO.updateMissingBitstreams();
 
+        stopped = false;
+        runStart = System.currentTimeMillis();
+        try
+        {
+            if (threads <= 1)
+            {
+                checkAll(context, false, ByteBuffer.allocate(BUFFER_SIZE));
+            }
+            else
+            {
+                checkInParallel();
+            }
+        }
+        finally
+        {
+            flush();
+            runEnd = System.currentTimeMillis();
+            LOG.info(getThroughputReport());
+        }
+    }
+
+    /**
+     * Check bitstreams from the dispatcher until there are none left.
+     * 
+     * @param context
+     *            the context to read bitstream metadata with
+     * @param ownContext
+     *            true if the context is only used for this, so its cache can
+     *            be cleared after each bitstream
+     * @param buffer
+     *            the buffer to read bitstreams into
+     */
+    private void checkAll(Context context, boolean ownContext, ByteBuffer buffer)
+    {
         int id = dispatcher.next();
 
-        while (id != BitstreamDispatcher.SENTINEL)
+        while (id != BitstreamDispatcher.SENTINEL && !stopped)
         {
             LOG.debug("Processing bitstream id = " + id);
-            BitstreamInfo info = checkBitstream(context, id);
+            BitstreamInfo info = checkBitstream(context, id, buffer);
 
             if (reportVerbose
                     || !ChecksumCheckResults.CHECKSUM_MATCH.equals(info.getChecksumCheckResult()))
             {
-                collector.collect(info);
+                synchronized (collector)
+                {
+                    collector.collect(info);
+                }
+            }
+
+            if (ownContext)
+            {
+                context.clearCache();
             }
 
             id = dispatcher.next();
         }
     }
 
+    /**
+     * Check bitstreams from the dispatcher with several threads, each with
+     * its own context.
+     */
+    private void checkInParallel()
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        for (int i = 0; i < threads; i++)
+        {
+            workers.add(pool.submit(new Callable<Void>()
+            {
+                @Override
+                public Void call() throws SQLException
+                {
+                    Context context = new Context();
+                    try
+                    {
+                        checkAll(context, true, ByteBuffer.allocate(BUFFER_SIZE));
+                    }
+                    finally
+                    {
+                        context.abort();
+                    }
+                    return null;
+                }
+            }));
+        }
+        pool.shutdown();
+
+        Throwable failure = null;
+        try
+        {
+            for (Future<Void> worker : workers)
+            {
+                worker.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            failure = e;
+        }
+        catch (ExecutionException e)
+        {
+            failure = e.getCause();
+        }
+
+        if (failure != null)
+        {
+            // let the other threads finish the bitstream they are checking
+            stopped = true;
+            try
+            {
+                pool.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) failure;
+            }
+            throw new IllegalStateException("Checker thread failed. " + failure.getMessage(), failure);
+        }
+    }
+
     /**
      * Check a specified bitstream.
      * 
      * @param id
      *            the bitstream id
+     * @param buffer
+     *            the buffer to read the bitstream into
      * 
      * @return the information about the bitstream and its checksum data
      */
-    private BitstreamInfo checkBitstream(Context context, final int id)
+    private BitstreamInfo checkBitstream(Context context, final int id, ByteBuffer buffer)
     {
         // get bitstream info from bitstream table
         BitstreamInfo info = bitstreamInfoDAO.findByBitstreamId(context, id);
@@ -168,7 +328,7 @@ public final class CheckerCommand
         }
         else
         {
-            processBitstream(info);
+            processBitstream(context, info, buffer);
         }
 
         return info;
@@ -181,7 +341,8 @@ public final class CheckerCommand
      *            InputStream to digest.
      * @param algorithm
      *            the algorithm to use when digesting.
-     * @todo Document the algorithm parameter
+     * @param buffer
+     *            the buffer to read the stream into.
      * @return digest
      * 
      * @throws java.security.NoSuchAlgorithmException
@@ -190,22 +351,72 @@ public final class CheckerCommand
      * @throws java.io.IOException
      *             If an exception arises whilst reading the stream
      */
-    private String digestStream(InputStream stream, String algorithm)
+    private String digestStream(InputStream stream, String algorithm, ByteBuffer buffer)
             throws java.security.NoSuchAlgorithmException, java.io.IOException
     {
-        // create the digest stream
-        DigestInputStream dStream = new DigestInputStream(stream, MessageDigest
-                .getInstance(algorithm));
-
-        byte[] bytes = new byte[BYTE_ARRAY_SIZE];
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        byte[] bytes = buffer.array();
 
         // make sure all the data is read by the digester
-        int bytesRead = -1;
-        do {
-            bytesRead = dStream.read(bytes, 0, BYTE_ARRAY_SIZE);
-        } while (bytesRead != -1);
+        int bytesRead;
+        while ((bytesRead = stream.read(bytes, 0, bytes.length)) != -1)
+        {
+            throttle(bytesRead);
+            digest.update(bytes, 0, bytesRead);
+        }
 
-        return Utils.toHex(dStream.getMessageDigest().digest());
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Digest a file and get the checksum value. Reading the channel into a
+     * large buffer takes far fewer calls than reading a stream.
+     * 
+     * @param channel
+     *            the file to digest.
+     * @param algorithm
+     *            the algorithm to use when digesting.
+     * @param buffer
+     *            the buffer to read the file into.
+     * @return digest
+     * 
+     * @throws java.security.NoSuchAlgorithmException
+     *             if the requested algorithm is not provided by the system
+     *             security provider.
+     * @throws java.io.IOException
+     *             If an exception arises whilst reading the file
+     */
+    private String digestChannel(FileChannel channel, String algorithm, ByteBuffer buffer)
+            throws java.security.NoSuchAlgorithmException, java.io.IOException
+    {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+
+        buffer.clear();
+        while (channel.read(buffer) != -1)
+        {
+            buffer.flip();
+            throttle(buffer.remaining());
+            digest.update(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+            buffer.clear();
+        }
+
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Wait until <code>bytes</code> more bytes may be read.
+     */
+    private void throttle(long bytes) throws InterruptedIOException
+    {
+        try
+        {
+            throttle.acquire(bytes);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
     }
 
     /**
@@ -251,8 +462,7 @@ public final class CheckerCommand
         info.setProcessStartDate(new Date());
         info.setProcessEndDate(new Date());
         info.setToBeProcessed(false);
-        bitstreamInfoDAO.update(info);
-        checksumHistoryDAO.insertHistory(info);
+        record(info);
     }
 
     /**
@@ -286,10 +496,14 @@ public final class CheckerCommand
      * @todo Why does bitstream have a timestamp indicating it's checked if
      *       checksumming doesn't occur?
      * 
+     * @param context
+     *            the context to find the bitstream with
      * @param info
      *            BitstreamInfo to handle
+     * @param buffer
+     *            the buffer to read the bitstream into
      */
-    private void processBitstream(BitstreamInfo info)
+    private void processBitstream(Context context, BitstreamInfo info, ByteBuffer buffer)
     {
         info.setProcessStartDate(new Date());
 
@@ -298,21 +512,54 @@ public final class CheckerCommand
             info.setChecksumAlgorithm(DEFAULT_DIGEST_ALGORITHM);
         }
 
+        long started = System.nanoTime();
+        boolean interrupted = false;
         try
         {
-            InputStream bitstream = bitstreamDAO.getBitstream(info
-                    .getBitstreamId());
-
-            info.setBitstreamFound(true);
-
-            String checksum = digestStream(bitstream, info
-                    .getChecksumAlgorithm());
+            String checksum;
+            File file = bitstreamDAO.getLocalFile(context, info.getBitstreamId());
+            if (file != null)
+            {
+                FileChannel channel = new FileInputStream(file).getChannel();
+                info.setBitstreamFound(true);
+                try
+                {
+                    checksum = digestChannel(channel, info.getChecksumAlgorithm(), buffer);
+                }
+                finally
+                {
+                    channel.close();
+                }
+            }
+            else
+            {
+                InputStream bitstream = bitstreamDAO.getBitstream(info
+                        .getBitstreamId());
+                info.setBitstreamFound(true);
+                try
+                {
+                    checksum = digestStream(bitstream, info.getChecksumAlgorithm(), buffer);
+                }
+                finally
+                {
+                    bitstream.close();
+                }
+            }
 
             info.setCalculatedChecksum(checksum);
 
             // compare new checksum to previous checksum
             info.setChecksumCheckResult(compareChecksums(info
                     .getStoredChecksum(), info.getCalculatedChecksum()));
+
+            countThroughput(info.getStoreNumber(), info.getSize(), System.nanoTime() - started);
+        }
+        catch (InterruptedIOException e)
+        {
+            // the run is being stopped: leave the bitstream as it was
+            interrupted = true;
+            stopped = true;
+            info.setChecksumCheckResult(ChecksumCheckResults.BITSTREAM_NOT_PROCESSED);
         }
         catch (IOException e)
         {
@@ -346,9 +593,151 @@ public final class CheckerCommand
             info.setProcessEndDate(new Date());
 
             // record new checksum and comparison result in db
-            bitstreamInfoDAO.update(info);
-            checksumHistoryDAO.insertHistory(info);
+            if (!interrupted)
+            {
+                record(info);
+            }
+        }
+    }
+
+    /**
+     * Record the result of a check in the db, with the next batch.
+     * 
+     * @param info
+     *            the BitstreamInfo representing the check.
+     */
+    private void record(BitstreamInfo info)
+    {
+        synchronized (pending)
+        {
+            pending.add(info);
+            if (pending.size() >= batchSize)
+            {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Record the results not yet recorded in the db.
+     */
+    private void flush()
+    {
+        synchronized (pending)
+        {
+            try
+            {
+                bitstreamInfoDAO.update(pending);
+                checksumHistoryDAO.insertHistory(pending);
+            }
+            finally
+            {
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * Add a checked bitstream to the throughput of its asset store.
+     */
+    private void countThroughput(int storeNumber, long bytes, long nanos)
+    {
+        // -1 is the default ('assetstore.dir')
+        Integer store = Integer.valueOf(Math.max(storeNumber, 0));
+        synchronized (throughput)
+        {
+            StoreThroughput counts = throughput.get(store);
+            if (counts == null)
+            {
+                counts = new StoreThroughput();
+                throughput.put(store, counts);
+            }
+            counts.bitstreams++;
+            counts.bytes += bytes;
+            counts.nanos += nanos;
+        }
+    }
+
+    /**
+     * Get the throughput of each asset store in the last run.
+     * 
+     * @return asset store numbers, with the bitstreams checked in each
+     */
+    public Map<Integer, StoreThroughput> getThroughput()
+    {
+        synchronized (throughput)
+        {
+            Map<Integer, StoreThroughput> copy = new TreeMap<Integer, StoreThroughput>();
+            for (Map.Entry<Integer, StoreThroughput> store : throughput.entrySet())
+            {
+                StoreThroughput counts = new StoreThroughput();
+                counts.bitstreams = store.getValue().bitstreams;
+                counts.bytes = store.getValue().bytes;
+                counts.nanos = store.getValue().nanos;
+                copy.put(store.getKey(), counts);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Describe the throughput of each asset store in the last run: the bytes
+     * read per second of the run, and per second spent reading by a thread.
+     * 
+     * @return one line per asset store
+     */
+    public String getThroughputReport()
+    {
+        double seconds = Math.max(runEnd - runStart, 1) / 1000.0;
+        StringBuilder report = new StringBuilder();
+        report.append("Checked with ").append(threads).append(" thread(s) in ")
+                .append(String.format("%.1f", seconds)).append(" s");
+        if (throttle.getBytesPerSecond() > 0)
+        {
+            report.append(", limited to ").append(megabytes(throttle.getBytesPerSecond())).append(" MB/s");
+        }
+        for (Map.Entry<Integer, StoreThroughput> store : getThroughput().entrySet())
+        {
+            StoreThroughput counts = store.getValue();
+            report.append("\nAsset store ").append(store.getKey()).append(": ")
+                    .append(counts.getBitstreams()).append(" bitstreams, ")
+                    .append(megabytes(counts.getBytes())).append(" MB, ")
+                    .append(megabytes(counts.getBytes() / seconds)).append(" MB/s (")
+                    .append(megabytes(counts.getBytes() / Math.max(counts.getNanos() / 1e9, 1e-9)))
+                    .append(" MB/s per thread)");
+        }
+        return report.toString();
+    }
+
+    private static String megabytes(double bytes)
+    {
+        return String.format("%.1f", bytes / (1024 * 1024));
+    }
+
+    /**
+     * Parse a number of bytes, with an optional K, M or G suffix.
+     * 
+     * @param bytes
+     *            the number, e.g. <code>50M</code>, or null
+     * @return the number of bytes, 0 if null or empty
+     * @throws NumberFormatException
+     *             if the number cannot be parsed
+     */
+    public static long parseBytes(String bytes)
+    {
+        if (bytes == null || bytes.trim().length() == 0)
+        {
+            return 0;
+        }
+        String number = bytes.trim().toUpperCase();
+        long multiplier = 1;
+        char unit = number.charAt(number.length() - 1);
+        if (unit == 'K' || unit == 'M' || unit == 'G')
+        {
+            multiplier = (unit == 'K') ? 1024L : ((unit == 'M') ? 1024L * 1024 : 1024L * 1024 * 1024);
+            number = number.substring(0, number.length() - 1).trim();
         }
+        return Long.parseLong(number) * multiplier;
     }
 
     /**
@@ -434,4 +823,84 @@ public final class CheckerCommand
     {
         this.reportVerbose = reportVerbose;
     }
+
+    /**
+     * Get the number of threads checking bitstreams.
+     * 
+     * @return the number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Set the number of threads checking bitstreams.
+     * 
+     * @param threads
+     *            the number of threads, 1 to check one bitstream at a time
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Set the number of results recorded in one batch.
+     * 
+     * @param batchSize
+     *            the number of results
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * Set the maximum rate at which the threads together read bitstreams.
+     * 
+     * @param bytesPerSecond
+     *            the rate, or 0 for no limit
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond)
+    {
+        this.throttle = new Throttle(bytesPerSecond);
+    }
+
+    /**
+     * Bitstreams checked in one asset store.
+     */
+    public static final class StoreThroughput
+    {
+        private long bitstreams;
+
+        private long bytes;
+
+        private long nanos;
+
+        /**
+         * @return the number of bitstreams checked
+         */
+        public long getBitstreams()
+        {
+            return bitstreams;
+        }
+
+        /**
+         * @return the number of bytes read
+         */
+        public long getBytes()
+        {
+            return bytes;
+        }
+
+        /**
+         * @return the time spent reading, summed over the threads, in
+         *         nanoseconds
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+    }
 }
@@ -11,7 +11,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -105,6 +107,23 @@ public class ChecksumHistoryDAO extends DAOSupport
                     "BitstreamInfo parameter may not be null");
         }
 
+        insertHistory(Collections.singletonList(info));
+    }
+
+    /**
+     * Inserts results of several checksum checks into checksum_history table,
+     * in one batch and one transaction.
+     * 
+     * @param infos
+     *            the BitstreamInfos representing checksum checks.
+     */
+    public void insertHistory(List<BitstreamInfo> infos)
+    {
+        if (infos.isEmpty())
+        {
+            return;
+        }
+
         Connection conn = null;
         PreparedStatement stmt = null;
 
@@ -119,13 +138,17 @@ public class ChecksumHistoryDAO extends DAOSupport
             {
                 stmt = conn.prepareStatement(INSERT_HISTORY);
             }
-            stmt.setInt(1, info.getBitstreamId());
-            stmt.setTimestamp(2, new java.sql.Timestamp(info.getProcessStartDate().getTime()));
-            stmt.setTimestamp(3, new java.sql.Timestamp(info.getProcessEndDate().getTime()));
-            stmt.setString(4, info.getStoredChecksum());
-            stmt.setString(5, info.getCalculatedChecksum());
-            stmt.setString(6, info.getChecksumCheckResult());
-            stmt.executeUpdate();
+            for (BitstreamInfo info : infos)
+            {
+                stmt.setInt(1, info.getBitstreamId());
+                stmt.setTimestamp(2, new java.sql.Timestamp(info.getProcessStartDate().getTime()));
+                stmt.setTimestamp(3, new java.sql.Timestamp(info.getProcessEndDate().getTime()));
+                stmt.setString(4, info.getStoredChecksum());
+                stmt.setString(5, info.getCalculatedChecksum());
+                stmt.setString(6, info.getChecksumCheckResult());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
             conn.commit();
         }
         catch (SQLException e)
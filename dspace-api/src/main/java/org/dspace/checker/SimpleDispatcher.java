@@ -7,11 +7,16 @@
  */
 package org.dspace.checker;
 
+import java.sql.Timestamp;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.Map;
 
 /**
  * An implementation of the selection strategy that selects bitstreams in the
- * order that they were last checked, looping endlessly.
+ * order that they were last checked, looping endlessly. Bitstreams are read
+ * from the database a page at a time, so the checker may check several at
+ * once and record their results in batches.
  * 
  * @author Jim Downing
  * @author Grace Carpenter
@@ -36,6 +41,23 @@ public class SimpleDispatcher implements BitstreamDispatcher
      */
     private BitstreamInfoDAO bitstreamInfoDAO;
 
+    /**
+     * Number of bitstreams read from the database at a time.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Bitstreams read but not yet handed out.
+     */
+    private LinkedList<Integer> page = new LinkedList<Integer>();
+
+    /**
+     * Last processing end date and id of the last bitstream read.
+     */
+    private Timestamp lastDate = null;
+
+    private int lastId = -1;
+
     /**
      * Creates a new SimpleDispatcher.
      * 
@@ -65,18 +87,45 @@ public class SimpleDispatcher implements BitstreamDispatcher
      * @see org.dspace.checker.BitstreamDispatcher#next()
      */
     public synchronized int next()
+    {
+        if (page.isEmpty())
+        {
+            readPage();
+
+            if (page.isEmpty() && loopContinuously && (lastDate != null))
+            {
+                // start again from the least recently checked
+                lastDate = null;
+                readPage();
+            }
+        }
+
+        return page.isEmpty() ? SENTINEL : page.removeFirst().intValue();
+    }
+
+    /**
+     * Read the next page of bitstreams, after the last one read. The results
+     * of the bitstreams handed out may not be recorded yet, so rather than
+     * asking for the least recently checked bitstream again, this carries on
+     * from where the previous page ended.
+     */
+    private void readPage()
     {
         // should process loop infinitely through the
         // bitstreams in most_recent_checksum table?
+        Timestamp lessThanDate = null;
         if (!loopContinuously && (processStartTime != null))
         {
-            return bitstreamInfoDAO.getOldestBitstream(new java.sql.Timestamp(
-                    processStartTime.getTime()));
+            lessThanDate = new Timestamp(processStartTime.getTime());
         }
-        else
+
+        Map<Integer, Timestamp> bitstreams = bitstreamInfoDAO.getOldestBitstreams(
+                lessThanDate, lastDate, lastId, PAGE_SIZE);
+        for (Map.Entry<Integer, Timestamp> bitstream : bitstreams.entrySet())
         {
-            return bitstreamInfoDAO.getOldestBitstream();
+            page.add(bitstream.getKey());
+            lastId = bitstream.getKey().intValue();
+            lastDate = bitstream.getValue();
         }
-
     }
 }
@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Limits the rate at which the checker threads together read the asset
+ * store, so that a run during the day leaves enough disk bandwidth for the
+ * web applications.
+ * </p>
+ *
+ * <p>
+ * Each read is granted a slot after the previous one, as long as the rate
+ * needs; a thread waits until its slot starts.
+ * </p>
+ */
+class Throttle
+{
+    /** Bytes per second, 0 for no limit. */
+    private final long bytesPerSecond;
+
+    /** System.nanoTime() at which the next read may start. */
+    private long next;
+
+    /**
+     * @param bytesPerSecond
+     *            the maximum rate, or 0 for no limit
+     */
+    Throttle(long bytesPerSecond)
+    {
+        this.bytesPerSecond = bytesPerSecond;
+        this.next = System.nanoTime();
+    }
+
+    /**
+     * Wait until <code>bytes</code> bytes may be read.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    void acquire(long bytes) throws InterruptedException
+    {
+        if (bytesPerSecond <= 0)
+        {
+            return;
+        }
+
+        long wait;
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            if (next - now < 0)
+            {
+                next = now;
+            }
+            wait = next - now;
+            next += bytes * 1000000000L / bytesPerSecond;
+        }
+        if (wait > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * @return the maximum rate in bytes per second, or 0 for no limit
+     */
+    long getBytesPerSecond()
+    {
+        return bytesPerSecond;
+    }
+}
@@ -262,6 +262,12 @@ public class Bitstream extends DSpaceObject
         return bRow.getIntColumn("bitstream_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
+
     public String getHandle()
     {
         // No Handles for bitstreams
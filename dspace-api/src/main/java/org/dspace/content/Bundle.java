@@ -60,6 +60,24 @@ public class Bundle extends DSpaceObject
      *            the corresponding row in the table
      */
     Bundle(Context context, TableRow row) throws SQLException
+    {
+        this(context, row, findBitstreamRows(context,
+                Collections.singletonList(row.getIntColumn("bundle_id"))).get(row.getIntColumn("bundle_id")));
+    }
+
+    /**
+     * Construct a bundle object with the given table row and the rows of its
+     * bitstreams, loaded beforehand by {@link #findBitstreamRows}.
+     *
+     * @param context
+     *            the context this object exists in
+     * @param row
+     *            the corresponding row in the table
+     * @param bitstreamRows
+     *            the rows of the bitstreams in this bundle, in order, or
+     *            <code>null</code> if it has none
+     */
+    Bundle(Context context, TableRow row, List<TableRow> bitstreamRows) throws SQLException
     {
         super(context);
 
@@ -69,40 +87,11 @@ public class Bundle extends DSpaceObject
 
         bundleRow = row;
         bitstreams = new ArrayList<Bitstream>();
-        String bitstreamOrderingField  = ConfigurationManager.getProperty("webui.bitstream.order.field");
-        String bitstreamOrderingDirection   = ConfigurationManager.getProperty("webui.bitstream.order.direction");
-
-        if (bitstreamOrderingField == null)
-        {
-            bitstreamOrderingField = "sequence_id";
-        }
-
-        if (bitstreamOrderingDirection == null)
-        {
-            bitstreamOrderingDirection = "ASC";
-        }
-
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT bitstream.*,bundle2bitstream.bitstream_order FROM bitstream, bundle2bitstream WHERE");
-        query.append(" bundle2bitstream.bitstream_id=bitstream.bitstream_id AND");
-        query.append(" bundle2bitstream.bundle_id= ?");
-        query.append(" ORDER BY ");
-        query.append(bitstreamOrderingField);
-        query.append(" ");
-        query.append(bitstreamOrderingDirection);
-
-        // Get bitstreams
-        TableRowIterator tri = DatabaseManager.query(
-                ourContext,
-                query.toString(),
-                bundleRow.getIntColumn("bundle_id"));
 
-        try
+        if (bitstreamRows != null)
         {
-            while (tri.hasNext())
+            for (TableRow r : bitstreamRows)
             {
-                TableRow r = tri.next();
-
                 // First check the cache
                 Bitstream fromCache = (Bitstream) context.fromCache(
                         Bitstream.class, r.getIntColumn("bitstream_id"));
@@ -120,14 +109,6 @@ public class Bundle extends DSpaceObject
                 }
             }
         }
-        finally
-        {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
-            {
-                tri.close();
-            }
-        }
 
         // Cache ourselves
         context.cache(this, row.getIntColumn("bundle_id"));
@@ -135,6 +116,86 @@ public class Bundle extends DSpaceObject
         modified = false;
     }
 
+    /**
+     * Load the rows of the bitstreams in many bundles, with one query per
+     * {@link AuthorizeManager#BULK_QUERY_SIZE} bundles. Bitstreams are ordered
+     * as configured by <code>webui.bitstream.order.field</code> and
+     * <code>webui.bitstream.order.direction</code>.
+     *
+     * @param context
+     *            DSpace context object
+     * @param bundleIDs
+     *            IDs of the bundles
+     * @return the bitstream rows, keyed on bundle ID. Empty bundles have no
+     *         entry.
+     */
+    static Map<Integer, List<TableRow>> findBitstreamRows(Context context, List<Integer> bundleIDs)
+            throws SQLException
+    {
+        String bitstreamOrderingField  = ConfigurationManager.getProperty("webui.bitstream.order.field");
+        String bitstreamOrderingDirection   = ConfigurationManager.getProperty("webui.bitstream.order.direction");
+
+        if (bitstreamOrderingField == null)
+        {
+            bitstreamOrderingField = "sequence_id";
+        }
+
+        if (bitstreamOrderingDirection == null)
+        {
+            bitstreamOrderingDirection = "ASC";
+        }
+
+        Map<Integer, List<TableRow>> rows = new HashMap<Integer, List<TableRow>>();
+        for (int from = 0; from < bundleIDs.size(); from += AuthorizeManager.BULK_QUERY_SIZE)
+        {
+            List<Integer> chunk = bundleIDs.subList(from,
+                    Math.min(bundleIDs.size(), from + AuthorizeManager.BULK_QUERY_SIZE));
+
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT bitstream.*,bundle2bitstream.bitstream_order,bundle2bitstream.bundle_id FROM bitstream, bundle2bitstream WHERE");
+            query.append(" bundle2bitstream.bitstream_id=bitstream.bitstream_id AND");
+            query.append(" bundle2bitstream.bundle_id IN (");
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                query.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(")");
+            query.append(" ORDER BY ");
+            query.append(bitstreamOrderingField);
+            query.append(" ");
+            query.append(bitstreamOrderingDirection);
+
+            // Get bitstreams
+            TableRowIterator tri = DatabaseManager.query(context, query.toString(), chunk.toArray());
+
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow r = tri.next(context);
+                    Integer bundleID = r.getIntColumn("bundle_id");
+                    List<TableRow> inBundle = rows.get(bundleID);
+                    if (inBundle == null)
+                    {
+                        inBundle = new ArrayList<TableRow>();
+                        rows.put(bundleID, inBundle);
+                    }
+                    inBundle.add(r);
+                }
+            }
+            finally
+            {
+                // close the TableRowIterator to free up resources
+                if (tri != null)
+                {
+                    tri.close();
+                }
+            }
+        }
+
+        return rows;
+    }
+
     /**
      * Get a bundle from the database. The bundle and bitstream metadata are all
      * loaded into memory.
@@ -217,6 +278,12 @@ public class Bundle extends DSpaceObject
         return bundleRow.getIntColumn("bundle_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
+
     /**
      * Get the name of the bundle
      * 
@@ -464,6 +464,51 @@ public class Collection extends DSpaceObject
         return collectionArray;
     }
 
+    /**
+     * Find the collections whose IDs follow the given ID, in ID order. This is
+     * keyset paging: unlike an offset, the cost of a page does not depend on
+     * how many collections come before it.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterID
+     *            only collections with a greater ID are returned; use -1 for
+     *            the first page
+     * @param limit
+     *            maximum number of collections to return
+     * @return the collections, in ID order
+     * @throws SQLException
+     */
+    public static Collection[] findAfter(Context context, int afterID, int limit) throws SQLException
+    {
+        StringBuffer query = new StringBuffer(
+                "SELECT * FROM collection WHERE collection_id > ? ORDER BY collection_id");
+        List<Serializable> params = new ArrayList<Serializable>();
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(query, params, 0, limit);
+
+        List<Collection> found = new ArrayList<Collection>();
+        TableRowIterator tri = DatabaseManager.queryTable(context, "collection", query.toString(), params.toArray());
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next(context);
+
+                // First check the cache
+                Collection fromCache = (Collection) context.fromCache(Collection.class, row.getIntColumn("collection_id"));
+
+                found.add(fromCache != null ? fromCache : new Collection(context, row));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        return found.toArray(new Collection[found.size()]);
+    }
+
     /**
      * Get the in_archive items in this collection. The order is indeterminate.
      *
@@ -539,6 +584,12 @@ public class Collection extends DSpaceObject
         return collectionRow.getIntColumn("collection_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
+
     /**
      * @see org.dspace.content.DSpaceObject#getHandle()
      */
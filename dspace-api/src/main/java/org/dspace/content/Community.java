@@ -26,6 +26,7 @@ import org.dspace.storage.rdbms.TableRowIterator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.util.*;
 
@@ -311,6 +312,51 @@ public class Community extends DSpaceObject
         return communityArray;
     }
 
+    /**
+     * Find the communities whose IDs follow the given ID, in ID order. This is
+     * keyset paging: unlike an offset, the cost of a page does not depend on
+     * how many communities come before it.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterID
+     *            only communities with a greater ID are returned; use -1 for
+     *            the first page
+     * @param limit
+     *            maximum number of communities to return
+     * @return the communities, in ID order
+     * @throws SQLException
+     */
+    public static Community[] findAfter(Context context, int afterID, int limit) throws SQLException
+    {
+        StringBuffer query = new StringBuffer(
+                "SELECT * FROM community WHERE community_id > ? ORDER BY community_id");
+        List<Serializable> params = new ArrayList<Serializable>();
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(query, params, 0, limit);
+
+        List<Community> found = new ArrayList<Community>();
+        TableRowIterator tri = DatabaseManager.queryTable(context, "community", query.toString(), params.toArray());
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next(context);
+
+                // First check the cache
+                Community fromCache = (Community) context.fromCache(Community.class, row.getIntColumn("community_id"));
+
+                found.add(fromCache != null ? fromCache : new Community(context, row));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        return found.toArray(new Community[found.size()]);
+    }
+
     /**
      * Get a list of all top-level communities in the system. These are
      * alphabetically sorted by community name. A top-level community is one
@@ -391,6 +437,12 @@ public class Community extends DSpaceObject
         return communityRow.getIntColumn("community_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
+
     /**
      * @see org.dspace.content.DSpaceObject#getHandle()
      */
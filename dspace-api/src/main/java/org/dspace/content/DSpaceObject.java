@@ -123,8 +123,25 @@ public abstract class DSpaceObject
             }
         }
 
+        // Index the in-memory values by their stored representation, so each
+        // database row can be matched with a single hash lookup rather than a
+        // scan of every in-memory value
+        Map<MetadataKey, Integer> pending = new HashMap<MetadataKey, Integer>(getMetadata().size() * 2);
+        for (int dcIdx = 0; dcIdx < getMetadata().size(); dcIdx++)
+        {
+            Metadatum dcv = getMetadata().get(dcIdx);
+            MetadataKey key = new MetadataKey(dcFields[dcIdx].getFieldID(), placeNum[dcIdx],
+                    dcv.value, dcv.language, dcv.authority, dcv.confidence);
+            if (!pending.containsKey(key))
+            {
+                pending.put(key, Integer.valueOf(dcIdx));
+            }
+        }
+
         // Now the precalculations are done, iterate through the existing metadata
-        // looking for matches
+        // looking for matches. Rows without a match are collected and removed
+        // in one batch.
+        List<Integer> removedRows = new ArrayList<Integer>();
         TableRowIterator tri = retrieveMetadata();
         if (tri != null)
         {
@@ -132,98 +149,21 @@ public abstract class DSpaceObject
             {
                 while (tri.hasNext())
                 {
-                    TableRow tr = tri.next();
-                    // Assume that we will remove this row, unless we get a match
-                    boolean removeRow = true;
+                    TableRow tr = tri.next(ourContext);
+                    MetadataKey key = new MetadataKey(tr.getIntColumn("metadata_field_id"), tr.getIntColumn("place"),
+                            tr.getStringColumn("text_value"), tr.getStringColumn("text_lang"),
+                            tr.getStringColumn("authority"), tr.getIntColumn("confidence"));
 
-                    // Go through the in-memory metadata, unless we've already decided to keep this row
-                    for (int dcIdx = 0; dcIdx < getMetadata().size() && removeRow; dcIdx++)
+                    Integer dcIdx = pending.remove(key);
+                    if (dcIdx != null)
                     {
-                        // Only process if this metadata has not already been matched to something in the DB
-                        if (!storedDC[dcIdx])
-                        {
-                            boolean matched = true;
-                            Metadatum dcv   = getMetadata().get(dcIdx);
-
-                            // Check the metadata field is the same
-                            if (matched && dcFields[dcIdx].getFieldID() != tr.getIntColumn("metadata_field_id"))
-                            {
-                                matched = false;
-                            }
-
-                            // Check the place is the same
-                            if (matched && placeNum[dcIdx] != tr.getIntColumn("place"))
-                            {
-                                matched = false;
-                            }
-
-                            // Check the text is the same
-                            if (matched)
-                            {
-                                String text = tr.getStringColumn("text_value");
-                                if (dcv.value == null && text == null)
-                                {
-                                    matched = true;
-                                }
-                                else if (dcv.value != null && dcv.value.equals(text))
-                                {
-                                    matched = true;
-                                }
-                                else
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // Check the language is the same
-                            if (matched)
-                            {
-                                String lang = tr.getStringColumn("text_lang");
-                                if (dcv.language == null && lang == null)
-                                {
-                                    matched = true;
-                                }
-                                else if (dcv.language != null && dcv.language.equals(lang))
-                                {
-                                    matched = true;
-                                }
-                                else
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // check that authority and confidence match
-                            if (matched)
-                            {
-                                String auth = tr.getStringColumn("authority");
-                                int conf = tr.getIntColumn("confidence");
-                                if (!((dcv.authority == null && auth == null) ||
-                                        (dcv.authority != null && auth != null && dcv.authority.equals(auth))
-                                                && dcv.confidence == conf))
-                                {
-                                    matched = false;
-                                }
-                            }
-
-                            // If the db record is identical to the in memory values
-                            if (matched)
-                            {
-                                // Flag that the metadata is already in the DB
-                                storedDC[dcIdx] = true;
-
-                                // Flag that we are not going to remove the row
-                                removeRow = false;
-                            }
-                        }
+                        // Flag that the metadata is already in the DB
+                        storedDC[dcIdx] = true;
                     }
-
-                    // If after processing all the metadata values, we didn't find a match
-                    // delete this row from the DB
-                    if (removeRow)
+                    else
                     {
-                        DatabaseManager.delete(ourContext, tr);
-                        modifiedMetadata = true;
+                        // No in-memory value (left) for this row, delete it
+                        removedRows.add(Integer.valueOf(tr.getIntColumn("metadata_value_id")));
                     }
                 }
             }
@@ -231,11 +171,16 @@ public abstract class DSpaceObject
             {
                 tri.close();
             }
+        }
 
-
+        if (!removedRows.isEmpty())
+        {
+            DatabaseManager.deleteBatch(ourContext, "MetadataValue", removedRows);
+            modifiedMetadata = true;
         }
 
         // Add missing in-memory DC
+        List<TableRow> addedRows = new ArrayList<TableRow>();
         for (int dcIdx = 0; dcIdx < getMetadata().size(); dcIdx++)
         {
             // Only write values that are not already in the db
@@ -253,17 +198,81 @@ public abstract class DSpaceObject
                 metadata.setPlace(placeNum[dcIdx]);
                 metadata.setAuthority(dcv.authority);
                 metadata.setConfidence(dcv.confidence);
-                metadata.create(ourContext);
-                modifiedMetadata = true;
+                addedRows.add(metadata.toRow());
             }
         }
 
+        if (!addedRows.isEmpty())
+        {
+            DatabaseManager.insertBatch(ourContext, addedRows);
+            modifiedMetadata = true;
+        }
+
         if(modifiedMetadata) {
             ourContext.addEvent(new Event(Event.MODIFY_METADATA, getType(), getID(), getDetails(), getIdentifiers(ourContext)));
             modifiedMetadata = false;
         }
     }
 
+    /**
+     * The identity of a stored metadata value as far as
+     * {@link #updateMetadata()} is concerned: two values with equal keys do
+     * not need to be rewritten. Confidence only takes part when an authority
+     * is set, matching the comparison used before values were hashed.
+     */
+    private static final class MetadataKey
+    {
+        private final int fieldId;
+        private final int place;
+        private final String value;
+        private final String language;
+        private final String authority;
+        private final int confidence;
+
+        MetadataKey(int fieldId, int place, String value, String language, String authority, int confidence)
+        {
+            this.fieldId = fieldId;
+            this.place = place;
+            this.value = value;
+            this.language = language;
+            this.authority = authority;
+            this.confidence = authority == null ? 0 : confidence;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof MetadataKey))
+            {
+                return false;
+            }
+            MetadataKey other = (MetadataKey) obj;
+            return fieldId == other.fieldId
+                    && place == other.place
+                    && confidence == other.confidence
+                    && StringUtils.equals(value, other.value)
+                    && StringUtils.equals(language, other.language)
+                    && StringUtils.equals(authority, other.authority);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = 7;
+            hash = 47 * hash + fieldId;
+            hash = 47 * hash + place;
+            hash = 47 * hash + confidence;
+            hash = 47 * hash + (value == null ? 0 : value.hashCode());
+            hash = 47 * hash + (language == null ? 0 : language.hashCode());
+            hash = 47 * hash + (authority == null ? 0 : authority.hashCode());
+            return hash;
+        }
+    }
+
     /**
      * Reset the cache of event details.
      */
@@ -475,6 +484,18 @@ public abstract class DSpaceObject
 
     public abstract void updateLastModified();
 
+    /**
+     * Whether this object holds changes which have not yet been written by
+     * {@link #update()}. The Context object cache never evicts modified
+     * objects.
+     *
+     * @return <code>true</code> if there are unsaved changes
+     */
+    public boolean isModified()
+    {
+        return modifiedMetadata;
+    }
+
     private TableRowIterator retrieveMetadata() throws SQLException
     {
         return DatabaseManager.queryTable(ourContext, "MetadataValue",
@@ -1251,6 +1272,130 @@ public abstract class DSpaceObject
         modifiedMetadata = true;
     }
 
+    /**
+     * Load the metadata of many objects, with one query per
+     * {@link org.dspace.authorize.AuthorizeManager#BULK_QUERY_SIZE} objects
+     * of a type, instead of one query per object when its metadata is first
+     * read. Objects whose metadata is already loaded are left alone.
+     *
+     * @param context
+     *            DSpace context object
+     * @param objects
+     *            the objects, of any types
+     * @throws SQLException
+     */
+    public static void loadMetadata(Context context, List<? extends DSpaceObject> objects) throws SQLException
+    {
+        Map<Integer, Map<Integer, DSpaceObject>> pendingByType = new HashMap<Integer, Map<Integer, DSpaceObject>>();
+        for (DSpaceObject o : objects)
+        {
+            if (o != null && o.metadataCache.metadata == null)
+            {
+                Map<Integer, DSpaceObject> pending = pendingByType.get(o.getType());
+                if (pending == null)
+                {
+                    pending = new LinkedHashMap<Integer, DSpaceObject>();
+                    pendingByType.put(o.getType(), pending);
+                }
+                pending.put(o.getID(), o);
+            }
+        }
+
+        for (Map.Entry<Integer, Map<Integer, DSpaceObject>> entry : pendingByType.entrySet())
+        {
+            int type = entry.getKey();
+            Map<Integer, DSpaceObject> pending = entry.getValue();
+            List<Integer> ids = new ArrayList<Integer>(pending.keySet());
+            for (int from = 0; from < ids.size(); from += org.dspace.authorize.AuthorizeManager.BULK_QUERY_SIZE)
+            {
+                List<Integer> chunk = ids.subList(from,
+                        Math.min(ids.size(), from + org.dspace.authorize.AuthorizeManager.BULK_QUERY_SIZE));
+
+                StringBuilder query = new StringBuilder(
+                        "SELECT * FROM MetadataValue WHERE resource_type_id = ? AND resource_id IN (");
+                Object[] parameters = new Object[chunk.size() + 1];
+                parameters[0] = type;
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    query.append(i == 0 ? "?" : ", ?");
+                    parameters[i + 1] = chunk.get(i);
+                }
+                query.append(") ORDER BY resource_id, metadata_field_id, place");
+
+                Map<Integer, List<Metadatum>> loaded = new HashMap<Integer, List<Metadatum>>();
+                TableRowIterator tri = DatabaseManager.queryTable(context, "MetadataValue", query.toString(), parameters);
+                try
+                {
+                    while (tri.hasNext())
+                    {
+                        TableRow row = tri.next(context);
+                        int resourceId = row.getIntColumn("resource_id");
+                        Metadatum dcv = toMetadatum(context, row, resourceId, type, log);
+                        if (dcv != null)
+                        {
+                            List<Metadatum> metadata = loaded.get(resourceId);
+                            if (metadata == null)
+                            {
+                                metadata = new ArrayList<Metadatum>();
+                                loaded.put(resourceId, metadata);
+                            }
+                            metadata.add(dcv);
+                        }
+                    }
+                }
+                finally
+                {
+                    tri.close();
+                }
+
+                for (Integer id : chunk)
+                {
+                    List<Metadatum> metadata = loaded.get(id);
+                    pending.get(id).metadataCache.set(metadata != null ? metadata : new ArrayList<Metadatum>());
+                }
+            }
+        }
+    }
+
+    /**
+     * Make a Metadatum out of a MetadataValue row.
+     *
+     * @return the value, or <code>null</code> if its field or schema cannot be
+     *         found
+     */
+    private static Metadatum toMetadatum(Context c, TableRow resultRow, int resourceId, int resourceTypeId,
+                                         Logger log) throws SQLException
+    {
+        // Get the associated metadata field and schema information
+        int fieldID = resultRow.getIntColumn("metadata_field_id");
+        MetadataField field = MetadataField.find(c, fieldID);
+
+        if (field == null)
+        {
+            log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType=" + resourceTypeId + " and resourceId=" + resourceId);
+            return null;
+        }
+
+        MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
+        if (schema == null)
+        {
+            log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
+            return null;
+        }
+
+        // Make a Metadatum object
+        Metadatum dcv = new Metadatum();
+        dcv.element = field.getElement();
+        dcv.qualifier = field.getQualifier();
+        dcv.value = resultRow.getStringColumn("text_value");
+        dcv.language = resultRow.getStringColumn("text_lang");
+        //dcv.namespace = schema.getNamespace();
+        dcv.schema = schema.getName();
+        dcv.authority = resultRow.getStringColumn("authority");
+        dcv.confidence = resultRow.getIntColumn("confidence");
+        return dcv;
+    }
+
     class MetadataCache
     {
         List<Metadatum> metadata = null;
@@ -1272,37 +1417,11 @@ public abstract class DSpaceObject
                         {
                             TableRow resultRow = tri.next();
 
-                            // Get the associated metadata field and schema information
-                            int fieldID = resultRow.getIntColumn("metadata_field_id");
-                            MetadataField field = MetadataField.find(c, fieldID);
-
-                            if (field == null)
-                            {
-                                log.error("Loading item - cannot find metadata field " + fieldID + " for resourceType=" + resourceTypeId + " and resourceId=" + resourceId);
-                            }
-                            else
+                            Metadatum dcv = toMetadatum(c, resultRow, resourceId, resourceTypeId, log);
+                            if (dcv != null)
                             {
-                                MetadataSchema schema = MetadataSchema.find(c, field.getSchemaID());
-                                if (schema == null)
-                                {
-                                    log.error("Loading item - cannot find metadata schema " + field.getSchemaID() + ", field " + fieldID);
-                                }
-                                else
-                                {
-                                    // Make a Metadatum object
-                                    Metadatum dcv = new Metadatum();
-                                    dcv.element = field.getElement();
-                                    dcv.qualifier = field.getQualifier();
-                                    dcv.value = resultRow.getStringColumn("text_value");
-                                    dcv.language = resultRow.getStringColumn("text_lang");
-                                    //dcv.namespace = schema.getNamespace();
-                                    dcv.schema = schema.getName();
-                                    dcv.authority = resultRow.getStringColumn("authority");
-                                    dcv.confidence = resultRow.getIntColumn("confidence");
-
-                                    // Add it to the list
-                                    metadata.add(dcv);
-                                }
+                                // Add it to the list
+                                metadata.add(dcv);
                             }
                         }
                     }
@@ -9,12 +9,15 @@ package org.dspace.content;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.dspace.app.util.AuthorizeUtil;
@@ -230,6 +233,52 @@ public class Item extends DSpaceObject
         return new ItemIterator(context, rows);
 	}
 
+    /**
+     * Find the items in the archive, or withdrawn, whose IDs follow the given
+     * ID, in ID order: the items of {@link #findAllUnfiltered(Context)}, a
+     * page at a time. This is keyset paging: unlike an offset, the cost of a
+     * page does not depend on how many items come before it.
+     *
+     * @param context
+     *            DSpace context object
+     * @param afterID
+     *            only items with a greater ID are returned; use -1 for the
+     *            first page
+     * @param limit
+     *            maximum number of items to return
+     * @return the items, in ID order
+     * @throws SQLException
+     */
+    public static Item[] findAfter(Context context, int afterID, int limit) throws SQLException
+    {
+        StringBuffer query = new StringBuffer(
+                "SELECT * FROM item WHERE (in_archive='1' OR withdrawn='1') AND item_id > ? ORDER BY item_id");
+        List<Serializable> params = new ArrayList<Serializable>();
+        params.add(afterID);
+        DatabaseManager.applyOffsetAndLimit(query, params, 0, limit);
+
+        List<Item> items = new ArrayList<Item>();
+        TableRowIterator tri = DatabaseManager.queryTable(context, "item", query.toString(), params.toArray());
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next(context);
+
+                // First check the cache
+                Item fromCache = (Item) context.fromCache(Item.class, row.getIntColumn("item_id"));
+
+                items.add(fromCache != null ? fromCache : new Item(context, row));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+
+        return items.toArray(new Item[items.size()]);
+    }
+
     /**
      * Find all the items in the archive by a given submitter. The order is
      * indeterminate. Only items with the "in archive" flag set are included.
@@ -335,6 +384,12 @@ public class Item extends DSpaceObject
         return itemRow.getIntColumn("item_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
+
 
 
 
@@ -698,6 +753,121 @@ public class Item extends DSpaceObject
         return bundleArray;
     }
 
+    /**
+     * Load the bundles of many items, and the bitstreams in them, with a few
+     * queries per {@link AuthorizeManager#BULK_QUERY_SIZE} items, instead of
+     * one query per item and one per bundle when they are first read. Items
+     * whose bundles are already loaded are left alone.
+     *
+     * @param context
+     *            DSpace context object
+     * @param items
+     *            the items
+     * @throws SQLException
+     */
+    public static void loadBundles(Context context, List<Item> items) throws SQLException
+    {
+        Map<Integer, List<Integer>> bundleIDsByItem = new HashMap<Integer, List<Integer>>();
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        for (Item item : items)
+        {
+            if (item != null && item.bundles == null && !bundleIDsByItem.containsKey(item.getID()))
+            {
+                bundleIDsByItem.put(item.getID(), new ArrayList<Integer>());
+                itemIDs.add(item.getID());
+            }
+        }
+        if (itemIDs.isEmpty())
+        {
+            return;
+        }
+
+        List<Integer> bundleIDs = new ArrayList<Integer>();
+        for (TableRow row : findInChunks(context, null,
+                "SELECT item_id, bundle_id FROM item2bundle WHERE item_id IN ", itemIDs))
+        {
+            bundleIDsByItem.get(row.getIntColumn("item_id")).add(row.getIntColumn("bundle_id"));
+            bundleIDs.add(row.getIntColumn("bundle_id"));
+        }
+
+        Map<Integer, Bundle> bundlesByID = new HashMap<Integer, Bundle>();
+        List<TableRow> bundleRows = new ArrayList<TableRow>();
+        List<Integer> uncachedIDs = new ArrayList<Integer>();
+        for (Integer bundleID : bundleIDs)
+        {
+            Bundle fromCache = (Bundle) context.fromCache(Bundle.class, bundleID);
+            if (fromCache != null)
+            {
+                bundlesByID.put(bundleID, fromCache);
+            }
+            else
+            {
+                uncachedIDs.add(bundleID);
+            }
+        }
+        bundleRows.addAll(findInChunks(context, "bundle",
+                "SELECT * FROM bundle WHERE bundle_id IN ", uncachedIDs));
+        Map<Integer, List<TableRow>> bitstreamRows = Bundle.findBitstreamRows(context, uncachedIDs);
+        for (TableRow row : bundleRows)
+        {
+            int bundleID = row.getIntColumn("bundle_id");
+            bundlesByID.put(bundleID, new Bundle(context, row, bitstreamRows.get(bundleID)));
+        }
+
+        for (Item item : items)
+        {
+            if (item != null && item.bundles == null)
+            {
+                List<Bundle> itemBundles = new ArrayList<Bundle>();
+                for (Integer bundleID : bundleIDsByItem.get(item.getID()))
+                {
+                    Bundle bundle = bundlesByID.get(bundleID);
+                    if (bundle != null)
+                    {
+                        itemBundles.add(bundle);
+                    }
+                }
+                item.bundles = itemBundles;
+            }
+        }
+    }
+
+    /**
+     * Run <code>query</code>, which ends with "IN ", for the given IDs, with
+     * one query per {@link AuthorizeManager#BULK_QUERY_SIZE} IDs.
+     */
+    private static List<TableRow> findInChunks(Context context, String table, String query, List<Integer> ids)
+            throws SQLException
+    {
+        List<TableRow> rows = new ArrayList<TableRow>();
+        for (int from = 0; from < ids.size(); from += AuthorizeManager.BULK_QUERY_SIZE)
+        {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + AuthorizeManager.BULK_QUERY_SIZE));
+            StringBuilder sql = new StringBuilder(query).append("(");
+            for (int i = 0; i < chunk.size(); i++)
+            {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+
+            TableRowIterator tri = (table == null)
+                    ? DatabaseManager.query(context, sql.toString(), chunk.toArray())
+                    : DatabaseManager.queryTable(context, table, sql.toString(), chunk.toArray());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    rows.add(tri.next(context));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        return rows;
+    }
+
     /**
      * Get the bundles matching a bundle name (name corresponds roughly to type)
      *
@@ -1324,6 +1494,10 @@ public class Item extends DSpaceObject
         // remove version attached to the item
         removeVersion();
 
+        // Record the deletion, for incremental Discovery updates
+        DatabaseManager.updateQuery(ourContext,
+                "INSERT INTO item_deletion (item_id, deleted) VALUES (?, ?)",
+                getID(), new Timestamp(System.currentTimeMillis()));
 
         // Finally remove item row
         DatabaseManager.delete(ourContext, itemRow);
@@ -281,15 +281,7 @@ public class MetadataValue
     public void create(Context context) throws SQLException, AuthorizeException
     {
         // Create a table row and update it with the values
-        row = DatabaseManager.row("MetadataValue");
-        row.setColumn("resource_id", resourceId);
-        row.setColumn("resource_type_id", resourceTypeId);
-        row.setColumn("metadata_field_id", fieldId);
-        row.setColumn("text_value", value);
-        row.setColumn("text_lang", language);
-        row.setColumn("place", place);
-        row.setColumn("authority", authority);
-        row.setColumn("confidence", confidence);
+        row = toRow();
         DatabaseManager.insert(context, row);
 
         // Remember the new row number
@@ -299,6 +291,27 @@ public class MetadataValue
 //                "metadata_value_id=" + valueId));
     }
 
+    /**
+     * Build a new, unsaved table row holding the values of this metadata
+     * value, e.g. for use with {@link DatabaseManager#insertBatch}.
+     *
+     * @return the unsaved row
+     * @throws SQLException
+     */
+    TableRow toRow() throws SQLException
+    {
+        TableRow newRow = DatabaseManager.row("MetadataValue");
+        newRow.setColumn("resource_id", resourceId);
+        newRow.setColumn("resource_type_id", resourceTypeId);
+        newRow.setColumn("metadata_field_id", fieldId);
+        newRow.setColumn("text_value", value);
+        newRow.setColumn("text_lang", language);
+        newRow.setColumn("place", place);
+        newRow.setColumn("authority", authority);
+        newRow.setColumn("confidence", confidence);
+        return newRow;
+    }
+
     /**
      * Retrieves the metadata value from the database.
      *
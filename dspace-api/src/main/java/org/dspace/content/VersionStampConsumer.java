@@ -0,0 +1,161 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Consumer which gives new {@link VersionStamps} to the objects changed by
+ * a transaction. A change to a bitstream or bundle also changes the stamp
+ * of the item (or the community or collection, for a logo) it belongs to,
+ * as they are rendered together; and an object added to or removed from a
+ * container gets a new stamp along with the container.
+ */
+public class VersionStampConsumer implements Consumer
+{
+    /** log4j logger */
+    private static Logger log = Logger.getLogger(VersionStampConsumer.class);
+
+    /** The objects changed, as {type, id} */
+    private Set<Touched> touched = new HashSet<Touched>();
+
+    /**
+     * Initialise the consumer
+     *
+     * @throws Exception
+     */
+    public void initialize()
+        throws Exception
+    {
+
+    }
+
+    /**
+     * Consume the event
+     *
+     * @param context
+     * @param event
+     * @throws Exception
+     */
+    public void consume(Context context, Event event)
+        throws Exception
+    {
+        int st = event.getSubjectType();
+        int id = event.getSubjectID();
+        touched.add(new Touched(st, id));
+
+        if (event.getObjectType() >= 0 && event.getObjectID() >= 0)
+        {
+            touched.add(new Touched(event.getObjectType(), event.getObjectID()));
+        }
+
+        if (event.getEventType() == Event.DELETE)
+        {
+            // the containers get their own REMOVE events
+            return;
+        }
+
+        // the objects rendered along with the subject
+        if (st == Constants.BITSTREAM)
+        {
+            Bitstream bitstream = Bitstream.find(context, id);
+            if (bitstream != null)
+            {
+                for (Bundle bundle : bitstream.getBundles())
+                {
+                    touchBundle(bundle);
+                }
+                DSpaceObject parent = bitstream.getParentObject();
+                if (parent != null)
+                {
+                    touched.add(new Touched(parent.getType(), parent.getID()));
+                }
+            }
+        }
+        else if (st == Constants.BUNDLE)
+        {
+            Bundle bundle = Bundle.find(context, id);
+            if (bundle != null)
+            {
+                touchBundle(bundle);
+            }
+        }
+    }
+
+    private void touchBundle(Bundle bundle) throws SQLException
+    {
+        touched.add(new Touched(Constants.BUNDLE, bundle.getID()));
+        for (Item item : bundle.getItems())
+        {
+            touched.add(new Touched(Constants.ITEM, item.getID()));
+        }
+    }
+
+    /**
+     * Give the objects changed new stamps, once the changes are committed
+     *
+     * @param ctx
+     * @throws Exception
+     */
+    public void end(Context ctx)
+        throws Exception
+    {
+        for (Touched t : touched)
+        {
+            VersionStamps.touch(t.type, t.id);
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("New version stamps for " + touched.size() + " objects");
+        }
+        touched.clear();
+    }
+
+    /**
+     * Finish the event
+     *
+     * @param ctx
+     */
+    public void finish(Context ctx)
+    {
+
+    }
+
+    /** An object whose stamp is to change */
+    private static final class Touched
+    {
+        final int type;
+        final int id;
+
+        Touched(int type, int id)
+        {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return (o instanceof Touched) && ((Touched) o).type == type && ((Touched) o).id == id;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * type + id;
+        }
+    }
+}
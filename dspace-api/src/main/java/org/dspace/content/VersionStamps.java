@@ -0,0 +1,160 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.dspace.core.Constants;
+import org.dspace.services.CachingService;
+import org.dspace.services.model.Cache;
+import org.dspace.services.model.CacheConfig;
+import org.dspace.services.model.CacheConfig.CacheScope;
+import org.dspace.utils.DSpace;
+
+/**
+ * Version stamps of DSpace objects: opaque strings which change whenever
+ * an object, or anything rendered along with it, is modified. They let
+ * caches decide whether a copy is current without reading the object.
+ * <P>
+ * Stamps are not stored with the objects. An object without a stamp is
+ * given a new, unique one the first time it is asked for, and
+ * {@link VersionStampConsumer} drops the stamps of modified objects so
+ * that they get new ones. Losing a stamp (on a restart, or when the
+ * cache evicts it) therefore only makes a cached copy look out of date
+ * once. The stamps are kept in the "org.dspace.content.VersionStamps"
+ * cache of the caching service, so that with a clustered cache every node
+ * sees the modifications made on the others.
+ * <P>
+ * Changes made by processes which are not part of the cache cluster, such
+ * as command line tools, are only seen once the stamps expire, so the
+ * cache should be given a time to live.
+ */
+public class VersionStamps
+{
+    /** log4j category */
+    private static Logger log = Logger.getLogger(VersionStamps.class);
+
+    /** The name of the cache holding the stamps */
+    public static final String CACHE_NAME = VersionStamps.class.getName();
+
+    /** Distinguishes the stamps made by this JVM from those of other nodes */
+    private static final String node = Long.toString(Math.abs(new Random().nextLong()), 36);
+
+    /** Number of stamps made by this JVM */
+    private static final AtomicLong counter = new AtomicLong();
+
+    /** The stamps, if the caching service is available */
+    private static volatile Cache cache;
+
+    /** The stamps, if the caching service is not available */
+    private static final Map<String, String> localStamps = new ConcurrentHashMap<String, String>();
+
+    /** Utility class */
+    private VersionStamps()
+    {
+    }
+
+    /**
+     * Get the version stamp of an object.
+     *
+     * @param type the type of the object, as in {@link Constants}
+     * @param id the database id of the object
+     * @return the object's stamp
+     */
+    public static String getStamp(int type, int id)
+    {
+        String key = key(type, id);
+        Cache stamps = getCache();
+        if (stamps != null)
+        {
+            String stamp = (String) stamps.get(key);
+            if (stamp == null)
+            {
+                stamp = newStamp();
+                stamps.put(key, stamp);
+            }
+            return stamp;
+        }
+
+        String stamp = localStamps.get(key);
+        if (stamp == null)
+        {
+            stamp = newStamp();
+            localStamps.put(key, stamp);
+        }
+        return stamp;
+    }
+
+    /**
+     * Get the version stamp of an object.
+     *
+     * @param dso the object
+     * @return the object's stamp
+     */
+    public static String getStamp(DSpaceObject dso)
+    {
+        return getStamp(dso.getType(), dso.getID());
+    }
+
+    /**
+     * Record that an object has been modified, so that it gets a new stamp.
+     *
+     * @param type the type of the object, as in {@link Constants}
+     * @param id the database id of the object
+     */
+    public static void touch(int type, int id)
+    {
+        String key = key(type, id);
+        Cache stamps = getCache();
+        if (stamps != null)
+        {
+            // removing tells the other nodes of the cluster too
+            stamps.remove(key);
+        }
+        else
+        {
+            localStamps.remove(key);
+        }
+    }
+
+    private static String key(int type, int id)
+    {
+        return type + ":" + id;
+    }
+
+    private static String newStamp()
+    {
+        return node + "." + counter.incrementAndGet();
+    }
+
+    private static Cache getCache()
+    {
+        if (cache == null)
+        {
+            try
+            {
+                CachingService caching = new DSpace().getServiceManager()
+                        .getServiceByName(CachingService.class.getName(), CachingService.class);
+                if (caching != null)
+                {
+                    cache = caching.getCache(CACHE_NAME, new CacheConfig(CacheScope.INSTANCE));
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // no kernel, e.g. in some tests: keep the stamps here
+                log.debug("Caching service unavailable, keeping version stamps locally: " + e.getMessage());
+            }
+        }
+        return cache;
+    }
+}
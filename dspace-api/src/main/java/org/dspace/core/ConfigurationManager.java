@@ -15,9 +15,9 @@ import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Category;
 import org.apache.log4j.Logger;
@@ -49,10 +49,16 @@ public class ConfigurationManager
     private static Logger log = Logger.getLogger(ConfigurationManager.class);
 
     /** The configuration properties */
-    private static Properties properties = null;
+    private static volatile Properties properties = null;
 
     /** module configuration properties */
-    private static Map<String, Properties> moduleProps = new HashMap<String, Properties>();
+    private static volatile Map<String, Properties> moduleProps = new ConcurrentHashMap<String, Properties>();
+
+    /**
+     * The configuration loaded so far, replaced whenever the main
+     * configuration or a module configuration is (re)loaded.
+     */
+    static volatile ConfigurationSnapshot snapshot = null;
 
     // limit of recursive depth of property variable interpolation in
     // configuration; anything greater than this is very likely to be a loop.
@@ -152,6 +158,45 @@ public class ConfigurationManager
         return retProps;
     }
 
+    /**
+     * Returns an immutable snapshot of the configuration loaded so far.
+     * Everything read from one snapshot is consistent, even if the
+     * configuration is reloaded meanwhile.
+     *
+     * @return the current configuration
+     */
+    public static ConfigurationSnapshot getSnapshot()
+    {
+        ConfigurationSnapshot current = snapshot;
+        if (current == null)
+        {
+            loadConfig(null);
+            publishIfMissing();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * Returns an immutable snapshot of the configuration, loading the
+     * configuration of a module first if it is not loaded yet.
+     *
+     * @param module
+     *        the name of the module, or <code>null</code> for just the
+     *        regular configuration
+     * @return the current configuration
+     */
+    public static ConfigurationSnapshot getSnapshot(String module)
+    {
+        ConfigurationSnapshot current = getSnapshot();
+        if (module != null && !current.hasModule(module))
+        {
+            getMutableProperties(module);
+            current = snapshot;
+        }
+        return current;
+    }
+
     /**
      * Get a configuration property
      *
@@ -522,49 +567,21 @@ public class ConfigurationManager
 
     private static synchronized void loadModuleConfig(String module)
     {
+        if (moduleProps.containsKey(module))
+        {
+            return;
+        }
+
         // try to find it in modules
         File modFile = null;
         try
         {
-            modFile = new File(getProperty("dspace.dir") +
-                                File.separator + "config" +
-                                File.separator + "modules" +
-                                File.separator + module + ".cfg");
+            modFile = getModuleFile(getProperty("dspace.dir"), module);
 
             if (modFile.exists())
             {
-                Properties modProps = new Properties();
-                InputStream modIS = null;
-                InputStreamReader modIR = null;
-                try
-                {
-                    modIS = new FileInputStream(modFile);
-                    modIR = new InputStreamReader(modIS, "UTF-8");
-                    modProps.load(modIR);
-                }
-                finally
-                {
-                    if (modIR != null)
-                    {
-                        modIR.close();
-                    }
-
-                    if (modIS != null)
-                    {
-                        modIS.close();
-                    }
-                }
-
-                for (Enumeration pe = modProps.propertyNames(); pe.hasMoreElements(); )
-                {
-                    String key = (String)pe.nextElement();
-                    String ival = interpolate(key, modProps.getProperty(key), 1);
-                    if (ival != null)
-                    {
-                        modProps.setProperty(key, ival);
-                    }
-                }
-                moduleProps.put(module, modProps);
+                moduleProps.put(module, readModuleConfig(modFile, properties));
+                publish();
             }
             else
             {
@@ -579,6 +596,172 @@ public class ConfigurationManager
         }
     }
 
+    private static File getModuleFile(String dspaceDir, String module)
+    {
+        return new File(dspaceDir +
+                        File.separator + "config" +
+                        File.separator + "modules" +
+                        File.separator + module + ".cfg");
+    }
+
+    /**
+     * Read a module configuration file, interpolating references to the
+     * given main configuration.
+     */
+    private static Properties readModuleConfig(File modFile, Properties main)
+        throws IOException
+    {
+        Properties modProps = new Properties();
+        InputStream modIS = null;
+        InputStreamReader modIR = null;
+        try
+        {
+            modIS = new FileInputStream(modFile);
+            modIR = new InputStreamReader(modIS, "UTF-8");
+            modProps.load(modIR);
+        }
+        finally
+        {
+            if (modIR != null)
+            {
+                modIR.close();
+            }
+
+            if (modIS != null)
+            {
+                modIS.close();
+            }
+        }
+
+        for (Enumeration pe = modProps.propertyNames(); pe.hasMoreElements(); )
+        {
+            String key = (String)pe.nextElement();
+            String ival = interpolate(main, key, modProps.getProperty(key), 1);
+            if (ival != null)
+            {
+                modProps.setProperty(key, ival);
+            }
+        }
+        return modProps;
+    }
+
+    /**
+     * Read the main configuration file, interpolating its references.
+     */
+    private static Properties readConfig(URL url)
+        throws IOException
+    {
+        Properties props = new Properties();
+        InputStream is = null;
+        InputStreamReader reader = null;
+        try
+        {
+            is = url.openStream();
+            reader = new InputStreamReader(is, "UTF-8");
+            props.load(reader);
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                try {
+                    reader.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+            if (is != null)
+            {
+                try
+                {
+                    is.close();
+                }
+                catch (IOException ioe)
+                {
+                }
+            }
+        }
+
+        // walk values, interpolating any embedded references.
+        for (Enumeration<?> pe = props.propertyNames(); pe.hasMoreElements(); )
+        {
+            String key = (String)pe.nextElement();
+            String value = interpolate(props, key, props.getProperty(key), 1);
+            if (value != null)
+            {
+                props.setProperty(key, value);
+            }
+        }
+        return props;
+    }
+
+    private static synchronized void publishIfMissing()
+    {
+        if (snapshot == null)
+        {
+            publish();
+        }
+    }
+
+    /**
+     * Replace the snapshot with one of the configuration now loaded.
+     */
+    private static synchronized void publish()
+    {
+        snapshot = new ConfigurationSnapshot(properties, moduleProps);
+    }
+
+    /**
+     * Reload the DSpace configuration from the file it was loaded from,
+     * along with the module configurations loaded so far. The new
+     * configuration replaces the old one all at once: until it has been
+     * read in full, the old one stays in use, and if it cannot be read the
+     * old one is kept. Logging is not configured again.
+     * <P>
+     * {@link ConfigurationSetting}s pick up the new values the next time
+     * they are read.
+     */
+    public static synchronized void reloadConfig()
+    {
+        if (properties == null || loadedFile == null)
+        {
+            loadConfig(null);
+            return;
+        }
+
+        File modFile = null;
+        try
+        {
+            info("Reloading current config file: " + loadedFile.getAbsolutePath());
+            Properties newProps = readConfig(loadedFile.toURI().toURL());
+
+            Map<String, Properties> newModuleProps = new ConcurrentHashMap<String, Properties>();
+            for (String module : moduleProps.keySet())
+            {
+                modFile = getModuleFile(newProps.getProperty("dspace.dir", "").trim(), module);
+                if (modFile.exists())
+                {
+                    newModuleProps.put(module, readModuleConfig(modFile, newProps));
+                }
+                else
+                {
+                    warn("Configuration module: " + module + " no longer found");
+                }
+            }
+
+            properties = newProps;
+            moduleProps = newModuleProps;
+            publish();
+        }
+        catch (IOException e)
+        {
+            fatal("Can't reload configuration: " +
+                    (modFile == null ? loadedFile.getAbsolutePath() : modFile.getAbsolutePath()), e);
+            throw new IllegalStateException("Cannot reload configuration", e);
+        }
+    }
+
     /**
      * Load the DSpace configuration properties. Only does anything if
      * properties are not already loaded. Properties are loaded in from the
@@ -597,8 +780,6 @@ public class ConfigurationManager
 
         URL url = null;
 
-        InputStream is = null;
-        InputStreamReader reader = null;
         try
         {
             String configProperty = null;
@@ -656,21 +837,8 @@ public class ConfigurationManager
             }
             else
             {
-                properties = new Properties();
-                is = url.openStream();
-                reader = new InputStreamReader(is, "UTF-8");
-                properties.load(reader);
-
-                // walk values, interpolating any embedded references.
-                for (Enumeration<?> pe = properties.propertyNames(); pe.hasMoreElements(); )
-                {
-                    String key = (String)pe.nextElement();
-                    String value = interpolate(key, properties.getProperty(key), 1);
-                    if (value != null)
-                    {
-                        properties.setProperty(key, value);
-                    }
-                }
+                properties = readConfig(url);
+                publish();
             }
 
         }
@@ -682,28 +850,6 @@ public class ConfigurationManager
             // configuration we can't do anything.
             throw new IllegalStateException("Cannot load configuration: " + url, e);
         }
-        finally
-        {
-            if (reader != null)
-            {
-                try {
-                    reader.close();
-                }
-                catch (IOException ioe)
-                {
-                }
-            }
-            if (is != null)
-            {
-                try
-                {
-                    is.close();
-                }
-                catch (IOException ioe)
-                {
-                }
-            }
-        }
 
         try
         {
@@ -830,7 +976,7 @@ public class ConfigurationManager
      * @return new value if it contains interpolations, or null
      *   if it had no variable references.
      */
-    private static String interpolate(String key, String value, int level)
+    private static String interpolate(Properties properties, String key, String value, int level)
     {
         if (level > RECURSION_LIMIT)
         {
@@ -860,7 +1006,7 @@ public class ConfigurationManager
                 }
                 if (properties.containsKey(var))
                 {
-                    String ivalue = interpolate(var, properties.getProperty(var), level+1);
+                    String ivalue = interpolate(properties, var, properties.getProperty(var), level+1);
                     if (ivalue != null)
                     {
                         result.append(ivalue);
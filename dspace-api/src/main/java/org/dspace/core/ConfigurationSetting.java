@@ -0,0 +1,221 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+/**
+ * A handle on a single configuration property, for code which reads it
+ * often. The value is looked up and parsed once for each
+ * {@link ConfigurationSnapshot}; until the configuration is reloaded, reading
+ * it is a comparison and a field read. Settings are meant to be held in
+ * static fields:
+ *
+ * <pre>
+ * private static final ConfigurationSetting.BooleanSetting logBots =
+ *         new ConfigurationSetting.BooleanSetting("usage-statistics", "logBots", true);
+ * ...
+ * if (!logBots.get())
+ * </pre>
+ *
+ * The rules for missing and malformed values are those of the
+ * corresponding <code>ConfigurationManager</code> methods.
+ */
+public abstract class ConfigurationSetting
+{
+    /** The module, or null for the main configuration */
+    protected final String module;
+
+    /** The name of the property */
+    protected final String property;
+
+    /** The snapshot the value was parsed from */
+    private volatile ConfigurationSnapshot parsedFrom;
+
+    ConfigurationSetting(String module, String property)
+    {
+        this.module = module;
+        this.property = property;
+    }
+
+    /**
+     * Parse the value again if the configuration has changed since it was
+     * last parsed, or has not been loaded yet. The value is written before
+     * <code>parsedFrom</code>, so a thread which sees the current snapshot
+     * there sees its value too.
+     */
+    final void check()
+    {
+        ConfigurationSnapshot parsed = parsedFrom;
+        if (parsed == null || parsed != ConfigurationManager.snapshot)
+        {
+            refresh();
+        }
+    }
+
+    private synchronized void refresh()
+    {
+        ConfigurationSnapshot snapshot = ConfigurationManager.getSnapshot(module);
+        if (parsedFrom != snapshot)
+        {
+            parse(snapshot);
+            parsedFrom = snapshot;
+        }
+    }
+
+    /**
+     * Read the value of the property from a snapshot.
+     *
+     * @param snapshot the current configuration
+     */
+    abstract void parse(ConfigurationSnapshot snapshot);
+
+    @Override
+    public String toString()
+    {
+        return module == null ? property : module + "." + property;
+    }
+
+    /**
+     * A string property.
+     */
+    public static final class StringSetting extends ConfigurationSetting
+    {
+        private final String defaultValue;
+        private String value;
+
+        /**
+         * @param module the module, or <code>null</code> for regular property
+         * @param property the name of the property
+         * @param defaultValue value to return if property is not found
+         */
+        public StringSetting(String module, String property, String defaultValue)
+        {
+            super(module, property);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the value of the property, or the default
+         */
+        public String get()
+        {
+            check();
+            return value;
+        }
+
+        void parse(ConfigurationSnapshot snapshot)
+        {
+            String v = snapshot.getProperty(module, property);
+            value = v == null ? defaultValue : v;
+        }
+    }
+
+    /**
+     * An integer property.
+     */
+    public static final class IntSetting extends ConfigurationSetting
+    {
+        private final int defaultValue;
+        private int value;
+
+        /**
+         * @param module the module, or <code>null</code> for regular property
+         * @param property the name of the property
+         * @param defaultValue value to return if property is not found or
+         *            is not an Integer
+         */
+        public IntSetting(String module, String property, int defaultValue)
+        {
+            super(module, property);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the value of the property, or the default
+         */
+        public int get()
+        {
+            check();
+            return value;
+        }
+
+        void parse(ConfigurationSnapshot snapshot)
+        {
+            value = snapshot.getIntProperty(module, property, defaultValue);
+        }
+    }
+
+    /**
+     * A long property.
+     */
+    public static final class LongSetting extends ConfigurationSetting
+    {
+        private final long defaultValue;
+        private long value;
+
+        /**
+         * @param module the module, or <code>null</code> for regular property
+         * @param property the name of the property
+         * @param defaultValue value to return if property is not found or
+         *            is not a Long
+         */
+        public LongSetting(String module, String property, long defaultValue)
+        {
+            super(module, property);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the value of the property, or the default
+         */
+        public long get()
+        {
+            check();
+            return value;
+        }
+
+        void parse(ConfigurationSnapshot snapshot)
+        {
+            value = snapshot.getLongProperty(module, property, defaultValue);
+        }
+    }
+
+    /**
+     * A boolean property. True is indicated if the value of the property is
+     * <code>TRUE</code> or <code>YES</code> (case insensitive.)
+     */
+    public static final class BooleanSetting extends ConfigurationSetting
+    {
+        private final boolean defaultValue;
+        private boolean value;
+
+        /**
+         * @param module the module, or <code>null</code> for regular property
+         * @param property the name of the property
+         * @param defaultValue value to return if property is not found
+         */
+        public BooleanSetting(String module, String property, boolean defaultValue)
+        {
+            super(module, property);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the value of the property, or the default
+         */
+        public boolean get()
+        {
+            check();
+            return value;
+        }
+
+        void parse(ConfigurationSnapshot snapshot)
+        {
+            value = snapshot.getBooleanProperty(module, property, defaultValue);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An immutable view of the DSpace configuration as it was at one moment:
+ * the main configuration and the module configurations loaded so far, with
+ * their values already trimmed. {@link ConfigurationManager} replaces its
+ * snapshot as a whole whenever the configuration changes, so everything
+ * read from one snapshot is consistent.
+ * <P>
+ * Lookups follow the rules of ConfigurationManager, including the fallback
+ * from a module property to <code>module.property</code> in the main
+ * configuration. Code which reads the same property over and over should
+ * hold a {@link ConfigurationSetting} instead, which parses the value once
+ * per snapshot.
+ *
+ * @see ConfigurationManager#getSnapshot()
+ */
+public final class ConfigurationSnapshot
+{
+    /** log4j category */
+    private static final Logger log = Logger.getLogger(ConfigurationSnapshot.class);
+
+    /** The main configuration */
+    private final Map<String, String> properties;
+
+    /** The module configurations, by module name */
+    private final Map<String, Map<String, String>> modules;
+
+    /**
+     * @param properties the main configuration
+     * @param modules the module configurations, by module name
+     */
+    ConfigurationSnapshot(Properties properties, Map<String, Properties> modules)
+    {
+        this.properties = copy(properties);
+
+        Map<String, Map<String, String>> copies = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, Properties> module : modules.entrySet())
+        {
+            copies.put(module.getKey(), copy(module.getValue()));
+        }
+        this.modules = Collections.unmodifiableMap(copies);
+    }
+
+    /**
+     * @param module the name of the module
+     * @return whether the configuration of the module had been loaded when
+     *         the snapshot was taken
+     */
+    public boolean hasModule(String module)
+    {
+        return modules.containsKey(module);
+    }
+
+    /**
+     * Get a configuration property.
+     *
+     * @param property the name of the property
+     * @return the value of the property, or <code>null</code> if the
+     *         property does not exist
+     */
+    public String getProperty(String property)
+    {
+        return properties.get(property);
+    }
+
+    /**
+     * Get a module configuration property.
+     *
+     * @param module the name of the module, or <code>null</code> for
+     *            regular configuration property
+     * @param property the name of the property
+     * @return the value of the property, or <code>null</code> if the
+     *         property does not exist
+     */
+    public String getProperty(String module, String property)
+    {
+        if (module == null)
+        {
+            return getProperty(property);
+        }
+
+        String value = null;
+        Map<String, String> moduleProperties = modules.get(module);
+        if (moduleProperties != null)
+        {
+            value = moduleProperties.get(property);
+        }
+        if (value == null)
+        {
+            value = properties.get(module + "." + property);
+        }
+        return value;
+    }
+
+    /**
+     * Get a module configuration property as an integer.
+     *
+     * @param module the name of the module, or <code>null</code> for
+     *            regular configuration property
+     * @param property the name of the property
+     * @param defaultValue value to return if property is not found or is
+     *            not an Integer
+     * @return the value of the property, or <code>defaultValue</code>
+     */
+    public int getIntProperty(String module, String property, int defaultValue)
+    {
+        String value = getProperty(module, property);
+        if (value != null)
+        {
+            try
+            {
+                return Integer.parseInt(value);
+            }
+            catch (NumberFormatException e)
+            {
+                log.warn("Warning: Number format error in property: " + property);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get a module configuration property as a long.
+     *
+     * @param module the name of the module, or <code>null</code> for
+     *            regular configuration property
+     * @param property the name of the property
+     * @param defaultValue value to return if property is not found or is
+     *            not a Long
+     * @return the value of the property, or <code>defaultValue</code>
+     */
+    public long getLongProperty(String module, String property, long defaultValue)
+    {
+        String value = getProperty(module, property);
+        if (value != null)
+        {
+            try
+            {
+                return Long.parseLong(value);
+            }
+            catch (NumberFormatException e)
+            {
+                log.warn("Warning: Number format error in property: " + property);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Get a module configuration property as a boolean. True is indicated
+     * if the value of the property is <code>TRUE</code> or <code>YES</code>
+     * (case insensitive.)
+     *
+     * @param module the name of the module, or <code>null</code> for
+     *            regular configuration property
+     * @param property the name of the property
+     * @param defaultValue value to return if property is not found
+     * @return the value of the property, or <code>defaultValue</code>
+     */
+    public boolean getBooleanProperty(String module, String property, boolean defaultValue)
+    {
+        String value = getProperty(module, property);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes");
+    }
+
+    private static Map<String, String> copy(Properties properties)
+    {
+        Map<String, String> copy = new HashMap<String, String>();
+        if (properties != null)
+        {
+            for (String key : properties.stringPropertyNames())
+            {
+                copy.put(key, properties.getProperty(key).trim());
+            }
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+}
@@ -12,6 +12,7 @@ import java.sql.SQLException;
 import java.util.*;
 
 import org.apache.log4j.Logger;
+import org.dspace.authorize.AuthorizationCache;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 import org.dspace.event.Dispatcher;
@@ -69,7 +70,10 @@ public class Context
     private Stack<String> authStateClassCallHistory;
 
     /** Object cache for this context */
-    private Map<String, Object> objectCache;
+    private ContextCache objectCache;
+
+    /** Group memberships and authorization decisions for this context */
+    private AuthorizationCache authorizationCache;
 
     /** Group IDs of special groups user is a member of */
     private List<Integer> specialGroups;
@@ -126,7 +130,8 @@ public class Context
         extraLogInfo = "";
         ignoreAuth = false;
 
-        objectCache = new HashMap<String, Object>();
+        objectCache = new ContextCache();
+        authorizationCache = new AuthorizationCache();
         specialGroups = new ArrayList<Integer>();
 
         authStateChangeHistory = new Stack<Boolean>();
@@ -154,6 +159,7 @@ public class Context
     public void setCurrentUser(EPerson user)
     {
         currentUser = user;
+        authorizationCache.invalidate();
     }
 
     /**
@@ -441,6 +447,16 @@ public class Context
         }
 
         events.add(event);
+
+        // Whatever changed may change an authorization decision
+        if (event.getSubjectType() == Constants.GROUP || event.getSubjectType() == Constants.EPERSON)
+        {
+            authorizationCache.invalidate();
+        }
+        else
+        {
+            authorizationCache.invalidateDecisions();
+        }
     }
 
     /**
@@ -557,13 +573,13 @@ public class Context
      */
     public Object fromCache(Class<?> objectClass, int id)
     {
-        String key = objectClass.getName() + id;
-
-        return objectCache.get(key);
+        return objectCache.get(objectClass, id);
     }
 
     /**
-     * Store an object in the object cache.
+     * Store an object in the object cache. If this takes the object's class
+     * over its configured limit, other unmodified objects of that class may
+     * be evicted.
      * 
      * @param o
      *            the object to store
@@ -575,8 +591,7 @@ public class Context
         // bypass cache if in read-only mode
         if (! isReadOnly())
         {
-            String key = o.getClass().getName() + id;
-            objectCache.put(key, o);
+            objectCache.put(o, id);
         }
     }
 
@@ -590,8 +605,7 @@ public class Context
      */
     public void removeCached(Object o, int id)
     {
-        String key = o.getClass().getName() + id;
-        objectCache.remove(key);
+        objectCache.remove(o.getClass(), id);
     }
 
     /**
@@ -600,6 +614,7 @@ public class Context
     public void clearCache()
     {
         objectCache.clear();
+        authorizationCache.invalidateDecisions();
     }
 
     /**
@@ -618,6 +633,30 @@ public class Context
         return objectCache.size();
     }
 
+    /**
+     * Get the hit, miss and eviction counters of the object cache, together
+     * with the number of cached objects of each class. Like
+     * {@link #getCacheSize()}, this is meant for instrumenting long running
+     * jobs.
+     *
+     * @return a snapshot of the object cache statistics
+     */
+    public ContextCache.Stats getCacheStats()
+    {
+        return objectCache.getStats();
+    }
+
+    /**
+     * Get the group memberships and authorization decisions remembered for
+     * this context.
+     *
+     * @return the authorization cache of this context
+     */
+    public AuthorizationCache getAuthorizationCache()
+    {
+        return authorizationCache;
+    }
+
     /**
      * set membership in a special group
      * 
@@ -627,6 +666,7 @@ public class Context
     public void setSpecialGroup(int groupID)
     {
         specialGroups.add(Integer.valueOf(groupID));
+        authorizationCache.invalidate();
 
         // System.out.println("Added " + groupID);
     }
@@ -649,6 +689,36 @@ public class Context
         return false;
     }
 
+    /**
+     * Create a context for a worker thread which acts on behalf of this one:
+     * it has its own database connection, but the same current user, locale,
+     * special groups, event dispatcher and authorisation state, so that work
+     * done in it is allowed or refused just as it would be in this context.
+     *
+     * @return the new context
+     * @throws SQLException
+     *             if there was an error obtaining a database connection
+     */
+    public Context createWorkerContext() throws SQLException
+    {
+        Context worker = new Context(options);
+        worker.setCurrentUser(currentUser);
+        worker.setCurrentLocale(currentLocale);
+        for (Integer groupID : specialGroups)
+        {
+            worker.setSpecialGroup(groupID.intValue());
+        }
+        if (dispName != null)
+        {
+            worker.setDispatcher(dispName);
+        }
+        if (ignoreAuth)
+        {
+            worker.turnOffAuthorisationSystem();
+        }
+        return worker;
+    }
+
     /**
      * Get an array of all of the special groups that current user is a member
      * of.
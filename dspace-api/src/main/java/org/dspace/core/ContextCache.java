@@ -0,0 +1,255 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.dspace.content.DSpaceObject;
+
+/**
+ * Identity map backing the object cache of a {@link Context}. Objects are
+ * held in a separate map per Java class, keyed on their integer ID.
+ * <P>
+ * Each class can be given a maximum number of cached objects through
+ * <code>context.cache.limit.&lt;SimpleClassName&gt;</code>, falling back to
+ * <code>context.cache.limit</code> (0, the default, means unlimited). When a
+ * map grows past its limit, the least recently used objects (or the oldest
+ * ones, if <code>context.cache.eviction = fifo</code>) are evicted, except for
+ * DSpace objects which report unsaved changes through
+ * {@link DSpaceObject#isModified()}; those are never dropped.
+ * <P>
+ * Not thread safe, like the Context which owns it.
+ *
+ * @see Context#fromCache(Class, int)
+ * @see Context#cache(Object, int)
+ */
+public class ContextCache
+{
+    /** Per class identity maps */
+    private final Map<Class<?>, TypeCache> caches = new HashMap<Class<?>, TypeCache>();
+
+    /** Whether entries are reordered on access (LRU) or kept in insertion order (FIFO) */
+    private final boolean accessOrder;
+
+    /** Default per class limit, 0 for unlimited */
+    private final int defaultLimit;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    ContextCache()
+    {
+        this(ConfigurationManager.getIntProperty("context.cache.limit", 0),
+                !"fifo".equalsIgnoreCase(ConfigurationManager.getProperty("context.cache.eviction")));
+    }
+
+    /**
+     * @param defaultLimit limit for classes without a specific limit, 0 for unlimited
+     * @param accessOrder <code>true</code> for LRU eviction, <code>false</code> for FIFO
+     */
+    ContextCache(int defaultLimit, boolean accessOrder)
+    {
+        this.defaultLimit = Math.max(0, defaultLimit);
+        this.accessOrder = accessOrder;
+    }
+
+    /**
+     * Look up a cached object.
+     *
+     * @param objectClass Java class of the object
+     * @param id ID of the object
+     * @return the cached object, or <code>null</code>
+     */
+    Object get(Class<?> objectClass, int id)
+    {
+        TypeCache cache = caches.get(objectClass);
+        Object o = (cache == null) ? null : cache.get(Integer.valueOf(id));
+        if (o == null)
+        {
+            misses++;
+        }
+        else
+        {
+            hits++;
+        }
+        return o;
+    }
+
+    /**
+     * Cache an object, evicting other objects of the same class if this takes
+     * the class over its limit.
+     *
+     * @param o the object
+     * @param id ID of the object
+     */
+    void put(Object o, int id)
+    {
+        Class<?> objectClass = o.getClass();
+        TypeCache cache = caches.get(objectClass);
+        if (cache == null)
+        {
+            int limit = ConfigurationManager.getIntProperty("context.cache.limit." + objectClass.getSimpleName(),
+                    defaultLimit);
+            cache = new TypeCache(Math.max(0, limit), accessOrder);
+            caches.put(objectClass, cache);
+        }
+
+        cache.put(Integer.valueOf(id), o);
+        if (cache.limit > 0 && cache.size() > cache.limit)
+        {
+            evict(cache, o);
+        }
+    }
+
+    /**
+     * Remove an object from the cache.
+     *
+     * @param objectClass Java class of the object
+     * @param id ID of the object
+     */
+    void remove(Class<?> objectClass, int id)
+    {
+        TypeCache cache = caches.get(objectClass);
+        if (cache != null)
+        {
+            cache.remove(Integer.valueOf(id));
+        }
+    }
+
+    /**
+     * Remove every object from the cache. Statistics are kept.
+     */
+    void clear()
+    {
+        caches.clear();
+    }
+
+    /**
+     * @return the total number of cached objects, over all classes
+     */
+    int size()
+    {
+        int size = 0;
+        for (TypeCache cache : caches.values())
+        {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return a snapshot of the cache counters
+     */
+    Stats getStats()
+    {
+        Map<String, Integer> sizes = new HashMap<String, Integer>();
+        for (Map.Entry<Class<?>, TypeCache> entry : caches.entrySet())
+        {
+            sizes.put(entry.getKey().getSimpleName(), Integer.valueOf(entry.getValue().size()));
+        }
+        return new Stats(hits, misses, evictions, sizes);
+    }
+
+    /**
+     * Walk the map from its eldest entry and drop clean objects until the map
+     * is back within its limit. The object just added is never evicted.
+     */
+    private void evict(TypeCache cache, Object justAdded)
+    {
+        Iterator<Object> it = cache.values().iterator();
+        while (cache.size() > cache.limit && it.hasNext())
+        {
+            Object candidate = it.next();
+            if (candidate != justAdded && !isDirty(candidate))
+            {
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    private static boolean isDirty(Object o)
+    {
+        return (o instanceof DSpaceObject) && ((DSpaceObject) o).isModified();
+    }
+
+    /**
+     * Identity map for a single class.
+     */
+    private static class TypeCache extends LinkedHashMap<Integer, Object>
+    {
+        private final int limit;
+
+        TypeCache(int limit, boolean accessOrder)
+        {
+            super(16, 0.75f, accessOrder);
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the counters of a Context's object cache.
+     */
+    public static class Stats
+    {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final Map<String, Integer> sizes;
+
+        Stats(long hits, long misses, long evictions, Map<String, Integer> sizes)
+        {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.sizes = sizes;
+        }
+
+        /**
+         * @return number of lookups which found an object
+         */
+        public long getHits()
+        {
+            return hits;
+        }
+
+        /**
+         * @return number of lookups which found nothing
+         */
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        /**
+         * @return number of objects dropped to keep within the limits
+         */
+        public long getEvictions()
+        {
+            return evictions;
+        }
+
+        /**
+         * @return number of cached objects per simple class name
+         */
+        public Map<String, Integer> getSizes()
+        {
+            return new HashMap<String, Integer>(sizes);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", sizes=" + sizes;
+        }
+    }
+}
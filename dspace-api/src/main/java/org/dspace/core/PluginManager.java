@@ -15,13 +15,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
@@ -57,6 +62,12 @@ import org.apache.log4j.Logger;
  *  any characters except for comma (,) and equals (=).  It may contain
  *  embedded spaces.  Comma is a special character used to separate
  *  names in the configuration entry.
+ *  <p>
+ *  The Plugin Manager is safe to use from many threads at once. Each plugin
+ *  class and its constructor are looked up once and kept, and a reusable
+ *  plugin is instantiated only once; the configuration and classes of all
+ *  the plugins can be loaded ahead of the first request with
+ *  {@link #warmUp()}.
  *
  * @author Larry Stone
  * @see SelfNamedPlugin
@@ -83,6 +94,15 @@ public class PluginManager
     // this character separates the words.
     private static final String SEP = "\034";
 
+    // Value of the key of an interface in namedPluginClasses, once the
+    // interface's configuration has been loaded
+    private static final String MARKER = "org.dspace.core.marker";
+
+    // Held while creating a reusable instance, so that only one is created.
+    // A single lock, so that plugins whose constructors get other plugins
+    // cannot deadlock each other.
+    private static final Object instanceLock = new Object();
+
     /** Paths to search for third-party plugins. */
     private static final String[] classPath;
     static {
@@ -99,7 +119,11 @@ public class PluginManager
 
     // Map of plugin class to "reusable" metric (as Boolean, must be Object)
     // Key is Class, value is Boolean (true by default).
-    private static Map<Class<Object>, Boolean> cacheMeCache = new HashMap<Class<Object>, Boolean>();
+    private static Map<Class<Object>, Boolean> cacheMeCache = new ConcurrentHashMap<Class<Object>, Boolean>();
+
+    // Map of plugin class name to its no-argument constructor, so that
+    // neither is looked up by reflection more than once.
+    private static Map<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>();
 
     /**
      * Whether or not to cache instances of this class. Ironically,
@@ -185,7 +209,7 @@ public class PluginManager
 
     // cache of config data for Sequence Plugins; format its
     // <interface-name> -> [ <classname>.. ]  (value is Array)
-    private static Map<String, String[]> sequenceConfig = new HashMap<String, String[]>();
+    private static Map<String, String[]> sequenceConfig = new ConcurrentHashMap<String, String[]>();
 
     /**
      * Returns instances of all plugins that implement the interface
@@ -224,8 +248,8 @@ public class PluginManager
         // cache the configuration for this interface after grovelling it once:
         // format is  prefix.<interface> = <classname>
         String iname = intfc.getName();
-        String classname[] = null;
-        if (!sequenceConfig.containsKey(iname))
+        String classname[] = sequenceConfig.get(iname);
+        if (classname == null)
         {
             String val = getConfigProperty(module, SEQUENCE_PREFIX+iname);
             if (val == null)
@@ -236,10 +260,6 @@ public class PluginManager
             classname = val.trim().split("\\s*,\\s*");
             sequenceConfig.put(iname, classname);
         }
-        else
-        {
-            classname = sequenceConfig.get(iname);
-        }
 
         Object result[] = (Object[])Array.newInstance(intfc, classname.length);
         for (int i = 0; i < classname.length; ++i)
@@ -252,7 +272,7 @@ public class PluginManager
 
 
     // Map of cached (reusable) single plugin instances - class -> instance.
-    private static Map<Serializable, Object> anonymousInstanceCache = new HashMap<Serializable, Object>();
+    private static Map<Serializable, Object> anonymousInstanceCache = new ConcurrentHashMap<Serializable, Object>();
 
     // Get possibly-cached plugin instance for un-named plugin,
     // this is shared by Single and Sequence plugins.
@@ -261,20 +281,15 @@ public class PluginManager
     {
         try
         {
-            Class pluginClass = Class.forName(classname, true, loader);
+            Constructor<?> constructor = getConstructor(classname);
+            Class pluginClass = constructor.getDeclaringClass();
             if (cacheMe(module, pluginClass))
             {
-                Object cached = anonymousInstanceCache.get(pluginClass);
-                if (cached == null)
-                {
-                    cached = pluginClass.newInstance();
-                    anonymousInstanceCache.put(pluginClass, cached);
-                }
-                return cached;
+                return getCachedInstance(anonymousInstanceCache, pluginClass, constructor, null);
             }
             else
             {
-                return pluginClass.newInstance();
+                return newInstance(constructor, null);
             }
         }
         catch (ClassNotFoundException e)
@@ -282,6 +297,78 @@ public class PluginManager
             throw new PluginInstantiationException("Cannot load plugin class: " +
             		                               e.toString(), e);
         }
+    }
+
+    // Get the no-argument constructor of a plugin class, loading the
+    // class the first time.
+    private static Constructor<?> getConstructor(String classname)
+        throws ClassNotFoundException
+    {
+        Constructor<?> constructor = constructors.get(classname);
+        if (constructor == null)
+        {
+            try
+            {
+                constructor = Class.forName(classname, true, loader).getDeclaredConstructor();
+            }
+            catch (NoSuchMethodException e)
+            {
+                throw new PluginInstantiationException("Plugin class has no constructor without arguments: "
+                        + classname, e);
+            }
+            constructors.put(classname, constructor);
+        }
+        return constructor;
+    }
+
+    // Get the instance of a reusable plugin, creating it only the first time.
+    private static Object getCachedInstance(Map<Serializable, Object> cache, Serializable key,
+            Constructor<?> constructor, String name)
+        throws PluginInstantiationException
+    {
+        Object cached = cache.get(key);
+        if (cached == null)
+        {
+            synchronized (instanceLock)
+            {
+                cached = cache.get(key);
+                if (cached == null)
+                {
+                    cached = newInstance(constructor, name);
+                    cache.put(key, cached);
+                }
+            }
+        }
+        return cached;
+    }
+
+    // Create a plugin instance, giving it its name if it is self-named.
+    private static Object newInstance(Constructor<?> constructor, String name)
+        throws PluginInstantiationException
+    {
+        try
+        {
+            Object result = constructor.newInstance();
+            if (name != null && result instanceof SelfNamedPlugin)
+            {
+                ((SelfNamedPlugin) result).setPluginInstanceName(name);
+            }
+            return result;
+        }
+        catch (InvocationTargetException e)
+        {
+            // as Class.newInstance() would, pass on what the constructor threw
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new PluginInstantiationException(cause);
+        }
         catch (InstantiationException e)
         {
             throw new PluginInstantiationException(e);
@@ -294,14 +381,27 @@ public class PluginManager
 
     // Map of named plugin classes, [intfc,name] -> class
     // Also contains intfc -> "marker" to mark when interface has been loaded.
-    private static Map<String, String> namedPluginClasses = new HashMap<String, String>();
+    private static Map<String, String> namedPluginClasses = new ConcurrentHashMap<String, String>();
 
     // Map of cached (reusable) named plugin instances, [class,name] -> instance
-    private static Map<Serializable, Object> namedInstanceCache = new HashMap<Serializable, Object>();
+    private static Map<Serializable, Object> namedInstanceCache = new ConcurrentHashMap<Serializable, Object>();
 
-    // load and cache configuration data for the given interface.
+    // load and cache configuration data for the given interface, once.
     private static void configureNamedPlugin(String module, String iname)
         throws ClassNotFoundException
+    {
+        if (!namedPluginClasses.containsKey(iname))
+        {
+            synchronized (namedPluginClasses)
+            {
+                loadNamedPlugin(module, iname);
+            }
+        }
+    }
+
+    // load and cache configuration data for the given interface.
+    private static void loadNamedPlugin(String module, String iname)
+        throws ClassNotFoundException
     {
         int found = 0;
 
@@ -377,7 +477,7 @@ public class PluginManager
                     }
                 }
             }
-            namedPluginClasses.put(iname, "org.dspace.core.marker");
+            namedPluginClasses.put(iname, MARKER);
             if (found == 0)
             {
                 log.error("No named plugins found for interface=" + iname);
@@ -450,22 +550,17 @@ public class PluginManager
             }
             else
             {
-                Class pluginClass = Class.forName(cname, true, loader);
-                if (cacheMe(module, pluginClass))
+                Constructor<?> constructor = getConstructor(cname);
+                if (cacheMe(module, constructor.getDeclaringClass()))
                 {
-                    String nkey = pluginClass.getName() + SEP + name;
+                    String nkey = cname + SEP + name;
                     Object cached = namedInstanceCache.get(nkey);
                     if (cached == null)
                     {
                         log.debug("Creating cached instance of: " + cname +
                                           " for interface=" + iname +
                                           " pluginName=" + name );
-                        cached = pluginClass.newInstance();
-                        if (cached instanceof SelfNamedPlugin)
-                        {
-                            ((SelfNamedPlugin) cached).setPluginInstanceName(name);
-                        }
-                        namedInstanceCache.put(nkey, cached);
+                        cached = getCachedInstance(namedInstanceCache, nkey, constructor, name);
                     }
                     return cached;
                 }
@@ -474,12 +569,7 @@ public class PluginManager
                         log.debug("Creating UNcached instance of: " + cname +
                                   " for interface=" + iname +
                                   " pluginName=" + name );
-                    Object result = pluginClass.newInstance();
-                    if (result instanceof SelfNamedPlugin)
-                    {
-                        ((SelfNamedPlugin) result).setPluginInstanceName(name);
-                    }
-                    return result;
+                    return newInstance(constructor, name);
                 }
             }
         }
@@ -488,14 +578,6 @@ public class PluginManager
             throw new PluginInstantiationException("Cannot load plugin class: " +
             		                               e.toString(), e);
         }
-        catch (InstantiationException e)
-        {
-            throw new PluginInstantiationException(e);
-        }
-        catch (IllegalAccessException e)
-        {
-            throw new PluginInstantiationException(e);
-        }
 
         return null;
     }
@@ -603,6 +685,82 @@ public class PluginManager
         }
     }
 
+    /**
+     * Loads the configuration of all the named plugins, and the classes
+     * and constructors of all the plugins configured, so that the first
+     * requests for them do not have to. No plugin is instantiated. Classes
+     * which cannot be loaded are logged, and requests for their plugins
+     * fail just as they would have.
+     *
+     * @return the number of plugin classes loaded
+     */
+    public static int warmUp()
+    {
+        Set<String> classnames = new HashSet<String>();
+        Enumeration<String> pne = (Enumeration<String>)ConfigurationManager.propertyNames();
+        while (pne.hasMoreElements())
+        {
+            String key = pne.nextElement();
+            String val = ConfigurationManager.getProperty(key);
+            if (val == null)
+            {
+                continue;
+            }
+            if (key.startsWith(SINGLE_PREFIX))
+            {
+                classnames.add(val.trim());
+            }
+            else if (key.startsWith(SEQUENCE_PREFIX))
+            {
+                classnames.addAll(Arrays.asList(val.trim().split("\\s*,\\s*")));
+            }
+            else if (key.startsWith(NAMED_PREFIX) || key.startsWith(SELFNAMED_PREFIX))
+            {
+                String iname = key.substring(key.startsWith(NAMED_PREFIX)
+                        ? NAMED_PREFIX.length() : SELFNAMED_PREFIX.length());
+                try
+                {
+                    configureNamedPlugin(null, iname);
+                }
+                catch (ClassNotFoundException e)
+                {
+                    log.warn("Cannot load named plugins of " + iname + ": " + e.toString());
+                }
+            }
+        }
+        for (String cname : namedPluginClasses.values())
+        {
+            if (!MARKER.equals(cname))
+            {
+                classnames.add(cname);
+            }
+        }
+
+        int loaded = 0;
+        for (String cname : classnames)
+        {
+            try
+            {
+                getConstructor(cname);
+                ++loaded;
+            }
+            catch (ClassNotFoundException e)
+            {
+                log.warn("Cannot load plugin class: " + e.toString());
+            }
+            catch (PluginInstantiationException e)
+            {
+                log.warn(e.getMessage());
+            }
+            catch (LinkageError e)
+            {
+                log.warn("Cannot load plugin class " + cname + ": " + e.toString());
+            }
+        }
+        log.info("Loaded " + loaded + " of " + classnames.size() + " plugin classes");
+        return loaded;
+    }
+
     /**
      * Tells the Plugin Manager to let go of any references to a
      * reusable plugin, to prevent it from being given out again and to
@@ -9,7 +9,11 @@ package org.dspace.curate;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -52,6 +56,8 @@ public class CurationCli
                 "maximum number of objects allowed in context cache. If absent, no limit");
         options.addOption("s", "scope", true,
                 "transaction scope to impose: use 'object', 'curation', or 'open'. If absent, 'open' applies");
+        options.addOption("p", "parallel", true,
+                "number of threads performing the items of a container, each with its own context. If absent, 1");
         options.addOption("v", "verbose", false,
                 "report activity to stdout");
         options.addOption("h", "help", false, "help");
@@ -66,6 +72,7 @@ public class CurationCli
         String reporterName = null;
         String limit = null;
         String scope = null;
+        String parallel = null;
         boolean verbose = false;
 
         if (line.hasOption('h'))
@@ -78,6 +85,8 @@ public class CurationCli
                     .println("single item: CurationCli -t generate -i itemId");
             System.out
                     .println("task queue: CurationCli -q monthly");
+            System.out
+                    .println("parallel: CurationCli -t profileformats -i all -p 4");
             System.exit(0);
         }
 
@@ -121,6 +130,11 @@ public class CurationCli
             scope = line.getOptionValue('s');
         }
 
+        if (line.hasOption('p'))
+        { // worker threads
+            parallel = line.getOptionValue('p');
+        }
+
         if (line.hasOption('v'))
         { // verbose
             verbose = true;
@@ -145,6 +159,12 @@ public class CurationCli
         	System.exit(1);
         }
         
+        if (parallel != null && Integer.parseInt(parallel) <= 0)
+        {
+            System.out.println("Thread count '" + parallel + "' must be a positive integer");
+            System.exit(1);
+        }
+
         if (scope != null && Curator.TxScope.valueOf(scope.toUpperCase()) == null)
     	{
         	System.out.println("Bad transaction scope '" + scope + "': only 'object', 'curation' or 'open' recognized");
@@ -181,9 +201,14 @@ public class CurationCli
         	Curator.TxScope txScope = Curator.TxScope.valueOf(scope.toUpperCase());
         	curator.setTransactionScope(txScope);
         }
+        if (parallel != null)
+        {
+            curator.setParallelism(Integer.parseInt(parallel));
+        }
         // we are operating in batch mode, if anyone cares.
         curator.setInvoked(Curator.Invoked.BATCH);
         // load curation tasks
+        List<String> taskNames = new ArrayList<String>();
         if (taskName != null)
         {
             if (verbose)
@@ -191,6 +216,7 @@ public class CurationCli
                 System.out.println("Adding task: " + taskName);
             }
             curator.addTask(taskName);
+            taskNames.add(taskName);
             if (verbose && ! curator.hasTask(taskName))
             {
                 System.out.println("Task: " + taskName + " not resolved");
@@ -210,6 +236,7 @@ public class CurationCli
                         System.out.println("Adding task: " + taskName);
                     }
                     curator.addTask(taskName);
+                    taskNames.add(taskName);
                 }
             }
             finally
@@ -241,6 +268,13 @@ public class CurationCli
             {
                 curator.curate(c, idName);
             }
+            if (verbose)
+            {
+                for (String task : taskNames)
+                {
+                    System.out.println("Task: " + task + " status counts: " + curator.getStatusCounts(task));
+                }
+            }
         }
         else
         {
@@ -251,38 +285,54 @@ public class CurationCli
                 System.out.println("No implementation configured for queue");
                 throw new UnsupportedOperationException("No queue service available");
             }
-            // use current time as our reader 'ticket'
-            long ticket = System.currentTimeMillis();
-            Iterator<TaskQueueEntry> entryIter = queue.dequeue(taskQueueName, ticket).iterator();
-            while (entryIter.hasNext())
+            if (verbose && queue instanceof DBTaskQueue)
             {
-                TaskQueueEntry entry = entryIter.next();
-                if (verbose)
-                {
-                    System.out.println("Curating id: " + entry.getObjectId());
-                }
-                curator.clear();
-                // does entry relate to a DSO or workflow object?
-                if (entry.getObjectId().indexOf("/") > 0)
+                DBTaskQueue dbQueue = (DBTaskQueue) queue;
+                System.out.println("Queue " + taskQueueName + ": " + dbQueue.getDepth(taskQueueName) +
+                                   " entries waiting, " + dbQueue.getLeased(taskQueueName) + " leased");
+            }
+            // use current time as our reader 'ticket', made distinct from
+            // other readers of a queue which several may drain at once
+            long ticket = System.currentTimeMillis() * 1000 + new Random().nextInt(1000);
+            // read batches until the queue is empty
+            Set<TaskQueueEntry> entries;
+            do
+            {
+                entries = queue.dequeue(taskQueueName, ticket);
+                Iterator<TaskQueueEntry> entryIter = entries.iterator();
+                while (entryIter.hasNext())
                 {
-                    for (String task : entry.getTaskNames())
+                    TaskQueueEntry entry = entryIter.next();
+                    if (verbose)
                     {
-                        curator.addTask(task);
+                        System.out.println("Curating id: " + entry.getObjectId());
                     }
-                    curator.curate(c, entry.getObjectId());
-                }
-                else
-                {
-                    // make eperson who queued task the effective user
-                    EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
-                    if (agent != null)
+                    curator.clear();
+                    // does entry relate to a DSO or workflow object?
+                    if (entry.getObjectId().indexOf("/") > 0)
+                    {
+                        for (String task : entry.getTaskNames())
+                        {
+                            curator.addTask(task);
+                        }
+                        curator.curate(c, entry.getObjectId());
+                    }
+                    else
                     {
-                        c.setCurrentUser(agent);
+                        // make eperson who queued task the effective user
+                        EPerson agent = EPerson.findByEmail(c, entry.getEpersonId());
+                        if (agent != null)
+                        {
+                            c.setCurrentUser(agent);
+                        }
+                        WorkflowCurator.curate(curator, c, entry.getObjectId());
                     }
-                    WorkflowCurator.curate(curator, c, entry.getObjectId());
                 }
+                // keep the work of this batch before its entries are removed
+                c.commit();
+                queue.release(taskQueueName, ticket, true);
             }
-            queue.release(taskQueueName, ticket, true);
+            while (! entries.isEmpty());
         }
         c.complete();
         if (verbose)
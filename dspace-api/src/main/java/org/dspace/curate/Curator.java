@@ -13,12 +13,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
 import org.dspace.content.Collection;
 import org.dspace.content.Community;
 import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
 import org.dspace.content.ItemIterator;
 import org.dspace.content.Site;
 import org.dspace.core.Constants;
@@ -66,6 +72,9 @@ public class Curator
     private TaskResolver resolver = new TaskResolver();
     private int cacheLimit = Integer.MAX_VALUE;
     private TxScope txScope = TxScope.OPEN;
+    private int threads = 1;
+    // curator whose items this one performs, in parallel mode
+    private Curator parent = null;
 
     /**
      * No-arg constructor
@@ -74,6 +83,20 @@ public class Curator
     {
     }
 
+    /**
+     * Constructor for a worker of a parallel performance: it has its own
+     * instance of the task, and reports status and results to the parent.
+     */
+    private Curator(Curator parent, String taskName)
+    {
+        this.parent = parent;
+        this.reporter = parent.reporter;
+        this.iMode = parent.iMode;
+        this.cacheLimit = parent.cacheLimit;
+        this.txScope = parent.txScope;
+        addTask(taskName);
+    }
+
     /**
      * Add a task to the set to be performed. Caller should make no assumptions
      * on execution ordering.
@@ -181,6 +204,29 @@ public class Curator
     	return this;
     }
 
+    /**
+     * Sets the number of threads which perform a task on the items of a
+     * container (site, community or collection). The default is 1, which
+     * performs every object in turn on the caller's thread and context.
+     * <P>
+     * With more threads, the containers are still performed on the caller's
+     * thread, while their items are spread across a pool of workers. Each
+     * worker has its own Context, for the same user, and its own instance
+     * of the task, so tasks need not be thread-safe. A worker commits as
+     * the transaction scope says and completes its context at the end.
+     * Items may be performed in any order.
+     * <P>
+     * Distributive tasks, which walk the container themselves, are never
+     * spread. Nor are Mutative tasks unless the scope is 'object': in the
+     * 'curation' and 'open' scopes their changes must share the caller's
+     * transaction, so they are performed in turn as before.
+     */
+    public Curator setParallelism(int threads)
+    {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
     /**
      * Performs all configured tasks upon object identified by id. If
      * the object can be resolved as a handle, the DSO will be the
@@ -258,18 +304,31 @@ public class Curator
             if (type == Constants.ITEM || tr.task.isDistributive())
             {
                 tr.run(dso);
+                continue;
             }
-            else if (type == Constants.COLLECTION)
+            // items go to a pool of workers, if the task allows it
+            ParallelWalk walk = isParallel(tr) ? new ParallelWalk(taskName) : null;
+            try
             {
-                doCollection(tr, (Collection)dso);
+                if (type == Constants.COLLECTION)
+                {
+                    doCollection(tr, (Collection)dso, walk);
+                }
+                else if (type == Constants.COMMUNITY)
+                {
+                    doCommunity(tr, (Community)dso, walk);
+                }
+                else if (type == Constants.SITE)
+                {
+                    doSite(tr, (Site) dso, walk);
+                }
             }
-            else if (type == Constants.COMMUNITY)
+            finally
             {
-                doCommunity(tr, (Community)dso);
-            }  
-            else if (type == Constants.SITE)
-            {
-                doSite(tr, (Site) dso);    
+                if (walk != null)
+                {
+                    walk.finish();
+                }
             }
         }
     }
@@ -311,16 +370,25 @@ public class Curator
     }
 
     /**
-     * Adds a message to the configured reporting stream.
+     * Adds a message to the configured reporting stream. The workers of a
+     * parallel performance report to their parent, one message at a time.
      * 
      * @param message the message to output to the reporting stream.
      */
     public void report(String message)
     {
-        // Stub for now
-        if ("-".equals(reporter))
+        if (parent != null)
         {
-            System.out.println(message);
+            parent.report(message);
+            return;
+        }
+        synchronized (this)
+        {
+            // Stub for now
+            if ("-".equals(reporter))
+            {
+                System.out.println(message);
+            }
         }
     }
 
@@ -348,6 +416,21 @@ public class Curator
         return (tr != null) ? tr.result : null;
     }
 
+    /**
+     * Returns how many performances of the named task ended with each
+     * status code, since the task was added. In parallel mode this is the
+     * summary of a run, as the latest status is that of whichever item
+     * happened to finish last.
+     * 
+     * @param taskName the task name
+     * @return a map from status code to count, empty if the task is unknown
+     */
+    public Map<Integer, Integer> getStatusCounts(String taskName)
+    {
+        TaskRunner tr = trMap.get(taskName);
+        return (tr != null) ? tr.getCounts() : new HashMap<Integer, Integer>();
+    }
+
     /**
      * Assigns a result to the performance of the named task.
      * 
@@ -402,10 +485,11 @@ public class Curator
      * Run task for entire Site (including all Communities, Collections & Items)
      * @param tr TaskRunner
      * @param site DSpace Site object
+     * @param walk workers for the items, or null to perform them in turn
      * @return true if successful, false otherwise
      * @throws IOException 
      */
-    private boolean doSite(TaskRunner tr, Site site) throws IOException
+    private boolean doSite(TaskRunner tr, Site site, ParallelWalk walk) throws IOException
     {
         Context ctx = null;
         try
@@ -432,7 +516,7 @@ public class Curator
             // (this will recursively perform task for all objects in DSpace)
             for (Community subcomm : Community.findAllTop(ctx))
             {
-                if (! doCommunity(tr, subcomm))
+                if (! doCommunity(tr, subcomm, walk))
                 {
                     return false;
                 }
@@ -450,10 +534,11 @@ public class Curator
      * Run task for Community along with all sub-communities and collections.
      * @param tr TaskRunner
      * @param comm Community
+     * @param walk workers for the items, or null to perform them in turn
      * @return true if successful, false otherwise
      * @throws IOException 
      */
-    private boolean doCommunity(TaskRunner tr, Community comm) throws IOException
+    private boolean doCommunity(TaskRunner tr, Community comm, ParallelWalk walk) throws IOException
     {
         try
         {
@@ -463,14 +548,14 @@ public class Curator
             }
             for (Community subcomm : comm.getSubcommunities())
             {
-                if (! doCommunity(tr, subcomm))
+                if (! doCommunity(tr, subcomm, walk))
                 {
                     return false;
                 }
             }
             for (Collection coll : comm.getCollections())
             {
-                if (! doCollection(tr, coll))
+                if (! doCollection(tr, coll, walk))
                 {
                     return false;
                 }
@@ -487,10 +572,11 @@ public class Curator
      * Run task for Collection along with all Items in that collection.
      * @param tr TaskRunner
      * @param coll Collection
+     * @param walk workers for the items, or null to perform them in turn
      * @return true if successful, false otherwise
      * @throws IOException 
      */
-    private boolean doCollection(TaskRunner tr, Collection coll) throws IOException
+    private boolean doCollection(TaskRunner tr, Collection coll, ParallelWalk walk) throws IOException
     {
         try
         {
@@ -501,7 +587,15 @@ public class Curator
             ItemIterator iter = coll.getItems();
             while (iter.hasNext())
             {
-                if (! tr.run(iter.next()))
+                if (walk != null)
+                {
+                    // only the id: the worker reads the item in its own context
+                    if (! walk.submit(iter.nextID()))
+                    {
+                        return false;
+                    }
+                }
+                else if (! tr.run(iter.next()))
                 {
                     return false;
                 }
@@ -514,6 +608,16 @@ public class Curator
         return true;
     }
     
+    /**
+     * Whether the items of a container may be spread across workers for
+     * a task: see {@link #setParallelism(int)}.
+     */
+    private boolean isParallel(TaskRunner tr)
+    {
+        return threads > 1 && parent == null &&
+               (! tr.task.isMutative() || txScope.equals(TxScope.OBJECT));
+    }
+
     /**
      * Record a 'visit' to a DSpace object and enforce any policies set
      * on this curator.
@@ -544,8 +648,11 @@ public class Curator
     private class TaskRunner
     {
         ResolvedTask task = null;
-        int statusCode = CURATE_UNSET;
-        String result = null;
+        // written by the workers of a parallel performance
+        volatile int statusCode = CURATE_UNSET;
+        volatile String result = null;
+        // number of performances by status code, guarded by this
+        private final Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
 
         public TaskRunner(ResolvedTask task)
         {
@@ -561,6 +668,7 @@ public class Curator
                     throw new IOException("DSpaceObject is null");
                 }
                 statusCode = task.perform(dso);
+                count();
                 String id = (dso.getHandle() != null) ? dso.getHandle() : "workflow item: " + dso.getID();
                 log.info(logMessage(id));
                 visit(dso);
@@ -583,6 +691,7 @@ public class Curator
                     throw new IOException("Context or identifier is null");
                 }
                 statusCode = task.perform(c, id);
+                count();
                 log.info(logMessage(id));
                 visit(null);
                 return ! suspend(statusCode);
@@ -599,6 +708,29 @@ public class Curator
         {
             this.result = result;
         }
+
+        /**
+         * Counts the latest performance, on the parent's runner for a
+         * worker, so the caller sees the status and result of every item.
+         */
+        private void count()
+        {
+            TaskRunner tr = (parent != null) ? parent.trMap.get(task.getName()) : this;
+            tr.record(statusCode, result);
+        }
+
+        private synchronized void record(int code, String res)
+        {
+            statusCode = code;
+            result = res;
+            Integer count = counts.get(code);
+            counts.put(code, (count != null) ? count + 1 : 1);
+        }
+
+        private synchronized Map<Integer, Integer> getCounts()
+        {
+            return new HashMap<Integer, Integer>(counts);
+        }
         
         private boolean suspend(int code)
         {
@@ -634,4 +766,170 @@ public class Curator
             return mb.toString();
         }
     }
+
+    /**
+     * A pool of workers performing a task on the items which a walk of
+     * the containers submits. Each worker has its own context, a worker
+     * context of the caller's set as the curation context of its thread,
+     * and its own curator for the task.
+     */
+    private class ParallelWalk
+    {
+        private final String taskName;
+        private final Context callerCtx;
+        private final BlockingQueue<Integer> itemIds;
+        private final ExecutorService pool;
+        // no more items will be submitted
+        private volatile boolean done = false;
+        // a task asked to suspend the performance
+        private volatile boolean suspended = false;
+        // first failure of a worker
+        private volatile IOException failure = null;
+
+        ParallelWalk(String taskName) throws IOException
+        {
+            this.taskName = taskName;
+            try
+            {
+                callerCtx = curationContext();
+            }
+            catch (SQLException sqlE)
+            {
+                throw new IOException(sqlE.getMessage(), sqlE);
+            }
+            itemIds = new ArrayBlockingQueue<Integer>(threads * 16);
+            pool = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++)
+            {
+                pool.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        work();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Queues an item for the workers, waiting while they are busy.
+         *
+         * @return false if the walk should stop
+         */
+        boolean submit(int itemId) throws IOException
+        {
+            try
+            {
+                while (! suspended && failure == null)
+                {
+                    if (itemIds.offer(itemId, 100, TimeUnit.MILLISECONDS))
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while queueing items", e);
+            }
+        }
+
+        /**
+         * Waits for the workers to perform the queued items.
+         *
+         * @throws IOException the first failure of a worker
+         */
+        void finish() throws IOException
+        {
+            done = true;
+            pool.shutdown();
+            try
+            {
+                while (! pool.awaitTermination(1, TimeUnit.MINUTES))
+                {
+                    log.info("Waiting for " + itemIds.size() + " items of task '" + taskName + "'");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for workers", e);
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+
+        private void work()
+        {
+            Context ctx = null;
+            try
+            {
+                // same user, special groups and authorisation as the caller
+                ctx = callerCtx.createWorkerContext();
+                curationCtx.set(ctx);
+                TaskRunner tr = new Curator(Curator.this, taskName).trMap.get(taskName);
+                if (tr == null)
+                {
+                    throw new IOException("Task: '" + taskName + "' could not be initialized for a worker");
+                }
+                while (! suspended && failure == null)
+                {
+                    Integer itemId = itemIds.poll(100, TimeUnit.MILLISECONDS);
+                    if (itemId == null)
+                    {
+                        if (done)
+                        {
+                            break;
+                        }
+                        continue;
+                    }
+                    Item item = Item.find(ctx, itemId);
+                    if (item != null && ! tr.run(item))
+                    {
+                        suspended = true;
+                    }
+                }
+                ctx.complete();
+            }
+            catch (IOException ioE)
+            {
+                fail(ioE);
+            }
+            catch (SQLException sqlE)
+            {
+                fail(new IOException(sqlE.getMessage(), sqlE));
+            }
+            catch (InterruptedException e)
+            {
+                fail(new IOException("Worker interrupted", e));
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Error executing curation task '" + taskName + "'", e);
+                fail(new IOException(e.getMessage(), e));
+            }
+            finally
+            {
+                if (ctx != null && ctx.isValid())
+                {
+                    ctx.abort();
+                }
+                curationCtx.remove();
+            }
+        }
+
+        private synchronized void fail(IOException ioE)
+        {
+            if (failure == null)
+            {
+                failure = ioE;
+            }
+        }
+    }
 }
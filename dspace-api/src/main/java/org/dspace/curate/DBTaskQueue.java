@@ -0,0 +1,381 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.io.IOException;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * DBTaskQueue provides a TaskQueue implementation based on the
+ * <code>curation_task_queue</code> database table, so that a queue may be
+ * drained by several readers at once, in this or other JVMs.
+ * <P>
+ * A dequeue claims a batch of at most <code>taskqueue.db.batch-size</code>
+ * entries for the reader's ticket, for <code>taskqueue.db.lease-seconds</code>.
+ * Rows being claimed by another reader are skipped (SELECT ... FOR UPDATE
+ * SKIP LOCKED, on PostgreSQL 9.5 or later and Oracle 11g or later), and
+ * entries whose lease has run out, e.g. because their reader crashed, may be
+ * claimed again. Readers should therefore use distinct tickets, and tasks may
+ * see an entry more than once. On databases without SKIP LOCKED a reader
+ * waits while another claims its batch, which takes one short transaction,
+ * and then claims the next entries.
+ * Unlike FileTaskQueue, a reader does not lock the whole queue: it dequeues
+ * and releases batches until a dequeue returns no entries.
+ */
+public class DBTaskQueue implements TaskQueue
+{
+    private static Logger log = Logger.getLogger(DBTaskQueue.class);
+
+    private static final String TABLE = "curation_task_queue";
+
+    // entries which are not claimed, or whose lease has run out
+    private static final String AVAILABLE = " WHERE queue_name = ? AND (ticket IS NULL OR lease_expires < ?)";
+
+    // maximum number of entries claimed by a dequeue
+    private int batchSize = ConfigurationManager.getIntProperty("curate", "taskqueue.db.batch-size", 100);
+    // time a reader holds its entries before others may claim them
+    private int leaseSeconds = ConfigurationManager.getIntProperty("curate", "taskqueue.db.lease-seconds", 3600);
+
+    // whether the database supports SKIP LOCKED, once known
+    private static volatile Boolean skipLocked = null;
+
+    // claims attempted by a dequeue which finds its rows taken while it waited
+    private static final int CLAIM_ATTEMPTS = 3;
+
+    public DBTaskQueue()
+    {
+    }
+
+    @Override
+    public String[] queueNames()
+    {
+        List<String> names = new ArrayList<String>();
+        Context ctx = null;
+        try
+        {
+            ctx = new Context();
+            TableRowIterator rows = DatabaseManager.query(ctx,
+                    "SELECT DISTINCT queue_name FROM " + TABLE + " ORDER BY queue_name");
+            try
+            {
+                while (rows.hasNext())
+                {
+                    names.add(rows.next().getStringColumn("queue_name"));
+                }
+            }
+            finally
+            {
+                rows.close();
+            }
+        }
+        catch (SQLException sqlE)
+        {
+            log.error("Unable to list task queues: " + sqlE.getMessage(), sqlE);
+        }
+        finally
+        {
+            abort(ctx);
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public void enqueue(String queueName, TaskQueueEntry entry)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new HashSet<TaskQueueEntry>();
+        entrySet.add(entry);
+        enqueue(queueName, entrySet);
+    }
+
+    @Override
+    public void enqueue(String queueName, Set<TaskQueueEntry> entrySet)
+           throws IOException
+    {
+        Context ctx = null;
+        try
+        {
+            ctx = new Context();
+            List<TableRow> rows = new ArrayList<TableRow>(entrySet.size());
+            for (TaskQueueEntry entry : entrySet)
+            {
+                TableRow row = DatabaseManager.row(TABLE);
+                row.setColumn("queue_name", queueName);
+                row.setColumn("eperson", entry.getEpersonId());
+                row.setColumn("submit_time", entry.getSubmitTime());
+                row.setColumn("task_names", join(entry.getTaskNames()));
+                row.setColumn("object_id", entry.getObjectId());
+                row.setColumnNull("ticket");
+                row.setColumnNull("lease_expires");
+                rows.add(row);
+            }
+            DatabaseManager.insertBatch(ctx, rows);
+            ctx.complete();
+        }
+        catch (SQLException sqlE)
+        {
+            throw new IOException("Unable to queue entries on '" + queueName + "': " + sqlE.getMessage(), sqlE);
+        }
+        finally
+        {
+            abort(ctx);
+        }
+    }
+
+    @Override
+    public Set<TaskQueueEntry> dequeue(String queueName, long ticket)
+           throws IOException
+    {
+        Set<TaskQueueEntry> entrySet = new HashSet<TaskQueueEntry>();
+        Context ctx = null;
+        try
+        {
+            ctx = new Context();
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            Timestamp expires = new Timestamp(now.getTime() + leaseSeconds * 1000L);
+
+            // lock a batch of available rows, skipping those another reader
+            // is claiming right now
+            boolean skip = isSkipLockedSupported(ctx);
+            String query = claimQuery(DatabaseManager.getDbKeyword(), skip, batchSize);
+
+            List<Object[]> claims = new ArrayList<Object[]>();
+            for (int attempt = 0; attempt < CLAIM_ATTEMPTS && claims.isEmpty(); attempt++)
+            {
+                TableRowIterator rows = DatabaseManager.query(ctx, query, queueName, now);
+                try
+                {
+                    while (claims.size() < batchSize && rows.hasNext())
+                    {
+                        TableRow row = rows.next();
+                        entrySet.add(new TaskQueueEntry(row.getStringColumn("eperson"),
+                                row.getLongColumn("submit_time"),
+                                Arrays.asList(row.getStringColumn("task_names").split(",")),
+                                row.getStringColumn("object_id")));
+                        claims.add(new Object[] { ticket, expires, row.getIntColumn("entry_id") });
+                    }
+                }
+                finally
+                {
+                    rows.close();
+                }
+                if (skip)
+                {
+                    // nothing was waited for, so nothing was missed
+                    break;
+                }
+                // otherwise the rows waited for may have been claimed by the
+                // reader holding them: look again past them
+            }
+
+            DatabaseManager.updateBatch(ctx,
+                    "UPDATE " + TABLE + " SET ticket = ?, lease_expires = ? WHERE entry_id = ?", claims);
+            ctx.complete();
+        }
+        catch (SQLException sqlE)
+        {
+            throw new IOException("Unable to dequeue entries from '" + queueName + "': " + sqlE.getMessage(), sqlE);
+        }
+        finally
+        {
+            abort(ctx);
+        }
+        return entrySet;
+    }
+
+    @Override
+    public void release(String queueName, long ticket, boolean remove)
+    {
+        Context ctx = null;
+        try
+        {
+            ctx = new Context();
+            if (remove)
+            {
+                DatabaseManager.updateQuery(ctx,
+                        "DELETE FROM " + TABLE + " WHERE queue_name = ? AND ticket = ?", queueName, ticket);
+            }
+            else
+            {
+                // hand the entries back for any reader
+                DatabaseManager.updateQuery(ctx,
+                        "UPDATE " + TABLE + " SET ticket = NULL, lease_expires = NULL WHERE queue_name = ? AND ticket = ?",
+                        queueName, ticket);
+            }
+            ctx.complete();
+        }
+        catch (SQLException sqlE)
+        {
+            log.error("Unable to release entries of '" + queueName + "': " + sqlE.getMessage(), sqlE);
+        }
+        finally
+        {
+            abort(ctx);
+        }
+    }
+
+    /**
+     * Returns the number of entries waiting to be dequeued, including those
+     * whose lease has run out.
+     *
+     * @param queueName
+     *        the name of the queue
+     * @return the number of available entries
+     * @throws IOException
+     */
+    public int getDepth(String queueName) throws IOException
+    {
+        return count(queueName, AVAILABLE);
+    }
+
+    /**
+     * Returns the number of entries held by readers whose lease has not run out.
+     *
+     * @param queueName
+     *        the name of the queue
+     * @return the number of leased entries
+     * @throws IOException
+     */
+    public int getLeased(String queueName) throws IOException
+    {
+        return count(queueName, " WHERE queue_name = ? AND ticket IS NOT NULL AND lease_expires >= ?");
+    }
+
+    private int count(String queueName, String where) throws IOException
+    {
+        Context ctx = null;
+        try
+        {
+            ctx = new Context();
+            TableRow row = DatabaseManager.querySingle(ctx, "SELECT COUNT(*) AS num FROM " + TABLE + where,
+                    queueName, new Timestamp(System.currentTimeMillis()));
+            return (int) row.getLongColumn("num");
+        }
+        catch (SQLException sqlE)
+        {
+            throw new IOException("Unable to count entries of '" + queueName + "': " + sqlE.getMessage(), sqlE);
+        }
+        finally
+        {
+            abort(ctx);
+        }
+    }
+
+    /**
+     * Builds the query which locks a batch of available entries.
+     *
+     * @param dbms
+     *        the database, one of the DatabaseManager.DBMS_ keywords
+     * @param skipLocked
+     *        whether the database supports SKIP LOCKED
+     * @param batchSize
+     *        the most entries to claim
+     * @return the query, with the queue name and the current time as parameters
+     */
+    static String claimQuery(String dbms, boolean skipLocked, int batchSize)
+    {
+        StringBuilder query = new StringBuilder("SELECT * FROM ").append(TABLE).append(AVAILABLE);
+        if (DatabaseManager.DBMS_ORACLE.equals(dbms))
+        {
+            if (skipLocked)
+            {
+                // rows are locked as they are fetched, so read no more than a batch
+                query.append(" ORDER BY entry_id FOR UPDATE SKIP LOCKED");
+            }
+            else
+            {
+                // all rows are locked when the query runs, so limit them
+                query.append(" AND ROWNUM <= ").append(batchSize).append(" ORDER BY entry_id FOR UPDATE");
+            }
+        }
+        else
+        {
+            query.append(" ORDER BY entry_id LIMIT ").append(batchSize)
+                    .append(skipLocked ? " FOR UPDATE SKIP LOCKED" : " FOR UPDATE");
+        }
+        return query.toString();
+    }
+
+    /**
+     * Whether a database version supports SELECT ... FOR UPDATE SKIP LOCKED.
+     *
+     * @param dbms
+     *        the database, one of the DatabaseManager.DBMS_ keywords
+     * @param major
+     *        its major version
+     * @param minor
+     *        its minor version
+     * @return true for PostgreSQL 9.5 or later and Oracle 11g or later
+     */
+    static boolean supportsSkipLocked(String dbms, int major, int minor)
+    {
+        if (DatabaseManager.DBMS_POSTGRES.equals(dbms))
+        {
+            return major > 9 || (major == 9 && minor >= 5);
+        }
+        if (DatabaseManager.DBMS_ORACLE.equals(dbms))
+        {
+            return major >= 11;
+        }
+        return false;
+    }
+
+    private static boolean isSkipLockedSupported(Context ctx) throws SQLException
+    {
+        Boolean supported = skipLocked;
+        if (supported == null)
+        {
+            DatabaseMetaData meta = ctx.getDBConnection().getMetaData();
+            supported = supportsSkipLocked(DatabaseManager.getDbKeyword(),
+                    meta.getDatabaseMajorVersion(), meta.getDatabaseMinorVersion());
+            if (!supported)
+            {
+                log.info("The database does not support SKIP LOCKED: readers of a task queue wait for each other's claims");
+            }
+            skipLocked = supported;
+        }
+        return supported;
+    }
+
+    private static String join(List<String> taskNames)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String tName : taskNames)
+        {
+            if (sb.length() > 0)
+            {
+                sb.append(",");
+            }
+            sb.append(tName);
+        }
+        return sb.toString();
+    }
+
+    private static void abort(Context ctx)
+    {
+        if (ctx != null && ctx.isValid())
+        {
+            ctx.abort();
+        }
+    }
+}
@@ -27,6 +27,9 @@ public class IndexClient {
 
     private static final Logger log = Logger.getLogger(IndexClient.class);
 
+    /** Default number of documents per solr request in parallel mode */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     /**
      * When invoked as a command-line tool, creates, updates, removes content
      * from the whole index
@@ -41,7 +44,7 @@ public class IndexClient {
         Context context = new Context();
         context.turnOffAuthorisationSystem();
 
-        String usage = "org.dspace.discovery.IndexClient [-cbhf[r <item handle>]] or nothing to update/clean an existing index.";
+        String usage = "org.dspace.discovery.IndexClient [-cbhfi[r <item handle>]] [-t <threads> [-n <batch size>]] or nothing to update/clean an existing index.";
         Options options = new Options();
         HelpFormatter formatter = new HelpFormatter();
         CommandLine line = null;
@@ -83,6 +86,20 @@ public class IndexClient {
         options.addOption(OptionBuilder.isRequired(false).withDescription(
                 "optimize search core").create("o"));
 
+        options.addOption(OptionBuilder.isRequired(false).withDescription(
+                "incremental update: only reindex items modified, and remove items deleted, since the last successful "
+                        + "incremental update; the first run checks every item and every indexed document")
+                .create("i"));
+
+        options.addOption(OptionBuilder.isRequired(false).hasArg(true).withArgName("threads")
+                .withDescription("index items with this many parallel worker threads, can be combined with -b and -f")
+                .create("t"));
+
+        options.addOption(OptionBuilder.isRequired(false).hasArg(true).withArgName("batch size")
+                .withDescription("number of documents sent to solr per request when using -t (default "
+                        + DEFAULT_BATCH_SIZE + ")")
+                .create("n"));
+
         try {
             line = new PosixParser().parse(options, args);
         } catch (Exception e) {
@@ -114,23 +131,60 @@ public class IndexClient {
             indexer.cleanIndex(line.hasOption("f"));
         } else if (line.hasOption("b")) {
             log.info("(Re)building index from scratch.");
-            indexer.createIndex(context);
+            if (line.hasOption("t")) {
+                parallelUpdate(line, indexer, context, true);
+            } else {
+                indexer.createIndex(context);
+            }
             checkRebuildSpellCheck(line, indexer);
         } else if (line.hasOption("o")) {
             log.info("Optimizing search core.");
             indexer.optimize();
+        } else if (line.hasOption("i")) {
+            log.info("Updating index for recently modified items");
+            int updated = indexer.updateIndexIncremental(context);
+            if (updated >= 0) {
+                log.info("Reindexed " + updated + " modified items");
+            }
+            checkRebuildSpellCheck(line, indexer);
         } else if(line.hasOption('s')) {
             checkRebuildSpellCheck(line, indexer);
         } else {
             log.info("Updating and Cleaning Index");
             indexer.cleanIndex(line.hasOption("f"));
-            indexer.updateIndex(context, line.hasOption("f"));
+            if (line.hasOption("t")) {
+                parallelUpdate(line, indexer, context, line.hasOption("f"));
+            } else {
+                indexer.updateIndex(context, line.hasOption("f"));
+            }
             checkRebuildSpellCheck(line, indexer);
         }
 
         log.info("Done with indexing");
 	}
 
+    /**
+     * Run a parallel index update with the thread count and batch size given
+     * on the command line, and report the throughput.
+     * @param line the command line options
+     * @param indexer the solr indexer
+     * @param context the dspace context
+     * @param force whether or not to force the reindexing
+     */
+    protected static void parallelUpdate(CommandLine line, IndexingService indexer, Context context, boolean force) {
+        int threads = Integer.parseInt(line.getOptionValue("t"));
+        int batchSize = line.hasOption("n") ? Integer.parseInt(line.getOptionValue("n")) : DEFAULT_BATCH_SIZE;
+
+        long start = System.currentTimeMillis();
+        long items = indexer.updateIndex(context, force, threads, batchSize);
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000d;
+
+        String report = String.format("Indexed %d items with %d threads (batch size %d) in %.1f s: %.1f items/s",
+                items, threads, batchSize, seconds, items / seconds);
+        log.info(report);
+        System.out.println(report);
+    }
+
     /**
      * Check the command line options and rebuild the spell check if active.
      * @param line the command line options
@@ -0,0 +1,133 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.dspace.core.ConfigurationManager;
+
+/**
+ * Remembers when the last successful incremental Discovery update started,
+ * so the next run only needs to look at Items modified since then.
+ * <P>
+ * The time is kept in a small properties file, by default
+ * <code>[dspace]/var/discovery/index.watermark</code>. Another location can
+ * be configured with <code>index.watermark.file</code> in discovery.cfg.
+ */
+class IndexWatermark
+{
+    private static final Logger log = Logger.getLogger(IndexWatermark.class);
+
+    private static final String KEY = "last.index.start";
+
+    private final File file;
+
+    IndexWatermark()
+    {
+        String path = ConfigurationManager.getProperty("discovery", "index.watermark.file");
+        if (path == null)
+        {
+            path = ConfigurationManager.getProperty("dspace.dir") + File.separator + "var"
+                    + File.separator + "discovery" + File.separator + "index.watermark";
+        }
+        file = new File(path);
+    }
+
+    /**
+     * @param file the file to keep the time in
+     */
+    IndexWatermark(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * @return the start time of the last successful run, or <code>null</code>
+     *         if there has been none (or it cannot be read)
+     */
+    Date get()
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            Properties props = new Properties();
+            props.load(in);
+            String value = props.getProperty(KEY);
+            return (value == null) ? null : new Date(Long.parseLong(value.trim()));
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to read Discovery index watermark " + file + ": " + e.getMessage());
+            return null;
+        }
+        catch (NumberFormatException e)
+        {
+            log.warn("Ignoring invalid Discovery index watermark in " + file);
+            return null;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Record the start time of a successful run. The file is written next to
+     * its final location first and then renamed, so a crash cannot leave a
+     * half written watermark behind.
+     *
+     * @param start when the run started
+     * @throws IOException if the file cannot be written
+     */
+    void set(Date start) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs())
+        {
+            throw new IOException("Unable to create directory " + dir);
+        }
+
+        File tmp = new File(dir, file.getName() + ".tmp");
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(tmp);
+            Properties props = new Properties();
+            props.setProperty(KEY, Long.toString(start.getTime()));
+            props.store(out, "Start of the last successful incremental Discovery update: " + start);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+
+        if (file.exists() && !file.delete())
+        {
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!tmp.renameTo(file))
+        {
+            throw new IOException("Unable to rename " + tmp + " to " + file);
+        }
+    }
+}
@@ -53,6 +53,11 @@ public interface IndexingService {
 
     void updateIndex(Context context, boolean force);
 
+    long updateIndex(Context context, boolean force, int threads, int batchSize);
+
+    int updateIndexIncremental(Context context)
+            throws SQLException, IOException, SearchServiceException;
+
     void cleanIndex(boolean force) throws IOException,
             SQLException, SearchServiceException;
 
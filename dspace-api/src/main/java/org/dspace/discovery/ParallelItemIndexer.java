@@ -0,0 +1,336 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIterator;
+import org.dspace.core.Context;
+import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Reindexes all archived and withdrawn Items into Discovery using a pool of
+ * worker threads, and removes every other Item from the index, as
+ * {@link SolrServiceImpl#indexContent(Context, org.dspace.content.DSpaceObject, boolean)}
+ * does.
+ * <P>
+ * The range of item IDs is cut into slices which the workers claim one at a
+ * time. Each worker owns its own Context, builds the Solr documents of its
+ * items through {@link SolrServiceImpl#buildDocument(Context, Item)} and hands
+ * them in batches to a single shared {@link ConcurrentUpdateSolrServer}. The
+ * update queue of that server is bounded, so workers block when Solr cannot
+ * keep up instead of piling documents up in memory. If a worker fails, the
+ * others stop claiming slices and {@link #run(Context)} reports the failure.
+ *
+ * @see SolrServiceImpl#updateIndex(Context, boolean, int, int)
+ */
+class ParallelItemIndexer
+{
+    private static final Logger log = Logger.getLogger(ParallelItemIndexer.class);
+
+    /** Seconds between progress reports while workers are running */
+    private static final int PROGRESS_INTERVAL = 30;
+
+    private final SolrServiceImpl indexer;
+    private final boolean force;
+    private final int threads;
+    private final int batchSize;
+
+    /** Shared sender for all workers */
+    private ConcurrentUpdateSolrServer sender;
+
+    /** Start of the next unclaimed slice of item IDs */
+    private final AtomicInteger nextSlice = new AtomicInteger();
+    private int sliceSize;
+    private int maxId;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /** First exception which stopped a worker */
+    private final AtomicReference<Exception> workerFailure = new AtomicReference<Exception>();
+
+    /**
+     * @param indexer the Discovery indexing service
+     * @param force reindex items even if the index is up to date
+     * @param threads number of worker threads
+     * @param batchSize number of documents sent to Solr in one request
+     */
+    ParallelItemIndexer(SolrServiceImpl indexer, boolean force, int threads, int batchSize)
+    {
+        this.indexer = indexer;
+        this.force = force;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Index every archived or withdrawn item and unindex every other item,
+     * blocking until all workers are done and every document has been sent
+     * to Solr.
+     *
+     * @param context context used to find the range of item IDs
+     * @return the number of items examined
+     * @throws SQLException
+     * @throws InterruptedException
+     * @throws SearchServiceException if a worker failed
+     */
+    long run(Context context) throws SQLException, InterruptedException, SearchServiceException
+    {
+        int[] range = findItemRange(context);
+        if (range == null)
+        {
+            return 0;
+        }
+        nextSlice.set(range[0]);
+        maxId = range[1];
+        // Slices of a few batches each keep the workers evenly loaded
+        // without a query per batch
+        sliceSize = batchSize * 4;
+
+        sender = createSender();
+
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                workers.execute(new Worker());
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(PROGRESS_INTERVAL, TimeUnit.SECONDS))
+            {
+                logProgress(start);
+            }
+            sender.blockUntilFinished();
+        }
+        finally
+        {
+            workers.shutdownNow();
+            sender.shutdown();
+        }
+        logProgress(start);
+
+        Exception failure = workerFailure.get();
+        if (failure != null)
+        {
+            throw new SearchServiceException("Parallel reindex failed: " + failure.getMessage(), failure);
+        }
+        return processed.get();
+    }
+
+    /**
+     * @return the lowest and the highest item ID, or <code>null</code> if
+     *         there are no items
+     */
+    int[] findItemRange(Context context) throws SQLException
+    {
+        TableRow range = DatabaseManager.querySingle(context,
+                "SELECT MIN(item_id) AS min_id, MAX(item_id) AS max_id FROM item");
+        if (range == null || range.isColumnNull("min_id"))
+        {
+            return null;
+        }
+        return new int[] { range.getIntColumn("min_id"), range.getIntColumn("max_id") };
+    }
+
+    /**
+     * @return every item with an ID from <code>from</code> up to, but not
+     *         including, <code>to</code>, so that those no longer archived
+     *         are unindexed
+     */
+    ItemIterator findItems(Context context, int from, int to) throws SQLException
+    {
+        TableRowIterator rows = DatabaseManager.queryTable(context, "item",
+                "SELECT * FROM item WHERE item_id >= ? AND item_id < ?", from, to);
+        return new ItemIterator(context, rows);
+    }
+
+    /**
+     * @return the sender shared by the workers, whose errors are counted as
+     *         failures
+     */
+    ConcurrentUpdateSolrServer createSender()
+    {
+        return new ConcurrentUpdateSolrServer(indexer.getSolr().getBaseURL(), threads * 2,
+                Math.max(1, threads / 2))
+        {
+            @Override
+            public void handleError(Throwable ex)
+            {
+                failed.incrementAndGet();
+                log.error("Error sending documents to Discovery: " + ex.getMessage(), ex);
+            }
+        };
+    }
+
+    /**
+     * @return number of items written to the index
+     */
+    long getIndexed()
+    {
+        return indexed.get();
+    }
+
+    /**
+     * @return number of items which are neither archived nor withdrawn,
+     *         removed from the index
+     */
+    long getRemoved()
+    {
+        return removed.get();
+    }
+
+    /**
+     * @return number of items or batches which could not be indexed
+     */
+    long getFailed()
+    {
+        return failed.get();
+    }
+
+    private void logProgress(long start)
+    {
+        long seconds = Math.max(1, (System.currentTimeMillis() - start) / 1000);
+        log.info("Parallel reindex: " + processed.get() + " items examined, " + indexed.get() + " indexed, "
+                + removed.get() + " removed, " + failed.get() + " failed, " + (processed.get() / seconds) + " items/s");
+    }
+
+    /**
+     * Index an archived or withdrawn item if it needs indexing, or remove
+     * any other item from the index. Documents go to the batch of the
+     * current thread, if there is one.
+     *
+     * @param context the worker's context
+     * @param item the item
+     */
+    void indexItem(Context context, Item item)
+    {
+        try
+        {
+            if (item.isArchived() || item.isWithdrawn())
+            {
+                String handle = item.getHandle();
+                if (handle == null)
+                {
+                    handle = HandleManager.findHandle(context, item);
+                }
+                if (force || indexer.requiresIndexing(handle, item.getLastModified()))
+                {
+                    indexer.buildDocument(context, item);
+                    indexed.incrementAndGet();
+                }
+            }
+            else
+            {
+                indexer.unIndexContent(context, item);
+                removed.incrementAndGet();
+            }
+        }
+        catch (Exception e)
+        {
+            failed.incrementAndGet();
+            log.error("Unable to index item " + item.getID() + ": " + e.getMessage(), e);
+        }
+        processed.incrementAndGet();
+    }
+
+    /**
+     * Claims slices of item IDs until none are left, sending the documents
+     * it builds in batches.
+     */
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Context context = null;
+            List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(batchSize);
+            indexer.startDocumentBatch(batch);
+            try
+            {
+                context = new Context();
+                context.turnOffAuthorisationSystem();
+
+                int from;
+                while (workerFailure.get() == null && (from = nextSlice.getAndAdd(sliceSize)) <= maxId)
+                {
+                    indexSlice(context, from, from + sliceSize, batch);
+                }
+                flush(batch);
+            }
+            catch (Exception e)
+            {
+                workerFailure.compareAndSet(null, e);
+                log.error("Parallel reindex worker failed: " + e.getMessage(), e);
+            }
+            finally
+            {
+                indexer.endDocumentBatch();
+                if (context != null)
+                {
+                    context.abort();
+                }
+            }
+        }
+
+        private void indexSlice(Context context, int from, int to, List<SolrInputDocument> batch)
+                throws SQLException, IOException, SolrServerException
+        {
+            ItemIterator items = findItems(context, from, to);
+            try
+            {
+                while (items.hasNext())
+                {
+                    Item item = items.next();
+                    indexItem(context, item);
+                    item.decache();
+
+                    if (batch.size() >= batchSize)
+                    {
+                        flush(batch);
+                    }
+                }
+            }
+            finally
+            {
+                items.close();
+            }
+        }
+
+        private void flush(List<SolrInputDocument> batch) throws IOException, SolrServerException
+        {
+            if (!batch.isEmpty())
+            {
+                // Blocks while the sender queue is full
+                sender.add(new ArrayList<SolrInputDocument>(batch));
+                batch.clear();
+            }
+        }
+    }
+}
@@ -89,7 +89,9 @@ import org.dspace.discovery.configuration.DiscoverySortConfiguration;
 import org.dspace.discovery.configuration.DiscoverySortFieldConfiguration;
 import org.dspace.discovery.configuration.HierarchicalSidebarFacetConfiguration;
 import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.DatabaseUtils;
+import org.dspace.storage.rdbms.TableRowIterator;
 import org.dspace.utils.DSpace;
 import org.springframework.stereotype.Service;
 
@@ -136,6 +138,13 @@ public class SolrServiceImpl implements SearchService, IndexingService {
      */
     private HttpSolrServer solr = null;
 
+    /**
+     * Documents built on the current thread during a parallel reindex. When
+     * set, {@link #writeDocument} collects documents here instead of sending
+     * them to Solr one at a time.
+     */
+    private final ThreadLocal<List<SolrInputDocument>> documentBatch = new ThreadLocal<List<SolrInputDocument>>();
+
 
     protected HttpSolrServer getSolr()
     {
@@ -443,6 +452,412 @@ public class SolrServiceImpl implements SearchService, IndexingService {
         }
     }
 
+    /**
+     * Like {@link #updateIndex(Context, boolean)}, but Items are indexed by a
+     * pool of worker threads, each with its own Context, and sent to Solr in
+     * batches through one shared, bounded update queue. As in the serial
+     * update, Items which are neither archived nor withdrawn are removed from
+     * the index. Collections and Communities are indexed afterwards on the
+     * calling thread.
+     *
+     * @param context the dspace context
+     * @param force whether or not to force the reindexing
+     * @param threads number of worker threads
+     * @param batchSize number of documents per Solr update request
+     * @return the number of Items examined
+     */
+    @Override
+    public long updateIndex(Context context, boolean force, int threads, int batchSize)
+    {
+        long processed = 0;
+        try {
+            if(getSolr() == null)
+            {
+                return 0;
+            }
+
+            ParallelItemIndexer itemIndexer = new ParallelItemIndexer(this, force, threads, batchSize);
+            processed = itemIndexer.run(context);
+
+            Collection[] collections = Collection.findAll(context);
+            for (Collection collection : collections)
+            {
+                indexContent(context, collection, force);
+                context.removeCached(collection, collection.getID());
+            }
+
+            Community[] communities = Community.findAll(context);
+            for (Community community : communities)
+            {
+                indexContent(context, community, force);
+                context.removeCached(community, community.getID());
+            }
+
+            getSolr().commit();
+        } catch (Exception e)
+        {
+            log.error(e.getMessage(), e);
+        }
+        return processed;
+    }
+
+    /**
+     * Update the index for the Items modified since the start of the last
+     * successful incremental update, together with the Collections and
+     * Communities they belong to, or belonged to when they were last
+     * indexed. Items which are no longer archived or withdrawn are removed
+     * from the index, and so are Items deleted since then, as recorded in
+     * the <code>item_deletion</code> table by <code>Item.delete()</code>.
+     * If no earlier run is recorded, this falls back to
+     * {@link #updateIndex(Context, boolean)} without force, and removes
+     * every indexed Item which no longer exists. The start time of this run
+     * is recorded once it succeeds.
+     *
+     * @param context the dspace context
+     * @return the number of Items reindexed, or -1 after a full update
+     * @throws SQLException
+     * @throws IOException if the watermark cannot be recorded
+     * @throws SearchServiceException
+     */
+    @Override
+    public int updateIndexIncremental(Context context)
+            throws SQLException, IOException, SearchServiceException
+    {
+        return updateIndexIncremental(context, new IndexWatermark());
+    }
+
+    /**
+     * Like {@link #updateIndexIncremental(Context)}, keeping the start time
+     * in the given watermark.
+     */
+    int updateIndexIncremental(Context context, IndexWatermark watermark)
+            throws SQLException, IOException, SearchServiceException
+    {
+        Date start = new Date();
+        Date since = watermark.get();
+
+        if (since == null)
+        {
+            log.info("No previous incremental update recorded, checking every item");
+            updateIndex(context, false);
+            List<Integer> deleted = new ArrayList<Integer>(getIndexedItemIDs());
+            deleted.removeAll(findExistingItems(context, deleted));
+            for (Integer itemID : deleted)
+            {
+                unIndexItem(itemID);
+            }
+            commit();
+            watermark.set(start);
+            pruneDeletions(start);
+            return -1;
+        }
+
+        log.info("Updating index for items modified since " + since);
+        Set<Integer> collectionIDs = new HashSet<Integer>();
+        Set<Integer> communityIDs = new HashSet<Integer>();
+
+        // Where the modified items were indexed before, so that the
+        // collections and communities of items moved away are updated too
+        List<Integer> modified = findItemsModifiedSince(context, since);
+        findIndexedLocations(modified, collectionIDs, communityIDs);
+        for (Integer itemID : modified)
+        {
+            reindexItem(context, itemID);
+        }
+
+        // Items deleted (or expunged) since the last run
+        List<Integer> deleted = findItemsDeletedSince(context, since);
+        findIndexedLocations(deleted, collectionIDs, communityIDs);
+        for (Integer itemID : deleted)
+        {
+            unIndexItem(itemID);
+        }
+
+        collectionIDs.addAll(findCollectionsOfItemsModifiedSince(context, since));
+        for (Integer collectionID : collectionIDs)
+        {
+            reindexCollection(context, collectionID, communityIDs);
+        }
+        for (Integer communityID : communityIDs)
+        {
+            reindexCommunity(context, communityID);
+        }
+
+        commit();
+        watermark.set(start);
+        pruneDeletions(since);
+        log.info("Incremental update reindexed " + modified.size() + " items, removed " + deleted.size()
+                + " deleted items and reindexed " + collectionIDs.size() + " collections and "
+                + communityIDs.size() + " communities");
+        return modified.size();
+    }
+
+    /**
+     * @return the IDs of the Items modified after the given time
+     */
+    List<Integer> findItemsModifiedSince(Context context, Date since) throws SQLException
+    {
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        TableRowIterator rows = DatabaseManager.query(context,
+                "SELECT item_id FROM item WHERE last_modified > ? ORDER BY item_id",
+                new java.sql.Timestamp(since.getTime()));
+        try {
+            while (rows.hasNext())
+            {
+                itemIDs.add(rows.next(context).getIntColumn("item_id"));
+            }
+        } finally {
+            rows.close();
+        }
+        return itemIDs;
+    }
+
+    /**
+     * @return the IDs of the Collections holding Items modified after the
+     *         given time
+     */
+    Set<Integer> findCollectionsOfItemsModifiedSince(Context context, Date since) throws SQLException
+    {
+        Set<Integer> collectionIDs = new HashSet<Integer>();
+        TableRowIterator rows = DatabaseManager.query(context,
+                "SELECT DISTINCT collection_id FROM collection2item WHERE item_id IN "
+                        + "(SELECT item_id FROM item WHERE last_modified > ?)",
+                new java.sql.Timestamp(since.getTime()));
+        try {
+            while (rows.hasNext())
+            {
+                collectionIDs.add(rows.next(context).getIntColumn("collection_id"));
+            }
+        } finally {
+            rows.close();
+        }
+        return collectionIDs;
+    }
+
+    /**
+     * @return the IDs of the Items deleted after the given time
+     */
+    List<Integer> findItemsDeletedSince(Context context, Date since) throws SQLException
+    {
+        List<Integer> itemIDs = new ArrayList<Integer>();
+        TableRowIterator rows = DatabaseManager.query(context,
+                "SELECT DISTINCT item_id FROM item_deletion WHERE deleted > ? ORDER BY item_id",
+                new java.sql.Timestamp(since.getTime()));
+        try {
+            while (rows.hasNext())
+            {
+                itemIDs.add(rows.next(context).getIntColumn("item_id"));
+            }
+        } finally {
+            rows.close();
+        }
+        return itemIDs;
+    }
+
+    /**
+     * Forget the Item deletions recorded before the given time, which no
+     * later incremental update looks at. Done in a Context of its own, so
+     * that it is committed whatever becomes of the caller's.
+     */
+    void pruneDeletions(Date before) throws SQLException
+    {
+        Context context = new Context();
+        try {
+            DatabaseManager.updateQuery(context, "DELETE FROM item_deletion WHERE deleted < ?",
+                    new java.sql.Timestamp(before.getTime()));
+            context.complete();
+        } finally {
+            if (context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+
+    /**
+     * @return which of the given Item IDs are in the database
+     */
+    Set<Integer> findExistingItems(Context context, List<Integer> itemIDs) throws SQLException
+    {
+        Set<Integer> existing = new HashSet<Integer>();
+        for (int from = 0; from < itemIDs.size(); from += 500)
+        {
+            List<Integer> chunk = itemIDs.subList(from, Math.min(from + 500, itemIDs.size()));
+            TableRowIterator rows = DatabaseManager.query(context,
+                    "SELECT item_id FROM item WHERE item_id IN (" + StringUtils.join(chunk, ",") + ")");
+            try {
+                while (rows.hasNext())
+                {
+                    existing.add(rows.next(context).getIntColumn("item_id"));
+                }
+            } finally {
+                rows.close();
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return the IDs of all Items in the index. Reads the whole index, so
+     *         it is only used when there is no earlier incremental update
+     *         to go by.
+     */
+    Set<Integer> getIndexedItemIDs() throws SearchServiceException
+    {
+        Set<Integer> itemIDs = new HashSet<Integer>();
+        if (getSolr() == null)
+        {
+            return itemIDs;
+        }
+        try {
+            SolrQuery query = new SolrQuery(RESOURCE_TYPE_FIELD + ":" + Constants.ITEM);
+            query.setFields(RESOURCE_ID_FIELD);
+            query.setRows(1000);
+            query.setSort(SolrQuery.SortClause.asc("search.uniqueid"));
+            String cursor = CursorMarkParams.CURSOR_MARK_START;
+            while (true)
+            {
+                query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+                QueryResponse rsp = getSolr().query(query);
+                for (SolrDocument doc : rsp.getResults())
+                {
+                    itemIDs.add((Integer) doc.getFirstValue(RESOURCE_ID_FIELD));
+                }
+                if (cursor.equals(rsp.getNextCursorMark()))
+                {
+                    break;
+                }
+                cursor = rsp.getNextCursorMark();
+            }
+        } catch (SolrServerException e)
+        {
+            throw new SearchServiceException(e.getMessage(), e);
+        }
+        return itemIDs;
+    }
+
+    /**
+     * Add the Collections and Communities the given Items are indexed in.
+     */
+    void findIndexedLocations(List<Integer> itemIDs, Set<Integer> collectionIDs, Set<Integer> communityIDs)
+            throws SearchServiceException
+    {
+        if (getSolr() == null)
+        {
+            return;
+        }
+        try {
+            for (int from = 0; from < itemIDs.size(); from += 100)
+            {
+                List<Integer> chunk = itemIDs.subList(from, Math.min(from + 100, itemIDs.size()));
+                SolrQuery query = new SolrQuery(RESOURCE_TYPE_FIELD + ":" + Constants.ITEM + " AND "
+                        + RESOURCE_ID_FIELD + ":(" + StringUtils.join(chunk, " OR ") + ")");
+                query.setFields("location.coll", "location.comm");
+                query.setRows(chunk.size());
+                for (SolrDocument doc : getSolr().query(query).getResults())
+                {
+                    addIDs(doc.getFieldValues("location.coll"), collectionIDs);
+                    addIDs(doc.getFieldValues("location.comm"), communityIDs);
+                }
+            }
+        } catch (SolrServerException e)
+        {
+            throw new SearchServiceException(e.getMessage(), e);
+        }
+    }
+
+    private void addIDs(java.util.Collection<Object> values, Set<Integer> ids)
+    {
+        if (values != null)
+        {
+            for (Object value : values)
+            {
+                ids.add(Integer.valueOf(value.toString()));
+            }
+        }
+    }
+
+    /**
+     * Reindex an Item, if it still exists.
+     */
+    void reindexItem(Context context, int itemID) throws SQLException
+    {
+        Item item = Item.find(context, itemID);
+        if (item != null)
+        {
+            indexContent(context, item, true);
+            item.decache();
+        }
+    }
+
+    /**
+     * Remove an Item from the index by its ID.
+     */
+    void unIndexItem(int itemID) throws SearchServiceException
+    {
+        try {
+            getSolr().deleteById(Constants.ITEM + "-" + itemID);
+        } catch (Exception e)
+        {
+            throw new SearchServiceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reindex a Collection, if it still exists, and add its Communities and
+     * their parents to those to reindex.
+     */
+    void reindexCollection(Context context, int collectionID, Set<Integer> communityIDs) throws SQLException
+    {
+        Collection collection = Collection.find(context, collectionID);
+        if (collection == null)
+        {
+            return;
+        }
+        indexContent(context, collection, true);
+        for (Community community : collection.getCommunities())
+        {
+            communityIDs.add(community.getID());
+            for (Community parent : community.getAllParents())
+            {
+                communityIDs.add(parent.getID());
+            }
+        }
+        context.removeCached(collection, collection.getID());
+    }
+
+    /**
+     * Reindex a Community, if it still exists.
+     */
+    void reindexCommunity(Context context, int communityID) throws SQLException
+    {
+        Community community = Community.find(context, communityID);
+        if (community != null)
+        {
+            indexContent(context, community, true);
+            context.removeCached(community, community.getID());
+        }
+    }
+
+    /**
+     * Collect the documents built on the current thread in the given list
+     * rather than writing them to Solr directly.
+     *
+     * @param batch list to add documents to
+     */
+    void startDocumentBatch(List<SolrInputDocument> batch)
+    {
+        documentBatch.set(batch);
+    }
+
+    /**
+     * Go back to writing documents built on the current thread directly.
+     */
+    void endDocumentBatch()
+    {
+        documentBatch.remove();
+    }
+
     /**
      * Iterates over all documents in the Lucene index and verifies they are in
      * database, if not, they are removed.
@@ -717,6 +1132,13 @@ public class SolrServiceImpl implements SearchService, IndexingService {
      */
     protected void writeDocument(SolrInputDocument doc, List<BitstreamContentStream> streams) throws IOException {
 
+        List<SolrInputDocument> batch = documentBatch.get();
+        if(batch != null && CollectionUtils.isEmpty(streams))
+        {
+            batch.add(doc);
+            return;
+        }
+
         try {
             if(getSolr() != null)
             {
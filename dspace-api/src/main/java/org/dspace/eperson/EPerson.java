@@ -642,6 +642,12 @@ public class EPerson extends DSpaceObject
     {
         return myRow.getIntColumn("eperson_id");
     }
+
+    @Override
+    public boolean isModified()
+    {
+        return modified || super.isModified();
+    }
     
     /**
      * Get the e-person's language
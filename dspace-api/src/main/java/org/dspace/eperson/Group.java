@@ -9,11 +9,9 @@ package org.dspace.eperson;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -227,6 +225,12 @@ public class Group extends DSpaceObject
         return myRow.getIntColumn("eperson_group_id");
     }
 
+    @Override
+    public boolean isModified()
+    {
+        return epeopleChanged || groupsChanged || super.isModified();
+    }
+
     /**
      * get name of group
      * 
@@ -682,9 +686,7 @@ public class Group extends DSpaceObject
     private static boolean epersonInGroup(Context c, int groupID, EPerson e)
             throws SQLException
     {
-        Set<Integer> groupIDs = Group.allMemberGroupIDs(c, e);
-
-        return groupIDs.contains(Integer.valueOf(groupID));
+        return c.getAuthorizationCache().getEffectiveGroups(c, e).contains(groupID);
     }
 
     /**
@@ -1204,30 +1206,74 @@ public class Group extends DSpaceObject
         // Redo Group mappings if they've changed
         if (groupsChanged)
         {
-            // Remove any existing mappings
-            DatabaseManager.updateQuery(ourContext,
-                    "delete from group2group where parent_id= ? ",
-                    getID());
+            // Work out which direct subgroups were added and removed
+            Set<Integer> stored = new HashSet<Integer>();
+            TableRowIterator tri = DatabaseManager.query(ourContext,
+                    "SELECT child_id FROM group2group WHERE parent_id= ? ", getID());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    stored.add(Integer.valueOf(tri.next(ourContext).getIntColumn("child_id")));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
 
-            // Add new mappings
-            Iterator<Group> i = groups.iterator();
+            Set<Integer> current = new HashSet<Integer>();
+            for (Group g : groups)
+            {
+                current.add(Integer.valueOf(g.getID()));
+            }
 
-            while (i.hasNext())
+            List<Integer> removed = new ArrayList<Integer>();
+            List<Object[]> removedParams = new ArrayList<Object[]>();
+            for (Integer childID : stored)
             {
-                Group g = i.next();
+                if (!current.contains(childID))
+                {
+                    removed.add(childID);
+                    removedParams.add(new Object[] { Integer.valueOf(getID()), childID });
+                }
+            }
 
-                TableRow mappingRow = DatabaseManager.row("group2group");
-                mappingRow.setColumn("parent_id", getID());
-                mappingRow.setColumn("child_id", g.getID());
-                DatabaseManager.insert(ourContext, mappingRow);
+            List<Integer> added = new ArrayList<Integer>();
+            List<TableRow> addedRows = new ArrayList<TableRow>();
+            for (Integer childID : current)
+            {
+                if (!stored.contains(childID))
+                {
+                    added.add(childID);
+                    TableRow mappingRow = DatabaseManager.row("group2group");
+                    mappingRow.setColumn("parent_id", getID());
+                    mappingRow.setColumn("child_id", childID.intValue());
+                    addedRows.add(mappingRow);
+                }
             }
 
-            // groups changed, now change group cache
-            rethinkGroupCache();
+            // Only the pairs around the changed mappings are updated in
+            // group2groupcache, removals first so each step sees a
+            // consistent group2group
+            if (!removed.isEmpty())
+            {
+                DatabaseManager.updateBatch(ourContext,
+                        "DELETE FROM group2group WHERE parent_id= ? AND child_id= ? ", removedParams);
+                GroupCache.removeSubgroups(ourContext, getID(), removed);
+            }
+            if (!added.isEmpty())
+            {
+                DatabaseManager.insertBatch(ourContext, addedRows);
+                GroupCache.addSubgroups(ourContext, getID(), added);
+            }
 
             groupsChanged = false;
         }
 
+        // memberships computed before the mappings were written are stale now
+        ourContext.getAuthorizationCache().invalidate();
+
         log.info(LogManager.getHeader(ourContext, "update_group", "group_id="
                 + getID()));
     }
@@ -1281,127 +1327,6 @@ public class Group extends DSpaceObject
         return null;
     }
 
-    /**
-     * Regenerate the group cache AKA the group2groupcache table in the database -
-     * meant to be called when a group is added or removed from another group
-     * 
-     */
-    private void rethinkGroupCache() throws SQLException
-    {
-        // read in the group2group table
-        TableRowIterator tri = DatabaseManager.queryTable(ourContext, "group2group",
-                "SELECT * FROM group2group");
-
-        Map<Integer,Set<Integer>> parents = new HashMap<Integer,Set<Integer>>();
-
-        try
-        {
-            while (tri.hasNext())
-            {
-                TableRow row = (TableRow) tri.next();
-
-                Integer parentID = Integer.valueOf(row.getIntColumn("parent_id"));
-                Integer childID = Integer.valueOf(row.getIntColumn("child_id"));
-
-                // if parent doesn't have an entry, create one
-                if (!parents.containsKey(parentID))
-                {
-                    Set<Integer> children = new HashSet<Integer>();
-
-                    // add child id to the list
-                    children.add(childID);
-                    parents.put(parentID, children);
-                }
-                else
-                {
-                    // parent has an entry, now add the child to the parent's record
-                    // of children
-                    Set<Integer> children =  parents.get(parentID);
-                    children.add(childID);
-                }
-            }
-        }
-        finally
-        {
-            // close the TableRowIterator to free up resources
-            if (tri != null)
-            {
-                tri.close();
-            }
-        }
-
-        // now parents is a hash of all of the IDs of groups that are parents
-        // and each hash entry is a hash of all of the IDs of children of those
-        // parent groups
-        // so now to establish all parent,child relationships we can iterate
-        // through the parents hash
-        for (Map.Entry<Integer, Set<Integer>> parent : parents.entrySet())
-        {
-            Set<Integer> myChildren = getChildren(parents, parent.getKey());
-            parent.getValue().addAll(myChildren);
-        }
-
-        // empty out group2groupcache table
-        DatabaseManager.updateQuery(ourContext,
-                "DELETE FROM group2groupcache WHERE id >= 0");
-
-        // write out new one
-        for (Map.Entry<Integer, Set<Integer>> parent : parents.entrySet())
-        {
-            int parentID = parent.getKey().intValue();
-
-            for (Integer child : parent.getValue())
-            {
-                TableRow row = DatabaseManager.row("group2groupcache");
-
-                row.setColumn("parent_id", parentID);
-                row.setColumn("child_id", child);
-
-                DatabaseManager.insert(ourContext, row);
-            }
-        }
-    }
-
-    /**
-     * Used recursively to generate a map of ALL of the children of the given
-     * parent
-     * 
-     * @param parents
-     *            Map of parent,child relationships
-     * @param parent
-     *            the parent you're interested in
-     * @return Map whose keys are all of the children of a parent
-     */
-    private Set<Integer> getChildren(Map<Integer,Set<Integer>> parents, Integer parent)
-    {
-        Set<Integer> myChildren = new HashSet<Integer>();
-
-        // degenerate case, this parent has no children
-        if (!parents.containsKey(parent))
-        {
-            return myChildren;
-        }
-
-        // got this far, so we must have children
-        Set<Integer> children =  parents.get(parent);
-
-        // now iterate over all of the children
-        Iterator<Integer> i = children.iterator();
-
-        while (i.hasNext())
-        {
-            Integer childID = i.next();
-
-            // add this child's ID to our return set
-            myChildren.add(childID);
-
-            // and now its children
-            myChildren.addAll(getChildren(parents, childID));
-        }
-
-        return myChildren;
-    }
-    
     public DSpaceObject getParentObject() throws SQLException
     {
         // could a collection/community administrator manage related groups?
@@ -0,0 +1,454 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.log4j.Logger;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+
+/**
+ * Maintains <code>group2groupcache</code>, the transitive closure of the
+ * group-in-group relation held in <code>group2group</code>. It has a row
+ * for every pair of groups where the child is a member of the parent,
+ * directly or through any number of intermediate groups.
+ * <P>
+ * When a group gains or loses subgroups only the pairs between the ancestors
+ * of the group and the descendants of the changed subgroups are looked at,
+ * and the rows that change are written with batched statements.
+ * {@link #rebuild(Context)} recomputes the whole table from
+ * <code>group2group</code>, for repairing it; it is available from the
+ * command line as <code>[dspace]/bin/dspace rebuild-group-cache</code>.
+ */
+public class GroupCache
+{
+    private static final Logger log = Logger.getLogger(GroupCache.class);
+
+    /** Most IDs in one <code>IN (...)</code> list */
+    private static final int IN_LIST_SIZE = 500;
+
+    /** Utility class */
+    private GroupCache() { }
+
+    /**
+     * Update the cache after <code>children</code> have been made direct
+     * subgroups of <code>parent</code>. The new rows of
+     * <code>group2group</code> must already have been written.
+     *
+     * @param context DSpace context
+     * @param parent ID of the group which gained subgroups
+     * @param children IDs of the new subgroups
+     * @return the number of rows added to the cache
+     * @throws SQLException if there's a database problem
+     */
+    static int addSubgroups(Context context, int parent, Collection<Integer> children)
+            throws SQLException
+    {
+        if (children.isEmpty())
+        {
+            return 0;
+        }
+
+        // Every ancestor of the parent gains every descendant of the children
+        Set<Integer> ancestors = ancestors(context, parent);
+        ancestors.add(parent);
+        Set<Integer> descendants = new HashSet<Integer>();
+        for (Integer child : children)
+        {
+            descendants.addAll(descendants(context, child));
+            descendants.add(child);
+        }
+
+        Set<Long> existing = pairs(context, ancestors, descendants);
+
+        List<TableRow> rows = new ArrayList<TableRow>();
+        for (Integer ancestor : ancestors)
+        {
+            for (Integer descendant : descendants)
+            {
+                if (!ancestor.equals(descendant) && !existing.contains(pair(ancestor, descendant)))
+                {
+                    TableRow row = DatabaseManager.row("group2groupcache");
+                    row.setColumn("parent_id", ancestor);
+                    row.setColumn("child_id", descendant);
+                    rows.add(row);
+                }
+            }
+        }
+
+        if (!rows.isEmpty())
+        {
+            DatabaseManager.insertBatch(context, rows);
+        }
+        return rows.size();
+    }
+
+    /**
+     * Update the cache after <code>children</code> have stopped being direct
+     * subgroups of <code>parent</code>. The rows of <code>group2group</code>
+     * must already have been deleted.
+     * <P>
+     * A pair of an ancestor of the parent and a descendant of the children is
+     * only dropped if no other path between the two remains. To find out,
+     * the direct memberships below the ancestors are read and walked.
+     *
+     * @param context DSpace context
+     * @param parent ID of the group which lost subgroups
+     * @param children IDs of the removed subgroups
+     * @return the number of rows removed from the cache
+     * @throws SQLException if there's a database problem
+     */
+    static int removeSubgroups(Context context, int parent, Collection<Integer> children)
+            throws SQLException
+    {
+        if (children.isEmpty())
+        {
+            return 0;
+        }
+
+        Set<Integer> ancestors = ancestors(context, parent);
+        ancestors.add(parent);
+        Set<Integer> descendants = new HashSet<Integer>();
+        for (Integer child : children)
+        {
+            descendants.addAll(descendants(context, child));
+            descendants.add(child);
+        }
+
+        // Everything reachable from an ancestor is, or was, one of its
+        // descendants, so the direct memberships of those are all we need
+        Set<Integer> region = new HashSet<Integer>(ancestors);
+        for (List<Integer> chunk : chunks(ancestors))
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT child_id FROM group2groupcache WHERE parent_id IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    region.add(tri.next(context).getIntColumn("child_id"));
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        Map<Integer, Set<Integer>> edges = edges(context, region);
+
+        List<Object[]> stale = new ArrayList<Object[]>();
+        for (Integer ancestor : ancestors)
+        {
+            Set<Integer> reachable = reachable(edges, ancestor);
+            for (Integer descendant : descendants)
+            {
+                if (!ancestor.equals(descendant) && !reachable.contains(descendant))
+                {
+                    stale.add(new Object[] { ancestor, descendant });
+                }
+            }
+        }
+
+        if (!stale.isEmpty())
+        {
+            DatabaseManager.updateBatch(context,
+                    "DELETE FROM group2groupcache WHERE parent_id= ? AND child_id= ? ", stale);
+        }
+        return stale.size();
+    }
+
+    /**
+     * Recompute the whole cache from <code>group2group</code>.
+     *
+     * @param context DSpace context
+     * @return the number of rows written
+     * @throws SQLException if there's a database problem
+     */
+    public static int rebuild(Context context) throws SQLException
+    {
+        // read in the group2group table
+        Map<Integer, Set<Integer>> parents = edges(context, null);
+
+        // empty out group2groupcache table
+        DatabaseManager.updateQuery(context,
+                "DELETE FROM group2groupcache WHERE id >= 0");
+
+        // write out new one
+        List<TableRow> rows = new ArrayList<TableRow>();
+        for (Integer parentID : parents.keySet())
+        {
+            for (Integer child : reachable(parents, parentID))
+            {
+                if (!child.equals(parentID))
+                {
+                    TableRow row = DatabaseManager.row("group2groupcache");
+                    row.setColumn("parent_id", parentID);
+                    row.setColumn("child_id", child);
+                    rows.add(row);
+                }
+            }
+        }
+
+        if (!rows.isEmpty())
+        {
+            DatabaseManager.insertBatch(context, rows);
+        }
+        return rows.size();
+    }
+
+    /**
+     * IDs of all groups which <code>group</code> is a member of, directly or
+     * not, according to the cache.
+     */
+    private static Set<Integer> ancestors(Context context, int group) throws SQLException
+    {
+        return column(context, "SELECT parent_id FROM group2groupcache WHERE child_id= ? ", "parent_id", group);
+    }
+
+    /**
+     * IDs of all groups which are members of <code>group</code>, directly or
+     * not, according to the cache.
+     */
+    private static Set<Integer> descendants(Context context, int group) throws SQLException
+    {
+        return column(context, "SELECT child_id FROM group2groupcache WHERE parent_id= ? ", "child_id", group);
+    }
+
+    private static Set<Integer> column(Context context, String query, String column, int group)
+            throws SQLException
+    {
+        Set<Integer> ids = new HashSet<Integer>();
+        TableRowIterator tri = DatabaseManager.query(context, query, group);
+        try
+        {
+            while (tri.hasNext())
+            {
+                ids.add(tri.next(context).getIntColumn(column));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return ids;
+    }
+
+    /**
+     * The pairs already in the cache between the given parents and children.
+     * The query is keyed on whichever of the two sets is smaller.
+     */
+    private static Set<Long> pairs(Context context, Set<Integer> parents, Set<Integer> children)
+            throws SQLException
+    {
+        boolean byParent = parents.size() <= children.size();
+        Set<Integer> keys = byParent ? parents : children;
+        Set<Integer> others = byParent ? children : parents;
+
+        Set<Long> pairs = new HashSet<Long>();
+        for (List<Integer> chunk : chunks(keys))
+        {
+            TableRowIterator tri = DatabaseManager.query(context,
+                    "SELECT parent_id, child_id FROM group2groupcache WHERE "
+                            + (byParent ? "parent_id" : "child_id")
+                            + " IN (" + placeholders(chunk.size()) + ")",
+                    chunk.toArray());
+            try
+            {
+                while (tri.hasNext())
+                {
+                    TableRow row = tri.next(context);
+                    int parent = row.getIntColumn("parent_id");
+                    int child = row.getIntColumn("child_id");
+                    if (others.contains(byParent ? child : parent))
+                    {
+                        pairs.add(pair(parent, child));
+                    }
+                }
+            }
+            finally
+            {
+                tri.close();
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Read direct memberships from <code>group2group</code>.
+     *
+     * @param parents only read the subgroups of these groups, or all
+     *                subgroups if <code>null</code>
+     * @return the IDs of the direct subgroups, keyed on parent ID
+     */
+    private static Map<Integer, Set<Integer>> edges(Context context, Set<Integer> parents)
+            throws SQLException
+    {
+        Map<Integer, Set<Integer>> edges = new HashMap<Integer, Set<Integer>>();
+        if (parents == null)
+        {
+            readEdges(context, DatabaseManager.query(context, "SELECT parent_id, child_id FROM group2group"), edges);
+        }
+        else
+        {
+            for (List<Integer> chunk : chunks(parents))
+            {
+                readEdges(context, DatabaseManager.query(context,
+                        "SELECT parent_id, child_id FROM group2group WHERE parent_id IN ("
+                                + placeholders(chunk.size()) + ")",
+                        chunk.toArray()), edges);
+            }
+        }
+        return edges;
+    }
+
+    private static void readEdges(Context context, TableRowIterator tri, Map<Integer, Set<Integer>> edges)
+            throws SQLException
+    {
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next(context);
+                Integer parentID = Integer.valueOf(row.getIntColumn("parent_id"));
+                Set<Integer> children = edges.get(parentID);
+                if (children == null)
+                {
+                    children = new HashSet<Integer>();
+                    edges.put(parentID, children);
+                }
+                children.add(Integer.valueOf(row.getIntColumn("child_id")));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+    }
+
+    /**
+     * Walk the direct memberships breadth first, so that a cycle in
+     * <code>group2group</code> cannot make us loop forever.
+     *
+     * @return every group reachable from <code>start</code>
+     */
+    private static Set<Integer> reachable(Map<Integer, Set<Integer>> edges, Integer start)
+    {
+        Set<Integer> seen = new HashSet<Integer>();
+        LinkedList<Integer> queue = new LinkedList<Integer>();
+        queue.add(start);
+        while (!queue.isEmpty())
+        {
+            Set<Integer> children = edges.get(queue.removeFirst());
+            if (children != null)
+            {
+                for (Integer child : children)
+                {
+                    if (seen.add(child))
+                    {
+                        queue.add(child);
+                    }
+                }
+            }
+        }
+        return seen;
+    }
+
+    private static Long pair(int parent, int child)
+    {
+        return Long.valueOf(((long) parent << 32) | (child & 0xffffffffL));
+    }
+
+    private static List<List<Integer>> chunks(Collection<Integer> ids)
+    {
+        List<Integer> all = new ArrayList<Integer>(ids);
+        List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+        for (int from = 0; from < all.size(); from += IN_LIST_SIZE)
+        {
+            chunks.add(all.subList(from, Math.min(all.size(), from + IN_LIST_SIZE)));
+        }
+        return chunks;
+    }
+
+    private static String placeholders(int count)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+        {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Command line tool to rebuild <code>group2groupcache</code> from
+     * scratch.
+     *
+     * @param argv the command line arguments given
+     */
+    public static void main(String[] argv) throws SQLException
+    {
+        Options options = new Options();
+        options.addOption("h", "help", false, "explain this tool");
+
+        CommandLine line;
+        try
+        {
+            line = new PosixParser().parse(options, argv);
+        }
+        catch (ParseException e)
+        {
+            System.err.println(e.getMessage());
+            new HelpFormatter().printHelp("rebuild-group-cache", options);
+            System.exit(1);
+            return;
+        }
+
+        if (line.hasOption('h'))
+        {
+            new HelpFormatter().printHelp("rebuild-group-cache", "Recompute the group2groupcache table "
+                    + "from the direct group memberships", options, "");
+            System.exit(0);
+        }
+
+        Context context = null;
+        try
+        {
+            context = new Context();
+            long start = System.currentTimeMillis();
+            int rows = rebuild(context);
+            context.complete();
+            log.info("Rebuilt group2groupcache with " + rows + " rows");
+            System.out.println("Rebuilt group2groupcache with " + rows + " rows in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+        finally
+        {
+            if (context != null && context.isValid())
+            {
+                context.abort();
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.handle;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the handle table for {@link HandleManager}, mapping handles to
+ * the objects they are bound to and objects to their handles. Lookups which
+ * find nothing are cached too, for a shorter time, so that requests for
+ * handles which do not exist (or objects which have none) do not reach the
+ * database either.
+ * <P>
+ * The cache is local to the JVM. HandleManager, and the handle identifier
+ * providers, drop the entries of the handles they create, rebind or unbind,
+ * and {@link HandleCacheConsumer} drops
+ * them again once the change is committed; changes made by other
+ * processes are seen when the entries expire.
+ */
+public final class HandleCache
+{
+    /** The object type and id of a handle which is in the table but unbound */
+    static final int UNBOUND = -1;
+
+    /** Cached lookups of handles, by handle */
+    private final Map<String, Entry> byHandle = new ConcurrentHashMap<String, Entry>();
+
+    /** Cached lookups of handles, by "type:id" of the object */
+    private final Map<String, Entry> byObject = new ConcurrentHashMap<String, Entry>();
+
+    private final int maxSize;
+    private final long ttl;
+    private final long negativeTtl;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the most lookups to keep in each direction, or 0 to
+     *            cache nothing
+     * @param ttl how long to keep handles found, in milliseconds
+     * @param negativeTtl how long to keep lookups which found nothing, in
+     *            milliseconds
+     */
+    HandleCache(int maxSize, long ttl, long negativeTtl)
+    {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * A handle lookup: the handle and the object it is bound to, or the
+     * absence of either.
+     */
+    static final class Entry
+    {
+        /** The handle, or null if the object has no handle */
+        final String handle;
+
+        /** Whether the handle is in the handle table */
+        final boolean exists;
+
+        /** The type of the object, or UNBOUND */
+        final int type;
+
+        /** The id of the object, or UNBOUND */
+        final int id;
+
+        private final long expires;
+
+        Entry(String handle, boolean exists, int type, int id, long expires)
+        {
+            this.handle = handle;
+            this.exists = exists;
+            this.type = type;
+            this.id = id;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Look up a handle.
+     *
+     * @param handle the handle
+     * @return the cached lookup, or null if the handle has to be looked up
+     */
+    Entry getByHandle(String handle)
+    {
+        return get(byHandle, handle);
+    }
+
+    /**
+     * Look up the handle of an object.
+     *
+     * @param type the type of the object
+     * @param id the id of the object
+     * @return the cached lookup, or null if the handle has to be looked up
+     */
+    Entry getByObject(int type, int id)
+    {
+        return get(byObject, objectKey(type, id));
+    }
+
+    /**
+     * Record the lookup of a handle.
+     *
+     * @param handle the handle
+     * @param exists whether it is in the handle table
+     * @param type the type of the object it is bound to, or UNBOUND
+     * @param id the id of the object it is bound to, or UNBOUND
+     * @return the lookup
+     */
+    Entry putHandle(String handle, boolean exists, int type, int id)
+    {
+        boolean bound = exists && type != UNBOUND && id != UNBOUND;
+        Entry entry = new Entry(handle, exists, type, id, expires(bound));
+        put(byHandle, handle, entry);
+        return entry;
+    }
+
+    /**
+     * Record the lookup of the handle of an object.
+     *
+     * @param type the type of the object
+     * @param id the id of the object
+     * @param handle its handle, or null if it has none
+     * @return the lookup
+     */
+    Entry putObject(int type, int id, String handle)
+    {
+        Entry entry = new Entry(handle, handle != null, type, id, expires(handle != null));
+        put(byObject, objectKey(type, id), entry);
+        return entry;
+    }
+
+    /**
+     * Forget the lookups of a handle.
+     *
+     * @param handle the handle
+     */
+    void invalidateHandle(String handle)
+    {
+        if (handle != null)
+        {
+            byHandle.remove(handle);
+        }
+    }
+
+    /**
+     * Forget the lookups of the handle of an object, and of the handle it
+     * was cached with, which may since have been bound to another object.
+     *
+     * @param type the type of the object
+     * @param id the id of the object
+     */
+    void invalidateObject(int type, int id)
+    {
+        Entry entry = byObject.remove(objectKey(type, id));
+        if (entry != null && entry.handle != null)
+        {
+            byHandle.remove(entry.handle);
+        }
+    }
+
+    /**
+     * Forget all lookups.
+     */
+    public void clear()
+    {
+        byHandle.clear();
+        byObject.clear();
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups which went to the database
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache, or 0 if
+     *         there have been none
+     */
+    public double getHitRatio()
+    {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of lookups cached, in both directions
+     */
+    public int size()
+    {
+        return byHandle.size() + byObject.size();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "HandleCache[size=" + size() + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", hitRatio="
+                + String.format("%.3f", getHitRatio()) + "]";
+    }
+
+    private Entry get(Map<String, Entry> map, String key)
+    {
+        if (maxSize <= 0)
+        {
+            return null;
+        }
+        Entry entry = map.get(key);
+        if (entry != null && entry.expires < System.currentTimeMillis())
+        {
+            map.remove(key);
+            entry = null;
+        }
+        if (entry == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return entry;
+    }
+
+    private void put(Map<String, Entry> map, String key, Entry entry)
+    {
+        if (maxSize <= 0)
+        {
+            return;
+        }
+        if (map.size() >= maxSize)
+        {
+            evict(map);
+        }
+        map.put(key, entry);
+    }
+
+    /**
+     * Make room in a full map: drop the expired entries, and if that is not
+     * enough, a tenth of the others. There is no LRU order to keep, so
+     * which ones go is up to the map's iteration order.
+     */
+    private void evict(Map<String, Entry> map)
+    {
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> i = map.values().iterator(); i.hasNext();)
+        {
+            if (i.next().expires < now)
+            {
+                i.remove();
+            }
+        }
+        int excess = map.size() - (maxSize - maxSize / 10);
+        for (Iterator<Entry> i = map.values().iterator(); excess > 0 && i.hasNext(); excess--)
+        {
+            i.next();
+            i.remove();
+        }
+    }
+
+    private long expires(boolean found)
+    {
+        return System.currentTimeMillis() + (found ? ttl : negativeTtl);
+    }
+
+    private static String objectKey(int type, int id)
+    {
+        return type + ":" + id;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.handle;
+
+import org.dspace.core.Context;
+import org.dspace.event.Consumer;
+import org.dspace.event.Event;
+
+/**
+ * Consumer which drops the cached handle lookups of the objects created,
+ * installed, modified or deleted by a transaction once it is committed.
+ * HandleManager and the handle identifier providers already drop them when
+ * the handle table is changed, but until the change is committed other
+ * transactions may still read, and cache, the old rows. Items are watched
+ * for modification because a new version takes over the handle of the
+ * item it replaces.
+ */
+public class HandleCacheConsumer implements Consumer
+{
+    /**
+     * Initialise the consumer
+     *
+     * @throws Exception
+     */
+    public void initialize()
+        throws Exception
+    {
+
+    }
+
+    /**
+     * Consume the event
+     *
+     * @param context
+     * @param event
+     * @throws Exception
+     */
+    public void consume(Context context, Event event)
+        throws Exception
+    {
+        // the detail of the create, install and delete events is the
+        // handle, if there is one
+        HandleManager.invalidate(event.getDetail(), event.getSubjectType(), event.getSubjectID());
+
+        // the identifiers are the handles the object had when the event was
+        // fired, in canonical form
+        String[] identifiers = event.getIdentifiers();
+        if (identifiers != null)
+        {
+            String prefix = HandleManager.getCanonicalForm("");
+            for (String identifier : identifiers)
+            {
+                if (identifier != null && identifier.startsWith(prefix))
+                {
+                    HandleManager.invalidate(identifier.substring(prefix.length()),
+                            event.getSubjectType(), event.getSubjectID());
+                }
+            }
+        }
+    }
+
+    /**
+     * Handle the end of the event
+     *
+     * @param ctx
+     * @throws Exception
+     */
+    public void end(Context ctx)
+        throws Exception
+    {
+
+    }
+
+    /**
+     * Finish the event
+     *
+     * @param ctx
+     */
+    public void finish(Context ctx)
+    {
+
+    }
+}
@@ -9,7 +9,11 @@ package org.dspace.handle;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.dspace.content.Collection;
@@ -33,6 +37,11 @@ import org.dspace.storage.rdbms.TableRowIterator;
  * are owned by other sites (including other DSpaces) are treated as
  * non-existent.
  * </p>
+ * <p>
+ * Lookups are cached, in both directions, by a {@link HandleCache} whose
+ * size and times to live are set by <code>handle.cache.size</code>,
+ * <code>handle.cache.ttl</code> and <code>handle.cache.negative.ttl</code>.
+ * </p>
  *
  * @author Peter Breton
  * @version $Revision$
@@ -45,6 +54,15 @@ public class HandleManager
     /** Prefix registered to no one */
     static final String EXAMPLE_PREFIX = "123456789";
 
+    /** Most handles to look up with one query in resolveToObjects */
+    private static final int BULK_SIZE = 500;
+
+    /** Cached lookups of the handle table */
+    private static final HandleCache cache = new HandleCache(
+            ConfigurationManager.getIntProperty("handle.cache.size", 100000),
+            ConfigurationManager.getIntProperty("handle.cache.ttl", 3600) * 1000L,
+            ConfigurationManager.getIntProperty("handle.cache.negative.ttl", 60) * 1000L);
+
     /** Private Constructor */
     private HandleManager()
     {
@@ -67,9 +85,7 @@ public class HandleManager
     public static String resolveToURL(Context context, String handle)
             throws SQLException
     {
-        TableRow dbhandle = findHandleInternal(context, handle);
-
-        if (dbhandle == null)
+        if (!lookupHandle(context, handle).exists)
         {
             return null;
         }
@@ -122,9 +138,7 @@ public class HandleManager
         {
             handle = handle.substring(1);
         }
-        TableRow dbhandle = findHandleInternal(context, handle);
-        
-        return (null == dbhandle) ? null : handle;
+        return lookupHandle(context, handle).exists ? handle : null;
     }
 
     /**
@@ -187,6 +201,7 @@ public class HandleManager
         handle.setColumn("resource_type_id", dso.getType());
         handle.setColumn("resource_id", dso.getID());
         DatabaseManager.update(context, handle);
+        invalidate(handleId, dso.getType(), dso.getID());
 
         if (log.isDebugEnabled())
         {
@@ -255,6 +270,7 @@ public class HandleManager
         handle.setColumn("resource_type_id", dso.getType());
         handle.setColumn("resource_id", dso.getID());
         DatabaseManager.update(context, handle);
+        invalidate(suppliedHandle, dso.getType(), dso.getID());
 
         if (log.isDebugEnabled())
         {
@@ -288,6 +304,7 @@ public class HandleManager
                 // is reusing this handle!
                 row.setColumnNull("resource_id");
                 DatabaseManager.update(context, row);
+                invalidate(row.getStringColumn("handle"), dso.getType(), dso.getID());
 
                 if(log.isDebugEnabled())
                 {
@@ -319,9 +336,89 @@ public class HandleManager
     public static DSpaceObject resolveToObject(Context context, String handle)
             throws IllegalStateException, SQLException
     {
-        TableRow dbhandle = findHandleInternal(context, handle);
+        return resolveEntry(context, handle, lookupHandle(context, handle));
+    }
 
-        if (dbhandle == null)
+    /**
+     * Return the objects which a list of handles map to. The handles which
+     * are not cached are looked up together, rather than one query each.
+     *
+     * @param context
+     *            DSpace context
+     * @param handles
+     *            The handles to resolve
+     * @return The objects which the handles map to, in the same order, with
+     *         null for each handle which is not mapped to any object.
+     * @exception IllegalStateException
+     *                If a handle is mapped to an unsupported type of object
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static List<DSpaceObject> resolveToObjects(Context context, List<String> handles)
+            throws IllegalStateException, SQLException
+    {
+        Map<String, HandleCache.Entry> entries = new HashMap<String, HandleCache.Entry>();
+        Set<String> missing = new LinkedHashSet<String>();
+        for (String handle : handles)
+        {
+            if (handle == null)
+            {
+                throw new IllegalArgumentException("Handle is null");
+            }
+            if (!entries.containsKey(handle) && !missing.contains(handle))
+            {
+                HandleCache.Entry entry = cache.getByHandle(handle);
+                if (entry == null)
+                {
+                    missing.add(handle);
+                }
+                else
+                {
+                    entries.put(handle, entry);
+                }
+            }
+        }
+
+        List<String> batch = new ArrayList<String>(BULK_SIZE);
+        for (String handle : missing)
+        {
+            batch.add(handle);
+            if (batch.size() == BULK_SIZE)
+            {
+                findHandlesInternal(context, batch, entries);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty())
+        {
+            findHandlesInternal(context, batch, entries);
+        }
+
+        List<DSpaceObject> objects = new ArrayList<DSpaceObject>(handles.size());
+        for (String handle : handles)
+        {
+            objects.add(resolveEntry(context, handle, entries.get(handle)));
+        }
+        return objects;
+    }
+
+    /**
+     * Get the statistics and controls of the cache of handle lookups.
+     *
+     * @return the cache
+     */
+    public static HandleCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Return the object which a handle lookup maps to, or null.
+     */
+    private static DSpaceObject resolveEntry(Context context, String handle,
+            HandleCache.Entry entry) throws IllegalStateException, SQLException
+    {
+        if (!entry.exists)
         {
             //If this is the Site-wide Handle, return Site object
             if (handle.equals(Site.getSiteHandle()))
@@ -335,16 +432,15 @@ public class HandleManager
         // check if handle was allocated previously, but is currently not
         // associated with a DSpaceObject
         // (this may occur when 'unbindHandle()' is called for an obj that was removed)
-        if ((dbhandle.isColumnNull("resource_type_id"))
-                || (dbhandle.isColumnNull("resource_id")))
+        if (entry.type == HandleCache.UNBOUND || entry.id == HandleCache.UNBOUND)
         {
             //if handle has been unbound, just return null (as this will result in a PageNotFound)
             return null;
         }
 
         // What are we looking at here?
-        int handletypeid = dbhandle.getIntColumn("resource_type_id");
-        int resourceID = dbhandle.getIntColumn("resource_id");
+        int handletypeid = entry.type;
+        int resourceID = entry.id;
 
         if (handletypeid == Constants.ITEM)
         {
@@ -401,36 +497,22 @@ public class HandleManager
     public static String findHandle(Context context, DSpaceObject dso)
             throws SQLException
     {
-        TableRowIterator rows = getInternalHandles(context, dso.getType(), dso.getID());
-        if (rows == null || !rows.hasNext())
+        HandleCache.Entry entry = cache.getByObject(dso.getType(), dso.getID());
+        if (entry == null)
         {
-            if (dso.getType() == Constants.SITE)
-            {
-                return Site.getSiteHandle();
-            }
-            else
+            String handle = findHandleInternal(context, dso.getType(), dso.getID());
+            entry = cache.putObject(dso.getType(), dso.getID(), handle);
+            if (handle != null)
             {
-                return null;
+                cache.putHandle(handle, true, dso.getType(), dso.getID());
             }
         }
-        else
-        {
-            //TODO: Move this code away from the HandleManager & into the Identifier provider
-            //Attempt to retrieve a handle that does NOT look like {handle.part}/{handle.part}.{version}
-            String result = rows.next().getStringColumn("handle");
-            while (rows.hasNext())
-            {
-                TableRow row = rows.next();
-                //Ensure that the handle doesn't look like this 12346/213.{version}
-                //If we find a match that indicates that we have a proper handle
-                if(!row.getStringColumn("handle").matches(".*/.*\\.\\d+"))
-                {
-                    result = row.getStringColumn("handle");
-                }
-            }
 
-            return result;
+        if (entry.handle == null && dso.getType() == Constants.SITE)
+        {
+            return Site.getSiteHandle();
         }
+        return entry.handle;
     }
 
     /**
@@ -513,6 +595,171 @@ public class HandleManager
 	return DatabaseManager.queryTable(context, "Handle", sql, type, id);
     }
 
+    /**
+     * Return the handle for an object from the database, or null if the
+     * object has no handle.
+     *
+     * @param context
+     *            DSpace context
+     * @param type
+     *            The type of object
+     * @param id
+     *            The id of object
+     * @return The handle for object, or null if the object has no handle.
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    private static String findHandleInternal(Context context, int type, int id)
+            throws SQLException
+    {
+        TableRowIterator rows = getInternalHandles(context, type, id);
+        if (rows == null)
+        {
+            return null;
+        }
+        try
+        {
+            if (!rows.hasNext())
+            {
+                return null;
+            }
+            //TODO: Move this code away from the HandleManager & into the Identifier provider
+            //Attempt to retrieve a handle that does NOT look like {handle.part}/{handle.part}.{version}
+            String result = rows.next().getStringColumn("handle");
+            while (rows.hasNext())
+            {
+                TableRow row = rows.next();
+                //Ensure that the handle doesn't look like this 12346/213.{version}
+                //If we find a match that indicates that we have a proper handle
+                if(!row.getStringColumn("handle").matches(".*/.*\\.\\d+"))
+                {
+                    result = row.getStringColumn("handle");
+                }
+            }
+
+            return result;
+        }
+        finally
+        {
+            rows.close();
+        }
+    }
+
+    /**
+     * Look up a handle, in the cache or else the database.
+     *
+     * @param context
+     *            DSpace context
+     * @param handle
+     *            The handle to look up
+     * @return The lookup
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    private static HandleCache.Entry lookupHandle(Context context, String handle)
+            throws SQLException
+    {
+        if (handle == null)
+        {
+            throw new IllegalArgumentException("Handle is null");
+        }
+
+        HandleCache.Entry entry = cache.getByHandle(handle);
+        if (entry == null)
+        {
+            entry = cacheRow(handle, findHandleInternal(context, handle));
+        }
+        return entry;
+    }
+
+    /**
+     * Look up handles in the database with one query, and add the lookups
+     * to a map.
+     *
+     * @param context
+     *            DSpace context
+     * @param handles
+     *            The handles to look up
+     * @param entries
+     *            The map the lookups are added to, by handle
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    private static void findHandlesInternal(Context context, List<String> handles,
+            Map<String, HandleCache.Entry> entries) throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("SELECT * FROM handle WHERE handle IN (");
+        for (int i = 0; i < handles.size(); i++)
+        {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        TableRowIterator rows = DatabaseManager.queryTable(context, "Handle",
+                sql.toString(), handles.toArray());
+        try
+        {
+            while (rows.hasNext())
+            {
+                TableRow row = rows.next();
+                String handle = row.getStringColumn("handle");
+                entries.put(handle, cacheRow(handle, row));
+            }
+        }
+        finally
+        {
+            rows.close();
+        }
+
+        for (String handle : handles)
+        {
+            if (!entries.containsKey(handle))
+            {
+                entries.put(handle, cacheRow(handle, null));
+            }
+        }
+    }
+
+    /**
+     * Cache the lookup of a handle.
+     *
+     * @param handle
+     *            The handle
+     * @param dbhandle
+     *            Its database row, or null if it has none
+     * @return The lookup
+     */
+    private static HandleCache.Entry cacheRow(String handle, TableRow dbhandle)
+    {
+        if (dbhandle == null)
+        {
+            return cache.putHandle(handle, false, HandleCache.UNBOUND, HandleCache.UNBOUND);
+        }
+        int type = dbhandle.isColumnNull("resource_type_id")
+                ? HandleCache.UNBOUND : dbhandle.getIntColumn("resource_type_id");
+        int id = dbhandle.isColumnNull("resource_id")
+                ? HandleCache.UNBOUND : dbhandle.getIntColumn("resource_id");
+        return cache.putHandle(handle, true, type, id);
+    }
+
+    /**
+     * Forget the cached lookups of a handle and of the object it is, or
+     * was, bound to. Code which writes to the handle table itself, rather
+     * than through this class, must call this for every row it changes.
+     *
+     * @param handle
+     *            The handle, or null
+     * @param type
+     *            The type of object
+     * @param id
+     *            The id of object
+     */
+    public static void invalidate(String handle, int type, int id)
+    {
+        cache.invalidateHandle(handle);
+        cache.invalidateObject(type, id);
+    }
+
     /**
      * Find the database row corresponding to handle.
      *
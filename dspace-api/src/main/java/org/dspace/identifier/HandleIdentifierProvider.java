@@ -14,6 +14,7 @@ import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.handle.HandleManager;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.springframework.stereotype.Component;
@@ -245,6 +246,7 @@ public class HandleIdentifierProvider extends IdentifierProvider {
             // is reusing this handle!
             row.setColumnNull("resource_id");
             DatabaseManager.update(context, row);
+            HandleManager.invalidate(row.getStringColumn("handle"), dso.getType(), dso.getID());
 
             if(log.isDebugEnabled())
             {
@@ -356,10 +358,17 @@ public class HandleIdentifierProvider extends IdentifierProvider {
     }
 
     protected String modifyHandleRecord(Context context, DSpaceObject dso, TableRow handle, String handleId) throws SQLException {
+        // the handle may have been bound to another object
+        if (!handle.isColumnNull("resource_type_id") && !handle.isColumnNull("resource_id"))
+        {
+            HandleManager.invalidate(handle.getStringColumn("handle"),
+                    handle.getIntColumn("resource_type_id"), handle.getIntColumn("resource_id"));
+        }
         handle.setColumn("handle", handleId);
         handle.setColumn("resource_type_id", dso.getType());
         handle.setColumn("resource_id", dso.getID());
         DatabaseManager.update(context, handle);
+        HandleManager.invalidate(handleId, dso.getType(), dso.getID());
 
         if (log.isDebugEnabled())
         {
@@ -14,6 +14,7 @@ import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
+import org.dspace.handle.HandleManager;
 import org.dspace.storage.rdbms.DatabaseManager;
 import org.dspace.storage.rdbms.TableRow;
 import org.dspace.utils.DSpace;
@@ -529,10 +530,17 @@ public class VersionedHandleIdentifierProvider extends IdentifierProvider {
 
     protected String modifyHandleRecord(Context context, DSpaceObject dso, TableRow handle, String handleId) throws SQLException
     {
+        // the canonical handle moves from one version to another
+        if (!handle.isColumnNull("resource_type_id") && !handle.isColumnNull("resource_id"))
+        {
+            HandleManager.invalidate(handle.getStringColumn("handle"),
+                    handle.getIntColumn("resource_type_id"), handle.getIntColumn("resource_id"));
+        }
         handle.setColumn("handle", handleId);
         handle.setColumn("resource_type_id", dso.getType());
         handle.setColumn("resource_id", dso.getID());
         DatabaseManager.update(context, handle);
+        HandleManager.invalidate(handleId, dso.getType(), dso.getID());
 
         if (log.isDebugEnabled())
         {
@@ -42,6 +42,7 @@ import org.apache.solr.common.util.JavaBinCodec;
 import org.dspace.content.*;
 import org.dspace.content.Collection;
 import org.dspace.core.ConfigurationManager;
+import org.dspace.core.ConfigurationSetting;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.eperson.EPerson;
@@ -85,8 +86,21 @@ public class SolrLogger
 
     private static final boolean useProxies;
 
+    /** Queue of usage events waiting to be sent, or null to send them at once */
+    private static final SolrLoggerQueue queue;
+
     private static List<String> statisticYearCores = new ArrayList<String>();
 
+    /** Settings read for every usage event and statistics query */
+    private static final ConfigurationSetting.BooleanSetting logBots =
+            new ConfigurationSetting.BooleanSetting("usage-statistics", "logBots", true);
+    private static final ConfigurationSetting.BooleanSetting filterSpiderIp =
+            new ConfigurationSetting.BooleanSetting("solr-statistics", "query.filter.spiderIp", false);
+    private static final ConfigurationSetting.BooleanSetting filterIsBot =
+            new ConfigurationSetting.BooleanSetting("solr-statistics", "query.filter.isBot", true);
+    private static final ConfigurationSetting.StringSetting filterBundles =
+            new ConfigurationSetting.StringSetting("solr-statistics", "query.filter.bundles", null);
+
     public static enum StatisticsType {
    		VIEW ("view"),
    		SEARCH ("search"),
@@ -184,6 +198,136 @@ public class SolrLogger
         }
 
         log.info("useProxies=" + useProxies);
+
+        queue = (solr != null && ConfigurationManager.getBooleanProperty("solr-statistics", "queue.enabled", false))
+                ? createQueue(solr) : null;
+    }
+
+    /**
+     * Create the queue for usage events, configured in solr-statistics.cfg.
+     * It is flushed by {@link SolrLoggerQueue#closeAll(long)}.
+     */
+    private static SolrLoggerQueue createQueue(SolrServer server)
+    {
+        SolrLoggerQueue.OverflowPolicy policy = SolrLoggerQueue.OverflowPolicy.DROP;
+        String overflow = ConfigurationManager.getProperty("solr-statistics", "queue.overflow");
+        if (StringUtils.isNotBlank(overflow))
+        {
+            try
+            {
+                policy = SolrLoggerQueue.OverflowPolicy.valueOf(overflow.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                log.error("Unknown solr-statistics.queue.overflow policy " + overflow + ", using drop");
+            }
+        }
+        String spillDir = ConfigurationManager.getProperty("solr-statistics", "queue.spill.dir");
+        if (StringUtils.isBlank(spillDir))
+        {
+            spillDir = ConfigurationManager.getProperty("dspace.dir") + File.separator + "var"
+                    + File.separator + "statistics";
+        }
+
+        SolrLoggerQueue eventQueue = new SolrLoggerQueue(server,
+                ConfigurationManager.getIntProperty("solr-statistics", "queue.capacity", 10000),
+                ConfigurationManager.getIntProperty("solr-statistics", "queue.batch.size", 100),
+                ConfigurationManager.getLongProperty("solr-statistics", "queue.batch.wait", 1000),
+                ConfigurationManager.getIntProperty("solr-statistics", "queue.threads", 1),
+                policy,
+                ConfigurationManager.getLongProperty("solr-statistics", "queue.block.timeout", 1000),
+                new File(spillDir))
+        {
+            @Override
+            protected void prepare(SolrInputDocument doc)
+            {
+                addLookups(doc);
+            }
+        };
+        log.info("Usage events are queued, overflow policy " + policy);
+        return eventQueue;
+    }
+
+    /**
+     * @return the queue usage events are sent through, with its metrics, or
+     *         <code>null</code> if they are sent to Solr at once
+     */
+    public static SolrLoggerQueue getQueue()
+    {
+        return queue;
+    }
+
+    /**
+     * Send a usage event to Solr, through the queue if there is one.
+     */
+    private static void send(SolrInputDocument doc) throws SolrServerException, IOException
+    {
+        if (queue != null)
+        {
+            queue.offer(doc);
+        }
+        else
+        {
+            addLookups(doc);
+            solr.add(doc);
+        }
+    }
+
+    /**
+     * Add the reverse DNS name and the location of the document's IP address.
+     * This is the slow part of logging an event, so it is left to the queue
+     * when there is one. Fields already present are not looked up again.
+     *
+     * @param doc a usage event document
+     */
+    static void addLookups(SolrInputDocument doc)
+    {
+        Object ipField = doc.getFieldValue("ip");
+        if (ipField == null)
+        {
+            return;
+        }
+        String ip = ipField.toString();
+
+        if (doc.getField("dns") == null)
+        {
+            try
+            {
+                String dns = DnsLookup.reverseDns(ip);
+                doc.addField("dns", dns.toLowerCase());
+            }
+            catch (Exception e)
+            {
+                log.error("Failed DNS Lookup for IP:" + ip);
+                log.debug(e.getMessage(),e);
+            }
+        }
+
+        // Save the location information if valid, save the event without
+        // location information if not valid
+        if(locationService != null && doc.getField("countryCode") == null)
+        {
+            Location location = locationService.getLocation(ip);
+            if (location != null
+                    && !("--".equals(location.countryCode)
+                    && location.latitude == -180 && location.longitude == -180))
+            {
+                try
+                {
+                    doc.addField("continent", LocationUtils
+                            .getContinentCode(location.countryCode));
+                }
+                catch (Exception e)
+                {
+                    System.out
+                            .println("COUNTRY ERROR: " + location.countryCode);
+                }
+                doc.addField("countryCode", location.countryCode);
+                doc.addField("city", location.city);
+                doc.addField("latitude", location.latitude);
+                doc.addField("longitude", location.longitude);
+            }
+        }
     }
 
     /**
@@ -232,7 +376,7 @@ public class SolrLogger
             doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
 
-            solr.add(doc1);
+            send(doc1);
             //commits are executed automatically using the solr autocommit
 //            solr.commit(false, false);
 
@@ -268,7 +412,7 @@ public class SolrLogger
 
 			doc1.addField("statistics_type", StatisticsType.VIEW.text());
 
-			solr.add(doc1);
+			send(doc1);
 			// commits are executed automatically using the solr autocommit
 			// solr.commit(false, false);
 
@@ -292,7 +436,7 @@ public class SolrLogger
     private static SolrInputDocument getCommonSolrDoc(DSpaceObject dspaceObject, HttpServletRequest request, EPerson currentUser) throws SQLException {
         boolean isSpiderBot = request != null && SpiderDetector.isSpider(request);
         if(isSpiderBot &&
-                !ConfigurationManager.getBooleanProperty("usage-statistics", "logBots", true))
+                !logBots.get())
         {
             return null;
         }
@@ -323,49 +467,11 @@ public class SolrLogger
                 doc1.addField("referrer", request.getHeader("referer"));
             }
 
-            try
-            {
-                String dns = DnsLookup.reverseDns(ip);
-                doc1.addField("dns", dns.toLowerCase());
-            }
-            catch (Exception e)
-            {
-                log.error("Failed DNS Lookup for IP:" + ip);
-                log.debug(e.getMessage(),e);
-            }
 		    if(request.getHeader("User-Agent") != null)
 		    {
 		        doc1.addField("userAgent", request.getHeader("User-Agent"));
 		    }
 		    doc1.addField("isBot",isSpiderBot);
-            // Save the location information if valid, save the event without
-            // location information if not valid
-            if(locationService != null)
-            {
-                Location location = locationService.getLocation(ip);
-                if (location != null
-                        && !("--".equals(location.countryCode)
-                        && location.latitude == -180 && location.longitude == -180))
-                {
-                    try
-                    {
-                        doc1.addField("continent", LocationUtils
-                                .getContinentCode(location.countryCode));
-                    }
-                    catch (Exception e)
-                    {
-                        System.out
-                                .println("COUNTRY ERROR: " + location.countryCode);
-                    }
-                    doc1.addField("countryCode", location.countryCode);
-                    doc1.addField("city", location.city);
-                    doc1.addField("latitude", location.latitude);
-                    doc1.addField("longitude", location.longitude);
-                    
-
-
-                }
-            }
         }
 
         if(dspaceObject != null){
@@ -386,7 +492,7 @@ public class SolrLogger
     private static SolrInputDocument getCommonSolrDoc(DSpaceObject dspaceObject, String ip, String userAgent, String xforwardedfor, EPerson currentUser) throws SQLException {
         boolean isSpiderBot = SpiderDetector.isSpider(ip);
         if(isSpiderBot &&
-                !ConfigurationManager.getBooleanProperty("usage-statistics", "logBots", true))
+                !logBots.get())
         {
             return null;
         }
@@ -409,49 +515,11 @@ public class SolrLogger
 
             doc1.addField("ip", ip);
 
-            try
-            {
-                String dns = DnsLookup.reverseDns(ip);
-                doc1.addField("dns", dns.toLowerCase());
-            }
-            catch (Exception e)
-            {
-                log.error("Failed DNS Lookup for IP:" + ip);
-                log.debug(e.getMessage(),e);
-            }
 		    if(userAgent != null)
 		    {
 		        doc1.addField("userAgent", userAgent);
 		    }
 		    doc1.addField("isBot",isSpiderBot);
-            // Save the location information if valid, save the event without
-            // location information if not valid
-            if(locationService != null)
-            {
-                Location location = locationService.getLocation(ip);
-                if (location != null
-                        && !("--".equals(location.countryCode)
-                        && location.latitude == -180 && location.longitude == -180))
-                {
-                    try
-                    {
-                        doc1.addField("continent", LocationUtils
-                                .getContinentCode(location.countryCode));
-                    }
-                    catch (Exception e)
-                    {
-                        System.out
-                                .println("COUNTRY ERROR: " + location.countryCode);
-                    }
-                    doc1.addField("countryCode", location.countryCode);
-                    doc1.addField("city", location.city);
-                    doc1.addField("latitude", location.latitude);
-                    doc1.addField("longitude", location.longitude);
-                    
-
-
-                }
-            }
         }
 
         if(dspaceObject != null){
@@ -508,7 +576,7 @@ public class SolrLogger
                 solrDoc.addField("page", page);
             }
 
-            solr.add(solrDoc);
+            send(solrDoc);
         }
         catch (RuntimeException re)
         {
@@ -558,7 +626,7 @@ public class SolrLogger
                 solrDoc.addField("actor", usageWorkflowEvent.getActor().getID());
             }
 
-            solr.add(solrDoc);
+            send(solrDoc);
         }
         catch (Exception e)
         {
@@ -1157,14 +1225,14 @@ public class SolrLogger
         // not be influenced
 
         // Choose to filter by the Legacy spider IP list (may get too long to properly filter all IP's
-        if(ConfigurationManager.getBooleanProperty("solr-statistics", "query.filter.spiderIp",false))
+        if(filterSpiderIp.get())
         {
             solrQuery.addFilterQuery(getIgnoreSpiderIPs());
         }
 
         // Choose to filter by isBot field, may be overriden in future
         // to allow views on stats based on bots.
-        if(ConfigurationManager.getBooleanProperty("solr-statistics", "query.filter.isBot",true))
+        if(filterIsBot.get())
         {
             solrQuery.addFilterQuery("-isBot:true");
         }
@@ -1174,7 +1242,7 @@ public class SolrLogger
         }
 
         String bundles;
-        if((bundles = ConfigurationManager.getProperty("solr-statistics", "query.filter.bundles")) != null && 0 < bundles.length()){
+        if((bundles = filterBundles.get()) != null && 0 < bundles.length()){
 
             /**
              * The code below creates a query that will allow only records which do not have a bundlename
@@ -1441,13 +1509,17 @@ public class SolrLogger
             File tempDirectory = new File(ConfigurationManager.getProperty("dspace.dir") + File.separator + "temp" + File.separator);
             tempDirectory.mkdirs();
             List<File> tempCsvFiles = new ArrayList<File>();
+            //Page by uid rather than by increasing start offsets, so that later pages cost no more
+            //than the first. The CSV response has no cursor mark, so continue after the last uid read.
+            String lastUid = null;
             for(int i = 0; i < totalRecords; i+=10000){
                 Map<String, String> params = new HashMap<String, String>();
                 params.put(CommonParams.Q, "*:*");
-                params.put(CommonParams.FQ, "-bundleName:[* TO *] AND type:" + Constants.BITSTREAM);
+                params.put(CommonParams.FQ, "-bundleName:[* TO *] AND type:" + Constants.BITSTREAM
+                        + (lastUid == null ? "" : " AND uid:{" + ClientUtils.escapeQueryChars(lastUid) + " TO *]"));
                 params.put(CommonParams.WT, "csv");
                 params.put(CommonParams.ROWS, String.valueOf(10000));
-                params.put(CommonParams.START, String.valueOf(i));
+                params.put(CommonParams.SORT, "uid asc");
 
                 String solrRequestUrl = solr.getBaseURL() + "/select";
                 solrRequestUrl = generateURL(solrRequestUrl, params);
@@ -1459,14 +1531,25 @@ public class SolrLogger
                 Reader csvReader = new InputStreamReader(csvOutput);
                 List<String[]> rows = new CSVReader(csvReader).readAll();
                 String[][] csvParsed = rows.toArray(new String[rows.size()][]);
+                if(csvParsed.length < 2){
+                    break;
+                }
                 String[] header = csvParsed[0];
                 //Attempt to find the bitstream id index !
                 int idIndex = 0;
+                int uidIndex = -1;
                 for (int j = 0; j < header.length; j++) {
                     if(header[j].equals("id")){
                         idIndex = j;
                     }
+                    if(header[j].equals("uid")){
+                        uidIndex = j;
+                    }
                 }
+                if(uidIndex < 0){
+                    throw new IllegalStateException("The statistics CSV export has no uid column");
+                }
+                lastUid = csvParsed[csvParsed.length - 1][uidIndex];
 
                 File tempCsv = new File(tempDirectory.getPath() + File.separatorChar + "temp." + i + ".csv");
                 tempCsvFiles.add(tempCsv);
@@ -1567,26 +1650,36 @@ public class SolrLogger
             SolrQuery query = new SolrQuery();
             query.setQuery("*:*");
 
-            ModifiableSolrParams solrParams = new ModifiableSolrParams();
-            solrParams.set(CommonParams.Q, "statistics_type:view OR (*:* AND -statistics_type:*)");
-            solrParams.set(CommonParams.WT, "javabin");
-            solrParams.set(CommonParams.ROWS, String.valueOf(10000));
+            SolrQuery viewQuery = new SolrQuery("statistics_type:view OR (*:* AND -statistics_type:*)");
+            viewQuery.setRows(10000);
+            //Page with a cursor, so that later pages cost no more than the first
+            viewQuery.addSort("uid", SolrQuery.ORDER.asc);
 
             addAdditionalSolrYearCores(query);
             long totalRecords = solr.query(query).getResults().getNumFound();
             System.out.println("There are " + totalRecords + " usage events in SOLR for download/view.");
 
-            for(int i = 0; i < totalRecords; i+=10000){
-                solrParams.set(CommonParams.START, String.valueOf(i));
-                QueryResponse queryResponse = solr.query(solrParams);
+            String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+            for(int i = 0; ; i+=10000){
+                viewQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+                QueryResponse queryResponse = solr.query(viewQuery);
                 SolrDocumentList docs = queryResponse.getResults();
+                if(docs.isEmpty()){
+                    break;
+                }
 
                 File exportOutput = new File(tempDirectory.getPath() + File.separatorChar + "usagestats_" + i + ".csv");
                 exportOutput.delete();
 
                 //export docs
                 addDocumentsToFile(context, docs, exportOutput);
-                System.out.println("Export hits [" + i + " - " + String.valueOf(i+9999) + "] to " + exportOutput.getCanonicalPath());
+                System.out.println("Export hits [" + i + " - " + String.valueOf(i+docs.size()-1) + "] to " + exportOutput.getCanonicalPath());
+
+                String nextCursorMark = queryResponse.getNextCursorMark();
+                if(cursorMark.equals(nextCursorMark)){
+                    break;
+                }
+                cursorMark = nextCursorMark;
             }
         } catch (Exception e) {
             log.error("Error while exporting SOLR data", e);
@@ -1597,6 +1690,15 @@ public class SolrLogger
     }
 
     private static void addDocumentsToFile(Context context, SolrDocumentList docs, File exportOutput) throws SQLException, ParseException, IOException {
+        Writer writer = new BufferedWriter(new FileWriter(exportOutput, true));
+        try {
+            writeDocuments(context, docs, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeDocuments(Context context, SolrDocumentList docs, Writer writer) throws SQLException, ParseException, IOException {
         for(SolrDocument doc : docs) {
             String ip = doc.get("ip").toString();
             if(ip.equals("::1")) {
@@ -1622,7 +1724,7 @@ public class SolrLogger
             DateFormat outputDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 
             String out = time + "," + "view_" + dso.getTypeText().toLowerCase() + "," + id + ","  + outputDateFormat.format(solrDate) + ",anonymous," + ip + "\n";
-            FileUtils.writeStringToFile(exportOutput, out, true);
+            writer.write(out);
 
         }
     }
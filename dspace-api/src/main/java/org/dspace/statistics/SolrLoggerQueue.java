@@ -0,0 +1,978 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.JavaBinCodec;
+
+/**
+ * Bounded queue of usage events on their way to the statistics core.
+ * <p>
+ * Callers only add the document to the queue. Background workers take the
+ * documents off in batches of up to <code>batchSize</code>, waiting at most
+ * <code>maxWait</code> milliseconds for a batch to fill, prepare them (see
+ * {@link #prepare(SolrInputDocument)}) and send each batch to Solr in one
+ * request. When the queue is full, the {@link OverflowPolicy} decides
+ * whether the event is dropped, whether the caller waits for space, or
+ * whether the event is spilled to a file, to be sent once the queue has
+ * drained. Batches which cannot be sent are spilled as well under the
+ * spill policy.
+ * <p>
+ * Spill files hold one record per document: its length, followed by the
+ * document in Solr's javabin format. Several queues, in one JVM or in
+ * several, may share a spill directory: each queue writes to a subdirectory
+ * of its own, and holds a lock on a file in it for as long as it is open.
+ * A queue sends the files in its own subdirectory, and those in the
+ * subdirectories of queues which are no longer open, once it can take their
+ * lock; files of queues which are still open are left alone.
+ * <p>
+ * Queues are closed by {@link #closeAll(long)} when the web application is
+ * stopped (see <code>DSpaceContextListener</code>) or a command line script
+ * ends.
+ *
+ * @see SolrLogger
+ */
+public class SolrLoggerQueue
+{
+    private static final Logger log = Logger.getLogger(SolrLoggerQueue.class);
+
+    /** What to do with an event when the queue is full */
+    public static enum OverflowPolicy
+    {
+        /** Discard the event */
+        DROP,
+        /** Wait for space, up to a timeout, then discard the event */
+        BLOCK,
+        /** Write the event to a spill file */
+        SPILL
+    }
+
+    /** Spill file being written to */
+    private static final String PART_SUFFIX = ".part";
+
+    /** Spill file waiting to be sent */
+    private static final String READY_SUFFIX = ".spill";
+
+    /** Prefix of the spill subdirectory of each queue */
+    private static final String DIR_PREFIX = "queue-";
+
+    /** File locked by the queue owning a spill subdirectory */
+    private static final String LOCK_FILE = "owner.lock";
+
+    /** Times to try to lock a new spill subdirectory */
+    private static final int LOCK_ATTEMPTS = 10;
+
+    /** Milliseconds to wait before sending spilled events again after a failure */
+    private static final long REPLAY_RETRY_DELAY = 60000;
+
+    /** Log a warning on the first and then on every n-th dropped event */
+    private static final int DROP_WARNING_INTERVAL = 1000;
+
+    /** Queues created in this JVM, to name their spill subdirectories */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    /** Queues which have not been closed yet */
+    private static final List<SolrLoggerQueue> openQueues = new CopyOnWriteArrayList<SolrLoggerQueue>();
+
+    private final SolrServer server;
+    private final BlockingQueue<SolrInputDocument> queue;
+    private final int capacity;
+    private final int batchSize;
+    private final long maxWait;
+    private final OverflowPolicy policy;
+    private final long blockTimeout;
+    private final File spillDir;
+
+    private final ExecutorService workers;
+    private volatile boolean running = true;
+
+    private final Object spillLock = new Object();
+    private File ownSpillDir;
+    private RandomAccessFile ownLockFile;
+    private DataOutputStream spillOut;
+    private File spillFile;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicLong spillSequence = new AtomicLong();
+    private volatile long nextReplay;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicInteger lastBatchSize = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Create a queue and start its workers.
+     *
+     * @param server       where to send the documents
+     * @param capacity     maximum number of documents waiting
+     * @param batchSize    maximum number of documents per request
+     * @param maxWait      milliseconds a partial batch waits for more
+     *                     documents
+     * @param threads      number of workers
+     * @param policy       what to do when the queue is full
+     * @param blockTimeout milliseconds to wait for space under
+     *                     {@link OverflowPolicy#BLOCK}
+     * @param spillDir     directory for spill files, required under
+     *                     {@link OverflowPolicy#SPILL}; may be shared with
+     *                     other queues
+     */
+    public SolrLoggerQueue(SolrServer server, int capacity, int batchSize, long maxWait,
+            int threads, OverflowPolicy policy, long blockTimeout, File spillDir)
+    {
+        if (policy == OverflowPolicy.SPILL && spillDir == null)
+        {
+            throw new IllegalArgumentException("A spill directory is required by the spill policy");
+        }
+        this.server = server;
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayBlockingQueue<SolrInputDocument>(this.capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWait = Math.max(1, maxWait);
+        this.policy = policy;
+        this.blockTimeout = Math.max(0, blockTimeout);
+        this.spillDir = spillDir;
+
+        if (spillDir != null)
+        {
+            openSpillDir();
+        }
+
+        int workerCount = Math.max(1, threads);
+        final AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "solr-statistics-queue-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (int i = 0; i < workerCount; i++)
+        {
+            workers.execute(new Worker());
+        }
+        openQueues.add(this);
+    }
+
+    /**
+     * Close every queue which is still open, sending the documents already
+     * queued.
+     *
+     * @param timeout milliseconds to wait for the workers of each queue
+     */
+    public static void closeAll(long timeout)
+    {
+        for (SolrLoggerQueue queue : openQueues)
+        {
+            queue.close(timeout);
+        }
+    }
+
+    /**
+     * Queue a document to be sent. Returns at once, except under
+     * {@link OverflowPolicy#BLOCK} when the queue is full.
+     *
+     * @param doc the usage event
+     */
+    public void offer(SolrInputDocument doc)
+    {
+        enqueued.incrementAndGet();
+        if (!running)
+        {
+            overflow(doc);
+            return;
+        }
+        if (queue.offer(doc))
+        {
+            return;
+        }
+        if (policy == OverflowPolicy.BLOCK)
+        {
+            try
+            {
+                if (queue.offer(doc, blockTimeout, TimeUnit.MILLISECONDS))
+                {
+                    return;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        overflow(doc);
+    }
+
+    /**
+     * Stop accepting documents and send those already queued, waiting at
+     * most <code>timeout</code> milliseconds. Documents still queued after
+     * that are spilled, or dropped if there is nowhere to spill them.
+     *
+     * @param timeout milliseconds to wait for the workers
+     */
+    public void close(long timeout)
+    {
+        if (!openQueues.remove(this))
+        {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+        try
+        {
+            workers.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        List<SolrInputDocument> left = new ArrayList<SolrInputDocument>();
+        queue.drainTo(left);
+        for (SolrInputDocument doc : left)
+        {
+            overflow(doc);
+        }
+        synchronized (spillLock)
+        {
+            closeSpillFile();
+            releaseSpillDir();
+        }
+        log.info("Usage event queue closed: " + this);
+    }
+
+    /**
+     * Called by a worker on each document before it is sent, for work which
+     * should not hold up the thread which queued the document. Does nothing
+     * by default.
+     *
+     * @param doc the document about to be sent
+     */
+    protected void prepare(SolrInputDocument doc)
+    {
+    }
+
+    /**
+     * @return number of documents currently waiting
+     */
+    public int getDepth()
+    {
+        return queue.size();
+    }
+
+    /**
+     * @return maximum number of documents waiting
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return number of documents offered to the queue
+     */
+    public long getEnqueued()
+    {
+        return enqueued.get();
+    }
+
+    /**
+     * @return number of documents sent to Solr
+     */
+    public long getSent()
+    {
+        return sent.get();
+    }
+
+    /**
+     * @return number of requests sent to Solr
+     */
+    public long getBatches()
+    {
+        return batches.get();
+    }
+
+    /**
+     * @return number of documents in the last request sent to Solr
+     */
+    public int getLastBatchSize()
+    {
+        return lastBatchSize.get();
+    }
+
+    /**
+     * @return average number of documents per request sent to Solr
+     */
+    public double getAverageBatchSize()
+    {
+        long count = batches.get();
+        return (count == 0) ? 0 : (double) sent.get() / count;
+    }
+
+    /**
+     * @return number of documents discarded because the queue was full or
+     *         could not be spilled
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of documents written to spill files
+     */
+    public long getSpilled()
+    {
+        return spilled.get();
+    }
+
+    /**
+     * @return number of documents Solr did not accept, whether they were
+     *         spilled afterwards or not
+     */
+    public long getFailed()
+    {
+        return failed.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "depth=" + getDepth() + "/" + capacity
+                + ", enqueued=" + getEnqueued()
+                + ", sent=" + getSent()
+                + ", batches=" + getBatches()
+                + ", lastBatchSize=" + getLastBatchSize()
+                + ", averageBatchSize=" + String.format("%.1f", getAverageBatchSize())
+                + ", dropped=" + getDropped()
+                + ", spilled=" + getSpilled()
+                + ", failed=" + getFailed();
+    }
+
+    /**
+     * Takes batches off the queue and sends them, and sends spilled
+     * documents whenever the queue is idle.
+     */
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(batchSize);
+            while (running || !queue.isEmpty())
+            {
+                try
+                {
+                    SolrInputDocument first = queue.poll(maxWait, TimeUnit.MILLISECONDS);
+                    if (first == null)
+                    {
+                        if (running)
+                        {
+                            replaySpillFiles();
+                        }
+                        continue;
+                    }
+
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + maxWait;
+                    queue.drainTo(batch, batchSize - batch.size());
+                    while (batch.size() < batchSize && running)
+                    {
+                        long remaining = deadline - System.currentTimeMillis();
+                        SolrInputDocument next = (remaining > 0) ? queue.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                        if (next == null)
+                        {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+
+                    if (!send(batch))
+                    {
+                        failed.addAndGet(batch.size());
+                        for (SolrInputDocument doc : batch)
+                        {
+                            overflow(doc);
+                        }
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                catch (RuntimeException e)
+                {
+                    log.error("Unexpected error in usage event queue", e);
+                }
+                finally
+                {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepare and send a batch in one request.
+     *
+     * @return <code>false</code> if Solr did not accept the batch
+     */
+    private boolean send(List<SolrInputDocument> batch)
+    {
+        for (SolrInputDocument doc : batch)
+        {
+            try
+            {
+                prepare(doc);
+            }
+            catch (RuntimeException e)
+            {
+                log.error("Unable to prepare usage event, sending it as it is", e);
+            }
+        }
+        try
+        {
+            server.add(batch);
+        }
+        catch (Exception e)
+        {
+            log.error("Unable to send " + batch.size() + " usage events to Solr: " + e.getMessage(), e);
+            return false;
+        }
+        sent.addAndGet(batch.size());
+        batches.incrementAndGet();
+        lastBatchSize.set(batch.size());
+        if (log.isDebugEnabled())
+        {
+            log.debug("Sent " + batch.size() + " usage events: " + this);
+        }
+        return true;
+    }
+
+    /**
+     * Deal with a document which cannot be queued or sent: spill it if the
+     * policy allows, drop it otherwise.
+     */
+    private void overflow(SolrInputDocument doc)
+    {
+        if (policy == OverflowPolicy.SPILL && spill(doc))
+        {
+            return;
+        }
+        long count = dropped.incrementAndGet();
+        if (count % DROP_WARNING_INTERVAL == 1)
+        {
+            log.warn("Usage event queue is full, dropping events: " + this);
+        }
+    }
+
+    /**
+     * Append a document to the current spill file, opening one if needed.
+     *
+     * @return <code>false</code> if the document could not be written
+     */
+    private boolean spill(SolrInputDocument doc)
+    {
+        byte[] record;
+        try
+        {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+            new JavaBinCodec().marshal(doc, buffer);
+            record = buffer.toByteArray();
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to serialize usage event", e);
+            return false;
+        }
+
+        synchronized (spillLock)
+        {
+            try
+            {
+                if (spillOut == null)
+                {
+                    if (ownSpillDir == null)
+                    {
+                        throw new IOException("No spill directory of this queue");
+                    }
+                    spillFile = new File(ownSpillDir, nextSpillName() + PART_SUFFIX);
+                    spillOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile)));
+                }
+                spillOut.writeInt(record.length);
+                spillOut.write(record);
+                spillOut.flush();
+            }
+            catch (IOException e)
+            {
+                log.error("Unable to spill usage event to " + spillDir, e);
+                closeSpillFile();
+                return false;
+            }
+        }
+        spilled.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Close the current spill file, if any, and mark it ready to be sent.
+     * Called with {@link #spillLock} held.
+     */
+    private void closeSpillFile()
+    {
+        if (spillOut == null)
+        {
+            return;
+        }
+        IOUtils.closeQuietly(spillOut);
+        spillOut = null;
+        markReady(spillFile);
+        spillFile = null;
+    }
+
+    /**
+     * Spill file names sort in the order they were written.
+     */
+    private String nextSpillName()
+    {
+        return String.format("usage-%d-%06d", System.currentTimeMillis(),
+                spillSequence.incrementAndGet() % 1000000);
+    }
+
+    private void markReady(File part)
+    {
+        String name = part.getName();
+        File ready = new File(part.getParentFile(),
+                name.substring(0, name.length() - PART_SUFFIX.length()) + READY_SUFFIX);
+        if (!part.renameTo(ready))
+        {
+            log.error("Unable to rename spill file " + part + " to " + ready);
+        }
+    }
+
+    /**
+     * Create the spill subdirectory of this queue in {@link #spillDir} and
+     * lock it. If that fails, events cannot be spilled, but the files of
+     * other queues are still sent.
+     */
+    private void openSpillDir()
+    {
+        String jvm = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9.-]", "_");
+        File dir = new File(spillDir, DIR_PREFIX + jvm + "-" + System.currentTimeMillis()
+                + "-" + instances.incrementAndGet());
+        File lock = new File(dir, LOCK_FILE);
+        try
+        {
+            for (int attempt = 1; ownSpillDir == null; attempt++)
+            {
+                if (!dir.isDirectory() && !dir.mkdirs())
+                {
+                    throw new IOException("Cannot create " + dir);
+                }
+                RandomAccessFile file = null;
+                FileLock held = null;
+                try
+                {
+                    file = new RandomAccessFile(lock, "rw");
+                    held = file.getChannel().tryLock();
+                }
+                catch (FileNotFoundException e)
+                {
+                    // removed while it was being made
+                }
+                catch (OverlappingFileLockException e)
+                {
+                    // another queue of this JVM took it for an orphan
+                }
+                // another queue may have removed the directory before it was locked
+                if (held != null && lock.exists())
+                {
+                    ownLockFile = file;
+                    ownSpillDir = dir;
+                }
+                else
+                {
+                    IOUtils.closeQuietly(file);
+                    if (attempt == LOCK_ATTEMPTS)
+                    {
+                        throw new IOException("Cannot lock " + lock);
+                    }
+                    Thread.sleep(10);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to open a spill directory in " + spillDir + ", events cannot be spilled", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Unlock the spill subdirectory of this queue, removing it if it holds
+     * no files to send. Called with {@link #spillLock} held.
+     */
+    private void releaseSpillDir()
+    {
+        if (ownSpillDir == null)
+        {
+            return;
+        }
+        removeIfEmpty(ownSpillDir);
+        IOUtils.closeQuietly(ownLockFile);
+        ownLockFile = null;
+        ownSpillDir = null;
+    }
+
+    /**
+     * Remove a spill subdirectory whose lock is held, if it holds nothing
+     * but the lock file.
+     */
+    private static void removeIfEmpty(File dir)
+    {
+        String[] names = dir.list();
+        if (names != null && names.length == 1 && LOCK_FILE.equals(names[0]))
+        {
+            if (!new File(dir, LOCK_FILE).delete() || !dir.delete())
+            {
+                log.warn("Unable to remove spill directory " + dir);
+            }
+        }
+    }
+
+    /**
+     * Files still being written when their queue stopped are complete up
+     * to their last whole record; make them ready to be sent. Only called
+     * on directories whose lock is held.
+     */
+    private void recoverSpillFiles(File dir)
+    {
+        File[] parts = dir.listFiles(new SuffixFilter(PART_SUFFIX));
+        if (parts != null)
+        {
+            for (File part : parts)
+            {
+                markReady(part);
+            }
+        }
+    }
+
+    /**
+     * Send the documents in the spill files of this queue, then in those of
+     * queues which are no longer open. Only one worker does this at a time,
+     * and only while the queue has room, so that live events are not held
+     * up. A file is deleted once all its documents are sent; if Solr fails
+     * part way, the documents not yet sent are written to a new file and the
+     * rest of the file is left for the next attempt.
+     */
+    private void replaySpillFiles()
+    {
+        if (spillDir == null || System.currentTimeMillis() < nextReplay
+                || !replaying.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            File own;
+            synchronized (spillLock)
+            {
+                closeSpillFile();
+                own = ownSpillDir;
+            }
+            if (own != null && !replayDir(own))
+            {
+                nextReplay = System.currentTimeMillis() + REPLAY_RETRY_DELAY;
+                return;
+            }
+            File[] dirs = spillDir.listFiles();
+            if (dirs == null)
+            {
+                return;
+            }
+            Arrays.sort(dirs);
+            for (File dir : dirs)
+            {
+                if (dir.isDirectory() && dir.getName().startsWith(DIR_PREFIX) && !dir.equals(own)
+                        && !replayOrphan(dir))
+                {
+                    nextReplay = System.currentTimeMillis() + REPLAY_RETRY_DELAY;
+                    return;
+                }
+            }
+        }
+        finally
+        {
+            replaying.set(false);
+        }
+    }
+
+    /**
+     * Send the files of another queue's spill subdirectory if that queue is
+     * no longer open, that is if its lock can be taken, and remove the
+     * subdirectory once they are all sent.
+     *
+     * @return <code>false</code> if sending should stop for now
+     */
+    private boolean replayOrphan(File dir)
+    {
+        File lock = new File(dir, LOCK_FILE);
+        if (!lock.exists())
+        {
+            // being created, or being removed
+            return true;
+        }
+        RandomAccessFile file = null;
+        try
+        {
+            file = new RandomAccessFile(lock, "rw");
+            FileLock held;
+            try
+            {
+                held = file.getChannel().tryLock();
+            }
+            catch (OverlappingFileLockException e)
+            {
+                // held by another queue of this JVM
+                held = null;
+            }
+            if (held == null)
+            {
+                return true;
+            }
+            recoverSpillFiles(dir);
+            if (!replayDir(dir))
+            {
+                return false;
+            }
+            removeIfEmpty(dir);
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to lock spill directory " + dir, e);
+            return true;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(file);
+        }
+    }
+
+    /**
+     * Send the ready files of a spill subdirectory whose lock is held, in the
+     * order they were written.
+     *
+     * @return <code>false</code> if sending should stop for now
+     */
+    private boolean replayDir(File dir)
+    {
+        File[] files = dir.listFiles(new SuffixFilter(READY_SUFFIX));
+        if (files == null)
+        {
+            return true;
+        }
+        Arrays.sort(files);
+        for (File file : files)
+        {
+            if (!running || !replay(file))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>false</code> if sending should stop for now
+     */
+    private boolean replay(File file)
+    {
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>(batchSize);
+            SolrInputDocument doc;
+            while ((doc = readRecord(in, file)) != null)
+            {
+                batch.add(doc);
+                if (batch.size() == batchSize)
+                {
+                    if (!sendSpilled(batch, in, file))
+                    {
+                        return false;
+                    }
+                    batch.clear();
+                    if (queue.size() > capacity / 2)
+                    {
+                        // Live events come first; carry on next time
+                        List<SolrInputDocument> none = Collections.emptyList();
+                        respill(none, in, file);
+                        return false;
+                    }
+                }
+            }
+            if (!batch.isEmpty() && !sendSpilled(batch, in, file))
+            {
+                return false;
+            }
+            IOUtils.closeQuietly(in);
+            in = null;
+            if (!file.delete())
+            {
+                log.error("Unable to delete spill file " + file);
+                return false;
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            log.error("Unable to read spill file " + file, e);
+            return false;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private boolean sendSpilled(List<SolrInputDocument> batch, DataInputStream in, File file)
+            throws IOException
+    {
+        if (send(batch))
+        {
+            return true;
+        }
+        respill(batch, in, file);
+        return false;
+    }
+
+    /**
+     * Replace <code>file</code> with a file holding <code>batch</code>
+     * followed by the records not yet read from <code>in</code>.
+     */
+    private void respill(List<SolrInputDocument> batch, DataInputStream in, File file)
+            throws IOException
+    {
+        String name = file.getName();
+        File part = new File(file.getParentFile(),
+                name.substring(0, name.length() - READY_SUFFIX.length()) + PART_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part)));
+        try
+        {
+            for (SolrInputDocument doc : batch)
+            {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+                new JavaBinCodec().marshal(doc, buffer);
+                out.writeInt(buffer.size());
+                buffer.writeTo(out);
+            }
+            IOUtils.copy(in, out);
+        }
+        finally
+        {
+            out.close();
+        }
+        in.close();
+        if (!file.delete())
+        {
+            throw new IOException("Unable to delete spill file " + file);
+        }
+        markReady(part);
+    }
+
+    /**
+     * @return the next document, or <code>null</code> at the end of the
+     *         file or at a truncated record
+     */
+    private SolrInputDocument readRecord(DataInputStream in, File file) throws IOException
+    {
+        int length;
+        try
+        {
+            length = in.readInt();
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+        byte[] record = new byte[length];
+        try
+        {
+            in.readFully(record);
+        }
+        catch (EOFException e)
+        {
+            log.warn("Ignoring truncated record at the end of " + file);
+            return null;
+        }
+        return (SolrInputDocument) new JavaBinCodec().unmarshal(new ByteArrayInputStream(record));
+    }
+
+    private static class SuffixFilter implements FilenameFilter
+    {
+        private final String suffix;
+
+        SuffixFilter(String suffix)
+        {
+            this.suffix = suffix;
+        }
+
+        @Override
+        public boolean accept(File dir, String name)
+        {
+            return name.startsWith("usage-") && name.endsWith(suffix);
+        }
+    }
+}
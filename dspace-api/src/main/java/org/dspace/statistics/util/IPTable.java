@@ -7,184 +7,461 @@
  */
 package org.dspace.statistics.util;
 
-import java.util.HashMap;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 /**
- * A Spare v4 IPTable implementation that uses nested HashMaps
- * to optimize IP address matching over ranges of IP addresses.
+ * A table of IPv4 and IPv6 address ranges, for fast matching of single
+ * addresses.
+ * <p>
+ * Entries can be given as
+ * <ul>
+ * <li>a single address: <code>66.249.66.1</code>, <code>2001:db8::1</code></li>
+ * <li>the first three places of an IPv4 address, meaning the whole
+ * <code>/24</code>: <code>66.249.66</code></li>
+ * <li>a CIDR block: <code>66.249.64.0/19</code>, <code>2001:db8::/32</code></li>
+ * <li>a range: <code>66.249.66.1 - 66.249.66.99</code></li>
+ * </ul>
+ * IPv4 addresses are held as <code>long</code>s, IPv6 addresses as pairs of
+ * <code>long</code>s. Once all entries are added, the ranges are sorted and
+ * merged into flat arrays which {@link #contains(String)} binary searches.
+ * Lookups do not lock and, for IPv4, do not allocate.
  *
  * @author mdiggory at atmire.com
  */
 public class IPTable {
 
-    /* A lookup tree for IP addresses and SubnetRanges */
-    private Map<String, Map<String, Map<String, Set<String>>>> map =
-            new HashMap<String, Map<String, Map<String, Set<String>>>>();
+    /** Ranges added so far, not yet compiled */
+    private final List<long[]> v4 = new ArrayList<long[]>();
+    private final List<long[]> v6 = new ArrayList<long[]>();
+
+    /** Compiled ranges, rebuilt after every change */
+    private volatile Ranges ranges = null;
 
     /**
-     * Can be full v4 IP, subnet or range string
+     * Can be a full v4 or v6 IP, a CIDR block, the first three places of a
+     * v4 IP, or a range of two addresses separated by <code>-</code>.
      *
      * @param ip
      */
-    public void add(String ip) throws IPFormatException {
-
-        String[] start;
-
-        String[] end;
+    public synchronized void add(String ip) throws IPFormatException {
 
         String[] range = ip.split("-");
 
         if (range.length >= 2) {
-
-            start = range[0].trim().split("/")[0].split("\\.");
-            end = range[1].trim().split("/")[0].split("\\.");
-
-            if (start.length != 4 || end.length != 4)
-            {
-                throw new IPFormatException(ip + " - Ranges need to be full IPv4 Addresses");
-            }
-
-            if (!(start[0].equals(end[0]) && start[1].equals(end[1]) && start[2].equals(end[2]))) {
-                throw new IPFormatException(ip + " - Ranges can only be across the last subnet x.y.z.0 - x.y.z.254");
+            String first = range[0].trim().split("/")[0];
+            String last = range[1].trim().split("/")[0];
+
+            if (isV6(first) || isV6(last)) {
+                long[] start = parseV6(first);
+                long[] end = parseV6(last);
+                if (compareUnsigned(start[0], start[1], end[0], end[1]) > 0) {
+                    throw new IPFormatException(ip + " - Range ends before it starts");
+                }
+                v6.add(new long[] { start[0], start[1], end[0], end[1] });
+            } else {
+                long start = parseV4(first, 0, first.length());
+                long end = parseV4(last, 0, last.length());
+                if (start < 0 || end < 0) {
+                    throw new IPFormatException(ip + " - Ranges need to be full IPv4 Addresses");
+                }
+                if (start > end) {
+                    throw new IPFormatException(ip + " - Range ends before it starts");
+                }
+                v4.add(new long[] { start, end });
             }
-
         } else {
-            //need to ignore CIDR notation for the moment.
-            //ip = ip.split("\\/")[0];
+            String address = ip.trim();
+            int prefix = -1;
+            int slash = address.indexOf('/');
+            if (slash >= 0) {
+                try {
+                    prefix = Integer.parseInt(address.substring(slash + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IPFormatException(ip + " - Invalid CIDR prefix length");
+                }
+                address = address.substring(0, slash).trim();
+            }
 
-            String[] subnets = ip.split("\\.");
+            if (isV6(address)) {
+                addV6(ip, parseV6(address), (prefix < 0) ? 128 : prefix);
+            } else {
+                String[] subnets = address.split("\\.");
 
-            if (subnets.length < 3) {
-                throw new IPFormatException(ip + " - require at least three subnet places (255.255.255.0");
+                if (subnets.length < 3) {
+                    throw new IPFormatException(ip + " - require at least three subnet places (255.255.255.0");
+                }
+                if (subnets.length == 3) {
+                    // a.b.c means the whole of a.b.c.0/24
+                    address = address + ".0";
+                    if (prefix < 0 || prefix > 24) {
+                        prefix = 24;
+                    }
+                }
 
+                long start = parseV4(address, 0, address.length());
+                if (start < 0) {
+                    throw new IPFormatException(ip + " - not a valid IPv4 address");
+                }
+                if (prefix < 0) {
+                    prefix = 32;
+                }
+                if (prefix > 32) {
+                    throw new IPFormatException(ip + " - Invalid CIDR prefix length");
+                }
+                long size = 1L << (32 - prefix);
+                start &= ~(size - 1);
+                v4.add(new long[] { start, start + size - 1 });
             }
+        }
+
+        ranges = null;
+    }
 
-            start = subnets;
-            end = subnets;
+    private void addV6(String ip, long[] address, int prefix) throws IPFormatException {
+        if (prefix > 128) {
+            throw new IPFormatException(ip + " - Invalid CIDR prefix length");
         }
+        long hiMask = (prefix >= 64) ? -1L : (prefix == 0 ? 0L : -1L << (64 - prefix));
+        long loMask = (prefix <= 64) ? 0L : (prefix == 128 ? -1L : -1L << (128 - prefix));
+        v6.add(new long[] {
+                address[0] & hiMask, address[1] & loMask,
+                address[0] | ~hiMask, address[1] | ~loMask });
+    }
 
-        if (start.length >= 3) {
+    /** Check whether a given address is contained in this netblock.
+     *
+     * @param ip the address to be tested
+     * @return true if {@code ip} is within this table's limits
+     * @throws IPFormatException
+     */
+    public boolean contains(String ip) throws IPFormatException {
+        return contains(ip, 0, ip.length());
+    }
 
+    /**
+     * Check whether the address found between <code>start</code> and
+     * <code>end</code> of a string is contained in this table, so that
+     * addresses in a list need not be cut out first. Surrounding white space
+     * is ignored.
+     *
+     * @param s holds the address to be tested
+     * @param start index of the first character of the address
+     * @param end index after the last character of the address
+     * @return true if the address is within this table's limits
+     * @throws IPFormatException if it is not an IPv4 or IPv6 address
+     */
+    public boolean contains(CharSequence s, int start, int end) throws IPFormatException {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
 
-            Map<String, Map<String, Set<String>>> first = map.get(start[0]);
+        Ranges compiled = compile();
 
-            if (first == null) {
-                first = new HashMap<String, Map<String, Set<String>>>();
-                map.put(start[0], first);
-            }
+        if (indexOf(s, ':', start, end) >= 0) {
+            long[] address = parseV6(s.subSequence(start, end).toString());
+            return compiled.containsV6(address[0], address[1]);
+        }
 
-            Map<String, Set<String>> second = first.get(start[1]);
+        long address = parseV4(s, start, end);
+        if (address < 0) {
+            throw new IPFormatException("needs to be a single IP address");
+        }
+        return compiled.containsV4(address);
+    }
 
+    /**
+     * @return <code>true</code> if nothing has been added
+     */
+    public boolean isEmpty() {
+        return compile().isEmpty();
+    }
 
-            if (second == null) {
-                second = new HashMap<String, Set<String>>();
-                first.put(start[1], second);
+    /** Convert to a Set.
+     * <p>
+     * IPv4 ranges are listed as whole <code>/24</code> blocks written as
+     * three places (<code>a.b.c</code>) where they cover them, and as single
+     * addresses otherwise, so every entry can be used as a prefix for
+     * matching stored addresses. IPv6 ranges are only listed when they are
+     * single addresses.
+     *
+     * @return this table's content as a Set
+     */
+    public Set<String> toSet() {
+        HashSet<String> set = new HashSet<String>();
+        Ranges compiled = compile();
+
+        for (int i = 0; i < compiled.v4Start.length; i++) {
+            long address = compiled.v4Start[i];
+            long end = compiled.v4End[i];
+            while (address <= end) {
+                if ((address & 0xff) == 0 && address + 0xff <= end) {
+                    set.add((address >>> 24) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff));
+                    address += 0x100;
+                } else {
+                    set.add((address >>> 24) + "." + ((address >>> 16) & 0xff) + "."
+                            + ((address >>> 8) & 0xff) + "." + (address & 0xff));
+                    address++;
+                }
             }
+        }
 
-            Set<String> third = second.get(start[2]);
-
-            if (third == null) {
-                third = new HashSet<String>();
-                second.put(start[2], third);
+        for (int i = 0; i < compiled.v6StartHi.length; i++) {
+            if (compiled.v6StartHi[i] == compiled.v6EndHi[i] && compiled.v6StartLo[i] == compiled.v6EndLo[i]) {
+                set.add(formatV6(compiled.v6StartHi[i], compiled.v6StartLo[i]));
             }
+        }
 
-            //now populate fourth place (* or value 0-254);
+        return set;
+    }
 
-            if (start.length == 3) {
-                third.add("*");
+    /**
+     * Sort and merge the ranges added so far, unless this is already done.
+     */
+    private Ranges compile() {
+        Ranges compiled = ranges;
+        if (compiled == null) {
+            synchronized (this) {
+                compiled = ranges;
+                if (compiled == null) {
+                    compiled = new Ranges(v4, v6);
+                    ranges = compiled;
+                }
             }
+        }
+        return compiled;
+    }
+
+    private static boolean isV6(String address) {
+        return address.indexOf(':') >= 0;
+    }
 
-            if (third.contains("*")) {
-                return;
+    private static int indexOf(CharSequence s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
             }
+        }
+        return -1;
+    }
 
-            if (start.length >= 4) {
-                int s = Integer.valueOf(start[3]);
-                int e = Integer.valueOf(end[3]);
-                for (int i = s; i <= e; i++) {
-                    third.add(String.valueOf(i));
+    /**
+     * Parse a dotted IPv4 address without allocating.
+     *
+     * @return the address as an unsigned 32 bit number, or -1 if it is not
+     *         four places of 0-255
+     */
+    static long parseV4(CharSequence s, int start, int end) {
+        long address = 0;
+        int places = 0;
+        int value = -1;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
                 }
+            } else if (c == '.' && value >= 0 && places < 3) {
+                address = (address << 8) | value;
+                places++;
+                value = -1;
+            } else {
+                return -1;
             }
         }
+        if (value < 0 || places != 3) {
+            return -1;
+        }
+        return (address << 8) | value;
     }
 
-    /** Check whether a given address is contained in this netblock.
-     * 
-     * @param ip the address to be tested
-     * @return true if {@code ip} is within this table's limits
-     * @throws IPFormatException
+    /**
+     * Parse an IPv6 address literal. No name lookup is done.
+     *
+     * @return the high and low 64 bits of the address. IPv4-mapped
+     *         addresses are returned in their IPv6 form.
      */
-    public boolean contains(String ip) throws IPFormatException {
-
-        String[] subnets = ip.split("\\.");
-
-        if (subnets.length != 4)
-        {
-            throw new IPFormatException("needs to be a single IP address");
+    static long[] parseV6(String address) throws IPFormatException {
+        if (!isV6(address)) {
+            throw new IPFormatException(address + " - not an IPv6 address");
         }
-
-        Map<String, Map<String, Set<String>>> first = map.get(subnets[0]);
-
-        if (first == null)
-        {
-            return false;
+        String literal = address.trim();
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
         }
-
-        Map<String, Set<String>> second = first.get(subnets[1]);
-
-        if (second == null)
-        {
-            return false;
+        if (literal.isEmpty() || (Character.digit(literal.charAt(0), 16) < 0 && literal.charAt(0) != ':')) {
+            // would be taken for a host name and looked up
+            throw new IPFormatException(address + " - not a valid IPv6 address");
+        }
+        byte[] bytes;
+        try {
+            // A literal starting like this and containing ':' is parsed,
+            // never looked up
+            InetAddress parsed = InetAddress.getByName(literal);
+            bytes = parsed.getAddress();
+            if (parsed instanceof Inet4Address) {
+                // ::ffff:a.b.c.d is returned as an IPv4 address
+                byte[] mapped = new byte[16];
+                mapped[10] = (byte) 0xff;
+                mapped[11] = (byte) 0xff;
+                System.arraycopy(bytes, 0, mapped, 12, 4);
+                bytes = mapped;
+            }
+        } catch (UnknownHostException e) {
+            throw new IPFormatException(address + " - not a valid IPv6 address");
         }
 
-        Set<String> third = second.get(subnets[2]);
-
-        if (third == null)
-        {
-            return false;
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < 8; i++) {
+            hi = (hi << 8) | (bytes[i] & 0xff);
+            lo = (lo << 8) | (bytes[i + 8] & 0xff);
         }
+        return new long[] { hi, lo };
+    }
 
-        return third.contains(subnets[3]) || third.contains("*");
+    private static String formatV6(long hi, long lo) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 3; i >= 0; i--) {
+            sb.append(Long.toHexString((hi >>> (16 * i)) & 0xffff)).append(':');
+        }
+        for (int i = 3; i >= 0; i--) {
+            sb.append(Long.toHexString((lo >>> (16 * i)) & 0xffff));
+            if (i > 0) {
+                sb.append(':');
+            }
+        }
+        return sb.toString();
+    }
 
+    private static int compareUnsigned(long aHi, long aLo, long bHi, long bLo) {
+        if (aHi != bHi) {
+            return (aHi + Long.MIN_VALUE < bHi + Long.MIN_VALUE) ? -1 : 1;
+        }
+        if (aLo != bLo) {
+            return (aLo + Long.MIN_VALUE < bLo + Long.MIN_VALUE) ? -1 : 1;
+        }
+        return 0;
     }
 
-    /** Convert to a Set.
-     * @return this table's content as a Set
+    /**
+     * Immutable, sorted and merged ranges.
      */
-    public Set<String> toSet() {
-        HashSet<String> set = new HashSet<String>();
-
-        for (Map.Entry<String, Map<String, Map<String, Set<String>>>> first : map.entrySet()) {
-            String firstString = first.getKey();
-            Map<String, Map<String, Set<String>>> secondMap = first.getValue();
-
-            for (Map.Entry<String, Map<String, Set<String>>> second : secondMap.entrySet()) {
-                String secondString = second.getKey();
-                Map<String, Set<String>> thirdMap = second.getValue();
-
-                for (Map.Entry<String, Set<String>> third : thirdMap.entrySet()) {
-                    String thirdString = third.getKey();
-                    Set<String> fourthSet = third.getValue();
+    private static final class Ranges {
+        private final long[] v4Start;
+        private final long[] v4End;
+
+        private final long[] v6StartHi;
+        private final long[] v6StartLo;
+        private final long[] v6EndHi;
+        private final long[] v6EndLo;
+
+        Ranges(List<long[]> v4, List<long[]> v6) {
+            List<long[]> sorted = new ArrayList<long[]>(v4);
+            Collections.sort(sorted, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+                }
+            });
+            List<long[]> merged = new ArrayList<long[]>();
+            for (long[] range : sorted) {
+                long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && range[0] <= last[1] + 1) {
+                    last[1] = Math.max(last[1], range[1]);
+                } else {
+                    merged.add(new long[] { range[0], range[1] });
+                }
+            }
+            v4Start = new long[merged.size()];
+            v4End = new long[merged.size()];
+            for (int i = 0; i < merged.size(); i++) {
+                v4Start[i] = merged.get(i)[0];
+                v4End[i] = merged.get(i)[1];
+            }
 
-                    if (fourthSet.contains("*")) {
-                        set.add(firstString + "." + secondString + "." + thirdString);
-                    } else {
-                        for (String fourth : fourthSet) {
-                            set.add(firstString + "." + secondString + "." + thirdString + "." + fourth);
-                        }
+            sorted = new ArrayList<long[]>(v6);
+            Collections.sort(sorted, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] a, long[] b) {
+                    return compareUnsigned(a[0], a[1], b[0], b[1]);
+                }
+            });
+            merged = new ArrayList<long[]>();
+            for (long[] range : sorted) {
+                long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                if (last != null && compareUnsigned(range[0], range[1], last[2], last[3]) <= 0) {
+                    if (compareUnsigned(range[2], range[3], last[2], last[3]) > 0) {
+                        last[2] = range[2];
+                        last[3] = range[3];
                     }
+                } else {
+                    merged.add(Arrays.copyOf(range, 4));
+                }
+            }
+            v6StartHi = new long[merged.size()];
+            v6StartLo = new long[merged.size()];
+            v6EndHi = new long[merged.size()];
+            v6EndLo = new long[merged.size()];
+            for (int i = 0; i < merged.size(); i++) {
+                long[] range = merged.get(i);
+                v6StartHi[i] = range[0];
+                v6StartLo[i] = range[1];
+                v6EndHi[i] = range[2];
+                v6EndLo[i] = range[3];
+            }
+        }
 
+        boolean isEmpty() {
+            return v4Start.length == 0 && v6StartHi.length == 0;
+        }
+
+        boolean containsV4(long address) {
+            // index of the last range starting at or before the address
+            int low = 0;
+            int high = v4Start.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (v4Start[mid] <= address) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
                 }
             }
+            return found >= 0 && address <= v4End[found];
         }
 
-        return set;
+        boolean containsV6(long hi, long lo) {
+            int low = 0;
+            int high = v6StartHi.length - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (compareUnsigned(v6StartHi[mid], v6StartLo[mid], hi, lo) <= 0) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found >= 0 && compareUnsigned(hi, lo, v6EndHi[found], v6EndLo[found]) <= 0;
+        }
     }
 
-
     /**
      * Exception Class to deal with IPFormat errors.
      */
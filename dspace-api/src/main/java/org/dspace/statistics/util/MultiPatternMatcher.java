@@ -0,0 +1,382 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tests a string against a whole list of regular expressions at once, as if
+ * calling <code>Pattern.compile(p).matcher(s).find()</code> for each
+ * pattern <code>p</code> in turn.
+ * <p>
+ * Most spider patterns are plain words, sometimes escaped or anchored at the
+ * start (<code>Googlebot</code>, <code>Brutus\/AET</code>,
+ * <code>^msnbot</code>). Those are compiled into an Aho-Corasick automaton,
+ * which finds any of them in a single pass over the string. The remaining
+ * patterns are joined into one alternation, so the string is scanned by one
+ * regular expression rather than one per pattern. Patterns which refer to
+ * their own groups, by number or by name, are matched on their own: in the
+ * alternation their back references would name the wrong groups, or groups
+ * of the same name would clash.
+ * <p>
+ * Instances are immutable and can be shared between threads; matching does
+ * not allocate, apart from the regular expression fallback.
+ *
+ * @see SpiderDetector
+ */
+public class MultiPatternMatcher
+{
+    private static final Logger log = LoggerFactory.getLogger(MultiPatternMatcher.class);
+
+    /** Characters with a special meaning in a regular expression */
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    /** Literals which may occur anywhere in the string */
+    private final Automaton anywhere;
+
+    /** Literals which must occur at the start of the string */
+    private final Automaton prefix;
+
+    /** Everything else, or <code>null</code> if there is nothing else */
+    private final Pattern others;
+
+    /** Used instead of {@link #others} if those cannot be joined */
+    private final Pattern[] separate;
+
+    private final int size;
+
+    /**
+     * @param patterns regular expressions. Invalid ones are logged and
+     *                 skipped.
+     */
+    public MultiPatternMatcher(Collection<String> patterns)
+    {
+        List<String> anywhereLiterals = new ArrayList<String>();
+        List<String> prefixLiterals = new ArrayList<String>();
+        List<Pattern> regexes = new ArrayList<Pattern>();
+        List<Pattern> alone = new ArrayList<Pattern>();
+
+        for (String pattern : patterns)
+        {
+            boolean anchored = pattern.startsWith("^");
+            String literal = toLiteral(anchored ? pattern.substring(1) : pattern);
+            if (literal != null && literal.length() > 0)
+            {
+                (anchored ? prefixLiterals : anywhereLiterals).add(literal);
+                continue;
+            }
+
+            try
+            {
+                Pattern regex = Pattern.compile(pattern);
+                (hasGroupReferences(pattern) ? alone : regexes).add(regex);
+            }
+            catch (PatternSyntaxException e)
+            {
+                log.warn("Ignoring invalid spider pattern {}:  {}", pattern, e.getDescription());
+            }
+        }
+
+        anywhere = anywhereLiterals.isEmpty() ? null : new Automaton(anywhereLiterals);
+        prefix = prefixLiterals.isEmpty() ? null : new Automaton(prefixLiterals);
+        size = anywhereLiterals.size() + prefixLiterals.size() + regexes.size() + alone.size();
+
+        Pattern joined = null;
+        if (!regexes.isEmpty())
+        {
+            StringBuilder alternation = new StringBuilder();
+            for (Pattern regex : regexes)
+            {
+                if (alternation.length() > 0)
+                {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(regex.pattern()).append(')');
+            }
+            try
+            {
+                joined = Pattern.compile(alternation.toString());
+            }
+            catch (PatternSyntaxException e)
+            {
+                log.debug("Spider patterns cannot be joined, matching them one by one:  {}", e.getDescription());
+            }
+        }
+        others = joined;
+        if (joined == null)
+        {
+            alone.addAll(0, regexes);
+        }
+        separate = alone.toArray(new Pattern[alone.size()]);
+    }
+
+    /**
+     * @param s the string to test, may be <code>null</code>
+     * @return <code>true</code> if any of the patterns is found in
+     *         <code>s</code>
+     */
+    public boolean matches(CharSequence s)
+    {
+        if (s == null)
+        {
+            return false;
+        }
+        if (prefix != null && prefix.matchesPrefix(s))
+        {
+            return true;
+        }
+        if (anywhere != null && anywhere.matchesAnywhere(s))
+        {
+            return true;
+        }
+        if (others != null && others.matcher(s).find())
+        {
+            return true;
+        }
+        for (Pattern regex : separate)
+        {
+            if (regex.matcher(s).find())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of patterns in use
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Whether a pattern contains a back reference (<code>\1</code>,
+     * <code>\k&lt;name&gt;</code>) or a named group
+     * (<code>(?&lt;name&gt;...)</code>), which cannot be joined with other
+     * patterns.
+     */
+    static boolean hasGroupReferences(String pattern)
+    {
+        for (int i = 0; i < pattern.length() - 1; i++)
+        {
+            char c = pattern.charAt(i);
+            char next = pattern.charAt(i + 1);
+            if (c == '\\')
+            {
+                if ((next >= '1' && next <= '9') || next == 'k')
+                {
+                    return true;
+                }
+                if (next == 'Q')
+                {
+                    // quoted up to \E
+                    int end = pattern.indexOf("\\E", i + 2);
+                    if (end < 0)
+                    {
+                        return false;
+                    }
+                    i = end;
+                }
+                i++;
+            }
+            else if (c == '(' && pattern.startsWith("?<", i + 1) && i + 3 < pattern.length()
+                    && pattern.charAt(i + 3) != '=' && pattern.charAt(i + 3) != '!')
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The string matched by a pattern which contains no regular expression
+     * operators, only plain characters and escaped punctuation.
+     *
+     * @return the literal, or <code>null</code> if the pattern is more than
+     *         that
+     */
+    static String toLiteral(String pattern)
+    {
+        StringBuilder literal = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            char c = pattern.charAt(i);
+            if (c == '\\')
+            {
+                if (i + 1 >= pattern.length() || Character.isLetterOrDigit(pattern.charAt(i + 1)))
+                {
+                    // \s, \d, \1, \Q... are not literals
+                    return null;
+                }
+                literal.append(pattern.charAt(++i));
+            }
+            else if (METACHARACTERS.indexOf(c) >= 0)
+            {
+                return null;
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+
+    /**
+     * Aho-Corasick automaton over a set of literals. States are numbered,
+     * and the transitions of each state are kept in sorted arrays, searched
+     * by binary search.
+     */
+    private static final class Automaton
+    {
+        private final char[][] labels;
+        private final int[][] targets;
+        private final int[] failure;
+        /** A literal ends in this state */
+        private final boolean[] terminal;
+        /** A literal ends in this state, or in one of its failure states */
+        private final boolean[] accepting;
+
+        Automaton(List<String> literals)
+        {
+            // Build the trie
+            List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+            List<Boolean> ends = new ArrayList<Boolean>();
+            trie.add(new TreeMap<Character, Integer>());
+            ends.add(Boolean.FALSE);
+            for (String literal : literals)
+            {
+                int state = 0;
+                for (int i = 0; i < literal.length(); i++)
+                {
+                    Character c = Character.valueOf(literal.charAt(i));
+                    Integer next = trie.get(state).get(c);
+                    if (next == null)
+                    {
+                        next = Integer.valueOf(trie.size());
+                        trie.add(new TreeMap<Character, Integer>());
+                        ends.add(Boolean.FALSE);
+                        trie.get(state).put(c, next);
+                    }
+                    state = next.intValue();
+                }
+                ends.set(state, Boolean.TRUE);
+            }
+
+            int count = trie.size();
+            labels = new char[count][];
+            targets = new int[count][];
+            failure = new int[count];
+            terminal = new boolean[count];
+            accepting = new boolean[count];
+            for (int state = 0; state < count; state++)
+            {
+                Map<Character, Integer> edges = trie.get(state);
+                labels[state] = new char[edges.size()];
+                targets[state] = new int[edges.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> edge : edges.entrySet())
+                {
+                    labels[state][i] = edge.getKey().charValue();
+                    targets[state][i] = edge.getValue().intValue();
+                    i++;
+                }
+                terminal[state] = ends.get(state).booleanValue();
+                accepting[state] = terminal[state];
+            }
+
+            // Failure links, breadth first
+            LinkedList<Integer> queue = new LinkedList<Integer>();
+            for (int target : targets[0])
+            {
+                failure[target] = 0;
+                queue.add(Integer.valueOf(target));
+            }
+            while (!queue.isEmpty())
+            {
+                int state = queue.removeFirst().intValue();
+                for (int i = 0; i < labels[state].length; i++)
+                {
+                    int target = targets[state][i];
+                    int f = failure[state];
+                    int next;
+                    while ((next = step(f, labels[state][i])) < 0 && f != 0)
+                    {
+                        f = failure[f];
+                    }
+                    failure[target] = (next < 0 || next == target) ? 0 : next;
+                    // A state accepts if any literal ends here, including
+                    // literals which are a suffix of this one
+                    accepting[target] |= accepting[failure[target]];
+                    queue.add(Integer.valueOf(target));
+                }
+            }
+        }
+
+        /**
+         * @return the state reached from <code>state</code> on
+         *         <code>c</code>, or -1 if there is no transition
+         */
+        private int step(int state, char c)
+        {
+            int i = Arrays.binarySearch(labels[state], c);
+            return (i < 0) ? -1 : targets[state][i];
+        }
+
+        boolean matchesAnywhere(CharSequence s)
+        {
+            int state = 0;
+            for (int i = 0; i < s.length(); i++)
+            {
+                char c = s.charAt(i);
+                int next;
+                while ((next = step(state, c)) < 0 && state != 0)
+                {
+                    state = failure[state];
+                }
+                state = (next < 0) ? 0 : next;
+                if (accepting[state])
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean matchesPrefix(CharSequence s)
+        {
+            int state = 0;
+            for (int i = 0; i < s.length(); i++)
+            {
+                state = step(state, s.charAt(i));
+                if (state < 0)
+                {
+                    return false;
+                }
+                if (terminal[state])
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
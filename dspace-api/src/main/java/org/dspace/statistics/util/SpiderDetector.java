@@ -11,14 +11,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.Collections;
-import java.util.regex.Pattern;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import org.dspace.core.ConfigurationManager;
+import org.dspace.core.ConfigurationSetting;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +27,15 @@ import org.slf4j.LoggerFactory;
  * SpiderDetector is used to find IP's that are spiders...
  * In future someone may add Host Domains
  * to the detection criteria here.
+ * <p>
+ * The spider files under <code>[dspace]/config/spiders</code> are compiled
+ * into an immutable snapshot: an {@link IPTable} of address ranges and a
+ * {@link MultiPatternMatcher} each for agents and domain names. Lookups read
+ * the current snapshot without locking. Every
+ * <code>spiderdetector.reload.interval</code> seconds (usage-statistics.cfg,
+ * default 60, 0 to disable) a background thread checks whether any spider
+ * file has changed and, if so, builds a new snapshot and swaps it in, so
+ * that no request waits for the files to be read.
  *
  * @author kevinvandevelde at atmire.com
  * @author ben at atmire.com
@@ -37,16 +47,15 @@ public class SpiderDetector {
 
     private static Boolean useProxies;
 
-    /**
-     * Sparse HashTable structure to hold IP address ranges.
-     */
-    private static IPTable table = null;
+    /** Seconds between checks for changed spider files */
+    private static final ConfigurationSetting.IntSetting reloadInterval =
+            new ConfigurationSetting.IntSetting("usage-statistics", "spiderdetector.reload.interval", 60);
 
-    /** Collection of regular expressions to match known spiders' agents. */
-    private static List<Pattern> agents = Collections.synchronizedList(new ArrayList<Pattern>());
+    /** The compiled spider files in use */
+    private static volatile Spiders spiders = null;
 
-    /** Collection of regular expressions to match known spiders' domain names. */
-    private static List<Pattern> domains = Collections.synchronizedList(new ArrayList<Pattern>());
+    /** Checks for changed spider files, once they are loaded */
+    private static ScheduledExecutorService reloader = null;
 
     /**
      * Utility method which reads lines from a file & returns them in a Set.
@@ -91,70 +100,183 @@ public class SpiderDetector {
      */
     public static Set<String> getSpiderIpAddresses() {
 
-        loadSpiderIpAddresses();
-        return table.toSet();
+        return getSpiders().table.toSet();
+    }
+
+    /**
+     * Rebuild the compiled spider lists from the files now, rather than
+     * waiting for the next periodic check.
+     */
+    public static void reload() {
+        File spidersDir = getSpidersDir();
+        spiders = load(spidersDir, fingerprint(spidersDir));
+        startReloader();
+    }
+
+    /**
+     * Stop checking for changed spider files, when the web application is
+     * stopped. They are checked again after the next {@link #reload()}.
+     */
+    public static synchronized void stopReloading() {
+        if (reloader != null) {
+            reloader.shutdownNow();
+            reloader = null;
+        }
+    }
+
+    /*
+     * Current snapshot, loaded on first use and replaced by the reloader
+     * when the files change.
+     */
+    private static Spiders getSpiders() {
+        Spiders current = spiders;
+        if (current == null) {
+            synchronized (SpiderDetector.class) {
+                current = spiders;
+                if (current == null) {
+                    File spidersDir = getSpidersDir();
+                    current = load(spidersDir, fingerprint(spidersDir));
+                    spiders = current;
+                    startReloader();
+                }
+            }
+        }
+        return current;
+    }
+
+    /*
+     * Start the background check for changed spider files, unless it is
+     * running or turned off.
+     */
+    private static synchronized void startReloader() {
+        int interval = reloadInterval.get();
+        if (reloader != null || interval <= 0) {
+            return;
+        }
+        reloader = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "spider-detector-reload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        reloader.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkForChanges();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Build a new snapshot if any spider file has changed.
+     */
+    static void checkForChanges() {
+        try {
+            Spiders current = spiders;
+            File spidersDir = getSpidersDir();
+            long fingerprint = fingerprint(spidersDir);
+            if (current != null && fingerprint != current.fingerprint) {
+                log.info("Spider files changed, reloading");
+                spiders = load(spidersDir, fingerprint);
+            }
+        } catch (RuntimeException e) {
+            log.error("Error checking the spider files for changes: " + e.getMessage(), e);
+        }
+    }
+
+    private static File getSpidersDir() {
+        return new File(ConfigurationManager.getProperty("dspace.dir"), "config/spiders");
+    }
+
+    /*
+     * Sum up names, sizes and modification times of all spider files, to
+     * notice when any of them changes.
+     */
+    private static long fingerprint(File dir) {
+        long fingerprint = 17;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    fingerprint = 31 * fingerprint + fingerprint(file);
+                } else {
+                    fingerprint = 31 * fingerprint + file.getName().hashCode();
+                    fingerprint = 31 * fingerprint + file.lastModified();
+                    fingerprint = 31 * fingerprint + file.length();
+                }
+            }
+        }
+        return fingerprint;
+    }
+
+    /*
+     *  private loader to compile all the spider files.
+     */
+    private static Spiders load(File spidersDir, long fingerprint) {
+        return new Spiders(loadSpiderIpAddresses(spidersDir),
+                new MultiPatternMatcher(loadPatterns(spidersDir, "agents")),
+                new MultiPatternMatcher(loadPatterns(spidersDir, "domains")),
+                fingerprint);
     }
 
     /*
      *  private loader to populate the table from files.
      */
 
-    private static void loadSpiderIpAddresses() {
-
-        if (table == null) {
-            table = new IPTable();
-
-            String filePath = ConfigurationManager.getProperty("dspace.dir");
-
-            try {
-                File spidersDir = new File(filePath, "config/spiders");
-
-                if (spidersDir.exists() && spidersDir.isDirectory()) {
-                    for (File file : spidersDir.listFiles()) {
-                        if (file.isFile())
-                        {
-                            for (String ip : readPatterns(file)) {
-                                log.debug("Loading {}", ip);
-                                if (!Character.isDigit(ip.charAt(0)))
-                                {
-                                    try {
-                                        ip = DnsLookup.forward(ip);
-                                        log.debug("Resolved to {}", ip);
-                                    } catch (IOException e) {
-                                        log.warn("Not loading {}:  {}", ip, e.getMessage());
-                                        continue;
-                                    }
+    private static IPTable loadSpiderIpAddresses(File spidersDir) {
+
+        IPTable table = new IPTable();
+
+        try {
+            if (spidersDir.exists() && spidersDir.isDirectory()) {
+                for (File file : spidersDir.listFiles()) {
+                    if (file.isFile())
+                    {
+                        for (String ip : readPatterns(file)) {
+                            log.debug("Loading {}", ip);
+                            if (!Character.isDigit(ip.charAt(0)) && ip.indexOf(':') < 0)
+                            {
+                                try {
+                                    ip = DnsLookup.forward(ip);
+                                    log.debug("Resolved to {}", ip);
+                                } catch (IOException e) {
+                                    log.warn("Not loading {}:  {}", ip, e.getMessage());
+                                    continue;
                                 }
+                            }
+                            try {
                                 table.add(ip);
+                            } catch (IPTable.IPFormatException e) {
+                                log.warn("Not loading {}:  {}", ip, e.getMessage());
                             }
-                            log.info("Loaded Spider IP file: " + file);
                         }
+                        log.info("Loaded Spider IP file: " + file);
                     }
-                } else {
-                    log.info("No spider file loaded");
                 }
+            } else {
+                log.info("No spider file loaded");
             }
-            catch (Exception e) {
-                log.error("Error Loading Spiders:" + e.getMessage(), e);
-            }
-
+        }
+        catch (Exception e) {
+            log.error("Error Loading Spiders:" + e.getMessage(), e);
         }
 
+        return table;
     }
 
     /**
      * Load agent name patterns from all files in a single subdirectory of config/spiders.
      *
-     * @param directory simple directory name (e.g. "agents").
-     *      "${dspace.dir}/config/spiders" will be prepended to yield the path to
-     *      the directory of pattern files.
-     * @param patternList patterns read from the files in {@code directory} will
-     *      be added to this List.
+     * @param spidersDir the "${dspace.dir}/config/spiders" directory.
+     * @param directory simple directory name (e.g. "agents") within
+     *      {@code spidersDir}, holding the pattern files.
+     * @return patterns read from the files in {@code directory}.
      */
-    private static void loadPatterns(String directory, List<Pattern> patternList)
+    private static Set<String> loadPatterns(File spidersDir, String directory)
     {
-        String dspaceHome = ConfigurationManager.getProperty("dspace.dir");
-        File spidersDir = new File(dspaceHome, "config/spiders");
+        Set<String> patternList = new HashSet<String>();
         File patternsDir = new File(spidersDir, directory);
         if (patternsDir.exists() && patternsDir.isDirectory())
         {
@@ -170,10 +292,7 @@ public class SpiderDetector {
                             file.getPath(), ex.getMessage());
                     continue;
                 }
-                for (String pattern : patterns)
-                {
-                    patternList.add(Pattern.compile(pattern));
-                }
+                patternList.addAll(patterns);
                 log.info("Loaded pattern file:  {}", file.getPath());
             }
         }
@@ -181,13 +300,11 @@ public class SpiderDetector {
         {
             log.info("No patterns loaded from {}", patternsDir.getPath());
         }
+        return patternList;
     }
 
     /**
      * Static Service Method for testing spiders against existing spider files.
-     * <p>
-     * In future spiders HashSet may be optimized as byte offset array to
-     * improve performance and memory footprint further.
      *
      * @param clientIP address of the client.
      * @param proxyIPs comma-list of X-Forwarded-For addresses, or null.
@@ -198,54 +315,38 @@ public class SpiderDetector {
     public static boolean isSpider(String clientIP, String proxyIPs,
             String hostname, String agent)
     {
+        Spiders current = getSpiders();
+
         // See if any agent patterns match
-        if (null != agent)
-        {   
-            synchronized(agents)
-            {
-                if (agents.isEmpty())
-                    loadPatterns("agents", agents);
-            }
-            for (Pattern candidate : agents)
-            {
-		// prevent matcher() invocation from a null Pattern object
-                if (null != candidate && candidate.matcher(agent).find())
-                {
-                    return true;
-                }
-            }
+        if (null != agent && current.agents.matches(agent))
+        {
+            return true;
         }
 
         // No.  See if any IP addresses match
         if (isUseProxies() && proxyIPs != null) {
-            /* This header is a comma delimited list */
-            for (String xfip : proxyIPs.split(",")) {
-                if (isSpider(xfip))
+            /* This header is a comma delimited list, walk it in place */
+            int start = 0;
+            while (start <= proxyIPs.length()) {
+                int end = proxyIPs.indexOf(',', start);
+                if (end < 0) {
+                    end = proxyIPs.length();
+                }
+                if (isSpider(current.table, proxyIPs, start, end))
                 {
                     return true;
                 }
+                start = end + 1;
             }
         }
 
-        if (isSpider(clientIP))
+        if (clientIP != null && isSpider(current.table, clientIP, 0, clientIP.length()))
             return true;
 
         // No.  See if any DNS names match
-        if (null != hostname)
+        if (null != hostname && current.domains.matches(hostname))
         {
-            synchronized(domains) 
-            {
-                if (domains.isEmpty())
-                    loadPatterns("domains", domains);
-            }
-            for (Pattern candidate : domains)
-            {
-		// prevent matcher() invocation from a null Pattern object
-		if (null != candidate && candidate.matcher(hostname).find())
-                {
-                    return true;
-                }
-            }
+            return true;
         }
 
         // Not a known spider.
@@ -274,21 +375,15 @@ public class SpiderDetector {
      */
     public static boolean isSpider(String ip) {
 
-        if (table == null) {
-            SpiderDetector.loadSpiderIpAddresses();
-        }
+        return ip != null && isSpider(getSpiders().table, ip, 0, ip.length());
+    }
 
+    private static boolean isSpider(IPTable table, String s, int start, int end) {
         try {
-            if (table.contains(ip)) {
-                return true;
-            }
+            return table.contains(s, start, end);
         } catch (Exception e) {
             return false;
         }
-
-        return false;
-
-
     }
 
     private static boolean isUseProxies() {
@@ -306,4 +401,21 @@ public class SpiderDetector {
         return useProxies;
     }
 
+    /**
+     * Immutable compiled form of the spider files.
+     */
+    private static final class Spiders {
+        private final IPTable table;
+        private final MultiPatternMatcher agents;
+        private final MultiPatternMatcher domains;
+        private final long fingerprint;
+
+        Spiders(IPTable table, MultiPatternMatcher agents, MultiPatternMatcher domains, long fingerprint) {
+            this.table = table;
+            this.agents = agents;
+            this.domains = domains;
+            this.fingerprint = fingerprint;
+        }
+    }
+
 }
@@ -525,6 +525,34 @@ public class BitstreamStorageManager
 		return (file != null) ? FileFactory.newFileInputStream(file) : null;
     }
 
+    /**
+     * Return the local file holding the bits for the bitstream with ID, so
+     * that they can be read at any position without reading the whole
+     * stream. Only bitstreams in a conventional (non-SRB) asset store are
+     * kept in a local file.
+     *
+     * @param context
+     *            The current context
+     * @param id
+     *            The ID of the bitstream
+     * @exception IOException
+     *                If a problem occurs while determining the file
+     * @exception SQLException
+     *                If a problem occurs accessing the RDBMS
+     *
+     * @return The file, or null if the bitstream does not exist or is not
+     *         kept in a local file
+     */
+    public static File retrieveLocalFile(Context context, int id)
+            throws SQLException, IOException
+    {
+        TableRow bitstream = DatabaseManager.find(context, "bitstream", id);
+
+        GeneralFile file = getFile(bitstream);
+
+        return (file instanceof LocalFile) ? new File(file.getAbsolutePath()) : null;
+    }
+
     /**
      * <p>
      * Remove a bitstream from the asset store. This method does not delete any
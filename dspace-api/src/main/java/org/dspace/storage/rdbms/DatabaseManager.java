@@ -601,6 +601,239 @@ public class DatabaseManager
         }
     }
 
+    /**
+     * Delete the rows with the given primary keys from a table, sending all
+     * deletes to the database as a single JDBC batch.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param table
+     *            The table to delete from
+     * @param ids
+     *            The primary key values
+     * @return The number of rows deleted
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int deleteBatch(Context context, String table, Collection<Integer> ids) throws SQLException
+    {
+        if (ids == null || ids.isEmpty())
+        {
+            return 0;
+        }
+
+        String ctable = canonicalize(table);
+        if ( ! DB_SAFE_NAME.matcher(ctable).matches())
+        {
+            throw new SQLException("Unable to execute delete query because table name (" + ctable + ") contains non alphanumeric characters.");
+        }
+
+        String sql = "delete from " + ctable + " where " + getPrimaryKeyColumn(context, ctable) + " = ? ";
+        List<Object[]> parameters = new ArrayList<Object[]>(ids.size());
+        for (Integer id : ids)
+        {
+            parameters.add(new Object[] { id });
+        }
+
+        return updateBatch(context, sql, parameters);
+    }
+
+    /**
+     * Execute a parameterised update query once for every set of parameters,
+     * sending all executions to the database as a single JDBC batch.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param query
+     *            The SQL query to execute
+     * @param parameterSets
+     *            One array of parameters per execution, in the same form as
+     *            accepted by {@link #updateQuery(Context, String, Object...)}
+     * @return The total number of rows affected, where the driver reports it
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int updateBatch(Context context, String query, List<Object[]> parameterSets) throws SQLException
+    {
+        if (parameterSets == null || parameterSets.isEmpty())
+        {
+            return 0;
+        }
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Running batch query \"" + query + "\" " + parameterSets.size() + " times");
+        }
+
+        PreparedStatement statement = null;
+        try
+        {
+            statement = context.getDBConnection().prepareStatement(query);
+            for (Object[] parameters : parameterSets)
+            {
+                loadParameters(statement, parameters);
+                statement.addBatch();
+            }
+
+            return sumBatchResults(statement.executeBatch());
+        }
+        catch (SQLException e)
+        {
+            log.error("SQL updateBatch Error - ", e);
+            throw e;
+        }
+        finally
+        {
+            if (statement != null)
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException sqle)
+                {
+                    log.error("SQL updateBatch Error - ", sqle);
+                    throw sqle;
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert a number of new rows into the same table, sending all inserts to
+     * the database as a single JDBC batch. The primary key of each row is
+     * generated by the database inside the insert statement and is
+     * <em>not</em> written back into the passed rows, so this should only be
+     * used when the caller does not need to know the new IDs.
+     *
+     * @param context
+     *            Current DSpace context
+     * @param rows
+     *            The rows to insert. All must belong to the same table.
+     * @return The number of rows inserted, where the driver reports it
+     * @exception SQLException
+     *                If a database error occurs
+     */
+    public static int insertBatch(Context context, List<TableRow> rows) throws SQLException
+    {
+        if (rows == null || rows.isEmpty())
+        {
+            return 0;
+        }
+
+        String table = rows.get(0).getTable();
+        if ( ! DB_SAFE_NAME.matcher(table).matches())
+        {
+            throw new SQLException("Unable to execute insert query because table name (" + table + ") contains non alphanumeric characters.");
+        }
+
+        Collection<ColumnInfo> info = getColumnInfo(context, table);
+        List<ColumnInfo> params = new ArrayList<ColumnInfo>();
+
+        // Same shape as the single row Postgres insert, but the new ID is
+        // taken from the sequence inline so no RETURNING clause is needed.
+        StringBuilder insertBuilder = new StringBuilder("INSERT INTO ").append(table).append(" ( ");
+        StringBuilder valuesBuilder = new StringBuilder(") VALUES ( ");
+        boolean firstColumn = true;
+        boolean foundPrimaryKey = false;
+        for (ColumnInfo col : info)
+        {
+            if (firstColumn)
+            {
+                firstColumn = false;
+            }
+            else
+            {
+                insertBuilder.append(",");
+                valuesBuilder.append(",");
+            }
+
+            insertBuilder.append(col.getName());
+
+            if (!foundPrimaryKey && col.isPrimaryKey())
+            {
+                if (isOracle)
+                {
+                    valuesBuilder.append(table).append("_seq.nextval");
+                }
+                else
+                {
+                    valuesBuilder.append("getnextid('").append(table).append("')");
+                }
+                foundPrimaryKey = true;
+            }
+            else
+            {
+                valuesBuilder.append('?');
+                params.add(col);
+            }
+        }
+        String sql = insertBuilder.append(valuesBuilder.toString()).append(")").toString();
+
+        if (log.isDebugEnabled())
+        {
+            log.debug("Running batch query \"" + sql + "\" " + rows.size() + " times");
+        }
+
+        PreparedStatement statement = null;
+        try
+        {
+            statement = context.getDBConnection().prepareStatement(sql);
+            for (TableRow row : rows)
+            {
+                if (!table.equals(row.getTable()))
+                {
+                    throw new IllegalArgumentException("All rows in a batch insert must belong to table " + table);
+                }
+                loadParameters(statement, params, row);
+                statement.addBatch();
+            }
+
+            return sumBatchResults(statement.executeBatch());
+        }
+        catch (SQLException e)
+        {
+            log.error("SQL insertBatch Error - ", e);
+            throw e;
+        }
+        finally
+        {
+            if (statement != null)
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException sqle)
+                {
+                    log.error("SQL insertBatch Error - ", sqle);
+                    throw sqle;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add up the update counts returned by a JDBC batch, counting entries the
+     * driver could not report on (SUCCESS_NO_INFO) as a single row each.
+     */
+    private static int sumBatchResults(int[] results)
+    {
+        int total = 0;
+        for (int result : results)
+        {
+            if (result == Statement.SUCCESS_NO_INFO)
+            {
+                total++;
+            }
+            else if (result > 0)
+            {
+                total += result;
+            }
+        }
+        return total;
+    }
+
     /**
      * Obtain an RDBMS connection.
      *
@@ -22,19 +22,36 @@ import org.apache.solr.client.solrj.request.LukeRequest;
 import org.apache.solr.client.solrj.response.CoreAdminResponse;
 import org.apache.solr.client.solrj.response.FieldStatsInfo;
 import org.apache.solr.client.solrj.response.LukeResponse;
+import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.client.solrj.response.RangeFacet;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.luke.FieldFlag;
 import org.apache.solr.common.params.CoreAdminParams;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.ContentStreamBase;
 import org.dspace.core.ConfigurationManager;
 
+import au.com.bytecode.opencsv.CSVWriter;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.net.URL;
-import java.nio.file.FileStore;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Utility class to export, clear and import Solr indexes.
@@ -62,10 +79,19 @@ public class SolrImportExport
 	private static final String INDEX_NAME_OPTION = "i";
 	private static final String KEEP_OPTION = "k";
 	private static final String LAST_OPTION = "l";
+	private static final String THREADS_OPTION = "t";
 
 	public static final int ROWS_PER_FILE = 10_000;
 
+	/** Number of files imported at the same time, unless given on the command line */
+	public static final int DEFAULT_IMPORT_THREADS = 4;
+
 	private static final String MULTIPLE_VALUES_SPLITTER = ",";
+
+	/** Escapes the separator within one of multiple values, as Solr's CSV response writer does */
+	private static final String MULTIPLE_VALUE_ESCAPE = "\\";
+
+	private static final String EXPORT_SUFFIX = ".csv.gz";
 	
 	private static final Logger log = Logger.getLogger(SolrImportExport.class);
 
@@ -117,7 +143,7 @@ public class SolrImportExport
 						String solrUrl = makeSolrUrl(indexName);
 						boolean clear = line.hasOption(CLEAR_OPTION);
 						//Set overwrite to true if clear is true
-						importIndex(indexName, importDir, solrUrl, clear);
+						importIndex(indexName, importDir, solrUrl, clear, getThreads(line));
 					}
 					catch (IOException | SolrServerException | SolrImportExportException e)
 					{
@@ -171,7 +197,7 @@ public class SolrImportExport
 					try {
 						boolean keepExport = line.hasOption(KEEP_OPTION);
 						boolean overwrite = line.hasOption(OVERWRITE_OPTION);
-						reindex(indexName, directoryName, keepExport, overwrite);
+						reindex(indexName, directoryName, keepExport, overwrite, getThreads(line));
 					} catch (IOException | SolrServerException | SolrImportExportException e) {
 						e.printStackTrace();
 					}
@@ -193,7 +219,8 @@ public class SolrImportExport
 	private static Options makeOptions() {
 		Options options = new Options();
 		options.addOption(ACTION_OPTION, "action", true, "The action to perform: import, export or reindex. Default: export.");
-		options.addOption(CLEAR_OPTION, "clear", false, "When importing, also clear the index first. Ignored when action is export or reindex.");
+		options.addOption(CLEAR_OPTION, "clear", false, "When importing, also clear the index first, and start an interrupted import over rather than resume it." +
+				                                              " Ignored when action is export or reindex.");
 		options.addOption(OVERWRITE_OPTION, "force-overwrite", false, "When exporting or re-indexing, allow overwrite of existing export files");
 		options.addOption(DIRECTORY_OPTION, "directory", true,
 				                 "The absolute path for the directory to use for import or export. If omitted, [dspace]/solr-export is used.");
@@ -203,6 +230,8 @@ public class SolrImportExport
 		options.addOption(KEEP_OPTION, "keep", false, "When reindexing, keep the contents of the data export directory." +
 				                                              " By default, the contents of this directory will be deleted once the reindex has finished." +
 				                                              " Ignored when action is export or import.");
+		options.addOption(THREADS_OPTION, "threads", true, "When importing or re-indexing, the number of files to import at the same time." +
+				                                              " Default: " + DEFAULT_IMPORT_THREADS + ". Ignored when action is export.");
 		options.addOption(LAST_OPTION, "last", true, "When exporting, export records from the last [timeperiod] only." +
 				                                             " This can be one of: 'd' (beginning of yesterday through to now);" +
 				                                             " 'm' (beginning of the previous month through to end of the previous month);" +
@@ -211,6 +240,19 @@ public class SolrImportExport
 		return options;
 	}
 
+	private static int getThreads(CommandLine line) throws ParseException
+	{
+		String threads = line.getOptionValue(THREADS_OPTION, String.valueOf(DEFAULT_IMPORT_THREADS));
+		try
+		{
+			return Math.max(1, Integer.parseInt(threads));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new ParseException("Number of threads must be a number: " + threads);
+		}
+	}
+
 	/**
 	 * Reindexes the specified core
 	 *
@@ -219,8 +261,9 @@ public class SolrImportExport
 	 * @param keepExport whether to keep the contents of the exportDir after the reindex. If keepExport is false and the
 	 *                      export directory was created by this method, the export directory will be deleted at the end of the reimport.
 	 * @param overwrite allow export files to be overwritten during re-index
+	 * @param threads number of files to import at the same time
 	 */
-	private static void reindex(String indexName, String exportDirName, boolean keepExport, boolean overwrite)
+	private static void reindex(String indexName, String exportDirName, boolean keepExport, boolean overwrite, int threads)
 			throws IOException, SolrServerException, SolrImportExportException {
 		String tempIndexName = indexName + "-temp";
 
@@ -320,7 +363,7 @@ public class SolrImportExport
 				exportIndex(indexName, exportDir, tempSolrUrl, timeField, overwrite);
 
 				// clear actual core (temp core name, clearing actual data dir) & import
-				importIndex(indexName, exportDir, tempSolrUrl, true);
+				importIndex(indexName, exportDir, tempSolrUrl, true, threads);
 			}
 			catch (Exception e)
 			{
@@ -344,7 +387,7 @@ public class SolrImportExport
 			// because the core name for the temporary export has -temp in it while the actual core doesn't
 			exportIndex(tempIndexName, exportDir, tempSolrUrl, timeField, overwrite);
 			// ...and import them into the now-again-actual core *without* clearing
-			importIndex(tempIndexName, exportDir, origSolrUrl, false);
+			importIndex(tempIndexName, exportDir, origSolrUrl, false, threads);
 
 			// commit changes
 			origSolr.commit();
@@ -391,16 +434,37 @@ public class SolrImportExport
 	 * @param indexName the index to import.
 	 * @param fromDir the source directory. Must exist and be readable.
 	 *                   The importer will look for files whose name starts with <pre>indexName</pre>
-	 *                   and ends with .csv (to match what is generated by #makeExportFilename).
+	 *                   and ends with .csv or .csv.gz (to match what is generated by #makeExportFilename).
 	 * @param solrUrl The solr URL for the index to export. Must not be null.
 	 * @param clear if true, clear the index before importing.
-	 * @param overwrite if true, skip _version_ field on import to disable Solr's optimistic concurrency functionality
 	 * @throws IOException if there is a problem reading the files or communicating with Solr.
 	 * @throws SolrServerException if there is a problem reading the files or communicating with Solr.
 	 * @throws SolrImportExportException if there is a problem communicating with Solr.
 	 */
 	public static void importIndex(final String indexName, File fromDir, String solrUrl, boolean clear)
 			throws IOException, SolrServerException, SolrImportExportException
+	{
+		importIndex(indexName, fromDir, solrUrl, clear, 1);
+	}
+
+	/**
+	 * Import previously exported documents (or externally created CSV files that have the appropriate structure) into the specified index,
+	 * several files at a time. Each file is sent in one update request, and the index is committed once all files are imported.
+	 * The names of the imported files are recorded in a checkpoint file in the source directory, so that an interrupted import
+	 * can be run again and skip them; the checkpoint is deleted once the import is complete.
+	 * @param indexName the index to import.
+	 * @param fromDir the source directory. Must exist and be readable.
+	 *                   The importer will look for files whose name starts with <pre>indexName</pre>
+	 *                   and ends with .csv or .csv.gz (to match what is generated by #makeExportFilename).
+	 * @param solrUrl The solr URL for the index to export. Must not be null.
+	 * @param clear if true, clear the index before importing, and discard the checkpoint of an interrupted import.
+	 * @param threads the number of files to import at the same time.
+	 * @throws IOException if there is a problem reading the files or communicating with Solr.
+	 * @throws SolrServerException if there is a problem reading the files or communicating with Solr.
+	 * @throws SolrImportExportException if there is a problem communicating with Solr.
+	 */
+	public static void importIndex(final String indexName, File fromDir, String solrUrl, boolean clear, int threads)
+			throws IOException, SolrServerException, SolrImportExportException
 	{
 		if (StringUtils.isBlank(solrUrl))
 		{
@@ -414,11 +478,13 @@ public class SolrImportExport
 					                                    + indexName);
 		}
 
-		HttpSolrServer solr = new HttpSolrServer(solrUrl);
+		final HttpSolrServer solr = new HttpSolrServer(solrUrl);
 
 		// must get multivalue fields before clearing
-		List<String> multivaluedFields = getMultiValuedFields(solr);
+		final List<String> multivaluedFields = getMultiValuedFields(solr);
 
+		File checkpoint = new File(fromDir, indexName + "_import_checkpoint.txt");
+		Set<String> imported = readCheckpoint(indexName, checkpoint, clear);
 		if (clear)
 		{
 			clearIndex(solrUrl);
@@ -429,7 +495,7 @@ public class SolrImportExport
 			@Override
 			public boolean accept(File dir, String name)
 			{
-				return name.startsWith(indexName+EXPORT_SEP) && name.endsWith(".csv");
+				return name.startsWith(indexName+EXPORT_SEP) && (name.endsWith(".csv") || name.endsWith(EXPORT_SUFFIX));
 			}
 		});
 
@@ -441,23 +507,149 @@ public class SolrImportExport
 
 		Arrays.sort(files);
 
-		for (File file : files)
+		importFiles(indexName, files, imported, checkpoint, threads, new FileImporter()
 		{
-			log.info("Importing file " + file.getCanonicalPath());
-			ContentStreamUpdateRequest contentStreamUpdateRequest = new ContentStreamUpdateRequest("/update/csv");
-			contentStreamUpdateRequest.setParam("skip", "_version_");
-			for (String mvField : multivaluedFields) {
-				contentStreamUpdateRequest.setParam("f." + mvField + ".split", "true");
-				contentStreamUpdateRequest.setParam("f." + mvField + ".separator", MULTIPLE_VALUES_SPLITTER);
+			@Override
+			public void importFile(File file) throws IOException, SolrServerException
+			{
+				SolrImportExport.importFile(solr, file, multivaluedFields);
 			}
-			contentStreamUpdateRequest.setParam("stream.contentType", "text/csv;charset=utf-8");
-			contentStreamUpdateRequest.setAction(AbstractUpdateRequest.ACTION.COMMIT, true, true);
-			contentStreamUpdateRequest.addFile(file, "text/csv;charset=utf-8");
+		});
+
+		solr.commit(true, true);
+		FileUtils.deleteQuietly(checkpoint);
+	}
+
+	/**
+	 * Imports one file into an index.
+	 */
+	interface FileImporter
+	{
+		void importFile(File file) throws IOException, SolrServerException;
+	}
+
+	/**
+	 * Read the names of the files imported before an interrupted import.
+	 * @param indexName the index being imported.
+	 * @param checkpoint the checkpoint file of the import.
+	 * @param clear if true, the index is cleared: the checkpoint is deleted and no file is skipped.
+	 * @return the names of the files to skip.
+	 * @throws IOException if the checkpoint cannot be read.
+	 */
+	static Set<String> readCheckpoint(String indexName, File checkpoint, boolean clear) throws IOException
+	{
+		Set<String> imported = new HashSet<>();
+		if (!checkpoint.exists())
+		{
+			return imported;
+		}
+		if (clear)
+		{
+			log.info("Clearing index " + indexName + " and starting the interrupted import over");
+			if (!checkpoint.delete())
+			{
+				throw new IOException("Could not delete import checkpoint " + checkpoint);
+			}
+			return imported;
+		}
+		imported.addAll(FileUtils.readLines(checkpoint, "UTF-8"));
+		log.info("Resuming import of index " + indexName + ", skipping " + imported.size() + " files imported before");
+		return imported;
+	}
 
-			solr.request(contentStreamUpdateRequest);
+	/**
+	 * Import files several at a time, skipping those imported before. The name of each file is added to the checkpoint
+	 * once it is imported.
+	 * @param indexName the index being imported.
+	 * @param files the files to import.
+	 * @param imported the names of the files to skip.
+	 * @param checkpoint the checkpoint file of the import.
+	 * @param threads the number of files to import at the same time.
+	 * @param importer imports each file.
+	 * @throws SolrImportExportException if a file could not be imported.
+	 */
+	static void importFiles(String indexName, File[] files, Set<String> imported, final File checkpoint, int threads,
+	                        final FileImporter importer) throws SolrImportExportException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		List<Future<Void>> results = new ArrayList<>();
+		for (final File file : files)
+		{
+			if (imported.contains(file.getName()))
+			{
+				continue;
+			}
+			results.add(executor.submit(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws IOException, SolrServerException
+				{
+					importer.importFile(file);
+					synchronized (checkpoint)
+					{
+						FileUtils.writeStringToFile(checkpoint, file.getName() + "\n", "UTF-8", true);
+					}
+					return null;
+				}
+			}));
 		}
+		executor.shutdown();
 
-		solr.commit(true, true);
+		try
+		{
+			for (Future<Void> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new SolrImportExportException("Interrupted while importing index " + indexName, e);
+		}
+		catch (ExecutionException e)
+		{
+			executor.shutdownNow();
+			throw new SolrImportExportException("Problem importing index " + indexName + ": " + e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Send one export file to Solr in a single update request, without committing.
+	 */
+	private static void importFile(HttpSolrServer solr, final File file, List<String> multivaluedFields)
+			throws IOException, SolrServerException
+	{
+		log.info("Importing file " + file.getCanonicalPath());
+		ContentStreamUpdateRequest contentStreamUpdateRequest = new ContentStreamUpdateRequest("/update/csv");
+		contentStreamUpdateRequest.setParam("skip", "_version_");
+		for (String mvField : multivaluedFields) {
+			contentStreamUpdateRequest.setParam("f." + mvField + ".split", "true");
+			contentStreamUpdateRequest.setParam("f." + mvField + ".separator", MULTIPLE_VALUES_SPLITTER);
+			contentStreamUpdateRequest.setParam("f." + mvField + ".escape", MULTIPLE_VALUE_ESCAPE);
+		}
+		contentStreamUpdateRequest.setParam("stream.contentType", "text/csv;charset=utf-8");
+		if (file.getName().endsWith(".gz"))
+		{
+			ContentStreamBase stream = new ContentStreamBase()
+			{
+				@Override
+				public InputStream getStream() throws IOException
+				{
+					return new GZIPInputStream(new FileInputStream(file));
+				}
+			};
+			stream.setName(file.getName());
+			stream.setContentType("text/csv;charset=utf-8");
+			contentStreamUpdateRequest.addContentStream(stream);
+		}
+		else
+		{
+			contentStreamUpdateRequest.addFile(file, "text/csv;charset=utf-8");
+		}
+
+		solr.request(contentStreamUpdateRequest);
 	}
 
 	/**
@@ -574,6 +766,16 @@ public class SolrImportExport
 
 		List<RangeFacet.Count> monthFacets = solr.query(query).getFacetRanges().get(0).getCounts();
 
+		List<String> multivaluedFields = getMultiValuedFields(solr);
+		String uniqueKey = makeUniqueKeyField(indexName);
+
+		// Pick up where an interrupted export of the same documents stopped
+		ExportCheckpoint checkpoint = ExportCheckpoint.load(toDir, indexName, fromWhen);
+		if (checkpoint != null)
+		{
+			log.info(String.format("Resuming export of index [%s] at month [%s] batch [%d]", indexName, checkpoint.month, checkpoint.chunk));
+		}
+
 		for (RangeFacet.Count monthFacet : monthFacets) {
 			Date monthStartDate;
 			String monthStart = monthFacet.getValue();
@@ -587,41 +789,230 @@ public class SolrImportExport
 			}
 			int docsThisMonth = monthFacet.getCount();
 
+			String cursorMark = CursorMarkParams.CURSOR_MARK_START;
+			int chunk = 0;
+			if (checkpoint != null)
+			{
+				if (monthStart.compareTo(checkpoint.month) < 0)
+				{
+					continue; // exported before the interruption
+				}
+				if (monthStart.equals(checkpoint.month))
+				{
+					cursorMark = checkpoint.cursorMark;
+					chunk = checkpoint.chunk;
+				}
+			}
+
+			// Page through the month with a cursor rather than increasing start offsets,
+			// so that every page costs the same however deep into the month it is
 			SolrQuery monthQuery = new SolrQuery("*:*");
 			monthQuery.setRows(ROWS_PER_FILE);
-			monthQuery.set("wt", "csv");
 			monthQuery.set("fl", "*");
-			monthQuery.setParam("csv.mv.separator", MULTIPLE_VALUES_SPLITTER); 
-
 			monthQuery.addFilterQuery(timeField + ":[" +monthStart + " TO " + monthStart + "+1MONTH]");
+			monthQuery.addSort(timeField, SolrQuery.ORDER.asc);
+			monthQuery.addSort(uniqueKey, SolrQuery.ORDER.asc);
 
-			for (int i = 0; i < docsThisMonth; i+= ROWS_PER_FILE)
+			while (true)
 			{
-				monthQuery.setStart(i);
-				URL url = new URL(solrUrl + "/select?" + monthQuery.toString());
-
-				File file = new File(toDir.getCanonicalPath(), makeExportFilename(indexName, monthStartDate, docsThisMonth, i));
-				if (file.createNewFile() || overwrite)
+				monthQuery.set(CursorMarkParams.CURSOR_MARK_PARAM, cursorMark);
+				QueryResponse response = solr.query(monthQuery);
+				SolrDocumentList docs = response.getResults();
+				if (docs.isEmpty())
 				{
-					FileUtils.copyURLToFile(url, file);
-					String message = String.format("Solr export to file [%s] complete.  Export for Index [%s] Month [%s] Batch [%d] Num Docs [%d]", 
-						file.getCanonicalPath(), indexName, monthStart, i, docsThisMonth);
-					log.info(message);
+					break;
 				}
-				else if (file.exists())
+
+				int i = chunk * ROWS_PER_FILE;
+				File file = new File(toDir.getCanonicalPath(), makeExportFilename(indexName, monthStartDate, docsThisMonth, i));
+				if (file.exists() && !overwrite)
 				{
 					String message = String.format("Solr export file [%s] already exists.  Export failed for Index [%s] Month [%s] Batch [%d] Num Docs [%d]", 
 						file.getCanonicalPath(), indexName, monthStart, i, docsThisMonth);
 					throw new SolrImportExportException(message);
 				}
-				else
+				writeExportFile(docs, multivaluedFields, file);
+				String message = String.format("Solr export to file [%s] complete.  Export for Index [%s] Month [%s] Batch [%d] Num Docs [%d]", 
+					file.getCanonicalPath(), indexName, monthStart, i, docsThisMonth);
+				log.info(message);
+
+				chunk++;
+				String nextCursorMark = response.getNextCursorMark();
+				new ExportCheckpoint(indexName, fromWhen, monthStart, chunk, nextCursorMark).save(toDir);
+				if (docs.size() < ROWS_PER_FILE || nextCursorMark.equals(cursorMark))
 				{
-					String message = String.format("Cannot create solr export file [%s].  Export failed for Index [%s] Month [%s] Batch [%d] Num Docs [%d]", 
-						file.getCanonicalPath(), indexName, monthStart, i, docsThisMonth);
-					throw new SolrImportExportException(message);
+					break;
 				}
+				cursorMark = nextCursorMark;
+			}
+			checkpoint = null;
+		}
+		ExportCheckpoint.delete(toDir, indexName);
+	}
+
+	/**
+	 * Write documents to a gzipped CSV file in the format of Solr's CSV response writer, with
+	 * multiple values separated by #MULTIPLE_VALUES_SPLITTER. The file only appears under its
+	 * name once it is complete.
+	 *
+	 * @param docs the documents to write.
+	 * @param multivaluedFields names of the fields whose values are to be joined.
+	 * @param file the file to write.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private static void writeExportFile(SolrDocumentList docs, List<String> multivaluedFields, File file)
+			throws IOException
+	{
+		Set<String> fieldNames = new LinkedHashSet<>();
+		for (SolrDocument doc : docs)
+		{
+			fieldNames.addAll(doc.getFieldNames());
+		}
+		String[] header = fieldNames.toArray(new String[fieldNames.size()]);
+		Set<String> multivalued = new HashSet<>(multivaluedFields);
+
+		File partFile = new File(file.getParentFile(), file.getName() + ".part");
+		CSVWriter writer = new CSVWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(partFile)), "UTF-8"));
+		try
+		{
+			writer.writeNext(header);
+			String[] line = new String[header.length];
+			for (SolrDocument doc : docs)
+			{
+				for (int f = 0; f < header.length; f++)
+				{
+					Collection<Object> values = doc.getFieldValues(header[f]);
+					if (values == null || values.isEmpty())
+					{
+						line[f] = "";
+					}
+					else if (multivalued.contains(header[f]))
+					{
+						StringBuilder joined = new StringBuilder();
+						for (Object value : values)
+						{
+							if (joined.length() > 0)
+							{
+								joined.append(MULTIPLE_VALUES_SPLITTER);
+							}
+							joined.append(StringUtils.replaceEach(formatValue(value),
+									new String[]{MULTIPLE_VALUE_ESCAPE, MULTIPLE_VALUES_SPLITTER},
+									new String[]{MULTIPLE_VALUE_ESCAPE + MULTIPLE_VALUE_ESCAPE, MULTIPLE_VALUE_ESCAPE + MULTIPLE_VALUES_SPLITTER}));
+						}
+						line[f] = joined.toString();
+					}
+					else
+					{
+						line[f] = formatValue(values.iterator().next());
+					}
+				}
+				writer.writeNext(line);
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		if ((file.exists() && !file.delete()) || !partFile.renameTo(file))
+		{
+			throw new IOException("Could not move " + partFile + " to " + file);
+		}
+	}
+
+	private static String formatValue(Object value)
+	{
+		if (value instanceof Date)
+		{
+			return SOLR_DATE_FORMAT.format((Date) value);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Where an export stopped: the month being exported, the number of the next batch in that month
+	 * and the cursor mark to continue from. Saved after each export file is written, and deleted once
+	 * the export is complete.
+	 */
+	private static class ExportCheckpoint
+	{
+		final String indexName;
+		final String fromWhen;
+		final String month;
+		final int chunk;
+		final String cursorMark;
+
+		ExportCheckpoint(String indexName, String fromWhen, String month, int chunk, String cursorMark)
+		{
+			this.indexName = indexName;
+			this.fromWhen = StringUtils.defaultString(fromWhen);
+			this.month = month;
+			this.chunk = chunk;
+			this.cursorMark = cursorMark;
+		}
+
+		private static File file(File dir, String indexName)
+		{
+			return new File(dir, indexName + EXPORT_SEP + "checkpoint.properties");
+		}
+
+		/**
+		 * @return the checkpoint of an interrupted export of the same documents, or null if there is none.
+		 */
+		static ExportCheckpoint load(File dir, String indexName, String fromWhen) throws IOException
+		{
+			File file = file(dir, indexName);
+			if (!file.exists())
+			{
+				return null;
+			}
+			Properties properties = new Properties();
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				properties.load(in);
+			}
+			finally
+			{
+				in.close();
+			}
+			if (!StringUtils.defaultString(fromWhen).equals(properties.getProperty("last", "")))
+			{
+				log.warn("Ignoring checkpoint " + file + ", it was saved by an export of a different time period");
+				return null;
+			}
+			return new ExportCheckpoint(indexName, fromWhen, properties.getProperty("month"),
+					Integer.parseInt(properties.getProperty("chunk")), properties.getProperty("cursorMark"));
+		}
+
+		void save(File dir) throws IOException
+		{
+			Properties properties = new Properties();
+			properties.setProperty("last", fromWhen);
+			properties.setProperty("month", month);
+			properties.setProperty("chunk", String.valueOf(chunk));
+			properties.setProperty("cursorMark", cursorMark);
+			File target = file(dir, indexName);
+			File temp = new File(dir, target.getName() + ".part");
+			OutputStream out = new FileOutputStream(temp);
+			try
+			{
+				properties.store(out, "Export of index " + indexName + " in progress");
+			}
+			finally
+			{
+				out.close();
+			}
+			if ((target.exists() && !target.delete()) || !temp.renameTo(target))
+			{
+				throw new IOException("Could not save export checkpoint " + target);
 			}
 		}
+
+		static void delete(File dir, String indexName)
+		{
+			FileUtils.deleteQuietly(file(dir, indexName));
+		}
 	}
 
 	/**
@@ -684,7 +1075,7 @@ public class SolrImportExport
 			+ EXPORT_SEP
 			+ EXPORT_DATE_FORMAT.format(exportStart)
 			+ (StringUtils.isNotBlank(exportFileNumber) ? "_" + exportFileNumber : "")
-			+ ".csv";
+			+ EXPORT_SUFFIX;
 	}
 
 	/**
@@ -709,6 +1100,21 @@ public class SolrImportExport
 		return "http://localhost:8080/solr/" + indexName; // TODO better default?
 	}
 
+	/**
+	 * Returns the unique key field of the specified index, which makes the sort order of the export total.
+	 *
+	 * @param indexName the index name whose unique key is required.
+	 * @return the name of the unique key field.
+	 */
+	private static String makeUniqueKeyField(String indexName)
+	{
+		if (indexName.startsWith("statistics"))
+		{
+			return "uid";
+		}
+		return "id";
+	}
+
 	/**
 	 * Returns a time field for the specified index name that is suitable for incremental export.
 	 *
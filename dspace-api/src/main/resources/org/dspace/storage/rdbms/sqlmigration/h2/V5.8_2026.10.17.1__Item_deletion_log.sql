@@ -0,0 +1,31 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+-- ===============================================================
+-- WARNING WARNING WARNING WARNING WARNING WARNING WARNING WARNING
+--
+-- DO NOT MANUALLY RUN THIS DATABASE MIGRATION. IT WILL BE EXECUTED
+-- AUTOMATICALLY (IF NEEDED) BY "FLYWAY" WHEN YOU STARTUP DSPACE.
+-- http://flywaydb.org/
+-- ===============================================================
+
+------------------------------------------------------
+-- Item deletion log, for incremental Discovery updates
+------------------------------------------------------
+-- Item.delete() records each deleted item here, so that index-discovery -i
+-- can remove the items deleted since its last run from the index without
+-- reading every item in it. Rows older than the last run are removed by
+-- the next one.
+
+CREATE TABLE item_deletion
+(
+  item_id INTEGER NOT NULL,
+  deleted TIMESTAMP NOT NULL
+);
+
+CREATE INDEX item_deletion_deleted_idx ON item_deletion (deleted);
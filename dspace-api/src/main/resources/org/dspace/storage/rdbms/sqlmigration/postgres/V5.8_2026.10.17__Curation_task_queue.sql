@@ -0,0 +1,42 @@
+--
+-- The contents of this file are subject to the license and copyright
+-- detailed in the LICENSE and NOTICE files at the root of the source
+-- tree and available online at
+--
+-- http://www.dspace.org/license/
+--
+
+-- ===============================================================
+-- WARNING WARNING WARNING WARNING WARNING WARNING WARNING WARNING
+--
+-- DO NOT MANUALLY RUN THIS DATABASE MIGRATION. IT WILL BE EXECUTED
+-- AUTOMATICALLY (IF NEEDED) BY "FLYWAY" WHEN YOU STARTUP DSPACE.
+-- http://flywaydb.org/
+-- ===============================================================
+
+------------------------------------------------------
+-- Curation task queue, for DBTaskQueue
+------------------------------------------------------
+-- Entries are claimed by a consumer ticket until lease_expires, so that
+-- several consumers can drain a queue and a crashed one gives its
+-- entries back when the lease runs out.
+-- Consumers claim entries with SELECT ... FOR UPDATE SKIP LOCKED from
+-- PostgreSQL 9.5 on; on older versions they wait for each other's claims.
+
+CREATE SEQUENCE curation_task_queue_seq;
+
+CREATE TABLE curation_task_queue
+(
+  entry_id INTEGER DEFAULT nextval('curation_task_queue_seq') NOT NULL,
+  queue_name VARCHAR(64) NOT NULL,
+  eperson VARCHAR(256),
+  submit_time BIGINT,
+  task_names VARCHAR(1024),
+  object_id VARCHAR(256),
+  ticket BIGINT,
+  lease_expires TIMESTAMP,
+  CONSTRAINT curation_task_queue_pkey PRIMARY KEY (entry_id)
+);
+
+CREATE INDEX curation_task_queue_name_idx ON curation_task_queue (queue_name, entry_id);
+CREATE INDEX curation_task_queue_ticket_idx ON curation_task_queue (ticket);
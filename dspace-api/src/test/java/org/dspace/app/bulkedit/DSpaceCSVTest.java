@@ -143,4 +143,57 @@ public class DSpaceCSVTest extends AbstractUnitTest
             fail("IO Error while creating test CSV file");
         }
     }
+
+    /**
+     * Test reading a CSV file one line at a time
+     */
+    @Test
+    public void testDSpaceCSVReader()
+    {
+        try
+        {
+            String[] csv = {"id,collection,\"dc.title[en]\",dc.contributor.author",
+                            "1,2,Easy line,\"Lewis, Stuart\"",
+                            "2,2,\"Two line\ntitle\",\"Lewis, Stuart||Bloggs, Joe\"",
+                            "3,2,\"\"\"Embedded quotes\"\" here\",\"Lewis, Stuart\"",};
+            String filename = "test-reader.csv";
+            BufferedWriter out = new BufferedWriter(
+                                 new OutputStreamWriter(
+                                 new FileOutputStream(filename), "UTF-8"));
+            for (String csvLine : csv) {
+                out.write(csvLine + "\n");
+            }
+            out.flush();
+            out.close();
+
+            // Read the lines back, and compare them with those read all at once
+            DSpaceCSV dcsv = new DSpaceCSV(new File(filename), context);
+            List<DSpaceCSVLine> expected = dcsv.getCSVLines();
+            DSpaceCSVReader reader = new DSpaceCSVReader(new File(filename), context);
+            try
+            {
+                assertThat("testDSpaceCSVReader headings", reader.getHeadings(), equalTo(dcsv.getHeadings()));
+                for (DSpaceCSVLine want : expected)
+                {
+                    DSpaceCSVLine line = reader.next();
+                    assertThat("testDSpaceCSVReader id", line.getID(), equalTo(want.getID()));
+                    assertThat("testDSpaceCSVReader title", line.get("dc.title[en]"), equalTo(want.get("dc.title[en]")));
+                    assertThat("testDSpaceCSVReader authors", line.get("dc.contributor.author"),
+                                                              equalTo(want.get("dc.contributor.author")));
+                }
+                assertThat("testDSpaceCSVReader end", reader.next(), nullValue());
+                assertThat("testDSpaceCSVReader count", reader.getLineCount(), equalTo(3));
+            }
+            finally
+            {
+                reader.close();
+            }
+
+            new File(filename).delete();
+        }
+        catch (Exception ex) {
+            log.error("IO Error while creating test CSV file", ex);
+            fail("IO Error while creating test CSV file");
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.bulkedit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ImportCheckpoint}.
+ */
+public class ImportCheckpointTest
+{
+    private File file;
+
+    @Before
+    public void init() throws IOException
+    {
+        file = File.createTempFile("metadata-import", ".checkpoint");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void destroy()
+    {
+        file.delete();
+    }
+
+    /**
+     * Test a parallel import in which a chunk in the middle fails after the
+     * chunks after it have been committed, and the import is then resumed:
+     * only the lines of the failed chunk, and those never imported, are
+     * imported again.
+     */
+    @Test
+    public void testResumeAfterFailureInTheMiddle() throws Exception
+    {
+        // chunks of 10 lines: 1-10, 11-20 (fails), 21-30, 31-40, 41-50 (not reached)
+        ImportCheckpoint run = ImportCheckpoint.read(file);
+        run.commit(21, 30);
+        run.commit(1, 10);
+        run.commit(31, 40);
+
+        ImportCheckpoint resumed = ImportCheckpoint.read(file);
+        assertThat("testResumeAfterFailureInTheMiddle 0", resumed.getLines(), equalTo(10));
+        assertThat("testResumeAfterFailureInTheMiddle 1", resumed.hasGaps(), equalTo(true));
+        for (int line = 1; line <= 50; line++)
+        {
+            boolean committed = (line <= 10) || (line > 20 && line <= 40);
+            assertThat("testResumeAfterFailureInTheMiddle line " + line,
+                    resumed.isDone(line), equalTo(committed));
+        }
+
+        // the resumed import imports lines 11-20 and 41-50 in one chunk,
+        // which runs across the lines already committed
+        resumed.commit(11, 50);
+        ImportCheckpoint finished = ImportCheckpoint.read(file);
+        assertThat("testResumeAfterFailureInTheMiddle 2", finished.getLines(), equalTo(50));
+        assertThat("testResumeAfterFailureInTheMiddle 3", finished.hasGaps(), equalTo(false));
+    }
+
+    /**
+     * Test that ranges are merged with each other and with the lines
+     * committed from the start.
+     */
+    @Test
+    public void testMerge() throws Exception
+    {
+        ImportCheckpoint checkpoint = ImportCheckpoint.read(file);
+        checkpoint.commit(31, 40);
+        checkpoint.commit(11, 20);
+        checkpoint.commit(21, 25);
+        checkpoint.commit(26, 30);
+        assertThat("testMerge 0", checkpoint.getLines(), equalTo(0));
+        assertThat("testMerge 1", checkpoint.isDone(10), equalTo(false));
+        assertThat("testMerge 2", checkpoint.isDone(11), equalTo(true));
+        assertThat("testMerge 3", checkpoint.isDone(40), equalTo(true));
+        assertThat("testMerge 4", checkpoint.isDone(41), equalTo(false));
+
+        checkpoint.commit(1, 10);
+        assertThat("testMerge 5", checkpoint.getLines(), equalTo(40));
+        assertThat("testMerge 6", checkpoint.hasGaps(), equalTo(false));
+    }
+
+    /**
+     * Test that a checkpoint written before ranges were recorded, with only
+     * a number of lines, is still read.
+     */
+    @Test
+    public void testLinesOnly() throws Exception
+    {
+        OutputStream out = new FileOutputStream(file);
+        out.write("lines=1000\n".getBytes("UTF-8"));
+        out.close();
+
+        ImportCheckpoint checkpoint = ImportCheckpoint.read(file);
+        assertThat("testLinesOnly 0", checkpoint.getLines(), equalTo(1000));
+        assertThat("testLinesOnly 1", checkpoint.isDone(1000), equalTo(true));
+        assertThat("testLinesOnly 2", checkpoint.isDone(1001), equalTo(false));
+    }
+
+    /**
+     * Test that a damaged checkpoint is reported rather than ignored.
+     */
+    @Test(expected = MetadataImportException.class)
+    public void testDamaged() throws Exception
+    {
+        OutputStream out = new FileOutputStream(file);
+        out.write("lines=10\nranges=21-\n".getBytes("UTF-8"));
+        out.close();
+        ImportCheckpoint.read(file);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.itemexport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import mockit.Mock;
+import mockit.MockUp;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.apache.commons.io.IOUtils;
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bitstream;
+import org.dspace.content.BitstreamFormat;
+import org.dspace.content.Bundle;
+import org.dspace.content.Item;
+import org.dspace.content.Metadatum;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.bitstore.BitstreamStorageManager;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ItemExportZipWriter}, with the items and the
+ * bitstream store mocked.
+ */
+public class ItemExportZipWriterTest
+{
+    @BeforeClass
+    public static void initOnce()
+    {
+        // the test configuration, which leaves the ZIP settings at their defaults
+        ConfigurationManager.loadConfig(null);
+    }
+
+    /**
+     * Test which MIME types are stored without compressing them again.
+     */
+    @Test
+    public void testIsStored()
+    {
+        ItemExportZipWriter writer = new ItemExportZipWriter(null, new ByteArrayOutputStream(), false);
+        assertThat("testIsStored 0", writer.isStored("application/pdf"), equalTo(true));
+        assertThat("testIsStored 1", writer.isStored("image/JPEG"), equalTo(true));
+        assertThat("testIsStored 2", writer.isStored("audio/x-mpeg"), equalTo(true));
+        assertThat("testIsStored 3", writer.isStored(
+                "application/vnd.openxmlformats-officedocument.wordprocessingml.document"), equalTo(true));
+        assertThat("testIsStored 4", writer.isStored("text/plain"), equalTo(false));
+        assertThat("testIsStored 5", writer.isStored("application/vnd.ms-excel"), equalTo(false));
+        assertThat("testIsStored 6", writer.isStored((String) null), equalTo(false));
+    }
+
+    /**
+     * Test that an item is prepared with its metadata, contents and handle
+     * files, and that bitstream names clashing with each other or with
+     * those files are given a numeric prefix.
+     */
+    @Test
+    public void testPrepare(@Mocked final Item item, @Mocked final Bundle bundle,
+            @Mocked final Bitstream first, @Mocked final Bitstream second,
+            @Mocked final Bitstream third, @Mocked final BitstreamFormat pdf,
+            @Mocked final BitstreamFormat text, @Mocked AuthorizeManager authorizeManager)
+            throws Exception
+    {
+        final Metadatum title = new Metadatum();
+        title.schema = "dc";
+        title.element = "title";
+        title.value = "Test";
+
+        new NonStrictExpectations()
+        {{
+            Item.find((Context) any, 7); result = item;
+            item.getMetadata(anyString, anyString, anyString, anyString); result = new Metadatum[] { title };
+            item.getBundles(); result = new Bundle[] { bundle };
+            item.getHandle(); result = "123456789/7";
+            bundle.getName(); result = "ORIGINAL";
+            bundle.getBitstreams(); result = new Bitstream[] { first, second, third };
+            pdf.getMIMEType(); result = "application/pdf";
+            text.getMIMEType(); result = "text/plain";
+            first.getID(); result = 1;
+            first.getName(); result = "a.pdf";
+            first.getFormat(); result = pdf;
+            second.getID(); result = 2;
+            second.getName(); result = "a.pdf";
+            second.getFormat(); result = pdf;
+            third.getID(); result = 3;
+            third.getName(); result = "contents";
+            third.getFormat(); result = text;
+        }};
+
+        ItemExportZipWriter writer = new ItemExportZipWriter(null, new ByteArrayOutputStream(), false);
+        ItemExportZipWriter.PreparedItem prepared = writer.prepare(null, 7);
+
+        assertThat("testPrepare 0", new ArrayList<String>(prepared.files.keySet()),
+                equalTo(Arrays.asList("dublin_core.xml", "contents", "handle")));
+        assertThat("testPrepare 1", new ArrayList<String>(prepared.bitstreams.keySet()),
+                equalTo(Arrays.asList("a.pdf", "1_a.pdf", "1_contents")));
+        assertThat("testPrepare 2", prepared.bitstreams.get("1_a.pdf").id, equalTo(2));
+        assertThat("testPrepare 3", prepared.bitstreams.get("1_a.pdf").store, equalTo(true));
+        assertThat("testPrepare 4", prepared.bitstreams.get("1_contents").store, equalTo(false));
+        assertThat("testPrepare 5", lines(prepared.files.get("contents")), equalTo(Arrays.asList(
+                "a.pdf\tbundle:ORIGINAL", "1_a.pdf\tbundle:ORIGINAL", "1_contents\tbundle:ORIGINAL")));
+        assertThat("testPrepare 6", new String(prepared.files.get("handle"), "UTF-8"), equalTo("123456789/7\n"));
+        assertThat("testPrepare 7", new String(prepared.files.get("dublin_core.xml"), "UTF-8")
+                .contains("<dcvalue element=\"title\" qualifier=\"none\">Test</dcvalue>"), equalTo(true));
+    }
+
+    /**
+     * Test that a prepared item is written into its own directory of the
+     * ZIP, files first and then bitstreams, in the order they were prepared.
+     */
+    @Test
+    public void testWrite() throws Exception
+    {
+        new MockBitstreamStorageManager();
+
+        ItemExportZipWriter.PreparedItem prepared = new ItemExportZipWriter.PreparedItem(7);
+        prepared.files.put("dublin_core.xml", "<dublin_core/>".getBytes("UTF-8"));
+        prepared.files.put("contents", "a.pdf\n".getBytes("UTF-8"));
+        prepared.bitstreams.put("a.pdf", new ItemExportZipWriter.PreparedBitstream(1, true));
+        prepared.bitstreams.put("1_a.txt", new ItemExportZipWriter.PreparedBitstream(2, false));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ItemExportZipWriter writer = new ItemExportZipWriter(null, out, false);
+        writer.write("export/0", prepared);
+        writer.close();
+
+        List<String> names = new ArrayList<String>();
+        List<String> contents = new ArrayList<String>();
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()));
+        try
+        {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+            {
+                names.add(entry.getName());
+                contents.add(IOUtils.toString(zip, "UTF-8"));
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+
+        assertThat("testWrite 0", names, equalTo(Arrays.asList("export/0/dublin_core.xml",
+                "export/0/contents", "export/0/a.pdf", "export/0/1_a.txt")));
+        assertThat("testWrite 1", contents, equalTo(Arrays.asList("<dublin_core/>", "a.pdf\n",
+                "bitstream 1", "bitstream 2")));
+    }
+
+    private static List<String> lines(byte[] file) throws Exception
+    {
+        return Arrays.asList(new String(file, "UTF-8").split("\\r?\\n"));
+    }
+
+    /**
+     * Every bitstream holds "bitstream" and its ID.
+     */
+    public static class MockBitstreamStorageManager extends MockUp<BitstreamStorageManager>
+    {
+        @Mock
+        public static InputStream retrieve(Context context, int id) throws Exception
+        {
+            return new ByteArrayInputStream(("bitstream " + id).getBytes("UTF-8"));
+        }
+    }
+}
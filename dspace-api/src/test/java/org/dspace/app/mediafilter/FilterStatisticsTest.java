@@ -0,0 +1,68 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.mediafilter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.dspace.app.mediafilter.FilterStatistics.Outcome;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FilterStatistics}.
+ */
+public class FilterStatisticsTest
+{
+    /**
+     * Test the counts and the latency histogram of a filter.
+     */
+    @Test
+    public void testRecord()
+    {
+        FilterStatistics statistics = new FilterStatistics();
+        statistics.record("PDFFilter", 5, Outcome.FILTERED);
+        statistics.record("PDFFilter", 10, Outcome.FILTERED);
+        statistics.record("PDFFilter", 2500, Outcome.SKIPPED);
+        statistics.record("PDFFilter", 120000, Outcome.FAILED);
+        statistics.record("JPEGFilter", 50, Outcome.FILTERED);
+
+        assertThat("testRecord 0", statistics.getCount("PDFFilter", Outcome.FILTERED), equalTo(2L));
+        assertThat("testRecord 1", statistics.getCount("PDFFilter", Outcome.SKIPPED), equalTo(1L));
+        assertThat("testRecord 2", statistics.getCount("PDFFilter", Outcome.FAILED), equalTo(1L));
+        assertThat("testRecord 3", statistics.getCount("WordFilter", Outcome.FILTERED), equalTo(0L));
+
+        long[] histogram = statistics.getHistogram("PDFFilter");
+        assertThat("testRecord 4", histogram.length, equalTo(FilterStatistics.BUCKETS.length + 1));
+        assertThat("testRecord 5", histogram[0], equalTo(1L));
+        assertThat("testRecord 6", histogram[1], equalTo(1L));
+        assertThat("testRecord 7", histogram[3], equalTo(1L));
+        assertThat("testRecord 8", histogram[FilterStatistics.BUCKETS.length], equalTo(1L));
+    }
+
+    /**
+     * Test the report.
+     */
+    @Test
+    public void testReport()
+    {
+        FilterStatistics statistics = new FilterStatistics();
+        statistics.record("JPEGFilter", 50, Outcome.FILTERED);
+        statistics.record("JPEGFilter", 150, Outcome.FILTERED);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        statistics.report(new PrintStream(bytes, true));
+        String report = bytes.toString();
+        assertThat("testReport 0", report, containsString("JPEGFilter: 2 filtered, 0 skipped, 0 failed"));
+        assertThat("testReport 1", report, containsString("mean 100 ms"));
+        assertThat("testReport 2", report, containsString("<100ms 1, <1s 1,"));
+        assertThat("testReport 3", report, containsString(">=60s 0"));
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the range and conditional request handling of
+ * {@link BitstreamDelivery}, against a local file.
+ */
+public class BitstreamDeliveryTest
+{
+    private static final String CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test parsing of range headers.
+     */
+    @Test
+    public void testParseRange()
+    {
+        List<long[]> ranges = BitstreamDelivery.parseRange("bytes=0-9, 20-, -5", 36);
+        assertThat("testParseRange 0", ranges.size(), equalTo(3));
+        assertThat("testParseRange 1", ranges.get(1)[0], equalTo(20L));
+        assertThat("testParseRange 2", ranges.get(1)[1], equalTo(35L));
+        assertThat("testParseRange 3", ranges.get(2)[0], equalTo(31L));
+        assertThat("testParseRange 4", BitstreamDelivery.parseRange("bytes=5-1", 36), nullValue());
+        assertThat("testParseRange 5", BitstreamDelivery.parseRange("lines=1-2", 36), nullValue());
+        assertThat("testParseRange 6", BitstreamDelivery.parseRange("bytes=40-50", 36).isEmpty(), equalTo(true));
+        assertThat("testParseRange 7", BitstreamDelivery.coalesce(
+                BitstreamDelivery.parseRange("bytes=10-19,0-5,6-8,15-25", 36)).size(), equalTo(2));
+    }
+
+    /**
+     * Test that the whole file is sent without a range.
+     */
+    @Test
+    public void testWhole() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        assertThat("testWhole 0", delivery.evaluate("GET", null, -1, null, null), equalTo(HttpServletResponse.SC_OK));
+        assertThat("testWhole 1", delivery.getContentLength(), equalTo((long) CONTENT.length()));
+        assertThat("testWhole 2", write(delivery), equalTo(CONTENT));
+        assertThat("testWhole 3", delivery.includesStart(), equalTo(true));
+    }
+
+    /**
+     * Test a single range, to resume a download.
+     */
+    @Test
+    public void testSingleRange() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        assertThat("testSingleRange 0", delivery.evaluate("GET", null, -1, "bytes=30-", null),
+                equalTo(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat("testSingleRange 1", delivery.getContentRange(), equalTo("bytes 30-35/36"));
+        assertThat("testSingleRange 2", delivery.getContentLength(), equalTo(6L));
+        assertThat("testSingleRange 3", write(delivery), equalTo("uvwxyz"));
+        assertThat("testSingleRange 4", delivery.includesStart(), equalTo(false));
+    }
+
+    /**
+     * Test that the whole bitstream is sent for a range when ranges are
+     * turned off.
+     */
+    @Test
+    public void testRangesOff() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        delivery.setAcceptRanges(false);
+        assertThat("testRangesOff 0", delivery.evaluate("GET", null, -1, "bytes=30-", null),
+                equalTo(HttpServletResponse.SC_OK));
+        assertThat("testRangesOff 1", delivery.getContentLength(), equalTo((long) CONTENT.length()));
+        assertThat("testRangesOff 2", write(delivery), equalTo(CONTENT));
+        assertThat("testRangesOff 3", delivery.includesStart(), equalTo(true));
+    }
+
+    /**
+     * Test several ranges, sent as multipart/byteranges.
+     */
+    @Test
+    public void testMultipleRanges() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        assertThat("testMultipleRanges 0", delivery.evaluate("GET", null, -1, "bytes=-2,0-1", null),
+                equalTo(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat("testMultipleRanges 1", delivery.getContentType().startsWith("multipart/byteranges; boundary="),
+                equalTo(true));
+        assertThat("testMultipleRanges 2", delivery.getContentRange(), nullValue());
+
+        String body = write(delivery);
+        assertThat("testMultipleRanges 3", (long) body.length(), equalTo(delivery.getContentLength()));
+        assertThat("testMultipleRanges 4", body.contains("Content-Range: bytes 0-1/36\r\n\r\n01\r\n"), equalTo(true));
+        assertThat("testMultipleRanges 5", body.contains("Content-Range: bytes 34-35/36\r\n\r\nyz\r\n"), equalTo(true));
+        assertThat("testMultipleRanges 6", body.indexOf("bytes 0-1") < body.indexOf("bytes 34-35"), equalTo(true));
+    }
+
+    /**
+     * Test ranges which cannot be satisfied.
+     */
+    @Test
+    public void testUnsatisfiable() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        assertThat("testUnsatisfiable 0", delivery.evaluate("GET", null, -1, "bytes=100-", null),
+                equalTo(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE));
+        assertThat("testUnsatisfiable 1", delivery.getContentRange(), equalTo("bytes */36"));
+        assertThat("testUnsatisfiable 2", write(delivery), equalTo(""));
+    }
+
+    /**
+     * Test If-Modified-Since and If-Range against the last modification
+     * date, and If-None-Match against an ETag.
+     */
+    @Test
+    public void testConditional() throws IOException
+    {
+        BitstreamDelivery delivery = new BitstreamDelivery(content(), "text/plain");
+        delivery.setLastModified(1000000000000L);
+        assertThat("testConditional 0", delivery.evaluate("GET", null, 1000000000500L, null, null),
+                equalTo(HttpServletResponse.SC_NOT_MODIFIED));
+        assertThat("testConditional 1", delivery.evaluate("GET", null, 999999999000L, null, null),
+                equalTo(HttpServletResponse.SC_OK));
+        assertThat("testConditional 2", delivery.evaluate("GET", null, -1, "bytes=0-1",
+                "Sun, 09 Sep 2001 01:46:40 GMT"), equalTo(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat("testConditional 3", delivery.evaluate("GET", null, -1, "bytes=0-1",
+                "Mon, 10 Sep 2001 01:46:40 GMT"), equalTo(HttpServletResponse.SC_OK));
+        // No ETag for a file, so a tag never matches
+        assertThat("testConditional 4", delivery.evaluate("GET", null, -1, "bytes=0-1", "\"abc\""),
+                equalTo(HttpServletResponse.SC_OK));
+        delivery.close();
+
+        String etag = BitstreamDelivery.toETag("9e107d9d372bb6826bd81d3542a419d6");
+        assertThat("testConditional 5", BitstreamDelivery.matches("\"x\", W/" + etag, etag), equalTo(true));
+        assertThat("testConditional 6", BitstreamDelivery.matches("*", etag), equalTo(true));
+        assertThat("testConditional 7", BitstreamDelivery.matches("\"x\"", etag), equalTo(false));
+    }
+
+    private File content() throws IOException
+    {
+        File file = folder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(CONTENT.getBytes("ISO-8859-1"));
+        out.close();
+        return file;
+    }
+
+    private static String write(BitstreamDelivery delivery) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try
+        {
+            delivery.write(out);
+        }
+        finally
+        {
+            delivery.close();
+        }
+        return out.toString("ISO-8859-1");
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.authorize;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.content.Community;
+import org.dspace.content.DSpaceObject;
+import org.dspace.core.Constants;
+import org.dspace.eperson.Group;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit tests for the effective groups and decision memo of a Context, and
+ * for the bulk authorization check built on them.
+ */
+public class AuthorizationCacheTest extends AbstractUnitTest
+{
+    /**
+     * Test that a new group membership is seen once the group is updated.
+     */
+    @Test
+    public void testEffectiveGroupsInvalidated() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Group group = Group.create(context);
+        context.restoreAuthSystemState();
+
+        AuthorizationCache cache = context.getAuthorizationCache();
+        assertThat("testEffectiveGroupsInvalidated 0",
+                cache.getEffectiveGroups(context, eperson).contains(group.getID()), equalTo(false));
+        assertThat("testEffectiveGroupsInvalidated 1",
+                cache.getEffectiveGroups(context, eperson).contains(0), equalTo(true));
+
+        context.turnOffAuthorisationSystem();
+        group.addMember(eperson);
+        group.update();
+        context.restoreAuthSystemState();
+
+        assertThat("testEffectiveGroupsInvalidated 2",
+                cache.getEffectiveGroups(context, eperson).contains(group.getID()), equalTo(true));
+    }
+
+    /**
+     * Test that a policy added in the same context changes the decision.
+     */
+    @Test
+    public void testDecisionInvalidated() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Community community = Community.create(null, context);
+        AuthorizeManager.removeAllPolicies(context, community);
+        context.restoreAuthSystemState();
+
+        assertThat("testDecisionInvalidated 0",
+                AuthorizeManager.authorizeActionBoolean(context, community, Constants.READ), equalTo(false));
+
+        context.turnOffAuthorisationSystem();
+        AuthorizeManager.addPolicy(context, community, Constants.READ, eperson);
+        context.restoreAuthSystemState();
+
+        assertThat("testDecisionInvalidated 1",
+                AuthorizeManager.authorizeActionBoolean(context, community, Constants.READ), equalTo(true));
+    }
+
+    /**
+     * Test that the bulk check agrees with one check per object.
+     */
+    @Test
+    public void testBulkAuthorize() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Community open = Community.create(null, context);
+        Community closed = Community.create(null, context);
+        AuthorizeManager.removeAllPolicies(context, closed);
+        context.restoreAuthSystemState();
+
+        List<DSpaceObject> objects = new ArrayList<DSpaceObject>();
+        objects.add(open);
+        objects.add(null);
+        objects.add(closed);
+
+        boolean[] allowed = AuthorizeManager.authorizeActionBoolean(context, objects, Constants.READ);
+        assertThat("testBulkAuthorize 0", allowed.length, equalTo(3));
+        assertThat("testBulkAuthorize 1", allowed[0],
+                equalTo(AuthorizeManager.authorizeActionBoolean(context, open, Constants.READ)));
+        assertThat("testBulkAuthorize 2", allowed[1], equalTo(false));
+        assertThat("testBulkAuthorize 3", allowed[2], equalTo(false));
+    }
+}
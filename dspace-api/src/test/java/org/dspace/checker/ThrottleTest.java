@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.checker;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Throttle} and the byte counts of
+ * {@link CheckerCommand#parseBytes}.
+ */
+public class ThrottleTest
+{
+    /**
+     * Test that reads are spread out to the rate.
+     */
+    @Test
+    public void testAcquire() throws InterruptedException
+    {
+        // 2 MB at 10 MB/s: the first read is free, the other 19 wait 10 ms
+        Throttle throttle = new Throttle(10 * 1024 * 1024);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20; i++)
+        {
+            throttle.acquire(100 * 1024);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertThat("testAcquire 0", elapsed >= 150, equalTo(true));
+        assertThat("testAcquire 1", elapsed < 2000, equalTo(true));
+    }
+
+    /**
+     * Test that a rate of 0 does not limit.
+     */
+    @Test
+    public void testUnlimited() throws InterruptedException
+    {
+        Throttle throttle = new Throttle(0);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++)
+        {
+            throttle.acquire(1024 * 1024 * 1024);
+        }
+        assertThat("testUnlimited 0", System.currentTimeMillis() - start < 1000, equalTo(true));
+    }
+
+    /**
+     * Test parsing byte counts with units.
+     */
+    @Test
+    public void testParseBytes()
+    {
+        assertThat("testParseBytes 0", CheckerCommand.parseBytes(null), equalTo(0L));
+        assertThat("testParseBytes 1", CheckerCommand.parseBytes("512"), equalTo(512L));
+        assertThat("testParseBytes 2", CheckerCommand.parseBytes("50M"), equalTo(50L * 1024 * 1024));
+        assertThat("testParseBytes 3", CheckerCommand.parseBytes(" 2g "), equalTo(2L * 1024 * 1024 * 1024));
+    }
+}
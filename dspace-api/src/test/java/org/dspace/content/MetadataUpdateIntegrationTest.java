@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import java.sql.SQLException;
+
+import org.apache.log4j.Logger;
+import org.databene.contiperf.PerfTest;
+import org.dspace.AbstractIntegrationTest;
+import org.dspace.authorize.AuthorizeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Benchmarks {@link DSpaceObject#updateMetadata()} on items with a growing
+ * number of values in a single field, and checks the stored values survive
+ * the round trip. The timings for each size are logged, so the growth in
+ * cost can be compared between runs.
+ */
+public class MetadataUpdateIntegrationTest extends AbstractIntegrationTest
+{
+    /** log4j category */
+    private static final Logger log = Logger.getLogger(MetadataUpdateIntegrationTest.class);
+
+    /** Number of author values to benchmark with */
+    private static final int[] SIZES = { 10, 100, 1000, 2000 };
+
+    /**
+     * This method will be run before every test as per @Before. It will
+     * initialize resources required for the tests.
+     *
+     * Other methods can be annotated with @Before here or in subclasses
+     * but no execution order is guaranteed
+     */
+    @Before
+    @Override
+    public void init()
+    {
+        super.init();
+    }
+
+    /**
+     * This method will be run after every test as per @After. It will
+     * clean resources initialized by the @Before methods.
+     *
+     * Other methods can be annotated with @After here or in subclasses
+     * but no execution order is guaranteed
+     */
+    @After
+    @Override
+    public void destroy()
+    {
+        super.destroy();
+    }
+
+    /**
+     * Time a full insert of N values, a no-op update, a single value change
+     * and the removal of every value, for each of the benchmark sizes.
+     */
+    @Test
+    @PerfTest(invocations = 1, threads = 1)
+    public void testUpdateMetadataScaling() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        for (int size : SIZES)
+        {
+            Item it = Item.create(context);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++)
+            {
+                it.addMetadata("dc", "contributor", "author", null, "Author, " + i);
+            }
+            it.update();
+            long insert = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            it.update();
+            long unchanged = System.nanoTime() - start;
+
+            Metadatum[] authors = it.getMetadata("dc", "contributor", "author", Item.ANY);
+            it.clearMetadata("dc", "contributor", "author", Item.ANY);
+            for (Metadatum author : authors)
+            {
+                it.addMetadata("dc", "contributor", "author", author.language,
+                        author.value.equals("Author, 0") ? "Author, first" : author.value);
+            }
+            start = System.nanoTime();
+            it.update();
+            long changeOne = System.nanoTime() - start;
+
+            context.removeCached(it, it.getID());
+            Item reloaded = Item.find(context, it.getID());
+            authors = reloaded.getMetadata("dc", "contributor", "author", Item.ANY);
+            assertThat("testUpdateMetadataScaling 0", authors.length, equalTo(size));
+            assertThat("testUpdateMetadataScaling 1", authors[0].value, equalTo("Author, first"));
+            assertThat("testUpdateMetadataScaling 2", authors[size - 1].value, equalTo("Author, " + (size - 1)));
+
+            reloaded.clearMetadata("dc", "contributor", "author", Item.ANY);
+            start = System.nanoTime();
+            reloaded.update();
+            long removeAll = System.nanoTime() - start;
+
+            context.removeCached(reloaded, reloaded.getID());
+            assertThat("testUpdateMetadataScaling 3",
+                    Item.find(context, it.getID()).getMetadata("dc", "contributor", "author", Item.ANY).length,
+                    equalTo(0));
+
+            log.info("updateMetadata with " + size + " values: insert=" + (insert / 1000000) + "ms"
+                    + " unchanged=" + (unchanged / 1000000) + "ms"
+                    + " changeOne=" + (changeOne / 1000000) + "ms"
+                    + " removeAll=" + (removeAll / 1000000) + "ms");
+        }
+        context.restoreAuthSystemState();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.content;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.core.Constants;
+import org.junit.Test;
+import static org.junit.Assert.* ;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Tests the VersionStamps class
+ */
+public class VersionStampsTest extends AbstractUnitTest
+{
+    /**
+     * Test of getStamp method, of class VersionStamps.
+     */
+    @Test
+    public void testGetStamp()
+    {
+        String stamp = VersionStamps.getStamp(Constants.ITEM, 1001);
+        assertThat("testGetStamp 0", stamp, notNullValue());
+        assertThat("testGetStamp 1", VersionStamps.getStamp(Constants.ITEM, 1001), equalTo(stamp));
+        assertThat("testGetStamp 2", VersionStamps.getStamp(Constants.ITEM, 1002), not(equalTo(stamp)));
+        assertThat("testGetStamp 3", VersionStamps.getStamp(Constants.COLLECTION, 1001), not(equalTo(stamp)));
+    }
+
+    /**
+     * Test of touch method, of class VersionStamps.
+     */
+    @Test
+    public void testTouch()
+    {
+        String item = VersionStamps.getStamp(Constants.ITEM, 1003);
+        String other = VersionStamps.getStamp(Constants.ITEM, 1004);
+        VersionStamps.touch(Constants.ITEM, 1003);
+        String touched = VersionStamps.getStamp(Constants.ITEM, 1003);
+        assertThat("testTouch 0", touched, not(equalTo(item)));
+        assertThat("testTouch 1", VersionStamps.getStamp(Constants.ITEM, 1003), equalTo(touched));
+        assertThat("testTouch 2", VersionStamps.getStamp(Constants.ITEM, 1004), equalTo(other));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ConfigurationSnapshot} and {@link ConfigurationSetting}.
+ */
+public class ConfigurationSnapshotTest
+{
+    /** The snapshot of ConfigurationManager, put back after each test */
+    private ConfigurationSnapshot saved;
+
+    @Before
+    public void init()
+    {
+        saved = ConfigurationManager.getSnapshot();
+    }
+
+    @After
+    public void destroy()
+    {
+        ConfigurationManager.snapshot = saved;
+    }
+
+    private static ConfigurationSnapshot snapshot(String... keysAndValues)
+    {
+        Properties main = new Properties();
+        Properties module = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2)
+        {
+            String key = keysAndValues[i];
+            if (key.startsWith("test:"))
+            {
+                module.setProperty(key.substring(5), keysAndValues[i + 1]);
+            }
+            else
+            {
+                main.setProperty(key, keysAndValues[i + 1]);
+            }
+        }
+        Map<String, Properties> modules = new HashMap<String, Properties>();
+        modules.put("test", module);
+        return new ConfigurationSnapshot(main, modules);
+    }
+
+    /**
+     * Test lookups, the module fallback and parsing.
+     */
+    @Test
+    public void testLookup()
+    {
+        ConfigurationSnapshot snapshot = snapshot(
+                "a", " value ", "test.b", "main", "test:b", "module",
+                "test.c", "7", "test:d", "x", "test:e", "Yes");
+
+        assertThat("testLookup 0", snapshot.getProperty("a"), equalTo("value"));
+        assertThat("testLookup 1", snapshot.getProperty("test", "b"), equalTo("module"));
+        assertThat("testLookup 2", snapshot.getProperty("test", "c"), equalTo("7"));
+        assertThat("testLookup 3", snapshot.getProperty("test", "z"), nullValue());
+        assertThat("testLookup 4", snapshot.getIntProperty("test", "c", 1), equalTo(7));
+        assertThat("testLookup 5", snapshot.getIntProperty("test", "d", 1), equalTo(1));
+        assertThat("testLookup 6", snapshot.getLongProperty("test", "c", 1), equalTo(7L));
+        assertThat("testLookup 7", snapshot.getBooleanProperty("test", "e", false), equalTo(true));
+        assertThat("testLookup 8", snapshot.getBooleanProperty("test", "d", true), equalTo(false));
+        assertThat("testLookup 9", snapshot.getBooleanProperty("test", "z", true), equalTo(true));
+        assertThat("testLookup 10", snapshot.hasModule("test"), equalTo(true));
+        assertThat("testLookup 11", snapshot.hasModule("other"), equalTo(false));
+    }
+
+    /**
+     * Test that settings read the configuration of ConfigurationManager, and
+     * follow it when it is replaced.
+     */
+    @Test
+    public void testSetting()
+    {
+        ConfigurationSetting.StringSetting dir =
+                new ConfigurationSetting.StringSetting(null, "dspace.dir", null);
+        assertThat("testSetting 0", dir.get(), equalTo(ConfigurationManager.getProperty("dspace.dir")));
+
+        ConfigurationSetting.IntSetting count = new ConfigurationSetting.IntSetting("test", "count", 5);
+        ConfigurationSetting.BooleanSetting flag = new ConfigurationSetting.BooleanSetting("test", "flag", false);
+        ConfigurationSetting.LongSetting size = new ConfigurationSetting.LongSetting(null, "size", 0);
+
+        ConfigurationManager.snapshot = snapshot("test:count", "10", "size", "3000000000");
+        assertThat("testSetting 1", count.get(), equalTo(10));
+        assertThat("testSetting 2", flag.get(), equalTo(false));
+        assertThat("testSetting 3", size.get(), equalTo(3000000000L));
+        assertThat("testSetting 4", dir.get(), nullValue());
+
+        ConfigurationManager.snapshot = snapshot("test:count", "bad", "test:flag", "true");
+        assertThat("testSetting 5", count.get(), equalTo(5));
+        assertThat("testSetting 6", flag.get(), equalTo(true));
+        assertThat("testSetting 7", size.get(), equalTo(0L));
+
+        // before the configuration is loaded, the first read loads it
+        ConfigurationSetting.IntSetting fresh = new ConfigurationSetting.IntSetting("test", "count", 5);
+        ConfigurationManager.snapshot = null;
+        assertThat("testSetting 8", fresh.get(), equalTo(5));
+        assertThat("testSetting 9", dir.get(), equalTo(ConfigurationManager.getProperty("dspace.dir")));
+    }
+}
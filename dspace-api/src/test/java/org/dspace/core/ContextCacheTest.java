@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.sql.SQLException;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.content.Community;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit tests for the bounded identity map behind the Context object cache.
+ */
+public class ContextCacheTest extends AbstractUnitTest
+{
+    /**
+     * Test that lookups are counted as hits and misses.
+     */
+    @Test
+    public void testStats()
+    {
+        ContextCache cache = new ContextCache(0, true);
+        cache.put("one", 1);
+
+        assertThat("testStats 0", (String) cache.get(String.class, 1), equalTo("one"));
+        assertThat("testStats 1", cache.get(String.class, 2), nullValue());
+        assertThat("testStats 2", cache.get(Integer.class, 1), nullValue());
+
+        ContextCache.Stats stats = cache.getStats();
+        assertThat("testStats 3", stats.getHits(), equalTo(1L));
+        assertThat("testStats 4", stats.getMisses(), equalTo(2L));
+        assertThat("testStats 5", stats.getEvictions(), equalTo(0L));
+        assertThat("testStats 6", stats.getSizes().get("String"), equalTo(1));
+    }
+
+    /**
+     * Test that objects of different classes with the same ID do not clash.
+     */
+    @Test
+    public void testKeyedPerClass()
+    {
+        ContextCache cache = new ContextCache(0, true);
+        cache.put("one", 1);
+        cache.put(Integer.valueOf(1), 1);
+
+        assertThat("testKeyedPerClass 0", cache.size(), equalTo(2));
+        cache.remove(String.class, 1);
+        assertThat("testKeyedPerClass 1", cache.get(String.class, 1), nullValue());
+        assertThat("testKeyedPerClass 2", cache.get(Integer.class, 1), notNullValue());
+    }
+
+    /**
+     * Test that the least recently used object is evicted first.
+     */
+    @Test
+    public void testLRUEviction()
+    {
+        ContextCache cache = new ContextCache(2, true);
+        cache.put("one", 1);
+        cache.put("two", 2);
+        cache.get(String.class, 1);
+        cache.put("three", 3);
+
+        assertThat("testLRUEviction 0", cache.size(), equalTo(2));
+        assertThat("testLRUEviction 1", cache.get(String.class, 2), nullValue());
+        assertThat("testLRUEviction 2", cache.get(String.class, 1), notNullValue());
+        assertThat("testLRUEviction 3", cache.getStats().getEvictions(), equalTo(1L));
+    }
+
+    /**
+     * Test that the oldest object is evicted first in FIFO mode.
+     */
+    @Test
+    public void testFIFOEviction()
+    {
+        ContextCache cache = new ContextCache(2, false);
+        cache.put("one", 1);
+        cache.put("two", 2);
+        cache.get(String.class, 1);
+        cache.put("three", 3);
+
+        assertThat("testFIFOEviction 0", cache.get(String.class, 1), nullValue());
+        assertThat("testFIFOEviction 1", cache.get(String.class, 2), notNullValue());
+    }
+
+    /**
+     * Test that objects with unsaved changes are never evicted.
+     */
+    @Test
+    public void testModifiedNotEvicted() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Community dirty = Community.create(null, context);
+        dirty.addMetadata("dc", "title", null, null, "Not saved yet");
+        Community clean = Community.create(null, context);
+        context.restoreAuthSystemState();
+
+        ContextCache cache = new ContextCache(1, true);
+        cache.put(dirty, dirty.getID());
+        cache.put(clean, clean.getID());
+
+        assertThat("testModifiedNotEvicted 0", dirty.isModified(), equalTo(true));
+        assertThat("testModifiedNotEvicted 1", cache.get(Community.class, dirty.getID()), notNullValue());
+        assertThat("testModifiedNotEvicted 2", cache.get(Community.class, clean.getID()), notNullValue());
+        assertThat("testModifiedNotEvicted 3", cache.size(), equalTo(2));
+    }
+}
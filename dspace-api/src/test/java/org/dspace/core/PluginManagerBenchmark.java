@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dspace.content.crosswalk.IngestionCrosswalk;
+import org.dspace.content.crosswalk.StreamDisseminationCrosswalk;
+import org.dspace.content.crosswalk.StreamIngestionCrosswalk;
+import org.junit.Test;
+
+/**
+ * Microbenchmark of the {@link PluginManager} lookups made on hot paths,
+ * such as getting a crosswalk for each package or item. It only prints
+ * its timings, and is not run with the other tests; run it with
+ * <code>mvn test -Dtest=PluginManagerBenchmark</code>.
+ */
+public class PluginManagerBenchmark
+{
+    private static final int WARMUP = 200000;
+    private static final int LOOKUPS = 1000000;
+
+    /**
+     * Time lookups of named crosswalks on one thread.
+     */
+    @Test
+    public void benchmarkSingleThread()
+    {
+        lookups(WARMUP);
+        long start = System.nanoTime();
+        lookups(LOOKUPS);
+        report(1, System.nanoTime() - start);
+    }
+
+    /**
+     * Time lookups of named crosswalks on as many threads as processors.
+     */
+    @Test
+    public void benchmarkConcurrent() throws InterruptedException
+    {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong elapsed = new AtomicLong();
+        for (int i = 0; i < threads; i++)
+        {
+            new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    lookups(WARMUP);
+                    ready.countDown();
+                    try
+                    {
+                        go.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    lookups(LOOKUPS);
+                    elapsed.addAndGet(System.nanoTime() - start);
+                    done.countDown();
+                }
+            }).start();
+        }
+        ready.await();
+        go.countDown();
+        done.await();
+        report(threads, elapsed.get() / threads);
+    }
+
+    private static void lookups(int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            switch (i % 3)
+            {
+                case 0:
+                    PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM");
+                    break;
+                case 1:
+                    PluginManager.getNamedPlugin(StreamDisseminationCrosswalk.class, "DSPACE_DEPLICENSE");
+                    break;
+                default:
+                    PluginManager.hasNamedPlugin(IngestionCrosswalk.class, "QDC");
+                    break;
+            }
+        }
+    }
+
+    // print the time per lookup on each thread, and the lookups per second of all
+    private static void report(int threads, long nanosPerThread)
+    {
+        System.out.println("PluginManager lookups on " + threads + " threads: "
+                + (nanosPerThread / LOOKUPS) + " ns/lookup, "
+                + (long) (threads * (double) LOOKUPS * 1000000000 / nanosPerThread) + " lookups/s");
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dspace.content.crosswalk.NullStreamIngestionCrosswalk;
+import org.dspace.content.crosswalk.StreamIngestionCrosswalk;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link PluginManager} lookups, with the plugins of
+ * the test configuration.
+ */
+public class PluginManagerTest
+{
+    /**
+     * Test that a reusable named plugin is the same instance however many
+     * threads ask for it at once.
+     */
+    @Test
+    public void testGetNamedPluginConcurrently() throws Exception
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try
+        {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < 32; i++)
+            {
+                results.add(pool.submit(new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        Object plugin = null;
+                        for (int j = 0; j < 1000; j++)
+                        {
+                            plugin = PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM");
+                        }
+                        return plugin;
+                    }
+                }));
+            }
+
+            Object first = results.get(0).get();
+            assertThat("testGetNamedPluginConcurrently 0", first, instanceOf(NullStreamIngestionCrosswalk.class));
+            for (Future<Object> result : results)
+            {
+                assertThat("testGetNamedPluginConcurrently 1", result.get(), sameInstance(first));
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test lookups of names which are not configured.
+     */
+    @Test
+    public void testGetNamedPluginUnknown()
+    {
+        assertThat("testGetNamedPluginUnknown 0",
+                PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NO SUCH PLUGIN"), nullValue());
+        assertThat("testGetNamedPluginUnknown 1",
+                PluginManager.hasNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM"), equalTo(true));
+        assertThat("testGetNamedPluginUnknown 2",
+                PluginManager.hasNamedPlugin(StreamIngestionCrosswalk.class, "NO SUCH PLUGIN"), equalTo(false));
+    }
+
+    /**
+     * Test that releasing a plugin makes the next request create a new
+     * instance.
+     */
+    @Test
+    public void testReleasePlugin()
+    {
+        Object plugin = PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM");
+        PluginManager.releasePlugin(plugin);
+        Object again = PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM");
+        assertThat("testReleasePlugin 0", again, not(sameInstance(plugin)));
+        assertThat("testReleasePlugin 1",
+                PluginManager.getNamedPlugin(StreamIngestionCrosswalk.class, "NULLSTREAM"), sameInstance(again));
+    }
+
+    /**
+     * Test loading the configured plugin classes ahead of use.
+     */
+    @Test
+    public void testWarmUp()
+    {
+        assertThat("testWarmUp 0", PluginManager.warmUp() > 0, equalTo(true));
+        assertThat("testWarmUp 1", PluginManager.getAllPluginNames(StreamIngestionCrosswalk.class).length > 0,
+                equalTo(true));
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import mockit.Deencapsulation;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import org.dspace.authorize.AuthorizationCache;
+import org.dspace.content.Collection;
+import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIterator;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+import org.dspace.core.ContextCache;
+import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Curator} performing a task on the items of a
+ * collection in parallel, with contexts which have no database connection.
+ */
+public class CuratorTest
+{
+    private static final int ITEMS = 50;
+    private static final int SPECIAL_GROUP = 42;
+
+    /** Items performed, and whether the worker context had the special group */
+    private static final List<String> performed = Collections.synchronizedList(new ArrayList<String>());
+
+    private PrintStream out;
+    private ByteArrayOutputStream reported;
+
+    @Before
+    public void init()
+    {
+        new MockContext();
+        new MockTaskResolver();
+        new MockHandleManager();
+        new MockDatabaseManager();
+        new MockItem();
+        new MockCollection();
+        performed.clear();
+        out = System.out;
+        reported = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(reported, true));
+    }
+
+    @After
+    public void destroy()
+    {
+        System.setOut(out);
+    }
+
+    /**
+     * Test that every item of a collection is performed once, in a worker
+     * context with the special groups of the caller, and that the status
+     * and reports of every worker reach the caller.
+     */
+    @Test
+    public void testParallel() throws Exception
+    {
+        Context context = Curator.curationContext();
+        context.setSpecialGroup(SPECIAL_GROUP);
+
+        Curator curator = new Curator().addTask("noop").setReporter("-").setParallelism(4);
+        curator.curate(newCollection(context));
+
+        List<String> expected = new ArrayList<String>();
+        for (int id = 1; id <= ITEMS; id++)
+        {
+            expected.add(id + " special");
+        }
+        List<String> items = new ArrayList<String>(performed);
+        items.remove("collection");
+        Collections.sort(items);
+        Collections.sort(expected);
+        assertThat("testParallel 0", items, equalTo(expected));
+
+        Map<Integer, Integer> counts = curator.getStatusCounts("noop");
+        assertThat("testParallel 1", counts.get(Curator.CURATE_SUCCESS), equalTo(ITEMS + 1));
+
+        // the log goes to the console as well
+        int reports = 0;
+        for (String line : reported.toString().split("\\r?\\n"))
+        {
+            if (line.matches("Performed 123456789/\\d+"))
+            {
+                reports++;
+            }
+        }
+        assertThat("testParallel 2", reports, equalTo(ITEMS + 1));
+    }
+
+    private static Collection newCollection(Context context) throws Exception
+    {
+        TableRow row = new TableRow("collection", Arrays.asList("collection_id", "logo_bitstream_id",
+                "template_item_id", "workflow_step_1", "workflow_step_2", "workflow_step_3",
+                "submitter", "admin"));
+        row.setColumn("collection_id", 1);
+        return Deencapsulation.newInstance(Collection.class,
+                new Class<?>[] { Context.class, TableRow.class }, context, row);
+    }
+
+    /**
+     * Records the objects it is performed on.
+     */
+    public static class NoopTask extends AbstractCurationTask
+    {
+        @Override
+        public int perform(DSpaceObject dso) throws IOException
+        {
+            if (dso.getType() == Constants.ITEM)
+            {
+                try
+                {
+                    boolean special = Curator.curationContext().inSpecialGroup(SPECIAL_GROUP);
+                    performed.add(dso.getID() + (special ? " special" : " anonymous"));
+                }
+                catch (SQLException e)
+                {
+                    throw new IOException(e);
+                }
+            }
+            else
+            {
+                performed.add("collection");
+            }
+            report("Performed " + dso.getHandle());
+            return Curator.CURATE_SUCCESS;
+        }
+    }
+
+    /**
+     * A Context without a database connection, which is always valid.
+     */
+    public static class MockContext extends MockUp<Context>
+    {
+        @Mock
+        void init(Invocation invocation)
+        {
+            Context context = invocation.getInvokedInstance();
+            Deencapsulation.setField(context, "objectCache", Deencapsulation.newInstance(ContextCache.class));
+            Deencapsulation.setField(context, "authorizationCache", new AuthorizationCache());
+            Deencapsulation.setField(context, "specialGroups", new ArrayList<Integer>());
+            Deencapsulation.setField(context, "authStateChangeHistory", new Stack<Boolean>());
+            Deencapsulation.setField(context, "authStateClassCallHistory", new Stack<String>());
+        }
+
+        @Mock
+        public boolean isValid()
+        {
+            return true;
+        }
+
+        @Mock
+        public void commit()
+        {
+        }
+
+        @Mock
+        public void complete()
+        {
+        }
+
+        @Mock
+        public void abort()
+        {
+        }
+    }
+
+    /**
+     * Every task name resolves to a {@link NoopTask}.
+     */
+    public static class MockTaskResolver extends MockUp<TaskResolver>
+    {
+        @Mock
+        public ResolvedTask resolveTask(String taskName)
+        {
+            return new ResolvedTask(taskName, new NoopTask());
+        }
+    }
+
+    /**
+     * Every object has the handle prefix/id.
+     */
+    public static class MockHandleManager extends MockUp<HandleManager>
+    {
+        @Mock
+        public static String findHandle(Context context, DSpaceObject dso)
+        {
+            return "123456789/" + dso.getID();
+        }
+    }
+
+    /**
+     * Boolean columns are stored the H2 and PostgreSQL way.
+     */
+    public static class MockDatabaseManager extends MockUp<DatabaseManager>
+    {
+        @Mock
+        public static boolean isOracle()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Every item ID is an archived item.
+     */
+    public static class MockItem extends MockUp<Item>
+    {
+        @Mock
+        public static Item find(Context context, int id) throws SQLException
+        {
+            TableRow row = new TableRow("item",
+                    Arrays.asList("item_id", "in_archive", "withdrawn", "last_modified"));
+            row.setColumn("item_id", id);
+            row.setColumn("in_archive", true);
+            row.setColumn("withdrawn", false);
+            row.setColumn("last_modified", new Date());
+            return Deencapsulation.newInstance(Item.class,
+                    new Class<?>[] { Context.class, TableRow.class }, context, row);
+        }
+    }
+
+    /**
+     * A collection holds items 1 to ITEMS.
+     */
+    public static class MockCollection extends MockUp<Collection>
+    {
+        @Mock
+        public ItemIterator getItems()
+        {
+            List<Integer> ids = new ArrayList<Integer>();
+            for (int id = 1; id <= ITEMS; id++)
+            {
+                ids.add(id);
+            }
+            return new ItemIterator(null, ids);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.curate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import mockit.Deencapsulation;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.MockDatabaseManager;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DBTaskQueue}, against the H2 test database. They
+ * need no EPerson, so they do not extend AbstractUnitTest.
+ */
+public class DBTaskQueueTest
+{
+    private static final String QUEUE = "test-queue";
+
+    private final DBTaskQueue queue = new DBTaskQueue();
+
+    @BeforeClass
+    public static void initOnce()
+    {
+        // the test configuration, and the test database built by Flyway
+        ConfigurationManager.loadConfig(null);
+        new MockDatabaseManager();
+    }
+
+    @After
+    public void destroy() throws Exception
+    {
+        Context context = new Context();
+        DatabaseManager.updateQuery(context, "DELETE FROM curation_task_queue");
+        context.complete();
+    }
+
+    /**
+     * Test that entries are dequeued in batches, each entry once, until the
+     * queue is drained.
+     */
+    @Test
+    public void testDequeue() throws Exception
+    {
+        Deencapsulation.setField(queue, "batchSize", 2);
+        queue.enqueue(QUEUE, entries("123456789/1", "123456789/2", "123456789/3"));
+        assertThat("testDequeue 0", Arrays.asList(queue.queueNames()), equalTo(Arrays.asList(QUEUE)));
+        assertThat("testDequeue 1", queue.getDepth(QUEUE), equalTo(3));
+
+        Set<TaskQueueEntry> first = queue.dequeue(QUEUE, 1L);
+        Set<TaskQueueEntry> second = queue.dequeue(QUEUE, 2L);
+        Set<TaskQueueEntry> third = queue.dequeue(QUEUE, 3L);
+        assertThat("testDequeue 2", objectIds(first).toString(), equalTo("[123456789/1, 123456789/2]"));
+        assertThat("testDequeue 3", objectIds(second).toString(), equalTo("[123456789/3]"));
+        assertThat("testDequeue 4", third.isEmpty(), equalTo(true));
+        assertThat("testDequeue 5", queue.getDepth(QUEUE), equalTo(0));
+        assertThat("testDequeue 6", queue.getLeased(QUEUE), equalTo(3));
+
+        TaskQueueEntry entry = second.iterator().next();
+        assertThat("testDequeue 7", entry.getEpersonId(), equalTo("test@email.com"));
+        assertThat("testDequeue 8", entry.getTaskNames(), equalTo(Arrays.asList("noop", "vscan")));
+    }
+
+    /**
+     * Test that released entries are removed, or handed back for any
+     * reader, and that only the entries of the releasing ticket are.
+     */
+    @Test
+    public void testRelease() throws Exception
+    {
+        Deencapsulation.setField(queue, "batchSize", 2);
+        queue.enqueue(QUEUE, entries("123456789/1", "123456789/2", "123456789/3"));
+        queue.dequeue(QUEUE, 1L);
+        queue.dequeue(QUEUE, 2L);
+
+        queue.release(QUEUE, 1L, false);
+        assertThat("testRelease 0", queue.getDepth(QUEUE), equalTo(2));
+        assertThat("testRelease 1", queue.getLeased(QUEUE), equalTo(1));
+        assertThat("testRelease 2", objectIds(queue.dequeue(QUEUE, 3L)).toString(),
+                equalTo("[123456789/1, 123456789/2]"));
+
+        queue.release(QUEUE, 2L, true);
+        queue.release(QUEUE, 3L, true);
+        assertThat("testRelease 3", queue.getDepth(QUEUE), equalTo(0));
+        assertThat("testRelease 4", queue.getLeased(QUEUE), equalTo(0));
+        assertThat("testRelease 5", queue.queueNames().length, equalTo(0));
+    }
+
+    /**
+     * Test that the entries of a reader whose lease has run out are
+     * claimed by the next reader.
+     */
+    @Test
+    public void testLeaseExpiry() throws Exception
+    {
+        Deencapsulation.setField(queue, "leaseSeconds", 0);
+        queue.enqueue(QUEUE, entries("123456789/1", "123456789/2"));
+        assertThat("testLeaseExpiry 0", queue.dequeue(QUEUE, 1L).size(), equalTo(2));
+
+        Thread.sleep(50);
+        assertThat("testLeaseExpiry 1", queue.getLeased(QUEUE), equalTo(0));
+        assertThat("testLeaseExpiry 2", queue.getDepth(QUEUE), equalTo(2));
+        assertThat("testLeaseExpiry 3", queue.dequeue(QUEUE, 2L).size(), equalTo(2));
+
+        // the crashed reader no longer holds them
+        queue.release(QUEUE, 1L, true);
+        assertThat("testLeaseExpiry 4", queue.getDepth(QUEUE) + queue.getLeased(QUEUE), equalTo(2));
+    }
+
+    /**
+     * Test which databases are sent SKIP LOCKED.
+     */
+    @Test
+    public void testSkipLocked()
+    {
+        assertThat("testSkipLocked 0", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_POSTGRES, 9, 4), equalTo(false));
+        assertThat("testSkipLocked 1", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_POSTGRES, 9, 5), equalTo(true));
+        assertThat("testSkipLocked 2", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_POSTGRES, 10, 0), equalTo(true));
+        assertThat("testSkipLocked 3", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_ORACLE, 10, 2), equalTo(false));
+        assertThat("testSkipLocked 4", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_ORACLE, 11, 2), equalTo(true));
+        assertThat("testSkipLocked 5", DBTaskQueue.supportsSkipLocked(DatabaseManager.DBMS_H2, 1, 4), equalTo(false));
+
+        assertThat("testSkipLocked 6", DBTaskQueue.claimQuery(DatabaseManager.DBMS_POSTGRES, false, 10)
+                .endsWith(" LIMIT 10 FOR UPDATE"), equalTo(true));
+        assertThat("testSkipLocked 7", DBTaskQueue.claimQuery(DatabaseManager.DBMS_ORACLE, false, 10)
+                .contains("ROWNUM <= 10"), equalTo(true));
+        assertThat("testSkipLocked 8", DBTaskQueue.claimQuery(DatabaseManager.DBMS_ORACLE, true, 10)
+                .endsWith(" FOR UPDATE SKIP LOCKED"), equalTo(true));
+    }
+
+    private static Set<TaskQueueEntry> entries(String... objectIds)
+    {
+        Set<TaskQueueEntry> entries = new LinkedHashSet<TaskQueueEntry>();
+        for (String objectId : objectIds)
+        {
+            entries.add(new TaskQueueEntry("test@email.com", System.currentTimeMillis(),
+                    Arrays.asList("noop", "vscan"), objectId));
+        }
+        return entries;
+    }
+
+    private static Set<String> objectIds(Set<TaskQueueEntry> entries)
+    {
+        List<String> ids = new ArrayList<String>();
+        for (TaskQueueEntry entry : entries)
+        {
+            ids.add(entry.getObjectId());
+        }
+        return new TreeSet<String>(ids);
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.MockDatabaseManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SolrServiceImpl#updateIndexIncremental(Context)}, with
+ * the database and the index kept in memory.
+ */
+public class IncrementalIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private IndexWatermark watermark;
+    private MemoryService service;
+
+    @BeforeClass
+    public static void initOnce()
+    {
+        // the test configuration, and the test database built by Flyway, for
+        // the deletion log
+        ConfigurationManager.loadConfig(null);
+        new MockDatabaseManager();
+    }
+
+    @Before
+    public void init() throws Exception
+    {
+        watermark = new IndexWatermark(new File(folder.getRoot(), "index.watermark"));
+        watermark.set(new Date(1000));
+
+        // community 1 holds collection 10, community 2 holds collection 20,
+        // and community 3 is the parent of both
+        service = new MemoryService();
+        service.parents.put(10, Arrays.asList(1, 3));
+        service.parents.put(20, Arrays.asList(2, 3));
+        for (int item = 100; item < 105; item++)
+        {
+            service.database.put(item, 10);
+            service.indexed.put(item, 10);
+        }
+    }
+
+    /**
+     * Test that items deleted since the last run are removed from the
+     * index, and the collection and communities they were in reindexed.
+     */
+    @Test
+    public void testDeleted() throws Exception
+    {
+        service.database.remove(101);
+        service.database.remove(103);
+        service.deleted.add(101);
+        service.deleted.add(103);
+
+        int count = service.updateIndexIncremental(null, watermark);
+
+        assertThat("testDeleted 0", count, equalTo(0));
+        assertThat("testDeleted 1", service.indexed.keySet().toString(), equalTo("[100, 102, 104]"));
+        assertThat("testDeleted 2", service.collections.toString(), equalTo("[10]"));
+        assertThat("testDeleted 3", service.communities.toString(), equalTo("[1, 3]"));
+        assertThat("testDeleted 4", watermark.get().getTime() > 1000, equalTo(true));
+        assertThat("testDeleted 5", service.prunedBefore, equalTo(new Date(1000)));
+    }
+
+    /**
+     * Test that only the deletion log is read to find deleted items, and
+     * not the whole index.
+     */
+    @Test
+    public void testDeletionLogOnly() throws Exception
+    {
+        // deleted before the deletion log was there
+        service.database.remove(102);
+
+        service.updateIndexIncremental(null, watermark);
+
+        assertThat("testDeletionLogOnly 0", service.indexed.containsKey(102), equalTo(true));
+        assertThat("testDeletionLogOnly 1", service.indexScanned, equalTo(false));
+    }
+
+    /**
+     * Test that the collection and communities an item is moved away from
+     * are reindexed, as well as those it is moved to.
+     */
+    @Test
+    public void testMoved() throws Exception
+    {
+        service.database.put(102, 20);
+        service.modified.add(102);
+
+        int count = service.updateIndexIncremental(null, watermark);
+
+        assertThat("testMoved 0", count, equalTo(1));
+        assertThat("testMoved 1", service.indexed.get(102), equalTo(20));
+        assertThat("testMoved 2", service.reindexed.toString(), equalTo("[102]"));
+        assertThat("testMoved 3", service.collections.toString(), equalTo("[10, 20]"));
+        assertThat("testMoved 4", service.communities.toString(), equalTo("[1, 2, 3]"));
+    }
+
+    /**
+     * Test that nothing is reindexed when nothing has changed.
+     */
+    @Test
+    public void testUnchanged() throws Exception
+    {
+        int count = service.updateIndexIncremental(null, watermark);
+
+        assertThat("testUnchanged 0", count, equalTo(0));
+        assertThat("testUnchanged 1", service.indexed.size(), equalTo(5));
+        assertThat("testUnchanged 2", service.collections.isEmpty(), equalTo(true));
+        assertThat("testUnchanged 3", service.communities.isEmpty(), equalTo(true));
+    }
+
+    /**
+     * Test that the deletion log returns the items deleted after a time,
+     * and forgets those deleted before another.
+     */
+    @Test
+    public void testDeletionLog() throws Exception
+    {
+        SolrServiceImpl solr = new SolrServiceImpl();
+        Context context = new Context();
+        try
+        {
+            for (int item = 201; item <= 203; item++)
+            {
+                DatabaseManager.updateQuery(context, "INSERT INTO item_deletion (item_id, deleted) VALUES (?, ?)",
+                        item, new java.sql.Timestamp(item * 1000L));
+            }
+            context.commit();
+
+            assertThat("testDeletionLog 0", solr.findItemsDeletedSince(context, new Date(201000)).toString(),
+                    equalTo("[202, 203]"));
+            solr.pruneDeletions(new Date(203000));
+            assertThat("testDeletionLog 1", solr.findItemsDeletedSince(context, new Date(0)).toString(),
+                    equalTo("[203]"));
+        }
+        finally
+        {
+            DatabaseManager.updateQuery(context, "DELETE FROM item_deletion");
+            context.complete();
+        }
+    }
+
+    /**
+     * Items in one collection each, by item ID: in the database and in the
+     * index. Records what is reindexed.
+     */
+    private static class MemoryService extends SolrServiceImpl
+    {
+        final Map<Integer, Integer> database = new HashMap<Integer, Integer>();
+        final Map<Integer, Integer> indexed = new TreeMap<Integer, Integer>();
+        final Map<Integer, List<Integer>> parents = new HashMap<Integer, List<Integer>>();
+        final Set<Integer> modified = new TreeSet<Integer>();
+        final Set<Integer> deleted = new TreeSet<Integer>();
+        Date prunedBefore;
+        boolean indexScanned;
+
+        final Set<Integer> reindexed = new TreeSet<Integer>();
+        final Set<Integer> collections = new TreeSet<Integer>();
+        final Set<Integer> communities = new TreeSet<Integer>();
+
+        @Override
+        List<Integer> findItemsModifiedSince(Context context, Date since)
+        {
+            return new ArrayList<Integer>(modified);
+        }
+
+        @Override
+        Set<Integer> findCollectionsOfItemsModifiedSince(Context context, Date since)
+        {
+            Set<Integer> collectionIDs = new HashSet<Integer>();
+            for (Integer item : modified)
+            {
+                collectionIDs.add(database.get(item));
+            }
+            return collectionIDs;
+        }
+
+        @Override
+        List<Integer> findItemsDeletedSince(Context context, Date since)
+        {
+            return new ArrayList<Integer>(deleted);
+        }
+
+        @Override
+        void pruneDeletions(Date before)
+        {
+            prunedBefore = before;
+        }
+
+        @Override
+        Set<Integer> findExistingItems(Context context, List<Integer> itemIDs)
+        {
+            Set<Integer> existing = new HashSet<Integer>(itemIDs);
+            existing.retainAll(database.keySet());
+            return existing;
+        }
+
+        @Override
+        Set<Integer> getIndexedItemIDs()
+        {
+            indexScanned = true;
+            return new HashSet<Integer>(indexed.keySet());
+        }
+
+        @Override
+        void findIndexedLocations(List<Integer> itemIDs, Set<Integer> collectionIDs, Set<Integer> communityIDs)
+        {
+            for (Integer item : itemIDs)
+            {
+                Integer collection = indexed.get(item);
+                if (collection != null)
+                {
+                    collectionIDs.add(collection);
+                    communityIDs.addAll(parents.get(collection));
+                }
+            }
+        }
+
+        @Override
+        void reindexItem(Context context, int itemID)
+        {
+            reindexed.add(itemID);
+            indexed.put(itemID, database.get(itemID));
+        }
+
+        @Override
+        void unIndexItem(int itemID)
+        {
+            indexed.remove(itemID);
+        }
+
+        @Override
+        void reindexCollection(Context context, int collectionID, Set<Integer> communityIDs)
+        {
+            collections.add(collectionID);
+            communityIDs.addAll(parents.get(collectionID));
+        }
+
+        @Override
+        void reindexCommunity(Context context, int communityID)
+        {
+            communities.add(communityID);
+        }
+
+        @Override
+        public void commit()
+        {
+        }
+    }
+}
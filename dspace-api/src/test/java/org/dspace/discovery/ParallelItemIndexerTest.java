@@ -0,0 +1,428 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.discovery;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import mockit.Deencapsulation;
+import mockit.Invocation;
+import mockit.Mock;
+import mockit.MockUp;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.impl.ConcurrentUpdateSolrServer;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.dspace.authorize.AuthorizationCache;
+import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
+import org.dspace.content.ItemIterator;
+import org.dspace.core.Context;
+import org.dspace.core.ContextCache;
+import org.dspace.handle.HandleManager;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ParallelItemIndexer}, comparing what it leaves in the
+ * index with what the serial reindex of {@link SolrServiceImpl} leaves, and
+ * running whole reindexes over items kept in memory.
+ */
+public class ParallelItemIndexerTest
+{
+    private Context context;
+    private final List<Item> items = new ArrayList<Item>();
+    private final Map<Integer, Item> itemsByID = new HashMap<Integer, Item>();
+
+    @Before
+    public void init() throws Exception
+    {
+        new MockContext();
+        new MockHandleManager();
+        new MockDatabaseManager();
+        new MockItem(itemsByID);
+        context = new Context();
+        items.clear();
+        itemsByID.clear();
+        addItem(1, true, false);
+        addItem(2, true, false);
+        addItem(3, false, true);
+        // in the workspace and in the workflow
+        addItem(4, false, false);
+        addItem(5, false, false);
+        addItem(6, true, false);
+    }
+
+    /**
+     * Test that a parallel reindex indexes archived and withdrawn items, and
+     * removes the items which are no longer archived from the index, exactly
+     * as the serial reindex does.
+     */
+    @Test
+    public void testSameAsSerial() throws Exception
+    {
+        // items 1 to 5 were indexed while they were all archived
+        RecordingService serial = new RecordingService(1, 2, 3, 4, 5);
+        for (Item item : items)
+        {
+            serial.indexContent(context, item, true);
+        }
+
+        RecordingService parallel = new RecordingService(1, 2, 3, 4, 5);
+        ParallelItemIndexer indexer = new ParallelItemIndexer(parallel, true, 2, 10);
+        for (Item item : items)
+        {
+            indexer.indexItem(context, item);
+        }
+
+        assertThat("testSameAsSerial 0", serial.index.toString(), equalTo("[123456789/1, 123456789/2, 123456789/3, 123456789/6]"));
+        assertThat("testSameAsSerial 1", parallel.index, equalTo(serial.index));
+        assertThat("testSameAsSerial 2", indexer.getIndexed(), equalTo(4L));
+        assertThat("testSameAsSerial 3", indexer.getRemoved(), equalTo(2L));
+        assertThat("testSameAsSerial 4", indexer.getFailed(), equalTo(0L));
+    }
+
+    /**
+     * Test that without force only items which are not up to date in the
+     * index are built again, while items no longer archived are still
+     * removed.
+     */
+    @Test
+    public void testNotForced() throws Exception
+    {
+        RecordingService parallel = new RecordingService(1, 4);
+        ParallelItemIndexer indexer = new ParallelItemIndexer(parallel, false, 2, 10);
+        for (Item item : items)
+        {
+            indexer.indexItem(context, item);
+        }
+
+        assertThat("testNotForced 0", parallel.index.toString(), equalTo("[123456789/1, 123456789/2, 123456789/3, 123456789/6]"));
+        assertThat("testNotForced 1", parallel.built.toString(), equalTo("[123456789/2, 123456789/3, 123456789/6]"));
+        assertThat("testNotForced 2", indexer.getRemoved(), equalTo(2L));
+        assertThat("testNotForced 3", indexer.getFailed(), equalTo(0L));
+    }
+
+    /**
+     * Test that a run with several workers over slices of item IDs with gaps
+     * sends each archived item to Solr exactly once, through the batches,
+     * and removes every other item.
+     */
+    @Test
+    public void testRun() throws Exception
+    {
+        items.clear();
+        List<String> archived = new ArrayList<String>();
+        for (int id = 1; id <= 60; id++)
+        {
+            if (id % 7 != 0)
+            {
+                addItem(id, id % 5 != 0, false);
+                if (id % 5 != 0)
+                {
+                    archived.add("123456789/" + id);
+                }
+            }
+        }
+
+        RecordingSender sender = new RecordingSender(null);
+        DocumentService service = new DocumentService();
+        ParallelItemIndexer indexer = new MemoryIndexer(service, 3, 2, sender);
+
+        assertThat("testRun 0", indexer.run(context), equalTo(52L));
+        List<String> sent = sender.getSent();
+        Collections.sort(archived);
+        Collections.sort(sent);
+        assertThat("testRun 1", sent, equalTo(archived));
+        assertThat("testRun 2", sender.maxBatch <= 2, equalTo(true));
+        assertThat("testRun 3", indexer.getIndexed(), equalTo(41L));
+        assertThat("testRun 4", indexer.getRemoved(), equalTo(11L));
+        assertThat("testRun 5", service.index.size(), equalTo(0));
+        assertThat("testRun 6", indexer.getFailed(), equalTo(0L));
+    }
+
+    /**
+     * Test that a worker which fails stops the run, and that the failure
+     * reaches the caller.
+     */
+    @Test
+    public void testRunWorkerFailure() throws Exception
+    {
+        items.clear();
+        for (int id = 1; id <= 60; id++)
+        {
+            addItem(id, true, false);
+        }
+
+        RecordingSender sender = new RecordingSender("123456789/30");
+        ParallelItemIndexer indexer = new MemoryIndexer(new DocumentService(), 3, 2, sender);
+        try
+        {
+            indexer.run(context);
+            fail("testRunWorkerFailure 0");
+        }
+        catch (SearchServiceException e)
+        {
+            assertThat("testRunWorkerFailure 1", e.getCause() instanceof SolrServerException, equalTo(true));
+        }
+        assertThat("testRunWorkerFailure 2", sender.getSent().contains("123456789/30"), equalTo(false));
+        assertThat("testRunWorkerFailure 3", sender.getSent().size() < 60, equalTo(true));
+    }
+
+    private void addItem(int id, boolean archived, boolean withdrawn) throws Exception
+    {
+        TableRow row = new TableRow("item",
+                Arrays.asList("item_id", "in_archive", "withdrawn", "last_modified"));
+        row.setColumn("item_id", id);
+        row.setColumn("in_archive", archived);
+        row.setColumn("withdrawn", withdrawn);
+        row.setColumn("last_modified", new Date());
+        Item item = Deencapsulation.newInstance(Item.class,
+                new Class<?>[] { Context.class, TableRow.class }, context, row);
+        items.add(item);
+        itemsByID.put(id, item);
+    }
+
+    /**
+     * A Context without a database connection.
+     */
+    public static class MockContext extends MockUp<Context>
+    {
+        @Mock
+        void init(Invocation invocation)
+        {
+            Context context = invocation.getInvokedInstance();
+            Deencapsulation.setField(context, "objectCache", Deencapsulation.newInstance(ContextCache.class));
+            Deencapsulation.setField(context, "authorizationCache", new AuthorizationCache());
+            Deencapsulation.setField(context, "specialGroups", new ArrayList<Integer>());
+            Deencapsulation.setField(context, "authStateChangeHistory", new Stack<Boolean>());
+            Deencapsulation.setField(context, "authStateClassCallHistory", new Stack<String>());
+        }
+
+        @Mock
+        public void cache(Object o, int id)
+        {
+        }
+
+        @Mock
+        public boolean isValid()
+        {
+            return true;
+        }
+
+        @Mock
+        public void abort()
+        {
+        }
+    }
+
+    /**
+     * Items are found among those added by the test.
+     */
+    public static class MockItem extends MockUp<Item>
+    {
+        private final Map<Integer, Item> items;
+
+        MockItem(Map<Integer, Item> items)
+        {
+            this.items = items;
+        }
+
+        @Mock
+        public Item find(Context context, int id)
+        {
+            return items.get(id);
+        }
+    }
+
+    /**
+     * Every item has the handle prefix/item_id.
+     */
+    public static class MockHandleManager extends MockUp<HandleManager>
+    {
+        @Mock
+        public static String findHandle(Context context, DSpaceObject dso)
+        {
+            return "123456789/" + dso.getID();
+        }
+    }
+
+    /**
+     * Boolean columns are stored the H2 and PostgreSQL way.
+     */
+    public static class MockDatabaseManager extends MockUp<DatabaseManager>
+    {
+        @Mock
+        public static boolean isOracle()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Finds the items added by the test rather than querying the database,
+     * and sends documents through the given sender.
+     */
+    private class MemoryIndexer extends ParallelItemIndexer
+    {
+        private final ConcurrentUpdateSolrServer sender;
+
+        MemoryIndexer(SolrServiceImpl service, int threads, int batchSize, ConcurrentUpdateSolrServer sender)
+        {
+            super(service, true, threads, batchSize);
+            this.sender = sender;
+        }
+
+        @Override
+        int[] findItemRange(Context context)
+        {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (Item item : items)
+            {
+                min = Math.min(min, item.getID());
+                max = Math.max(max, item.getID());
+            }
+            return items.isEmpty() ? null : new int[] { min, max };
+        }
+
+        @Override
+        ItemIterator findItems(Context context, int from, int to)
+        {
+            List<Integer> ids = new ArrayList<Integer>();
+            for (Item item : items)
+            {
+                if (item.getID() >= from && item.getID() < to)
+                {
+                    ids.add(item.getID());
+                }
+            }
+            return new ItemIterator(context, ids);
+        }
+
+        @Override
+        ConcurrentUpdateSolrServer createSender()
+        {
+            return sender;
+        }
+    }
+
+    /**
+     * Keeps the handles of the documents sent instead of talking to Solr,
+     * failing the request which holds the given handle.
+     */
+    private static class RecordingSender extends ConcurrentUpdateSolrServer
+    {
+        private final String failOn;
+        private final List<String> sent = new ArrayList<String>();
+        int maxBatch;
+
+        RecordingSender(String failOn)
+        {
+            super("http://localhost:8080/solr/search", 10, 1);
+            this.failOn = failOn;
+        }
+
+        @Override
+        public synchronized NamedList<Object> request(SolrRequest request) throws SolrServerException, IOException
+        {
+            List<SolrInputDocument> docs = ((UpdateRequest) request).getDocuments();
+            List<String> handles = new ArrayList<String>();
+            for (SolrInputDocument doc : docs)
+            {
+                handles.add((String) doc.getFieldValue("handle"));
+            }
+            if (handles.contains(failOn))
+            {
+                throw new SolrServerException("Rejected " + failOn);
+            }
+            sent.addAll(handles);
+            maxBatch = Math.max(maxBatch, handles.size());
+            return new NamedList<Object>();
+        }
+
+        synchronized List<String> getSent()
+        {
+            return new ArrayList<String>(sent);
+        }
+    }
+
+    /**
+     * Writes a document holding the handle of each item built.
+     */
+    private static class DocumentService extends RecordingService
+    {
+        @Override
+        protected void buildDocument(Context context, Item item) throws SQLException, IOException
+        {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("handle", item.getHandle());
+            writeDocument(doc, null);
+        }
+    }
+
+    /**
+     * Keeps the handles of the indexed items instead of talking to Solr.
+     * Items whose handle is already indexed are up to date.
+     */
+    private static class RecordingService extends SolrServiceImpl
+    {
+        final Set<String> index = new TreeSet<String>();
+        final Set<String> built = new TreeSet<String>();
+
+        RecordingService(int... indexed)
+        {
+            for (int id : indexed)
+            {
+                index.add("123456789/" + id);
+            }
+        }
+
+        @Override
+        protected boolean requiresIndexing(String handle, Date lastModified)
+        {
+            return !index.contains(handle);
+        }
+
+        @Override
+        protected synchronized void buildDocument(Context context, Item item) throws SQLException, IOException
+        {
+            index.add(item.getHandle());
+            built.add(item.getHandle());
+        }
+
+        @Override
+        public synchronized void unIndexContent(Context context, DSpaceObject dso, boolean commit)
+        {
+            index.remove(dso.getHandle());
+        }
+
+        @Override
+        public synchronized void unIndexContent(Context context, String handle, boolean commit)
+        {
+            index.remove(handle);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.eperson;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.dspace.AbstractUnitTest;
+import org.dspace.authorize.AuthorizeException;
+import org.dspace.storage.rdbms.DatabaseManager;
+import org.dspace.storage.rdbms.TableRow;
+import org.dspace.storage.rdbms.TableRowIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ * Unit tests for the incremental maintenance of group2groupcache.
+ */
+public class GroupCacheTest extends AbstractUnitTest
+{
+    /**
+     * Test that subgroups of subgroups are members of the top group.
+     */
+    @Test
+    public void testAddSubgroups() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Group top = Group.create(context);
+        Group middle = Group.create(context);
+        Group bottom = Group.create(context);
+
+        middle.addMember(bottom);
+        middle.update();
+        top.addMember(middle);
+        top.update();
+        context.restoreAuthSystemState();
+
+        Set<String> cache = readCache();
+        assertThat("testAddSubgroups 0", cache.contains(top.getID() + ">" + middle.getID()), equalTo(true));
+        assertThat("testAddSubgroups 1", cache.contains(top.getID() + ">" + bottom.getID()), equalTo(true));
+        assertThat("testAddSubgroups 2", cache.contains(middle.getID() + ">" + bottom.getID()), equalTo(true));
+
+        GroupCache.rebuild(context);
+        assertThat("testAddSubgroups 3", readCache(), equalTo(cache));
+    }
+
+    /**
+     * Test that removing a subgroup keeps pairs which are still connected
+     * through another path.
+     */
+    @Test
+    public void testRemoveSubgroup() throws SQLException, AuthorizeException
+    {
+        context.turnOffAuthorisationSystem();
+        Group top = Group.create(context);
+        Group middle = Group.create(context);
+        Group bottom = Group.create(context);
+
+        middle.addMember(bottom);
+        middle.update();
+        top.addMember(middle);
+        top.addMember(bottom);
+        top.update();
+
+        top.removeMember(middle);
+        top.update();
+        context.restoreAuthSystemState();
+
+        Set<String> cache = readCache();
+        assertThat("testRemoveSubgroup 0", cache.contains(top.getID() + ">" + middle.getID()), equalTo(false));
+        assertThat("testRemoveSubgroup 1", cache.contains(top.getID() + ">" + bottom.getID()), equalTo(true));
+        assertThat("testRemoveSubgroup 2", cache.contains(middle.getID() + ">" + bottom.getID()), equalTo(true));
+
+        GroupCache.rebuild(context);
+        assertThat("testRemoveSubgroup 3", readCache(), equalTo(cache));
+    }
+
+    private Set<String> readCache() throws SQLException
+    {
+        Set<String> pairs = new HashSet<String>();
+        TableRowIterator tri = DatabaseManager.query(context, "SELECT parent_id, child_id FROM group2groupcache");
+        try
+        {
+            while (tri.hasNext())
+            {
+                TableRow row = tri.next(context);
+                pairs.add(row.getIntColumn("parent_id") + ">" + row.getIntColumn("child_id"));
+            }
+        }
+        finally
+        {
+            tri.close();
+        }
+        return pairs;
+    }
+}
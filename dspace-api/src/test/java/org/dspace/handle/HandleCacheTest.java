@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.handle;
+
+import org.dspace.core.Constants;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HandleCache}.
+ */
+public class HandleCacheTest
+{
+    /**
+     * Test lookups in both directions, and the hit counts.
+     */
+    @Test
+    public void testLookup()
+    {
+        HandleCache cache = new HandleCache(100, 60000, 60000);
+        assertThat("testLookup 0", cache.getByHandle("123456789/1"), nullValue());
+
+        cache.putHandle("123456789/1", true, Constants.ITEM, 7);
+        cache.putObject(Constants.ITEM, 7, "123456789/1");
+        HandleCache.Entry entry = cache.getByHandle("123456789/1");
+        assertThat("testLookup 1", entry.exists, equalTo(true));
+        assertThat("testLookup 2", entry.type, equalTo(Constants.ITEM));
+        assertThat("testLookup 3", entry.id, equalTo(7));
+        assertThat("testLookup 4", cache.getByObject(Constants.ITEM, 7).handle, equalTo("123456789/1"));
+        assertThat("testLookup 5", cache.getByObject(Constants.COLLECTION, 7), nullValue());
+
+        assertThat("testLookup 6", cache.getHits(), equalTo(2L));
+        assertThat("testLookup 7", cache.getMisses(), equalTo(2L));
+        assertThat("testLookup 8", cache.getHitRatio(), equalTo(0.5));
+    }
+
+    /**
+     * Test that lookups which found nothing are cached, for their own time.
+     */
+    @Test
+    public void testNegative() throws InterruptedException
+    {
+        HandleCache cache = new HandleCache(100, 60000, 50);
+        cache.putHandle("123456789/2", false, HandleCache.UNBOUND, HandleCache.UNBOUND);
+        cache.putHandle("123456789/3", true, HandleCache.UNBOUND, HandleCache.UNBOUND);
+        cache.putObject(Constants.ITEM, 8, null);
+        cache.putHandle("123456789/4", true, Constants.ITEM, 9);
+
+        assertThat("testNegative 0", cache.getByHandle("123456789/2").exists, equalTo(false));
+        assertThat("testNegative 1", cache.getByHandle("123456789/3").type, equalTo(HandleCache.UNBOUND));
+        assertThat("testNegative 2", cache.getByObject(Constants.ITEM, 8).handle, nullValue());
+
+        Thread.sleep(100);
+        assertThat("testNegative 3", cache.getByHandle("123456789/2"), nullValue());
+        assertThat("testNegative 4", cache.getByHandle("123456789/3"), nullValue());
+        assertThat("testNegative 5", cache.getByObject(Constants.ITEM, 8), nullValue());
+        assertThat("testNegative 6", cache.getByHandle("123456789/4"), notNullValue());
+    }
+
+    /**
+     * Test dropping lookups.
+     */
+    @Test
+    public void testInvalidate()
+    {
+        HandleCache cache = new HandleCache(100, 60000, 60000);
+        cache.putHandle("123456789/5", false, HandleCache.UNBOUND, HandleCache.UNBOUND);
+        cache.putObject(Constants.COMMUNITY, 3, null);
+
+        cache.invalidateHandle("123456789/5");
+        cache.invalidateObject(Constants.COMMUNITY, 3);
+        cache.invalidateHandle(null);
+        assertThat("testInvalidate 0", cache.getByHandle("123456789/5"), nullValue());
+        assertThat("testInvalidate 1", cache.getByObject(Constants.COMMUNITY, 3), nullValue());
+        assertThat("testInvalidate 2", cache.size(), equalTo(0));
+    }
+
+    /**
+     * Test that dropping the lookup of an object also drops the lookup of
+     * the handle it was cached with, as when a new version of an item takes
+     * over the handle of the old one.
+     */
+    @Test
+    public void testInvalidateRebound()
+    {
+        HandleCache cache = new HandleCache(100, 60000, 60000);
+        cache.putHandle("123456789/100", true, Constants.ITEM, 10);
+        cache.putObject(Constants.ITEM, 10, "123456789/100");
+        cache.putObject(Constants.ITEM, 11, "123456789/100.2");
+
+        // the handle now points to item 11, and item 10 has 123456789/100.1
+        cache.invalidateObject(Constants.ITEM, 10);
+        assertThat("testInvalidateRebound 0", cache.getByObject(Constants.ITEM, 10), nullValue());
+        assertThat("testInvalidateRebound 1", cache.getByHandle("123456789/100"), nullValue());
+        assertThat("testInvalidateRebound 2", cache.getByObject(Constants.ITEM, 11).handle,
+                equalTo("123456789/100.2"));
+
+        cache.invalidateObject(Constants.ITEM, 11);
+        assertThat("testInvalidateRebound 3", cache.size(), equalTo(0));
+    }
+
+    /**
+     * Test that the cache stays within its size, and that a size of 0
+     * caches nothing.
+     */
+    @Test
+    public void testBounded()
+    {
+        HandleCache cache = new HandleCache(100, 60000, 60000);
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.putHandle("123456789/" + i, true, Constants.ITEM, i);
+        }
+        assertThat("testBounded 0", cache.size() <= 100, equalTo(true));
+        assertThat("testBounded 1", cache.getByHandle("123456789/999"), notNullValue());
+
+        HandleCache none = new HandleCache(0, 60000, 60000);
+        none.putHandle("123456789/1", true, Constants.ITEM, 1);
+        assertThat("testBounded 2", none.getByHandle("123456789/1"), nullValue());
+        assertThat("testBounded 3", none.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.request.UpdateRequest;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the batching and overflow policies of
+ * {@link SolrLoggerQueue}, against an in-memory Solr server.
+ */
+public class SolrLoggerQueueTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that all events are sent, prepared, in batches no larger than
+     * the batch size.
+     */
+    @Test
+    public void testBatches()
+    {
+        RecordingServer server = new RecordingServer();
+        final AtomicInteger prepared = new AtomicInteger();
+        SolrLoggerQueue queue = new SolrLoggerQueue(server, 1000, 10, 50, 2,
+                SolrLoggerQueue.OverflowPolicy.DROP, 0, null)
+        {
+            @Override
+            protected void prepare(SolrInputDocument doc)
+            {
+                prepared.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 95; i++)
+        {
+            queue.offer(event(i));
+        }
+        queue.close(5000);
+
+        assertThat("testBatches 0", server.documents.size(), equalTo(95));
+        assertThat("testBatches 1", prepared.get(), equalTo(95));
+        assertThat("testBatches 2", queue.getSent(), equalTo(95L));
+        assertThat("testBatches 3", queue.getDropped(), equalTo(0L));
+        for (Integer size : server.batchSizes)
+        {
+            assertThat("testBatches 4", size <= 10, equalTo(true));
+        }
+        assertThat("testBatches 5", queue.getBatches(), equalTo((long) server.batchSizes.size()));
+    }
+
+    /**
+     * Test that closeAll sends the events of every open queue, and that a
+     * queue is only closed once.
+     */
+    @Test
+    public void testCloseAll()
+    {
+        RecordingServer server = new RecordingServer();
+        SolrLoggerQueue queue = new SolrLoggerQueue(server, 100, 10, 1000, 1,
+                SolrLoggerQueue.OverflowPolicy.DROP, 0, null);
+        for (int i = 0; i < 5; i++)
+        {
+            queue.offer(event(i));
+        }
+        SolrLoggerQueue.closeAll(5000);
+        assertThat("testCloseAll 0", server.documents.size(), equalTo(5));
+
+        queue.close(5000);
+        SolrLoggerQueue.closeAll(5000);
+        assertThat("testCloseAll 1", queue.getSent(), equalTo(5L));
+        assertThat("testCloseAll 2", queue.getDropped(), equalTo(0L));
+    }
+
+    /**
+     * Test that events are dropped and counted when the queue is full.
+     */
+    @Test
+    public void testDrop() throws InterruptedException
+    {
+        RecordingServer server = new RecordingServer();
+        server.gate = new CountDownLatch(1);
+        SolrLoggerQueue queue = new SolrLoggerQueue(server, 5, 1, 10, 1,
+                SolrLoggerQueue.OverflowPolicy.DROP, 0, null);
+        for (int i = 0; i < 20; i++)
+        {
+            queue.offer(event(i));
+        }
+        assertThat("testDrop 0", queue.getDropped() > 0, equalTo(true));
+        assertThat("testDrop 1", queue.getDepth() <= 5, equalTo(true));
+
+        server.gate.countDown();
+        queue.close(5000);
+        assertThat("testDrop 2", queue.getEnqueued(), equalTo(20L));
+        assertThat("testDrop 3", queue.getSent() + queue.getDropped(), equalTo(20L));
+    }
+
+    /**
+     * Test that events Solr does not accept are spilled, and sent by the
+     * next queue using the same directory.
+     */
+    @Test
+    public void testSpill() throws IOException, InterruptedException
+    {
+        File spillDir = folder.newFolder("spill");
+
+        RecordingServer down = new RecordingServer();
+        down.failing = true;
+        SolrLoggerQueue first = new SolrLoggerQueue(down, 100, 10, 10, 1,
+                SolrLoggerQueue.OverflowPolicy.SPILL, 0, spillDir);
+        for (int i = 0; i < 25; i++)
+        {
+            first.offer(event(i));
+        }
+        first.close(5000);
+        assertThat("testSpill 0", first.getSent(), equalTo(0L));
+        assertThat("testSpill 1", first.getSpilled(), equalTo(25L));
+        assertThat("testSpill 2", first.getDropped(), equalTo(0L));
+
+        RecordingServer up = new RecordingServer();
+        SolrLoggerQueue second = new SolrLoggerQueue(up, 100, 10, 10, 1,
+                SolrLoggerQueue.OverflowPolicy.SPILL, 0, spillDir);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (second.getSent() < 25 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        second.close(5000);
+
+        assertThat("testSpill 3", second.getSent(), equalTo(25L));
+        List<Object> ids = new ArrayList<Object>();
+        for (SolrInputDocument doc : up.documents)
+        {
+            ids.add(doc.getFieldValue("id"));
+        }
+        assertThat("testSpill 4", ids.contains(0), equalTo(true));
+        assertThat("testSpill 5", ids.contains(24), equalTo(true));
+        assertThat("testSpill 6", spillDir.list().length, equalTo(0));
+    }
+
+    /**
+     * Test that a queue leaves alone the spill files of another queue in
+     * the same directory while that queue is open, and sends each of them
+     * once after it is closed.
+     */
+    @Test
+    public void testSharedSpillDir() throws IOException, InterruptedException
+    {
+        File spillDir = folder.newFolder("spill");
+
+        RecordingServer down = new RecordingServer();
+        down.failing = true;
+        SolrLoggerQueue first = new SolrLoggerQueue(down, 100, 10, 10, 1,
+                SolrLoggerQueue.OverflowPolicy.SPILL, 0, spillDir);
+        for (int i = 0; i < 25; i++)
+        {
+            first.offer(event(i));
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (first.getSpilled() < 25 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertThat("testSharedSpillDir 0", first.getSpilled(), equalTo(25L));
+
+        RecordingServer up = new RecordingServer();
+        SolrLoggerQueue second = new SolrLoggerQueue(up, 100, 10, 10, 1,
+                SolrLoggerQueue.OverflowPolicy.SPILL, 0, spillDir);
+        // plenty of idle polls for the second queue to look at the first's files
+        Thread.sleep(500);
+        assertThat("testSharedSpillDir 1", second.getSent(), equalTo(0L));
+        assertThat("testSharedSpillDir 2", spillDir.list().length, equalTo(2));
+
+        first.close(5000);
+        deadline = System.currentTimeMillis() + 5000;
+        while (second.getSent() < 25 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        second.close(5000);
+
+        assertThat("testSharedSpillDir 3", second.getSent(), equalTo(25L));
+        List<Integer> ids = new ArrayList<Integer>();
+        for (SolrInputDocument doc : up.documents)
+        {
+            ids.add((Integer) doc.getFieldValue("id"));
+        }
+        Collections.sort(ids);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 25; i++)
+        {
+            expected.add(i);
+        }
+        assertThat("testSharedSpillDir 4", ids, equalTo(expected));
+        assertThat("testSharedSpillDir 5", spillDir.list().length, equalTo(0));
+    }
+
+    private static SolrInputDocument event(int id)
+    {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField("id", id);
+        doc.addField("statistics_type", "view");
+        return doc;
+    }
+
+    /**
+     * Records the documents of every update request.
+     */
+    private static class RecordingServer extends SolrServer
+    {
+        final List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>();
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        volatile boolean failing;
+        volatile CountDownLatch gate;
+
+        @Override
+        public synchronized NamedList<Object> request(SolrRequest request)
+                throws SolrServerException, IOException
+        {
+            if (gate != null)
+            {
+                try
+                {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing)
+            {
+                throw new SolrServerException("Solr is down");
+            }
+            List<SolrInputDocument> docs = ((UpdateRequest) request).getDocuments();
+            documents.addAll(docs);
+            batchSizes.add(docs.size());
+            return new NamedList<Object>();
+        }
+
+        @Override
+        public void shutdown()
+        {
+        }
+    }
+}
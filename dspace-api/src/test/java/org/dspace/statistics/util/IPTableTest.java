@@ -0,0 +1,91 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for the address ranges in {@link IPTable}.
+ */
+public class IPTableTest
+{
+    @Test
+    public void testSingleAndThreePlaces() throws IPTable.IPFormatException
+    {
+        IPTable table = new IPTable();
+        table.add("10.0.0.1");
+        table.add("192.168.2");
+
+        assertTrue(table.contains("10.0.0.1"));
+        assertFalse(table.contains("10.0.0.2"));
+        assertTrue(table.contains("192.168.2.0"));
+        assertTrue(table.contains("192.168.2.255"));
+        assertFalse(table.contains("192.168.3.0"));
+    }
+
+    @Test
+    public void testRangesAndCIDR() throws IPTable.IPFormatException
+    {
+        IPTable table = new IPTable();
+        table.add("66.249.64.0/19");
+        table.add("10.0.0.250 - 10.0.1.5");
+
+        assertTrue(table.contains("66.249.64.0"));
+        assertTrue(table.contains("66.249.95.255"));
+        assertFalse(table.contains("66.249.96.0"));
+        assertTrue(table.contains("10.0.0.255"));
+        assertTrue(table.contains("10.0.1.5"));
+        assertFalse(table.contains("10.0.1.6"));
+    }
+
+    @Test
+    public void testIPv6() throws IPTable.IPFormatException
+    {
+        IPTable table = new IPTable();
+        table.add("2001:db8::/32");
+        table.add("2a00:1450::1");
+
+        assertTrue(table.contains("2001:db8:ffff::1"));
+        assertFalse(table.contains("2001:db9::1"));
+        assertTrue(table.contains("2a00:1450:0:0:0:0:0:1"));
+        assertFalse(table.contains("2a00:1450::2"));
+        assertFalse(table.contains("10.0.0.1"));
+    }
+
+    @Test
+    public void testContainsInPlace() throws IPTable.IPFormatException
+    {
+        IPTable table = new IPTable();
+        table.add("10.0.0.1");
+
+        String header = "192.168.0.1, 10.0.0.1";
+        assertFalse(table.contains(header, 0, 11));
+        assertTrue(table.contains(header, 12, header.length()));
+    }
+
+    @Test
+    public void testToSet() throws IPTable.IPFormatException
+    {
+        IPTable table = new IPTable();
+        table.add("192.168.2");
+        table.add("10.0.0.1");
+
+        assertTrue(table.toSet().contains("192.168.2"));
+        assertTrue(table.toSet().contains("10.0.0.1"));
+        assertFalse(table.toSet().contains("192.168.2.1"));
+    }
+
+    @Test(expected = IPTable.IPFormatException.class)
+    public void testInvalid() throws IPTable.IPFormatException
+    {
+        new IPTable().add("10.0");
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link MultiPatternMatcher}, which must agree with
+ * matching each pattern on its own.
+ */
+public class MultiPatternMatcherTest
+{
+    private final MultiPatternMatcher matcher = new MultiPatternMatcher(Arrays.asList(
+            "Googlebot", "Brutus\\/AET", "^msnbot", "China\\sLocal", "^xbc", "^b", "(invalid"));
+
+    @Test
+    public void testLiterals()
+    {
+        assertTrue(matcher.matches("Mozilla/5.0 (compatible; Googlebot/2.1)"));
+        assertTrue(matcher.matches("Brutus/AET"));
+        assertFalse(matcher.matches("Firefox"));
+    }
+
+    @Test
+    public void testAnchored()
+    {
+        assertTrue(matcher.matches("msnbot is watching you"));
+        assertFalse(matcher.matches("not msnbot"));
+        assertTrue(matcher.matches("xbc"));
+        assertTrue(matcher.matches("bot"));
+        assertFalse(matcher.matches("xbq"));
+    }
+
+    @Test
+    public void testRegex()
+    {
+        assertTrue(matcher.matches("China Local Browse 2.6"));
+        assertFalse(matcher.matches("ChinaLocal"));
+    }
+
+    @Test
+    public void testInvalidPatternSkipped()
+    {
+        assertEquals(6, matcher.size());
+    }
+
+    @Test
+    public void testToLiteral()
+    {
+        assertEquals("Brutus/AET", MultiPatternMatcher.toLiteral("Brutus\\/AET"));
+        assertNull(MultiPatternMatcher.toLiteral("China\\sLocal"));
+        assertNull(MultiPatternMatcher.toLiteral("a.b"));
+    }
+
+    @Test
+    public void testBackReference()
+    {
+        // joined after (x)y, the \1 of (a)\1 would refer to the x group
+        MultiPatternMatcher references = new MultiPatternMatcher(Arrays.asList(
+                "(x)y", "(a)\\1", "(?<c>b)\\k<c>", "z(?<=z)"));
+        assertEquals(4, references.size());
+        assertTrue(references.matches("xy"));
+        assertTrue(references.matches("aa"));
+        assertFalse(references.matches("ax"));
+        assertTrue(references.matches("bb"));
+        assertFalse(references.matches("bx"));
+        assertTrue(references.matches("z"));
+    }
+
+    @Test
+    public void testHasGroupReferences()
+    {
+        assertTrue(MultiPatternMatcher.hasGroupReferences("(a)\\1"));
+        assertTrue(MultiPatternMatcher.hasGroupReferences("(?<name>a)"));
+        assertTrue(MultiPatternMatcher.hasGroupReferences("(a)\\k<name>"));
+        assertFalse(MultiPatternMatcher.hasGroupReferences("a\\\\1"));
+        assertFalse(MultiPatternMatcher.hasGroupReferences("\\Q\\1\\E"));
+        assertFalse(MultiPatternMatcher.hasGroupReferences("(?<=a)b(?<!c)"));
+        assertFalse(MultiPatternMatcher.hasGroupReferences("\\0101"));
+    }
+}
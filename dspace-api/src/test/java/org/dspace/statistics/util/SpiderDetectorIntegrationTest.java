@@ -0,0 +1,51 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.statistics.util;
+
+import org.databene.contiperf.PerfTest;
+import org.databene.contiperf.Required;
+import org.dspace.AbstractIntegrationTest;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of the spider check made for every usage event: agent, proxy
+ * list, client address and host name of an ordinary browser, which must go
+ * through every test before being let through.
+ */
+public class SpiderDetectorIntegrationTest extends AbstractIntegrationTest
+{
+    private static final String AGENT
+            = "Mozilla/5.0 (X11; Linux x86_64; rv:52.0) Gecko/20100101 Firefox/52.0";
+
+    @BeforeClass
+    public static void warmUp()
+    {
+        SpiderDetector.reload();
+    }
+
+    @Test
+    @PerfTest(invocations = 200000, threads = 4)
+    @Required(percentile99 = 5)
+    public void testUsageEvent()
+    {
+        assertFalse(SpiderDetector.isSpider("192.168.0.1", "10.1.2.3, 172.16.0.4",
+                "browser.example.com", AGENT));
+    }
+
+    @Test
+    @PerfTest(invocations = 200000, threads = 4)
+    @Required(percentile99 = 5)
+    public void testSpiderEvent()
+    {
+        assertTrue(SpiderDetector.isSpider("192.168.0.1", null, null, "msnbot/2.0b"));
+    }
+}
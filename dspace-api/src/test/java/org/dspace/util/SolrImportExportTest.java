@@ -0,0 +1,148 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the checkpoint of {@link SolrImportExport} imports, with
+ * the files imported by threads which record them instead of Solr.
+ */
+public class SolrImportExportTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File[] files;
+    private File checkpoint;
+
+    @Before
+    public void init() throws IOException
+    {
+        files = new File[20];
+        for (int i = 0; i < files.length; i++)
+        {
+            files[i] = folder.newFile(String.format("statistics_export_2016-%02d_0.csv.gz", i));
+        }
+        checkpoint = new File(folder.getRoot(), "statistics_import_checkpoint.txt");
+    }
+
+    /**
+     * Test that every file is imported once by several threads, and recorded
+     * in the checkpoint.
+     */
+    @Test
+    public void testImportFiles() throws Exception
+    {
+        RecordingImporter importer = new RecordingImporter(null);
+        SolrImportExport.importFiles("statistics", files,
+                SolrImportExport.readCheckpoint("statistics", checkpoint, false), checkpoint, 4, importer);
+
+        assertThat("testImportFiles 0", importer.imported.size(), equalTo(files.length));
+        assertThat("testImportFiles 1", new HashSet<String>(importer.imported), equalTo(names(files)));
+        assertThat("testImportFiles 2", new HashSet<String>(FileUtils.readLines(checkpoint, "UTF-8")), equalTo(names(files)));
+    }
+
+    /**
+     * Test that an import which failed on one file imports that file, and
+     * those never reached, when it is run again, and none of the others.
+     */
+    @Test
+    public void testResume() throws Exception
+    {
+        RecordingImporter failing = new RecordingImporter(files[7].getName());
+        try
+        {
+            SolrImportExport.importFiles("statistics", files,
+                    SolrImportExport.readCheckpoint("statistics", checkpoint, false), checkpoint, 1, failing);
+            fail("testResume 0");
+        }
+        catch (SolrImportExportException e)
+        {
+            // expected
+        }
+        Set<String> done = SolrImportExport.readCheckpoint("statistics", checkpoint, false);
+        assertThat("testResume 1", done.containsAll(names(Arrays.copyOf(files, 7))), equalTo(true));
+        assertThat("testResume 2", done.contains(files[7].getName()), equalTo(false));
+
+        RecordingImporter resumed = new RecordingImporter(null);
+        SolrImportExport.importFiles("statistics", files, done, checkpoint, 4, resumed);
+        assertThat("testResume 3", resumed.imported.contains(files[7].getName()), equalTo(true));
+
+        List<String> all = new ArrayList<String>(failing.imported);
+        all.addAll(resumed.imported);
+        assertThat("testResume 4", all.size(), equalTo(files.length));
+        assertThat("testResume 5", new HashSet<String>(all), equalTo(names(files)));
+    }
+
+    /**
+     * Test that clearing the index discards the checkpoint, so that every
+     * file is imported again.
+     */
+    @Test
+    public void testClear() throws Exception
+    {
+        FileUtils.writeStringToFile(checkpoint, files[0].getName() + "\n" + files[1].getName() + "\n", "UTF-8");
+
+        assertThat("testClear 0", SolrImportExport.readCheckpoint("statistics", checkpoint, false).size(), equalTo(2));
+        assertThat("testClear 1", SolrImportExport.readCheckpoint("statistics", checkpoint, true).isEmpty(), equalTo(true));
+        assertThat("testClear 2", checkpoint.exists(), equalTo(false));
+    }
+
+    private static Set<String> names(File[] files)
+    {
+        Set<String> names = new TreeSet<String>();
+        for (File file : files)
+        {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Records the names of the files it imports, and fails on one of them.
+     */
+    private static class RecordingImporter implements SolrImportExport.FileImporter
+    {
+        final List<String> imported = Collections.synchronizedList(new ArrayList<String>());
+        private final String failOn;
+
+        RecordingImporter(String failOn)
+        {
+            this.failOn = failOn;
+        }
+
+        @Override
+        public void importFile(File file) throws IOException, SolrServerException
+        {
+            if (file.getName().equals(failOn))
+            {
+                throw new SolrServerException("Failed to import " + file.getName());
+            }
+            imported.add(file.getName());
+        }
+    }
+}
@@ -8,7 +8,6 @@
 package org.dspace.app.webui.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.sql.SQLException;
 
 import javax.servlet.ServletConfig;
@@ -17,6 +16,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.webui.util.JSPManager;
 import org.dspace.app.webui.util.UIUtil;
 import org.dspace.authorize.AuthorizeException;
@@ -28,15 +28,17 @@ import org.dspace.core.ConfigurationManager;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.core.LogManager;
-import org.dspace.core.Utils;
 import org.dspace.handle.HandleManager;
 import org.dspace.usage.UsageEvent;
 import org.dspace.utils.DSpace;
 
 /**
- * Servlet for retrieving bitstreams. The bits are simply piped to the user. If
- * there is an <code>If-Modified-Since</code> header, only a 304 status code
- * is returned if the containing item has not been modified since that date.
+ * Servlet for retrieving bitstreams. The bits are sent to the user by
+ * {@link BitstreamDelivery}: if the <code>If-None-Match</code> header names
+ * the bitstream's checksum, or there is an <code>If-Modified-Since</code>
+ * header and the containing item has not been modified since that date,
+ * only a 304 status code is returned. A <code>Range</code> header is
+ * answered with the requested part of the bitstream.
  * <P>
  * <code>/bitstream/handle/sequence_id/filename</code>
  * 
@@ -170,16 +172,8 @@ public class BitstreamServlet extends DSpaceServlet
         log.info(LogManager.getHeader(context, "view_bitstream",
                 "bitstream_id=" + bitstream.getID()));
         
-        //new UsageEvent().fire(request, context, AbstractUsageEvent.VIEW,
-		//		Constants.BITSTREAM, bitstream.getID());
-
-        new DSpace().getEventService().fireEvent(
-        		new UsageEvent(
-        				UsageEvent.Action.VIEW, 
-        				request, 
-        				context, 
-        				bitstream));
-        
+        BitstreamDelivery delivery = new BitstreamDelivery(context, bitstream);
+
         // Modification date
         // Only use last-modified if this is an anonymous access
         // - caching content that may be generated under authorisation
@@ -188,32 +182,27 @@ public class BitstreamServlet extends DSpaceServlet
         {
             // TODO: Currently the date of the item, since we don't have dates
             // for files
-            response.setDateHeader("Last-Modified", item.getLastModified()
-                    .getTime());
+            delivery.setLastModified(item.getLastModified().getTime());
+        }
 
-            // Check for if-modified-since header
-            long modSince = request.getDateHeader("If-Modified-Since");
+        // Answer conditional requests with 304 and ranges with 206
+        delivery.evaluate(request);
 
-            if (modSince != -1 && item.getLastModified().getTime() < modSince)
-            {
-                // Item has not been modified since requested date,
-                // hence bitstream has not; return 304
-                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                return;
-            }
+        // Count a view only once per download, not for each range
+        // fetched to resume it
+        if (delivery.includesStart())
+        {
+            new DSpace().getEventService().fireEvent(
+                    new UsageEvent(
+                            UsageEvent.Action.VIEW,
+                            request,
+                            context,
+                            bitstream));
         }
-        
-        // Pipe the bits
-        InputStream is = bitstream.retrieve();
-     
-		// Set the response MIME type
-        response.setContentType(bitstream.getFormat().getMIMEType());
 
-        // Response length
-        response.setHeader("Content-Length", String
-                .valueOf(bitstream.getSize()));
+        delivery.setHeaders(response);
 
-		if(threshold != -1 && bitstream.getSize() >= threshold)
+		if(delivery.hasBody() && threshold != -1 && bitstream.getSize() >= threshold)
 		{
 			UIUtil.setBitstreamDisposition(bitstream.getName(), request, response);
 		}
@@ -221,8 +210,13 @@ public class BitstreamServlet extends DSpaceServlet
         //DO NOT REMOVE IT - WE NEED TO FREE DB CONNECTION TO AVOID CONNECTION POOL EXHAUSTION FOR BIG FILES AND SLOW DOWNLOADS
         context.complete();
 
-        Utils.bufferedCopy(is, response.getOutputStream());
-        is.close();
-        response.getOutputStream().flush();
+        try
+        {
+            delivery.write(response.getOutputStream());
+        }
+        finally
+        {
+            delivery.close();
+        }
     }
 }
@@ -8,7 +8,7 @@
 package org.dspace.app.webui.servlet;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,7 +19,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
 import org.dspace.app.bulkedit.MetadataExport;
-import org.dspace.app.bulkedit.DSpaceCSV;
+import org.dspace.app.bulkedit.DSpaceCSVWriter;
 import org.dspace.app.webui.util.JSPManager;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.core.*;
@@ -83,18 +83,33 @@ public class MetadataExportServlet extends DSpaceServlet
 
                 if (exporter != null)
                 {
-                    // Perform the export
-                    DSpaceCSV csv = exporter.export();
+                    // Perform the export, spooling the items rather than holding them
+                    DSpaceCSVWriter writer = new DSpaceCSVWriter(false);
+                    try
+                    {
+                        exporter.export(writer);
 
-                    // Return the csv file
-                    response.setContentType("text/csv; charset=UTF-8");
-                    String filename = handle.replaceAll("/", "-") + ".csv";
-                    response.setHeader("Content-Disposition", "attachment; filename=" + filename);
-                    PrintWriter out = response.getWriter();
-                    out.write(csv.toString());
-                    out.flush();
-                    out.close();
-                    log.info(LogManager.getHeader(context, "metadataexport", "exported_file:" + filename));
+                        // Return the csv file
+                        response.setContentType("text/csv; charset=UTF-8");
+                        String filename = handle.replaceAll("/", "-") + ".csv";
+                        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+                        OutputStream out = response.getOutputStream();
+                        writer.write(out);
+                        out.close();
+                        log.info(LogManager.getHeader(context, "metadataexport", "exported_file:" + filename));
+                    }
+                    catch (IOException | SQLException | AuthorizeException e)
+                    {
+                        throw e;
+                    }
+                    catch (Exception e)
+                    {
+                        throw new ServletException(e);
+                    }
+                    finally
+                    {
+                        writer.close();
+                    }
                     return;
                 }
             }
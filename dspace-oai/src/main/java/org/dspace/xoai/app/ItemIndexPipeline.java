@@ -0,0 +1,243 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.xoai.app;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.dspace.content.Item;
+import org.dspace.core.Context;
+import org.dspace.storage.rdbms.TableRowIterator;
+import org.dspace.xoai.solr.exceptions.DSpaceSolrIndexerException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compiles items into the OAI Solr index in three stages connected by
+ * bounded queues:
+ * <ol>
+ * <li>the calling thread reads item IDs and queues them in chunks,</li>
+ * <li>worker threads, each with their own Context, load the items and
+ * compile them into Solr documents,</li>
+ * <li>a single sender thread adds each compiled chunk to Solr in one
+ * request.</li>
+ * </ol>
+ * Time spent in each stage is accumulated over all threads, so a run can
+ * report where it spends its time.
+ */
+class ItemIndexPipeline {
+    private static Logger log = LogManager.getLogger(ItemIndexPipeline.class);
+
+    /** Marks the end of a queue */
+    private static final List<Integer> NO_MORE_ITEMS = new ArrayList<Integer>(0);
+    private static final List<SolrInputDocument> NO_MORE_DOCUMENTS = new ArrayList<SolrInputDocument>(0);
+
+    private final XOAI indexer;
+    private final SolrServer server;
+    private final int threads;
+    private final int batchSize;
+
+    private final BlockingQueue<List<Integer>> work;
+    private final BlockingQueue<List<SolrInputDocument>> compiled;
+
+    private final AtomicInteger added = new AtomicInteger();
+    private final AtomicReference<Exception> sendError = new AtomicReference<Exception>();
+
+    private final StageTimings timings = new StageTimings();
+
+    ItemIndexPipeline(XOAI indexer, SolrServer server, int threads, int batchSize) {
+        this.indexer = indexer;
+        this.server = server;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+        this.work = new ArrayBlockingQueue<List<Integer>>(this.threads * 2);
+        this.compiled = new ArrayBlockingQueue<List<SolrInputDocument>>(this.threads * 2);
+    }
+
+    /**
+     * Index the items whose IDs are returned in the <code>item_id</code>
+     * column of the given iterator.
+     *
+     * @param context context to read the iterator with
+     * @param iterator item IDs to index
+     * @return the number of items read
+     * @throws DSpaceSolrIndexerException if the pipeline is interrupted or
+     *                                    Solr rejects a batch
+     */
+    int run(Context context, TableRowIterator iterator) throws DSpaceSolrIndexerException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Thread sender = new Thread(new Sender(), "oai-index-sender");
+        int read = 0;
+        try {
+            sender.start();
+            for (int i = 0; i < threads; i++) {
+                workers.execute(new Compiler());
+            }
+
+            List<Integer> chunk = new ArrayList<Integer>(batchSize);
+            long start = System.nanoTime();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next(context).getIntColumn("item_id"));
+                read++;
+                if (chunk.size() >= batchSize) {
+                    timings.dbLoad.addAndGet(System.nanoTime() - start);
+                    work.put(chunk);
+                    chunk = new ArrayList<Integer>(batchSize);
+                    start = System.nanoTime();
+                }
+            }
+            timings.dbLoad.addAndGet(System.nanoTime() - start);
+            if (!chunk.isEmpty()) {
+                work.put(chunk);
+            }
+
+            for (int i = 0; i < threads; i++) {
+                work.put(NO_MORE_ITEMS);
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            compiled.put(NO_MORE_DOCUMENTS);
+            sender.join();
+        } catch (SQLException ex) {
+            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DSpaceSolrIndexerException("Interrupted while indexing", ex);
+        } finally {
+            workers.shutdownNow();
+            iterator.close();
+        }
+
+        if (sendError.get() != null) {
+            throw new DSpaceSolrIndexerException(sendError.get().getMessage(), sendError.get());
+        }
+        System.out.println("Total: " + read + " items");
+        return read;
+    }
+
+    /**
+     * @return the accumulated time per stage
+     */
+    StageTimings getTimings() {
+        return timings;
+    }
+
+    /**
+     * Takes chunks of item IDs and compiles them into Solr documents.
+     */
+    private class Compiler implements Runnable {
+        @Override
+        public void run() {
+            Context context = null;
+            try {
+                context = new Context();
+                List<Integer> chunk;
+                while ((chunk = work.take()) != NO_MORE_ITEMS) {
+                    List<SolrInputDocument> documents = new ArrayList<SolrInputDocument>(chunk.size());
+                    for (Integer id : chunk) {
+                        try {
+                            long start = System.nanoTime();
+                            Item item = Item.find(context, id);
+                            timings.dbLoad.addAndGet(System.nanoTime() - start);
+                            if (item != null) {
+                                documents.add(indexer.index(context, item, timings));
+                            }
+                        } catch (Exception ex) {
+                            log.error("Unable to compile item " + id + ": " + ex.getMessage(), ex);
+                        }
+                    }
+                    context.clearCache();
+                    compiled.put(documents);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException ex) {
+                log.error(ex.getMessage(), ex);
+                // Keep draining so the reading thread is not blocked forever
+                drain();
+            } finally {
+                if (context != null && context.isValid()) {
+                    context.abort();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (work.take() != NO_MORE_ITEMS) {
+                    // discard
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds the compiled chunks to Solr, one request per chunk.
+     */
+    private class Sender implements Runnable {
+        @Override
+        public void run() {
+            try {
+                List<SolrInputDocument> documents;
+                while ((documents = compiled.take()) != NO_MORE_DOCUMENTS) {
+                    if (documents.isEmpty() || sendError.get() != null) {
+                        continue;
+                    }
+                    try {
+                        long start = System.nanoTime();
+                        server.add(documents);
+                        timings.solrAdd.addAndGet(System.nanoTime() - start);
+                        int total = added.addAndGet(documents.size());
+                        System.out.println(total + " items imported so far...");
+                    } catch (Exception ex) {
+                        log.error(ex.getMessage(), ex);
+                        sendError.compareAndSet(null, ex);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Time spent per stage, in nanoseconds, summed over all threads.
+     */
+    static class StageTimings {
+        final AtomicLong dbLoad = new AtomicLong();
+        final AtomicLong metadata = new AtomicLong();
+        final AtomicLong xmlWrite = new AtomicLong();
+        final AtomicLong solrAdd = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return "Time per stage (summed over threads): "
+                    + "database load " + millis(dbLoad) + " ms, "
+                    + "metadata retrieval " + millis(metadata) + " ms, "
+                    + "XML write " + millis(xmlWrite) + " ms, "
+                    + "Solr add " + millis(solrAdd) + " ms";
+        }
+
+        private static long millis(AtomicLong nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.lyncode.xoai.dataprovider.exceptions.ConfigurationException;
 import com.lyncode.xoai.dataprovider.exceptions.MetadataBindException;
 import com.lyncode.xoai.dataprovider.exceptions.WritingXmlException;
 import com.lyncode.xoai.dataprovider.xml.XmlOutputContext;
+import com.lyncode.xoai.dataprovider.xml.xoai.Metadata;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Options;
@@ -58,7 +59,6 @@ import java.util.Date;
 import java.util.List;
 
 import static com.lyncode.xoai.dataprovider.core.Granularity.Second;
-import static org.dspace.content.Item.find;
 import static org.dspace.xoai.util.ItemUtils.retrieveMetadata;
 
 /**
@@ -72,6 +72,8 @@ public class XOAI {
     private boolean optimize;
     private boolean verbose;
     private boolean clean;
+    private int threads = ConfigurationManager.getIntProperty("oai", "indexer.threads", 1);
+    private int batchSize = ConfigurationManager.getIntProperty("oai", "indexer.batch.size", 100);
 
     @Autowired
     private SolrServerResolver solrServerResolver;
@@ -117,6 +119,20 @@ public class XOAI {
         verbose = hasOption;
     }
 
+    /**
+     * @param threads number of threads compiling items into Solr documents
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @param batchSize number of documents sent to Solr in one request
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
     private void println(String line) {
         System.out.println(line);
     }
@@ -206,31 +222,12 @@ public class XOAI {
     private int index(TableRowIterator iterator)
             throws DSpaceSolrIndexerException {
         try {
-            int i = 0;
             SolrServer server = solrServerResolver.getServer();
-            while (iterator.hasNext()) {
-                try {
-                    server.add(this.index(find(context, iterator.next().getIntColumn("item_id"))));
-                    context.clearCache();
-                } catch (SQLException ex) {
-                    log.error(ex.getMessage(), ex);
-                } catch (MetadataBindException e) {
-                    log.error(e.getMessage(), e);
-                } catch (ParseException e) {
-                    log.error(e.getMessage(), e);
-                } catch (XMLStreamException e) {
-                    log.error(e.getMessage(), e);
-                } catch (WritingXmlException e) {
-                    log.error(e.getMessage(), e);
-                }
-                i++;
-                if (i % 100 == 0) System.out.println(i + " items imported so far...");
-            }
-            System.out.println("Total: " + i + " items");
+            ItemIndexPipeline pipeline = new ItemIndexPipeline(this, server, threads, batchSize);
+            int i = pipeline.run(context, iterator);
+            println(pipeline.getTimings().toString());
             server.commit();
             return i;
-        } catch (SQLException ex) {
-            throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
         } catch (SolrServerException ex) {
             throw new DSpaceSolrIndexerException(ex.getMessage(), ex);
         } catch (IOException ex) {
@@ -238,10 +235,16 @@ public class XOAI {
         }
     }
 
-    private SolrInputDocument index(Item item) throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
+    /**
+     * Compile an item into its Solr document. Called concurrently by the
+     * workers of {@link ItemIndexPipeline}, each with its own Context.
+     */
+    SolrInputDocument index(Context context, Item item, ItemIndexPipeline.StageTimings timings)
+            throws SQLException, MetadataBindException, ParseException, XMLStreamException, WritingXmlException {
+        long start = System.nanoTime();
         SolrInputDocument doc = new SolrInputDocument();
         doc.addField("item.id", item.getID());
-        boolean pub = this.isPublic(item);
+        boolean pub = this.isPublic(context, item);
         doc.addField("item.public", pub);
         String handle = item.getHandle();
         doc.addField("item.handle", handle);
@@ -275,12 +278,17 @@ public class XOAI {
             doc.addField("metadata.dc.format.mimetype", f);
         }
 
+        Metadata metadata = retrieveMetadata(item);
+        long retrieved = System.nanoTime();
+        timings.metadata.addAndGet(retrieved - start);
+
         ByteArrayOutputStream out = new ByteArrayOutputStream();
-        XmlOutputContext context = XmlOutputContext.emptyContext(out, Second);
-        retrieveMetadata(item).write(context);
-        context.getWriter().flush();
-        context.getWriter().close();
+        XmlOutputContext xmlContext = XmlOutputContext.emptyContext(out, Second);
+        metadata.write(xmlContext);
+        xmlContext.getWriter().flush();
+        xmlContext.getWriter().close();
         doc.addField("item.compile", out.toString());
+        timings.xmlWrite.addAndGet(System.nanoTime() - retrieved);
 
         if (verbose) {
             println("Item with handle " + handle + " indexed");
@@ -290,7 +298,7 @@ public class XOAI {
         return doc;
     }
 
-    private boolean isPublic(Item item) {
+    private boolean isPublic(Context context, Item item) {
         boolean pub = false;
         try {
             //Check if READ access allowed on this Item
@@ -367,6 +375,8 @@ public class XOAI {
             options.addOption("v", "verbose", false, "Verbose output");
             options.addOption("h", "help", false, "Shows some help");
             options.addOption("n", "number", true, "FOR DEVELOPMENT MUST DELETE");
+            options.addOption("t", "threads", true, "Number of threads compiling items");
+            options.addOption("b", "batch", true, "Number of items sent to Solr in one request");
             CommandLine line = parser.parse(options, argv);
 
             String[] validSolrCommands = {COMMAND_IMPORT, COMMAND_CLEAN_CACHE};
@@ -403,6 +413,13 @@ public class XOAI {
                             line.hasOption('c'),
                             line.hasOption('v'));
 
+                    if (line.hasOption('t')) {
+                        indexer.setThreads(Integer.parseInt(line.getOptionValue('t')));
+                    }
+                    if (line.hasOption('b')) {
+                        indexer.setBatchSize(Integer.parseInt(line.getOptionValue('b')));
+                    }
+
                     applicationContext.getAutowireCapableBeanFactory().autowireBean(indexer);
 
                     int imported = indexer.index();
@@ -491,6 +508,8 @@ public class XOAI {
             System.out.println("> Parameters:");
             System.out.println("     -o Optimize index after indexing (" + COMMAND_IMPORT + " only)");
             System.out.println("     -c Clear index (" + COMMAND_IMPORT + " only)");
+            System.out.println("     -t <threads> Number of threads compiling items (" + COMMAND_IMPORT + " only)");
+            System.out.println("     -b <size> Number of items sent to Solr in one request (" + COMMAND_IMPORT + " only)");
             System.out.println("     -v Verbose output");
             System.out.println("     -h Shows this text");
         } else {
@@ -9,6 +9,7 @@ package org.dspace.rest;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLConnection;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -31,8 +32,10 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.log4j.Logger;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.BitstreamFormat;
@@ -274,7 +277,10 @@ public class BitstreamResource extends Resource
      * @return Returns response with data with file content type. It can
      *         return the NOT_FOUND(404) response code in case of wrong bitstream
      *         id. Or response code UNAUTHORIZED(401) if user is not
-     *         allowed to read bitstream.
+     *         allowed to read bitstream. A Range header is answered with
+     *         PARTIAL_CONTENT(206), or REQUESTED_RANGE_NOT_SATISFIABLE(416),
+     *         and an If-None-Match header naming the ETag of the bitstream
+     *         with NOT_MODIFIED(304).
      * @throws WebApplicationException
      *             Thrown if there was a problem: reading the file data; or reading
      *             the database; or creating the context; or with authorization.
@@ -289,8 +295,8 @@ public class BitstreamResource extends Resource
 
         log.info("Reading data of bitstream(id=" + bitstreamId + ").");
         org.dspace.core.Context context = null;
-        InputStream inputStream = null;
-        String type = null;
+        BitstreamDelivery delivery = null;
+        boolean opened = false;
         String name = null;
 
         try
@@ -298,15 +304,22 @@ public class BitstreamResource extends Resource
             context = createContext(getUser(headers));
             org.dspace.content.Bitstream dspaceBitstream = findBitstream(context, bitstreamId, org.dspace.core.Constants.READ);
 
-            writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
-                    request, context);
+            // Answer conditional requests with 304 and ranges with 206
+            delivery = new BitstreamDelivery(context, dspaceBitstream);
+            delivery.evaluate(request);
+
+            // Count a view only once per download, not for each range fetched to resume it
+            if (delivery.includesStart())
+            {
+                writeStats(dspaceBitstream, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor, headers,
+                        request, context);
+            }
 
             log.trace("Bitsream(id=" + bitstreamId + ") data was successfully read.");
-            inputStream = dspaceBitstream.retrieve();
-            type = dspaceBitstream.getFormat().getMIMEType();
             name = dspaceBitstream.getName();
 
             context.complete();
+            opened = true;
         }
         catch (IOException e)
         {
@@ -330,10 +343,41 @@ public class BitstreamResource extends Resource
         }
         finally
         {
+            if (!opened && delivery != null)
+            {
+                delivery.close();
+            }
             processFinally(context);
         }
 
-        return Response.ok(inputStream).type(type)
+        Response.ResponseBuilder response = Response.status(delivery.getStatus())
+                .header("Accept-Ranges", "bytes")
+                .header("ETag", delivery.getETag())
+                .header("Content-Range", delivery.getContentRange());
+        if (!delivery.hasBody())
+        {
+            delivery.close();
+            return response.build();
+        }
+
+        final BitstreamDelivery body = delivery;
+        return response.entity(new StreamingOutput()
+                {
+                    @Override
+                    public void write(OutputStream output) throws IOException
+                    {
+                        try
+                        {
+                            body.write(output);
+                        }
+                        finally
+                        {
+                            body.close();
+                        }
+                    }
+                })
+                .type(delivery.getContentType())
+                .header("Content-Length", delivery.getContentLength())
                 .header("Content-Disposition", "attachment; filename=\"" + name + "\"")
                 .build();
     }
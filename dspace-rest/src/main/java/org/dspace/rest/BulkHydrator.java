@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dspace.authorize.AuthorizeManager;
+import org.dspace.content.Bitstream;
+import org.dspace.content.Bundle;
+import org.dspace.content.DSpaceObject;
+import org.dspace.content.Item;
+import org.dspace.core.Constants;
+import org.dspace.core.Context;
+
+/**
+ * Loads what the REST representations of a whole page of objects need, with
+ * a few set-based queries for the page, before the representations are
+ * built one object at a time. The objects keep what is loaded (metadata,
+ * bundles and bitstreams) and the Context remembers the authorization
+ * decisions, so building the representations no longer queries the
+ * database for each object.
+ */
+class BulkHydrator
+{
+    private BulkHydrator()
+    {
+    }
+
+    /**
+     * Return the objects the current user may read, in their original order.
+     */
+    static <T extends DSpaceObject> List<T> readable(Context context, List<T> objects) throws SQLException
+    {
+        boolean[] allowed = AuthorizeManager.authorizeActionBoolean(context,
+                new ArrayList<DSpaceObject>(objects), Constants.READ);
+        List<T> readable = new ArrayList<T>(objects.size());
+        for (int i = 0; i < allowed.length; i++)
+        {
+            if (allowed[i])
+            {
+                readable.add(objects.get(i));
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * Return the items listed for the current user, as
+     * {@link org.dspace.content.service.ItemService#isItemListedForUser}
+     * decides, in their original order.
+     */
+    static List<Item> listed(Context context, List<Item> items) throws SQLException
+    {
+        if (AuthorizeManager.isAdmin(context))
+        {
+            return items;
+        }
+        List<Item> listed = new ArrayList<Item>(items.size());
+        for (Item item : readable(context, items))
+        {
+            if (item.isDiscoverable())
+            {
+                listed.add(item);
+            }
+        }
+        return listed;
+    }
+
+    /**
+     * Load the metadata of a page of collections or communities.
+     */
+    static void hydrate(Context context, List<? extends DSpaceObject> objects) throws SQLException
+    {
+        DSpaceObject.loadMetadata(context, objects);
+    }
+
+    /**
+     * Load the metadata of a page of items and, if the bitstreams are to be
+     * expanded, their bundles and bitstreams, and decide which bitstreams
+     * the current user may read.
+     *
+     * @param expand the expand parameter of the request
+     */
+    static void hydrateItems(Context context, List<Item> items, String expand) throws SQLException
+    {
+        DSpaceObject.loadMetadata(context, items);
+
+        List<String> expandFields = (expand == null) ? new ArrayList<String>() : Arrays.asList(expand.split(","));
+        if (expandFields.contains("bitstreams") || expandFields.contains("all"))
+        {
+            Item.loadBundles(context, items);
+            List<DSpaceObject> bitstreams = new ArrayList<DSpaceObject>();
+            for (Item item : items)
+            {
+                for (Bundle bundle : item.getBundles())
+                {
+                    for (Bitstream bitstream : bundle.getBitstreams())
+                    {
+                        bitstreams.add(bitstream);
+                    }
+                }
+            }
+            // Remembered by the Context for the checks made per bitstream
+            AuthorizeManager.authorizeActionBoolean(context, bitstreams, Constants.READ);
+        }
+    }
+}
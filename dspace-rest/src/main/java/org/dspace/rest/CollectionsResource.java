@@ -10,6 +10,7 @@ package org.dspace.rest;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
@@ -145,6 +146,12 @@ public class CollectionsResource extends Resource
      * @param offset
      *            Offset of start index in list of items of collection. Default
      *            value is 0.
+     * @param afterId
+     *            If set, return the collections with IDs greater than this, in
+     *            ID order, instead of sorted by name. To read the next page,
+     *            pass the ID of the last collection returned. Unlike offset, every
+     *            page costs the same, however far into the list it is. Use -1
+     *            for the first page.
      * @param headers
      *            If you want to access to collections under logged user into
      *            context. In headers must be set header "rest-dspace-token"
@@ -160,12 +167,13 @@ public class CollectionsResource extends Resource
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
     public org.dspace.rest.common.Collection[] getCollections(@QueryParam("expand") String expand,
             @QueryParam("limit") @DefaultValue("100") Integer limit, @QueryParam("offset") @DefaultValue("0") Integer offset,
+            @QueryParam("after_id") Integer afterId,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
             @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
             throws WebApplicationException
     {
 
-        log.info("Reading all collections.(offset=" + offset + ",limit=" + limit + ")");
+        log.info("Reading all collections.(offset=" + offset + ",limit=" + limit + ",after_id=" + afterId + ")");
         org.dspace.core.Context context = null;
         List<Collection> collections = new ArrayList<Collection>();
 
@@ -180,18 +188,47 @@ public class CollectionsResource extends Resource
                 offset = 0;
             }
 
-            org.dspace.content.Collection[] dspaceCollections = org.dspace.content.Collection.findAll(context, limit, offset);
-            for(org.dspace.content.Collection dspaceCollection : dspaceCollections)
+            List<org.dspace.content.Collection> page = new ArrayList<org.dspace.content.Collection>();
+            if (afterId != null)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCollection, org.dspace.core.Constants.READ))
+                // Keyset paging: keep reading until the page is full of readable collections
+                int lastId = afterId;
+                while (page.size() < limit)
                 {
-                    Collection collection = new org.dspace.rest.common.Collection(dspaceCollection, null, context, limit,
-                            offset);
-                    collections.add(collection);
-                    writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent,
-                            xforwardedfor, headers, request, context);
+                    org.dspace.content.Collection[] dspaceCollections = org.dspace.content.Collection.findAfter(context, lastId, limit);
+                    if (dspaceCollections.length == 0)
+                    {
+                        break;
+                    }
+                    lastId = dspaceCollections[dspaceCollections.length - 1].getID();
+                    for (org.dspace.content.Collection dspaceCollection : BulkHydrator.readable(context, Arrays.asList(dspaceCollections)))
+                    {
+                        if (page.size() < limit)
+                        {
+                            page.add(dspaceCollection);
+                        }
+                    }
+                    if (dspaceCollections.length < limit)
+                    {
+                        break;
+                    }
                 }
             }
+            else
+            {
+                org.dspace.content.Collection[] dspaceCollections = org.dspace.content.Collection.findAll(context, limit, offset);
+                page = BulkHydrator.readable(context, Arrays.asList(dspaceCollections));
+            }
+
+            BulkHydrator.hydrate(context, page);
+            for(org.dspace.content.Collection dspaceCollection : page)
+            {
+                Collection collection = new org.dspace.rest.common.Collection(dspaceCollection, null, context, limit,
+                        offset);
+                collections.add(collection);
+                writeStats(dspaceCollection, UsageEvent.Action.VIEW, user_ip, user_agent,
+                        xforwardedfor, headers, request, context);
+            }
             context.complete();
         }
         catch (SQLException e)
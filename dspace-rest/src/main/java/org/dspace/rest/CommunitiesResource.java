@@ -10,6 +10,8 @@ package org.dspace.rest;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
@@ -125,6 +127,12 @@ public class CommunitiesResource extends Resource
      *            Maximum communities in array. Default value is 100.
      * @param offset
      *            Index from which will start array of communities.
+     * @param afterId
+     *            If set, return the communities with IDs greater than this, in
+     *            ID order, instead of sorted by name. To read the next page,
+     *            pass the ID of the last community returned. Unlike offset, every
+     *            page costs the same, however far into the list it is. Use -1
+     *            for the first page.
      * @param headers
      *            If you want to access to community under logged user into
      *            context. In headers must be set header "rest-dspace-token"
@@ -138,12 +146,13 @@ public class CommunitiesResource extends Resource
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
     public Community[] getCommunities(@QueryParam("expand") String expand,
             @QueryParam("limit") @DefaultValue("100") Integer limit, @QueryParam("offset") @DefaultValue("0") Integer offset,
+            @QueryParam("after_id") Integer afterId,
             @QueryParam("userIP") String user_ip, @QueryParam("userAgent") String user_agent,
             @QueryParam("xforwardedfor") String xforwardedfor, @Context HttpHeaders headers, @Context HttpServletRequest request)
             throws WebApplicationException
     {
 
-        log.info("Reading all communities.(offset=" + offset + " ,limit=" + limit + ").");
+        log.info("Reading all communities.(offset=" + offset + " ,limit=" + limit + " ,after_id=" + afterId + ").");
         org.dspace.core.Context context = null;
         ArrayList<Community> communities = null;
 
@@ -151,7 +160,6 @@ public class CommunitiesResource extends Resource
         {
             context = createContext(getUser(headers));
 
-            org.dspace.content.Community[] dspaceCommunities = org.dspace.content.Community.findAll(context);
             communities = new ArrayList<Community>();
 
             if (!((limit != null) && (limit >= 0) && (offset != null) && (offset >= 0)))
@@ -161,16 +169,48 @@ public class CommunitiesResource extends Resource
                 offset = 0;
             }
 
-            for (int i = offset; (i < (offset + limit)) && i < dspaceCommunities.length; i++)
+            List<org.dspace.content.Community> page = new ArrayList<org.dspace.content.Community>();
+            if (afterId != null)
             {
-                if (AuthorizeManager.authorizeActionBoolean(context, dspaceCommunities[i], org.dspace.core.Constants.READ))
+                // Keyset paging: keep reading until the page is full of readable communities
+                int lastId = afterId;
+                while (page.size() < limit)
                 {
-                    Community community = new Community(dspaceCommunities[i], expand, context);
-                    writeStats(dspaceCommunities[i], UsageEvent.Action.VIEW, user_ip, user_agent,
-                            xforwardedfor, headers, request, context);
-                    communities.add(community);
+                    org.dspace.content.Community[] dspaceCommunities = org.dspace.content.Community.findAfter(context, lastId, limit);
+                    if (dspaceCommunities.length == 0)
+                    {
+                        break;
+                    }
+                    lastId = dspaceCommunities[dspaceCommunities.length - 1].getID();
+                    for (org.dspace.content.Community dspaceCommunity : BulkHydrator.readable(context, Arrays.asList(dspaceCommunities)))
+                    {
+                        if (page.size() < limit)
+                        {
+                            page.add(dspaceCommunity);
+                        }
+                    }
+                    if (dspaceCommunities.length < limit)
+                    {
+                        break;
+                    }
                 }
             }
+            else
+            {
+                org.dspace.content.Community[] dspaceCommunities = org.dspace.content.Community.findAll(context);
+                List<org.dspace.content.Community> candidates = Arrays.asList(dspaceCommunities)
+                        .subList(Math.min(offset, dspaceCommunities.length), Math.min(offset + limit, dspaceCommunities.length));
+                page = BulkHydrator.readable(context, candidates);
+            }
+
+            BulkHydrator.hydrate(context, page);
+            for (org.dspace.content.Community dspaceCommunity : page)
+            {
+                Community community = new Community(dspaceCommunity, expand, context);
+                writeStats(dspaceCommunity, UsageEvent.Action.VIEW, user_ip, user_agent,
+                        xforwardedfor, headers, request, context);
+                communities.add(community);
+            }
 
             context.complete();
         }
@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.util.Date;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -38,9 +39,7 @@ import org.dspace.authorize.AuthorizeException;
 import org.dspace.authorize.AuthorizeManager;
 import org.dspace.content.BitstreamFormat;
 import org.dspace.content.Bundle;
-import org.dspace.content.ItemIterator;
 import org.dspace.content.Metadatum;
-import org.dspace.content.service.ItemService;
 import org.dspace.eperson.Group;
 import org.dspace.rest.common.Bitstream;
 import org.dspace.rest.common.Item;
@@ -138,6 +137,13 @@ public class ItemsResource extends Resource
      *            How many items in array will be. Default value is 100.
      * @param offset
      *            On which index will array start. Default value is 0.
+     *            Items are listed in ID order, and only the items the user
+     *            may see are counted. Ignored if after_id is set.
+     * @param afterId
+     *            If set, return the items with IDs greater than this, in ID
+     *            order. To read the next page, pass the ID of the last item
+     *            returned. Unlike offset, every page costs the same, however
+     *            far into the list it is. Use -1 for the first page.
      * @param headers
      *            If you want to access to item under logged user into context.
      *            In headers must be set header "rest-dspace-token" with passed
@@ -152,12 +158,13 @@ public class ItemsResource extends Resource
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
     public Item[] getItems(@QueryParam("expand") String expand, @QueryParam("limit") @DefaultValue("100") Integer limit,
-            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("userIP") String user_ip,
+            @QueryParam("offset") @DefaultValue("0") Integer offset, @QueryParam("after_id") Integer afterId,
+            @QueryParam("userIP") String user_ip,
             @QueryParam("userAgent") String user_agent, @QueryParam("xforwardedfor") String xforwardedfor,
             @Context HttpHeaders headers, @Context HttpServletRequest request) throws WebApplicationException
     {
 
-        log.info("Reading items.(offset=" + offset + ",limit=" + limit + ").");
+        log.info("Reading items.(offset=" + offset + ",limit=" + limit + ",after_id=" + afterId + ").");
         org.dspace.core.Context context = null;
         List<Item> items = null;
 
@@ -165,7 +172,6 @@ public class ItemsResource extends Resource
         {
             context = createContext(getUser(headers));
 
-            ItemIterator dspaceItems = org.dspace.content.Item.findAllUnfiltered(context);
             items = new ArrayList<Item>();
 
             if (!((limit != null) && (limit >= 0) && (offset != null) && (offset >= 0)))
@@ -175,18 +181,40 @@ public class ItemsResource extends Resource
                 offset = 0;
             }
 
-            for (int i = 0; (dspaceItems.hasNext()) && (i < (limit + offset)); i++)
+            // Both kinds of paging list the same items in ID order; an offset
+            // counts the items listed for the user, not the rows skipped
+            final org.dspace.core.Context listingContext = context;
+            KeysetPager.Source<org.dspace.content.Item> source = new KeysetPager.Source<org.dspace.content.Item>()
             {
-                org.dspace.content.Item dspaceItem = dspaceItems.next();
-                if (i >= offset)
+                @Override
+                public List<org.dspace.content.Item> findAfter(int afterID, int chunk) throws SQLException
                 {
-                    if (ItemService.isItemListedForUser(context, dspaceItem))
-                    {
-                        items.add(new Item(dspaceItem, expand, context));
-                        writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
-                                headers, request, context);
-                    }
+                    return Arrays.asList(org.dspace.content.Item.findAfter(listingContext, afterID, chunk));
+                }
+
+                @Override
+                public List<org.dspace.content.Item> listed(List<org.dspace.content.Item> dspaceItems)
+                        throws SQLException
+                {
+                    return BulkHydrator.listed(listingContext, dspaceItems);
                 }
+
+                @Override
+                public int getID(org.dspace.content.Item dspaceItem)
+                {
+                    return dspaceItem.getID();
+                }
+            };
+            List<org.dspace.content.Item> page = (afterId != null)
+                    ? KeysetPager.page(source, afterId, 0, limit)
+                    : KeysetPager.page(source, -1, offset, limit);
+
+            BulkHydrator.hydrateItems(context, page, expand);
+            for (org.dspace.content.Item dspaceItem : page)
+            {
+                items.add(new Item(dspaceItem, expand, context));
+                writeStats(dspaceItem, UsageEvent.Action.VIEW, user_ip, user_agent, xforwardedfor,
+                        headers, request, context);
             }
             context.complete();
         }
@@ -0,0 +1,87 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a page of a listing in ID order, a chunk of IDs at a time, keeping
+ * only the objects the current user may see. Both the <code>offset</code>
+ * and the <code>after_id</code> paging of a listing go through here, so that
+ * they page over the same objects in the same order: the page at offset
+ * <i>n</i> is the page after the ID of the <i>n</i>-th object listed.
+ */
+class KeysetPager
+{
+    /**
+     * Where the objects of a listing come from.
+     */
+    interface Source<T>
+    {
+        /**
+         * @return at most <code>limit</code> objects whose IDs are greater
+         *         than <code>afterID</code>, in ID order
+         */
+        List<T> findAfter(int afterID, int limit) throws SQLException;
+
+        /**
+         * @return those of the objects the current user may see, in their
+         *         original order
+         */
+        List<T> listed(List<T> objects) throws SQLException;
+
+        int getID(T object);
+    }
+
+    private KeysetPager()
+    {
+    }
+
+    /**
+     * Read a page of the objects the current user may see.
+     *
+     * @param source where the objects come from
+     * @param afterID only objects with a greater ID are read; -1 for all
+     * @param skip number of visible objects to skip before the page
+     * @param limit size of the page
+     * @return the page, in ID order
+     */
+    static <T> List<T> page(Source<T> source, int afterID, int skip, int limit) throws SQLException
+    {
+        List<T> page = new ArrayList<T>();
+        int chunk = Math.max(1, Math.min(skip + limit, 1000));
+        int lastID = afterID;
+        while (page.size() < limit)
+        {
+            List<T> objects = source.findAfter(lastID, chunk);
+            if (objects.isEmpty())
+            {
+                break;
+            }
+            lastID = source.getID(objects.get(objects.size() - 1));
+            for (T object : source.listed(objects))
+            {
+                if (skip > 0)
+                {
+                    skip--;
+                }
+                else if (page.size() < limit)
+                {
+                    page.add(object);
+                }
+            }
+            if (objects.size() < chunk)
+            {
+                break;
+            }
+        }
+        return page;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link KeysetPager}, comparing the <code>offset</code> and
+ * <code>after_id</code> listings of the same objects.
+ */
+public class KeysetPagerTest
+{
+    /** IDs 1 to 100 but for every fourth, of which every third is hidden */
+    private final MemorySource source = new MemorySource();
+
+    /**
+     * Test that paging by offset and paging by the last ID read return the
+     * same objects, in the same pages.
+     */
+    @Test
+    public void testSameListing() throws Exception
+    {
+        List<List<Integer>> byOffset = new ArrayList<List<Integer>>();
+        for (int offset = 0; ; offset += 7)
+        {
+            List<Integer> page = KeysetPager.page(source, -1, offset, 7);
+            if (page.isEmpty())
+            {
+                break;
+            }
+            byOffset.add(page);
+        }
+
+        List<List<Integer>> byAfterID = new ArrayList<List<Integer>>();
+        for (int afterID = -1; ; )
+        {
+            List<Integer> page = KeysetPager.page(source, afterID, 0, 7);
+            if (page.isEmpty())
+            {
+                break;
+            }
+            byAfterID.add(page);
+            afterID = page.get(page.size() - 1);
+        }
+
+        assertThat("testSameListing 0", byAfterID, equalTo(byOffset));
+        List<Integer> all = new ArrayList<Integer>();
+        for (List<Integer> page : byOffset)
+        {
+            assertThat("testSameListing 1", page.size() <= 7, equalTo(true));
+            all.addAll(page);
+        }
+        assertThat("testSameListing 2", all, equalTo(source.visible()));
+    }
+
+    /**
+     * Test that hidden objects are skipped without shortening a page.
+     */
+    @Test
+    public void testFullPages() throws Exception
+    {
+        List<Integer> visible = source.visible();
+        assertThat("testFullPages 0", KeysetPager.page(source, -1, 0, 10), equalTo(visible.subList(0, 10)));
+        assertThat("testFullPages 1", KeysetPager.page(source, -1, 10, 10), equalTo(visible.subList(10, 20)));
+        assertThat("testFullPages 2", KeysetPager.page(source, visible.get(9), 0, 10),
+                equalTo(visible.subList(10, 20)));
+        assertThat("testFullPages 3", KeysetPager.page(source, -1, visible.size(), 10).isEmpty(), equalTo(true));
+    }
+
+    /**
+     * Objects are their IDs.
+     */
+    private static class MemorySource implements KeysetPager.Source<Integer>
+    {
+        private final List<Integer> ids = new ArrayList<Integer>();
+
+        MemorySource()
+        {
+            for (int id = 1; id <= 100; id++)
+            {
+                if (id % 4 != 0)
+                {
+                    ids.add(id);
+                }
+            }
+        }
+
+        List<Integer> visible()
+        {
+            return listed(ids);
+        }
+
+        @Override
+        public List<Integer> findAfter(int afterID, int limit)
+        {
+            List<Integer> found = new ArrayList<Integer>();
+            for (Integer id : ids)
+            {
+                if (id > afterID && found.size() < limit)
+                {
+                    found.add(id);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public List<Integer> listed(List<Integer> objects)
+        {
+            List<Integer> listed = new ArrayList<Integer>();
+            for (Integer id : objects)
+            {
+                if (id % 3 != 0)
+                {
+                    listed.add(id);
+                }
+            }
+            return listed;
+        }
+
+        @Override
+        public int getID(Integer object)
+        {
+            return object;
+        }
+    }
+}
@@ -181,9 +181,19 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
     public CacheProvider getCacheProvider() {
         return provider.getProvider();
     }
+
+    /**
+     * The clustered provider created by this service when clustering is
+     * on and no provider is registered.
+     */
+    private ClusteredCacheProvider clusteredProvider;
+
     private void reloadProvider() {
         boolean current = (getCacheProvider() != null);
         CacheProvider cacheProvider = serviceManager.getServiceByName(CacheProvider.class.getName(), CacheProvider.class);
+        if (cacheProvider == null && useClustering) {
+            cacheProvider = getClusteredProvider();
+        }
         provider.setProvider(cacheProvider);
         if (cacheProvider != null) {
             log.info("Cache Provider loaded: " + cacheProvider.getClass().getName());
@@ -195,6 +205,36 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
     }
 
 
+    /**
+     * Join the cluster named by the <code>caching.cluster.*</code> settings,
+     * if this has not been done yet.
+     *
+     * @return the provider of clustered caches, or null if the cluster cannot be joined
+     */
+    private synchronized ClusteredCacheProvider getClusteredProvider() {
+        if (clusteredProvider == null) {
+            String bind = configurationService.getPropertyAsType("caching.cluster.bind", "");
+            String port = configurationService.getPropertyAsType("caching.cluster.port", "7800-7809");
+            String peers = configurationService.getPropertyAsType("caching.cluster.peers", "");
+            String secret = configurationService.getPropertyAsType("caching.cluster.secret", "");
+            try {
+                int[] ports = TcpInvalidationChannel.parsePorts(port);
+                clusteredProvider = new ClusteredCacheProvider(cacheManager,
+                        new TcpInvalidationChannel(bind, ports[0], ports[1], peers, secret));
+            } catch (IOException e) {
+                log.error("Unable to join the cache cluster on caching.cluster.port " + port
+                        + ", caches of this application will NOT be invalidated by the other nodes."
+                        + " Every application on a host needs a port of its own: give caching.cluster.port"
+                        + " as a range with a port for each, and list the range in caching.cluster.peers: "
+                        + e.getMessage(), e);
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid caching.cluster.port or caching.cluster.peers, caches of this application"
+                        + " will NOT be clustered: " + e.getMessage(), e);
+            }
+        }
+        return clusteredProvider;
+    }
+
     /* (non-Javadoc)
      * @see org.dspace.kernel.mixins.ServiceChangeListener#notifyForTypes()
      */
@@ -213,7 +253,7 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
      * @see org.dspace.kernel.mixins.ServiceChangeListener#serviceUnregistered(java.lang.String, java.lang.Object)
      */
     public void serviceUnregistered(String serviceName, Object service) {
-        provider.setProvider(null);
+        provider.setProvider(useClustering ? getClusteredProvider() : null);
     }
 
     /* (non-Javadoc)
@@ -272,6 +312,12 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
         log.info("destroy()");
         // for some reason this causes lots of errors so not using it for now -AZ
         //ehCacheManagementService.dispose();
+        synchronized (this) {
+            if (clusteredProvider != null) {
+                clusteredProvider.shutdown();
+                clusteredProvider = null;
+            }
+        }
         try {
             if (cacheRecord != null) {
                 cacheRecord.clear();
@@ -345,8 +391,12 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
                 cache = instantiateMapCache(cacheName, cacheConfig);
             }
         } else {
-            // find the cache in the records if possible
-            cache = this.cacheRecord.get(cacheName);
+            // find the cache in the records if possible, unless clustering:
+            // then the provider comes first, so that it may take over the
+            // configured caches too
+            if (!useClustering) {
+                cache = this.cacheRecord.get(cacheName);
+            }
 
             // handle provider
             if (cache == null && getCacheProvider() != null) {
@@ -357,6 +407,10 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
                 }
             }
 
+            if (cache == null) {
+                cache = this.cacheRecord.get(cacheName);
+            }
+
             if (cache == null) {
                 cache = instantiateEhCache(cacheName, cacheConfig);
             }
@@ -521,16 +575,8 @@ public final class CachingServiceImpl implements CachingService, InitializedServ
             // if this cache name is created or already in use then we just get it
             if (!cacheManager.cacheExists(cacheName)) {
                 // did not find the cache
-                if (cacheConfig == null) {
-                    cacheManager.addCache(cacheName); // create a new cache using ehcache defaults
-                } else {
-                    if (useClustering) {
-                        // TODO
-                        throw new UnsupportedOperationException("Still need to do this");
-                    } else {
-                        cacheManager.addCache(cacheName); // create a new cache using ehcache defaults
-                    }
-                }
+                // clustered caches come from the ClusteredCacheProvider
+                cacheManager.addCache(cacheName); // create a new cache using ehcache defaults
                 log.info("Created new Cache (from default settings): " + cacheName);
             }
             ehcache = cacheManager.getEhcache(cacheName);
@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.sf.ehcache.CacheManager;
+
+import org.dspace.providers.CacheProvider;
+import org.dspace.services.caching.model.ClusteredCache;
+import org.dspace.services.caching.model.EhcacheCache;
+import org.dspace.services.model.Cache;
+import org.dspace.services.model.CacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache provider for a cluster of DSpace nodes. Each node keeps its
+ * own Ehcache caches, set up by the usual ehcache-config.xml, and the
+ * nodes tell each other through an {@link InvalidationChannel} when an
+ * entry changes so that no node goes on serving a stale copy.
+ * <p>
+ * The caching service creates one of these itself, with a
+ * {@link TcpInvalidationChannel}, when <code>caching.use.clustering</code>
+ * is true and no other provider is registered.
+ * </p>
+ *
+ * @see ClusteredCache
+ */
+public final class ClusteredCacheProvider implements CacheProvider, InvalidationChannel.Listener {
+
+    private static Logger log = LoggerFactory.getLogger(ClusteredCacheProvider.class);
+
+    private final CacheManager cacheManager;
+    private final InvalidationChannel channel;
+    private final Map<String, ClusteredCache> caches = new ConcurrentHashMap<String, ClusteredCache>();
+
+    /**
+     * @param cacheManager the manager of the local caches
+     * @param channel the channel to the other nodes
+     */
+    public ClusteredCacheProvider(CacheManager cacheManager, InvalidationChannel channel) {
+        if (cacheManager == null || channel == null) {
+            throw new IllegalArgumentException("cacheManager and channel cannot be null");
+        }
+        this.cacheManager = cacheManager;
+        this.channel = channel;
+        channel.setListener(this);
+    }
+
+    /**
+     * @return the channel to the other nodes
+     */
+    public InvalidationChannel getChannel() {
+        return channel;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.providers.CacheProvider#getCaches()
+     */
+    public List<Cache> getCaches() {
+        return new ArrayList<Cache>(caches.values());
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.providers.CacheProvider#getCache(java.lang.String, org.dspace.services.model.CacheConfig)
+     */
+    public Cache getCache(String cacheName, CacheConfig config) {
+        ClusteredCache cache = caches.get(cacheName);
+        if (cache == null) {
+            synchronized (caches) {
+                cache = caches.get(cacheName);
+                if (cache == null) {
+                    if (!cacheManager.cacheExists(cacheName)) {
+                        cacheManager.addCache(cacheName); // create a new cache using ehcache defaults
+                        log.info("Created new clustered Cache (from default settings): " + cacheName);
+                    }
+                    cache = new ClusteredCache(new EhcacheCache(cacheManager.getEhcache(cacheName), config), channel);
+                    caches.put(cacheName, cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.providers.CacheProvider#destroyCache(java.lang.String)
+     */
+    public void destroyCache(String cacheName) {
+        ClusteredCache cache = caches.remove(cacheName);
+        if (cache != null) {
+            // the other nodes keep their caches, but not their contents
+            channel.publish(cacheName, null);
+            cacheManager.removeCache(cacheName);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.providers.CacheProvider#resetCaches()
+     */
+    public void resetCaches() {
+        for (ClusteredCache cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel.Listener#invalidated(java.lang.String, java.lang.String)
+     */
+    public void invalidated(String cacheName, String key) {
+        ClusteredCache cache = caches.get(cacheName);
+        if (cache != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Invalidated by another node: " + cacheName + ":" + key);
+            }
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Leave the cluster.
+     */
+    public void shutdown() {
+        channel.setListener(null);
+        channel.close();
+        caches.clear();
+    }
+
+}
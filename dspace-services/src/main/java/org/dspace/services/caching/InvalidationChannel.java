@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching;
+
+/**
+ * Carries cache invalidations between the nodes of a cluster.
+ * <p>
+ * When an entry is changed or removed in a cache on one node, the copies
+ * held by the other nodes are out of date. The node publishes the name
+ * of the cache and the key, and every other node drops its own copy so
+ * the next read loads the current value. Only keys travel, never values,
+ * so cached objects do not need to be shared or serialized.
+ * </p>
+ * Delivery is best effort: a message lost to a failed peer leaves that
+ * peer's entry in place until it expires, so clustered caches should
+ * still be given a time to live.
+ *
+ * @see ClusteredCacheProvider
+ */
+public interface InvalidationChannel {
+
+    /**
+     * Receives the invalidations published by the other nodes.
+     */
+    public interface Listener {
+
+        /**
+         * Another node has changed an entry, or all entries, of a cache.
+         *
+         * @param cacheName the name of the cache
+         * @param key the key of the entry, or null for the whole cache
+         */
+        public void invalidated(String cacheName, String key);
+
+    }
+
+    /**
+     * Set the listener for the invalidations of the other nodes.
+     * Messages published by this channel are never delivered to it.
+     *
+     * @param listener the listener, or null to ignore invalidations
+     */
+    public void setListener(Listener listener);
+
+    /**
+     * Tell the other nodes that an entry, or all entries, of a cache
+     * have changed. This must not block for long, as it is called by
+     * cache writes.
+     *
+     * @param cacheName the name of the cache
+     * @param key the key of the entry, or null for the whole cache
+     */
+    public void publish(String cacheName, String key);
+
+    /**
+     * Leave the cluster and release any resources.
+     */
+    public void close();
+
+}
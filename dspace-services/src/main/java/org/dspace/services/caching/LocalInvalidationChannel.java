@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An invalidation channel between the members of a group in the same
+ * JVM. Invalidations are delivered at once, in the publishing thread.
+ * This stands in for a real cluster in tests, and for several service
+ * managers sharing one JVM.
+ */
+public final class LocalInvalidationChannel implements InvalidationChannel {
+
+    /** The members of each group */
+    private static final Map<String, List<LocalInvalidationChannel>> groups =
+            new ConcurrentHashMap<String, List<LocalInvalidationChannel>>();
+
+    private final String group;
+    private volatile Listener listener;
+
+    /**
+     * Join a group of channels.
+     *
+     * @param group the name of the group, like the name of a cluster
+     */
+    public LocalInvalidationChannel(String group) {
+        if (group == null || "".equals(group)) {
+            throw new IllegalArgumentException("group cannot be null or empty string");
+        }
+        this.group = group;
+        synchronized (groups) {
+            List<LocalInvalidationChannel> members = groups.get(group);
+            if (members == null) {
+                members = new CopyOnWriteArrayList<LocalInvalidationChannel>();
+                groups.put(group, members);
+            }
+            members.add(this);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#setListener(org.dspace.services.caching.InvalidationChannel.Listener)
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#publish(java.lang.String, java.lang.String)
+     */
+    public void publish(String cacheName, String key) {
+        List<LocalInvalidationChannel> members = groups.get(group);
+        if (members == null) {
+            return;
+        }
+        for (LocalInvalidationChannel member : members) {
+            Listener l = member.listener;
+            if (member != this && l != null) {
+                l.invalidated(cacheName, key);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#close()
+     */
+    public void close() {
+        synchronized (groups) {
+            List<LocalInvalidationChannel> members = groups.get(group);
+            if (members != null) {
+                members.remove(this);
+                if (members.isEmpty()) {
+                    groups.remove(group);
+                }
+            }
+        }
+        listener = null;
+    }
+
+    @Override
+    public String toString() {
+        return "LocalInvalidationChannel:" + group;
+    }
+
+}
@@ -0,0 +1,481 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An invalidation channel over plain TCP connections to a fixed list of
+ * peers, so that no multicast is needed. Each node listens on a port and
+ * keeps one connection open to every peer, which is reopened when it
+ * fails. Invalidations are queued and sent by a background thread, so
+ * cache writes never wait on the network; if the queue fills up, or a
+ * peer cannot be reached, messages are dropped and the entries on that
+ * peer live until they expire.
+ * <p>
+ * The peer list may include the node itself, so that every node can use
+ * the same list: a node ignores its own messages.
+ * </p>
+ * <p>
+ * Several nodes may run on one host, e.g. one per web application: each is
+ * given the same range of ports and listens on the first one free, and the
+ * peer list gives the range for that host, as host:first-last.
+ * </p>
+ * <p>
+ * Connections are only accepted from the addresses of the peers. When a
+ * shared secret is set, which must then be the same on every node, a
+ * connecting peer must also answer a random challenge with its HMAC under
+ * the secret before its messages are read.
+ * </p>
+ */
+public final class TcpInvalidationChannel implements InvalidationChannel {
+
+    private static Logger log = LoggerFactory.getLogger(TcpInvalidationChannel.class);
+
+    /** Invalidations waiting to be sent, beyond which they are dropped */
+    private static final int QUEUE_SIZE = 10000;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    /** How long to skip a peer which could not be reached */
+    private static final long RETRY_MS = 10000;
+    private static final int CHALLENGE_LENGTH = 16;
+    private static final String HMAC = "HmacSHA256";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ServerSocket server;
+    private final BlockingQueue<String[]> outbox = new LinkedBlockingQueue<String[]>(QUEUE_SIZE);
+    private final Map<String, DataOutputStream> connections = new HashMap<String, DataOutputStream>();
+    private final Map<String, Long> unreachableUntil = new HashMap<String, Long>();
+    private final Set<Socket> accepted = Collections.synchronizedSet(new HashSet<Socket>());
+    private final Thread sender;
+    private final byte[] secret;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile List<InetSocketAddress> peers = new ArrayList<InetSocketAddress>();
+    private volatile Listener listener;
+    private volatile boolean closed = false;
+
+    /**
+     * Start listening for invalidations from the peers, on all interfaces
+     * and without a shared secret.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param peers the peers, as a comma separated list of host:port
+     * @throws IOException if the port cannot be opened
+     */
+    public TcpInvalidationChannel(int port, String peers) throws IOException {
+        this(null, port, peers, null);
+    }
+
+    /**
+     * Start listening for invalidations from the peers.
+     *
+     * @param bindAddress the address to listen on, or null (or empty) for
+     *            all interfaces
+     * @param port the port to listen on, or 0 for any free port
+     * @param peers the peers, as a comma separated list of host:port
+     * @param secret the secret shared by all nodes, or null (or empty) for
+     *            none
+     * @throws IOException if the port cannot be opened
+     */
+    public TcpInvalidationChannel(String bindAddress, int port, String peers, String secret) throws IOException {
+        this(bindAddress, port, port, peers, secret);
+    }
+
+    /**
+     * Start listening for invalidations from the peers, on the first free
+     * port of a range.
+     *
+     * @param bindAddress the address to listen on, or null (or empty) for
+     *            all interfaces
+     * @param firstPort the first port of the range, or 0 for any free port
+     * @param lastPort the last port of the range
+     * @param peers the peers, as a comma separated list of host:port or
+     *            host:first-last
+     * @param secret the secret shared by all nodes, or null (or empty) for
+     *            none
+     * @throws IOException if no port of the range can be opened
+     */
+    public TcpInvalidationChannel(String bindAddress, int firstPort, int lastPort, String peers, String secret)
+            throws IOException {
+        setPeers(peers);
+        this.secret = (secret == null || "".equals(secret.trim())) ? null : secret.trim().getBytes("UTF-8");
+        InetAddress bind = (bindAddress == null || "".equals(bindAddress.trim()))
+                ? null : InetAddress.getByName(bindAddress.trim());
+        server = bind(bind, firstPort, Math.max(firstPort, lastPort));
+
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "cache-invalidation-accept-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        sender = new Thread(new Runnable() {
+            public void run() {
+                send();
+            }
+        }, "cache-invalidation-send-" + server.getLocalPort());
+        sender.setDaemon(true);
+        sender.start();
+
+        log.info("Cache invalidations on " + server.getLocalSocketAddress() + " for peers: " + this.peers
+                + (this.secret == null ? "" : ", with a shared secret"));
+    }
+
+    /**
+     * @return a server socket on the first port of the range which is free
+     * @throws BindException if none is
+     */
+    private static ServerSocket bind(InetAddress bind, int firstPort, int lastPort) throws IOException {
+        for (int port = firstPort; ; port++) {
+            try {
+                return new ServerSocket(port, 50, bind);
+            } catch (BindException e) {
+                if (port >= lastPort) {
+                    throw new BindException("No free port from " + firstPort + " to " + lastPort
+                            + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the port this node listens on
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Replace the list of peers.
+     *
+     * @param peers the peers, as a comma separated list of host:port or
+     *            host:first-last
+     */
+    public void setPeers(String peers) {
+        List<InetSocketAddress> list = new ArrayList<InetSocketAddress>();
+        if (peers != null) {
+            for (String peer : peers.split(",")) {
+                peer = peer.trim();
+                if ("".equals(peer)) {
+                    continue;
+                }
+                int colon = peer.lastIndexOf(':');
+                if (colon < 1) {
+                    throw new IllegalArgumentException("Peer must be given as host:port: " + peer);
+                }
+                int[] ports = parsePorts(peer.substring(colon + 1));
+                for (int port = ports[0]; port <= ports[1]; port++) {
+                    list.add(new InetSocketAddress(peer.substring(0, colon), port));
+                }
+            }
+        }
+        this.peers = list;
+    }
+
+    /**
+     * Parse a port, or a range of ports given as first-last.
+     *
+     * @param ports the port or range
+     * @return the first and the last port
+     */
+    public static int[] parsePorts(String ports) {
+        String value = ports.trim();
+        int dash = value.indexOf('-');
+        int first = Integer.parseInt((dash < 0 ? value : value.substring(0, dash)).trim());
+        int last = (dash < 0) ? first : Integer.parseInt(value.substring(dash + 1).trim());
+        if (last < first) {
+            throw new IllegalArgumentException("Port range must be given as first-last: " + ports);
+        }
+        return new int[] { first, last };
+    }
+
+    /**
+     * @return the number of connections refused, because they came from an
+     *         address which is not a peer or did not know the secret
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#setListener(org.dspace.services.caching.InvalidationChannel.Listener)
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#publish(java.lang.String, java.lang.String)
+     */
+    public void publish(String cacheName, String key) {
+        if (closed || peers.isEmpty()) {
+            return;
+        }
+        if (!outbox.offer(new String[] { cacheName, key })) {
+            log.warn("Cache invalidation queue is full, dropping invalidation of " + cacheName + ":" + key);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.caching.InvalidationChannel#close()
+     */
+    public void close() {
+        closed = true;
+        listener = null;
+        sender.interrupt();
+        try {
+            server.close();
+        } catch (IOException e) {
+            log.debug("Error closing server socket", e);
+        }
+        synchronized (accepted) {
+            for (Socket socket : accepted) {
+                closeQuietly(socket);
+            }
+            accepted.clear();
+        }
+        synchronized (connections) {
+            for (DataOutputStream out : connections.values()) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    log.debug("Error closing peer connection", e);
+                }
+            }
+            connections.clear();
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = server.accept();
+                accepted.add(socket);
+                Thread reader = new Thread(new Runnable() {
+                    public void run() {
+                        receive(socket);
+                    }
+                }, "cache-invalidation-receive-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.warn("Error accepting cache invalidation connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void receive(Socket socket) {
+        try {
+            if (!isPeer(socket.getInetAddress())) {
+                rejected.incrementAndGet();
+                log.warn("Refused cache invalidation connection from " + socket.getRemoteSocketAddress()
+                        + ", which is not in caching.cluster.peers");
+                return;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if (secret != null && !challenge(socket, in)) {
+                rejected.incrementAndGet();
+                log.warn("Refused cache invalidation connection from " + socket.getRemoteSocketAddress()
+                        + ", which does not know caching.cluster.secret");
+                return;
+            }
+            while (!closed) {
+                String origin = in.readUTF();
+                String cacheName = in.readUTF();
+                String key = in.readBoolean() ? in.readUTF() : null;
+                Listener l = listener;
+                if (l != null && !nodeId.equals(origin)) {
+                    try {
+                        l.invalidated(cacheName, key);
+                    } catch (RuntimeException e) {
+                        log.warn("Failure invalidating " + cacheName + ":" + key + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (EOFException e) {
+            // peer closed the connection
+        } catch (IOException e) {
+            if (!closed) {
+                log.debug("Cache invalidation connection failed: " + e.getMessage());
+            }
+        } finally {
+            accepted.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return whether the address is one of those of the peers, looked up
+     *         again so that peers given by name may move
+     */
+    private boolean isPeer(InetAddress address) {
+        for (InetSocketAddress peer : peers) {
+            try {
+                for (InetAddress peerAddress : InetAddress.getAllByName(peer.getHostString())) {
+                    if (peerAddress.equals(address)) {
+                        return true;
+                    }
+                }
+            } catch (UnknownHostException e) {
+                log.debug("Cannot resolve cache invalidation peer " + peer);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send a random challenge to a connecting peer and check its answer.
+     */
+    private boolean challenge(Socket socket, DataInputStream in) throws IOException {
+        byte[] challenge = new byte[CHALLENGE_LENGTH];
+        random.nextBytes(challenge);
+        socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.write(challenge);
+        out.flush();
+        byte[] expected = answer(challenge);
+        byte[] answer = new byte[expected.length];
+        in.readFully(answer);
+        socket.setSoTimeout(0);
+        return MessageDigest.isEqual(expected, answer);
+    }
+
+    /**
+     * @return the HMAC of a challenge under the shared secret
+     */
+    private byte[] answer(byte[] challenge) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(secret, HMAC));
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to compute " + HMAC + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void send() {
+        while (!closed) {
+            String[] message;
+            try {
+                message = outbox.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (InetSocketAddress peer : peers) {
+                // try a fresh connection once if the open one has failed
+                if (!send(peer, message) && !send(peer, message)) {
+                    log.debug("Unable to send cache invalidation to " + peer);
+                }
+            }
+        }
+    }
+
+    private boolean send(InetSocketAddress peer, String[] message) {
+        String name = peer.toString();
+        synchronized (connections) {
+            DataOutputStream out = connections.get(name);
+            try {
+                if (out == null) {
+                    Long until = unreachableUntil.get(name);
+                    if (until != null && until > System.currentTimeMillis()) {
+                        return false;
+                    }
+                    Socket socket = new Socket();
+                    try {
+                        socket.connect(peer, CONNECT_TIMEOUT_MS);
+                        socket.setTcpNoDelay(true);
+                        if (secret != null) {
+                            socket.setSoTimeout(CONNECT_TIMEOUT_MS);
+                            byte[] challenge = new byte[CHALLENGE_LENGTH];
+                            new DataInputStream(socket.getInputStream()).readFully(challenge);
+                            socket.getOutputStream().write(answer(challenge));
+                            socket.setSoTimeout(0);
+                        }
+                    } catch (IOException e) {
+                        closeQuietly(socket);
+                        // ports of a range may well be unused; only tell once
+                        if (unreachableUntil.put(name, System.currentTimeMillis() + RETRY_MS) == null) {
+                            log.warn("Cache invalidation peer " + peer + " is unreachable: " + e.getMessage());
+                        }
+                        throw e;
+                    }
+                    unreachableUntil.remove(name);
+                    out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    connections.put(name, out);
+                }
+                out.writeUTF(nodeId);
+                out.writeUTF(message[0]);
+                out.writeBoolean(message[1] != null);
+                if (message[1] != null) {
+                    out.writeUTF(message[1]);
+                }
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                connections.remove(name);
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ce) {
+                        // already failed
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TcpInvalidationChannel:" + server.getLocalPort() + "->" + peers;
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching.model;
+
+import java.util.List;
+
+import org.dspace.services.caching.InvalidationChannel;
+import org.dspace.services.model.Cache;
+import org.dspace.services.model.CacheConfig;
+
+/**
+ * A cache which keeps its entries locally, in another cache, and tells
+ * the other nodes of a cluster whenever an entry is changed so that they
+ * drop their own copies of it.
+ * <p>
+ * Removing an entry, replacing one, or clearing the cache is published.
+ * Putting a new key is not, as that is how a node fills its cache after a
+ * miss, and publishing it would make the nodes drop each other's fresh
+ * entries. Code which changes the data behind a cache should therefore
+ * remove the entry (or replace it) rather than rely on a put.
+ * </p>
+ *
+ * @see org.dspace.services.caching.ClusteredCacheProvider
+ */
+public final class ClusteredCache implements Cache {
+
+    protected Cache cache;
+    public Cache getCache() {
+        return cache;
+    }
+
+    protected InvalidationChannel channel;
+
+    public ClusteredCache(Cache cache, InvalidationChannel channel) {
+        if (cache == null) {
+            throw new NullPointerException("Cache must be set and cannot be null");
+        }
+        if (channel == null) {
+            throw new NullPointerException("Channel must be set and cannot be null");
+        }
+        this.cache = cache;
+        this.channel = channel;
+    }
+
+    /**
+     * Drop an entry, or all entries, changed by another node without
+     * telling the other nodes.
+     *
+     * @param key the key of the entry, or null for all entries
+     */
+    public void invalidate(String key) {
+        if (key == null) {
+            cache.clear();
+        } else {
+            cache.remove(key);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#getConfig()
+     */
+    public CacheConfig getConfig() {
+        return cache.getConfig();
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#clear()
+     */
+    public void clear() {
+        cache.clear();
+        channel.publish(getName(), null);
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#exists(java.lang.String)
+     */
+    public boolean exists(String key) {
+        return cache.exists(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#get(java.lang.String)
+     */
+    public Object get(String key) {
+        return cache.get(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#getKeys()
+     */
+    public List<String> getKeys() {
+        return cache.getKeys();
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#getName()
+     */
+    public String getName() {
+        return cache.getName();
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#look(java.lang.String)
+     */
+    public Object look(String key) {
+        return cache.look(key);
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#put(java.lang.String, java.io.Serializable)
+     */
+    public void put(String key, Object value) {
+        boolean replacing = cache.exists(key);
+        cache.put(key, value);
+        if (replacing) {
+            // the other nodes may hold the old value
+            channel.publish(getName(), key);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#remove(java.lang.String)
+     */
+    public boolean remove(String key) {
+        boolean removed = cache.remove(key);
+        channel.publish(getName(), key);
+        return removed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.dspace.services.model.Cache#size()
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return cache.toString() + ":clustered(" + channel + ")";
+    }
+
+}
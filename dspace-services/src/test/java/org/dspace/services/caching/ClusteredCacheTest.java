@@ -0,0 +1,237 @@
+/**
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree and available online at
+ *
+ * http://www.dspace.org/license/
+ */
+package org.dspace.services.caching;
+
+import static org.junit.Assert.*;
+
+import java.net.BindException;
+import java.net.ServerSocket;
+
+import org.dspace.services.caching.model.ClusteredCache;
+import org.dspace.services.caching.model.MapCache;
+import org.dspace.services.model.CacheConfig;
+import org.dspace.services.model.CacheConfig.CacheScope;
+import org.junit.Test;
+
+/**
+ * Testing the invalidation of clustered caches between nodes
+ */
+public class ClusteredCacheTest {
+
+    private static final String NAME = "org.dspace.test.ClusteredCache";
+
+    /**
+     * A node of a cluster: a local cache, and the channel to the other nodes
+     */
+    private static class Node implements InvalidationChannel.Listener {
+        final ClusteredCache cache;
+
+        Node(InvalidationChannel channel) {
+            cache = new ClusteredCache(new MapCache(NAME, new CacheConfig(CacheScope.INSTANCE)), channel);
+            channel.setListener(this);
+        }
+
+        public void invalidated(String cacheName, String key) {
+            if (NAME.equals(cacheName)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Test method for {@link org.dspace.services.caching.model.ClusteredCache} over a {@link LocalInvalidationChannel}.
+     */
+    @Test
+    public void testLocalInvalidation() {
+        LocalInvalidationChannel channelA = new LocalInvalidationChannel("test-cluster");
+        LocalInvalidationChannel channelB = new LocalInvalidationChannel("test-cluster");
+        try {
+            Node a = new Node(channelA);
+            Node b = new Node(channelB);
+
+            // filling a cache after a miss does not touch the other nodes
+            a.cache.put("key1", "value1");
+            b.cache.put("key1", "value1");
+            b.cache.put("key2", "value2");
+            assertTrue(a.cache.exists("key1"));
+            assertTrue(b.cache.exists("key1"));
+
+            // replacing a value drops the copies of the other nodes
+            a.cache.put("key1", "value1b");
+            assertEquals("value1b", a.cache.get("key1"));
+            assertFalse(b.cache.exists("key1"));
+            assertTrue(b.cache.exists("key2"));
+
+            // so does removing it
+            a.cache.put("key2", "value2");
+            b.cache.remove("key2");
+            assertFalse(a.cache.exists("key2"));
+
+            // and clearing the cache
+            b.cache.put("key3", "value3");
+            a.cache.clear();
+            assertEquals(0, b.cache.size());
+        } finally {
+            channelA.close();
+            channelB.close();
+        }
+    }
+
+    /**
+     * Test method for {@link org.dspace.services.caching.TcpInvalidationChannel}.
+     */
+    @Test
+    public void testTcpInvalidation() throws Exception {
+        TcpInvalidationChannel channelA = new TcpInvalidationChannel(0, null);
+        TcpInvalidationChannel channelB = new TcpInvalidationChannel(0, null);
+        try {
+            // both nodes use the same list, including themselves
+            String peers = "localhost:" + channelA.getPort() + ",localhost:" + channelB.getPort();
+            channelA.setPeers(peers);
+            channelB.setPeers(peers);
+            Node a = new Node(channelA);
+            Node b = new Node(channelB);
+
+            a.cache.put("key1", "value1");
+            b.cache.put("key1", "value1");
+            b.cache.put("key2", "value2");
+
+            a.cache.remove("key1");
+            waitForRemoval(b, "key1");
+            assertFalse(b.cache.exists("key1"));
+
+            // a node ignores its own messages
+            b.cache.put("key2", "value2b");
+            a.cache.put("key3", "value3");
+            b.cache.put("key3", "value3");
+            a.cache.clear();
+            waitForRemoval(b, "key3");
+            assertEquals(0, b.cache.size());
+            assertEquals(0, a.cache.size());
+        } finally {
+            channelA.close();
+            channelB.close();
+        }
+    }
+
+    /**
+     * Test that a {@link TcpInvalidationChannel} refuses connections from
+     * addresses which are not among its peers.
+     */
+    @Test
+    public void testTcpUnknownPeer() throws Exception {
+        // 192.0.2.1 is reserved for documentation, so it is never a local address
+        TcpInvalidationChannel channelA = new TcpInvalidationChannel("localhost", 0, "192.0.2.1:7800", null);
+        TcpInvalidationChannel channelB = new TcpInvalidationChannel("localhost", 0, null, null);
+        try {
+            channelB.setPeers("localhost:" + channelA.getPort());
+            Node a = new Node(channelA);
+            Node b = new Node(channelB);
+
+            a.cache.put("key1", "value1");
+            b.cache.put("key1", "value1");
+            b.cache.put("key1", "value1b");
+            waitForRejection(channelA);
+            assertEquals(1, channelA.getRejected());
+            assertTrue(a.cache.exists("key1"));
+        } finally {
+            channelA.close();
+            channelB.close();
+        }
+    }
+
+    /**
+     * Test that a {@link TcpInvalidationChannel} with a shared secret only
+     * accepts peers which know it.
+     */
+    @Test
+    public void testTcpSecret() throws Exception {
+        TcpInvalidationChannel channelA = new TcpInvalidationChannel("localhost", 0, null, "secret");
+        TcpInvalidationChannel channelB = new TcpInvalidationChannel("localhost", 0, null, "other");
+        TcpInvalidationChannel channelC = new TcpInvalidationChannel("localhost", 0, null, "secret");
+        try {
+            String peers = "localhost:" + channelA.getPort() + ",localhost:" + channelB.getPort()
+                    + ",localhost:" + channelC.getPort();
+            channelA.setPeers(peers);
+            channelB.setPeers("localhost:" + channelA.getPort());
+            channelC.setPeers("localhost:" + channelA.getPort());
+            Node a = new Node(channelA);
+            Node b = new Node(channelB);
+            Node c = new Node(channelC);
+
+            a.cache.put("key1", "value1");
+            b.cache.put("key1", "value1");
+            b.cache.put("key1", "value1b");
+            waitForRejection(channelA);
+            assertEquals(1, channelA.getRejected());
+            assertTrue(a.cache.exists("key1"));
+
+            c.cache.put("key1", "value1");
+            c.cache.put("key1", "value1c");
+            waitForRemoval(a, "key1");
+            assertFalse(a.cache.exists("key1"));
+            assertEquals(1, channelA.getRejected());
+        } finally {
+            channelA.close();
+            channelB.close();
+            channelC.close();
+        }
+    }
+
+    /**
+     * Test that nodes on one host given the same range of ports each listen
+     * on a port of their own, and reach each other through the range.
+     */
+    @Test
+    public void testTcpPortRange() throws Exception {
+        ServerSocket probe = new ServerSocket(0);
+        int first = probe.getLocalPort();
+        probe.close();
+        String range = first + "-" + (first + 1);
+        String peers = "localhost:" + range;
+
+        TcpInvalidationChannel channelA = new TcpInvalidationChannel("localhost", first, first + 1, peers, null);
+        TcpInvalidationChannel channelB = new TcpInvalidationChannel("localhost", first, first + 1, peers, null);
+        try {
+            assertEquals(first, channelA.getPort());
+            assertEquals(first + 1, channelB.getPort());
+            try {
+                new TcpInvalidationChannel("localhost", first, first + 1, peers, null).close();
+                fail("Expected no free port in " + range);
+            } catch (BindException e) {
+                // expected
+            }
+
+            Node a = new Node(channelA);
+            Node b = new Node(channelB);
+            a.cache.put("key1", "value1");
+            b.cache.put("key1", "value1");
+            b.cache.put("key1", "value1b");
+            waitForRemoval(a, "key1");
+            assertFalse(a.cache.exists("key1"));
+        } finally {
+            channelA.close();
+            channelB.close();
+        }
+        assertArrayEquals(new int[] { 7800, 7809 }, TcpInvalidationChannel.parsePorts(" 7800 - 7809"));
+        assertArrayEquals(new int[] { 7800, 7800 }, TcpInvalidationChannel.parsePorts("7800"));
+    }
+
+    private static void waitForRejection(TcpInvalidationChannel channel) throws InterruptedException {
+        for (int i = 0; i < 100 && channel.getRejected() == 0; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static void waitForRemoval(Node node, String key) throws InterruptedException {
+        for (int i = 0; i < 100 && node.cache.exists(key); i++) {
+            Thread.sleep(50);
+        }
+    }
+
+}
@@ -25,10 +25,9 @@ import org.apache.cocoon.environment.Request;
 import org.apache.cocoon.environment.Response;
 import org.apache.cocoon.environment.SourceResolver;
 import org.apache.cocoon.environment.http.HttpEnvironment;
-import org.apache.cocoon.environment.http.HttpResponse;
 import org.apache.cocoon.reading.AbstractReader;
-import org.apache.cocoon.util.ByteRange;
 import org.apache.commons.lang.StringUtils;
+import org.dspace.app.util.BitstreamDelivery;
 import org.dspace.app.xmlui.utils.AuthenticationUtil;
 import org.dspace.app.xmlui.utils.ContextUtil;
 import org.dspace.authorize.AuthorizeException;
@@ -39,6 +38,7 @@ import org.dspace.content.Bundle;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
 import org.dspace.core.ConfigurationManager;
+import org.dspace.core.ConfigurationSetting;
 import org.dspace.core.Constants;
 import org.dspace.core.Context;
 import org.dspace.disseminate.CitationDocument;
@@ -114,12 +114,6 @@ public class BitstreamReader extends AbstractReader implements Recyclable
     private static final String AUTH_REQUIRED_HEADER = "xmlui.BitstreamReader.auth_header";
     private static final String AUTH_REQUIRED_MESSAGE = "xmlui.BitstreamReader.auth_message";
         
-    /**
-     * How big a buffer should we use when reading from the bitstream before
-     * writing to the HTTP response?
-     */
-    protected static final int BUFFER_SIZE = 8192;
-
     /**
      * When should a bitstream expire in milliseconds. This should be set to
      * some low value just to prevent someone hiting DSpace repeatedy from
@@ -133,11 +127,18 @@ public class BitstreamReader extends AbstractReader implements Recyclable
     /** The Cocoon response */
     protected Response response;
 
+    /**
+     * Whether Range requests are answered. Off by default, as some Windows
+     * PDF viewers cannot handle partial responses.
+     */
+    private static final ConfigurationSetting.BooleanSetting byteRanges =
+            new ConfigurationSetting.BooleanSetting(null, "xmlui.bitstream.byte-ranges", false);
+
     /** The Cocoon request */
     protected Request request;
 
-    /** The bitstream file */
-    protected InputStream bitstreamInputStream;
+    /** Sends the bitstream file, or the citation version of it */
+    protected BitstreamDelivery delivery;
     
     /** The bitstream's reported size */
     protected long bitstreamSize;
@@ -342,7 +343,6 @@ public class BitstreamReader extends AbstractReader implements Recyclable
                 // on-the-fly citation generator
                 log.info(item.getHandle() + " - " + bitstream.getName() + " is citable.");
 
-                FileInputStream fileInputStream = null;
                 CitationDocument citationDocument = new CitationDocument();
 
                 try {
@@ -355,12 +355,7 @@ public class BitstreamReader extends AbstractReader implements Recyclable
                     }
 
 
-                    fileInputStream = new FileInputStream(tempFile);
-                    if(fileInputStream == null) {
-                        log.error("Error opening fileInputStream: ");
-                    }
-
-                    this.bitstreamInputStream = fileInputStream;
+                    this.delivery = new BitstreamDelivery(tempFile, bitstream.getFormat().getMIMEType());
                     this.bitstreamSize = tempFile.length();
 
                 } catch (Exception e) {
@@ -369,7 +364,7 @@ public class BitstreamReader extends AbstractReader implements Recyclable
 
                 //End of CitationDocument
             } else {
-                this.bitstreamInputStream = bitstream.retrieve();
+                this.delivery = new BitstreamDelivery(context, bitstream);
                 this.bitstreamSize = bitstream.getSize();
             }
 
@@ -415,14 +410,47 @@ public class BitstreamReader extends AbstractReader implements Recyclable
                 }
             }
             
+            if (this.delivery != null)
+            {
+                this.delivery.setContentType(bitstreamMimeType);
+
+                // Only set Last-Modified: header for spiders or anonymous
+                // access, since it might encourage browse to cache the result
+                // which might leave a result only available to authenticated
+                // users in the cache for a response later to anonymous user.
+                if (itemLastModified != null && (isSpider || context.getCurrentUser() == null))
+                {
+                    // TODO:  Currently just borrow the date of the item, since
+                    // we don't have last-mod dates for Bitstreams
+                    this.delivery.setLastModified(itemLastModified.getTime());
+                }
+
+                // Only allow If-Modified-Since protocol if request is from a spider
+                // since response headers would encourage a browser to cache results
+                // that might change with different authentication. If-None-Match
+                // names the checksum, so it holds whoever asks.
+                long modSince = isSpider ? request.getDateHeader("If-Modified-Since") : -1;
+
+                // If partial downloads are turned on, a web browser which loses
+                // the connection halfway through can resume downloading the
+                // bitstream.
+                this.delivery.setAcceptRanges(byteRanges.get());
+                this.delivery.evaluate(request.getMethod(), request.getHeader("If-None-Match"), modSince,
+                        request.getHeader("Range"), request.getHeader("If-Range"));
+            }
+
             // Log that the bitstream has been viewed, this is non-cached and the complexity
-            // of adding it to the sitemap for every possible bitstream uri is not very tractable
-            new DSpace().getEventService().fireEvent(
+            // of adding it to the sitemap for every possible bitstream uri is not very tractable.
+            // Count a view only once per download, not for each range fetched to resume it.
+            if (this.delivery == null || this.delivery.includesStart())
+            {
+                new DSpace().getEventService().fireEvent(
                                 new UsageEvent(
                                                 UsageEvent.Action.VIEW,
                                                 ObjectModelHelper.getRequest(objectModel),
                                                 ContextUtil.obtainContext(ObjectModelHelper.getRequest(objectModel)),
                                                 bitstream));
+            }
             
             // If we created the database connection close it, otherwise leave it open.
             if (BitstreamReaderOpenedContext)
@@ -560,171 +588,71 @@ public class BitstreamReader extends AbstractReader implements Recyclable
          * Realize that this is nowhere near 100% effective but it may help in some
          * cases and shouldn't hurt anything.
          *
-         * 2) We accept partial downloads, thus if you lose a connection halfway
-         * through most web browser will enable you to resume downloading the
-         * bitstream.
+         * 2) If xmlui.bitstream.byte-ranges is on we accept partial downloads,
+         * thus if you lose a connection halfway through most web browser will
+         * enable you to resume downloading the bitstream. The response to the
+         * Range and conditional headers was decided in setup().
          */
     public void generate() throws IOException, SAXException,
             ProcessingException
     {
-        if (this.bitstreamInputStream == null)
+        if (this.delivery == null)
         {
             return;
         }
-        
-        // Only allow If-Modified-Since protocol if request is from a spider
-        // since response headers would encourage a browser to cache results
-        // that might change with different authentication.
-        if (isSpider)
+
+        try
         {
-            // Check for if-modified-since header -- ONLY if not authenticated
-            long modSince = request.getDateHeader("If-Modified-Since");
-            if (modSince != -1 && itemLastModified != null && itemLastModified.getTime() < modSince)
+            HttpServletResponse httpResponse = (HttpServletResponse)
+                    objectModel.get(HttpEnvironment.HTTP_RESPONSE_OBJECT);
+            this.delivery.setHeaders(httpResponse);
+
+            if (!this.delivery.hasBody())
             {
-                // Item has not been modified since requested date,
-                // hence bitstream has not been, either; return 304
-                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                 return;
             }
-        }
 
-        // Only set Last-Modified: header for spiders or anonymous
-        // access, since it might encourage browse to cache the result
-        // which might leave a result only available to authenticated
-        // users in the cache for a response later to anonymous user.
-        try
-        {
-            if (itemLastModified != null && (isSpider || ContextUtil.obtainContext(request).getCurrentUser() == null))
+            // Only encourage caching if this is not a restricted resource, i.e.
+            // if it is accessed anonymously or is readable by Anonymous:
+            if (isAnonymouslyReadable)
             {
-                // TODO:  Currently just borrow the date of the item, since
-                // we don't have last-mod dates for Bitstreams
-                response.setDateHeader("Last-Modified", itemLastModified.getTime());
+                response.setDateHeader("Expires", System.currentTimeMillis() + expires);
             }
-        }
-        catch (SQLException e)
-        {
-            throw new ProcessingException(e);
-        }
-
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int length = -1;
-
-        // Only encourage caching if this is not a restricted resource, i.e.
-        // if it is accessed anonymously or is readable by Anonymous:
-        if (isAnonymouslyReadable)
-        {
-            response.setDateHeader("Expires", System.currentTimeMillis() + expires);
-        }
-        
-        // If this is a large bitstream then tell the browser it should treat it as a download.
-        int threshold = ConfigurationManager.getIntProperty("xmlui.content_disposition_threshold");
-        if (bitstreamSize > threshold && threshold != 0)
-        {
-                String name  = bitstreamName;
-                
-                // Try and make the download file name formatted for each browser.
-                try {
-                        String agent = request.getHeader("USER-AGENT");
-                        if (agent != null && agent.contains("MSIE"))
-                        {
-                            name = URLEncoder.encode(name, "UTF8");
-                        }
-                        else if (agent != null && agent.contains("Mozilla"))
-                        {
-                            name = MimeUtility.encodeText(name, "UTF8", "B");
-                        }
-                }
-                catch (UnsupportedEncodingException see)
-                {
-                        // do nothing
-                }
-                response.setHeader("Content-Disposition", "attachment;filename=" + '"' + name + '"');
-        }
-
-        ByteRange byteRange = null;
-
-        // Turn off partial downloads, they cause problems
-        // and are only rarely used. Specifically some windows pdf
-        // viewers are incapable of handling this request. You can
-        // uncomment the following lines to turn this feature back on.
-
-//        response.setHeader("Accept-Ranges", "bytes");
-//        String ranges = request.getHeader("Range");
-//        if (ranges != null)
-//        {
-//            try
-//            {
-//                ranges = ranges.substring(ranges.indexOf('=') + 1);
-//                byteRange = new ByteRange(ranges);
-//            }
-//            catch (NumberFormatException e)
-//            {
-//                byteRange = null;
-//                if (response instanceof HttpResponse)
-//                {
-//                    // Respond with status 416 (Request range not
-//                    // satisfiable)
-//                    response.setStatus(416);
-//                }
-//            }
-//        }
 
-        try
-        {
-            if (byteRange != null)
+            // If this is a large bitstream then tell the browser it should treat it as a download.
+            int threshold = ConfigurationManager.getIntProperty("xmlui.content_disposition_threshold");
+            if (bitstreamSize > threshold && threshold != 0)
             {
-                String entityLength;
-                String entityRange;
-                if (this.bitstreamSize != -1)
-                {
-                    entityLength = "" + this.bitstreamSize;
-                    entityRange = byteRange.intersection(
-                            new ByteRange(0, this.bitstreamSize)).toString();
-                }
-                else
-                {
-                    entityLength = "*";
-                    entityRange = byteRange.toString();
-                }
-
-                response.setHeader("Content-Range", entityRange + "/" + entityLength);
-                if (response instanceof HttpResponse)
-                {
-                    // Response with status 206 (Partial content)
-                    response.setStatus(206);
-                }
-
-                int pos = 0;
-                int posEnd;
-                while ((length = this.bitstreamInputStream.read(buffer)) > -1)
-                {
-                    posEnd = pos + length - 1;
-                    ByteRange intersection = byteRange.intersection(new ByteRange(pos, posEnd));
-                    if (intersection != null)
+                    String name  = bitstreamName;
+
+                    // Try and make the download file name formatted for each browser.
+                    try {
+                            String agent = request.getHeader("USER-AGENT");
+                            if (agent != null && agent.contains("MSIE"))
+                            {
+                                name = URLEncoder.encode(name, "UTF8");
+                            }
+                            else if (agent != null && agent.contains("Mozilla"))
+                            {
+                                name = MimeUtility.encodeText(name, "UTF8", "B");
+                            }
+                    }
+                    catch (UnsupportedEncodingException see)
                     {
-                        out.write(buffer, (int) intersection.getStart() - pos, (int) intersection.length());
+                            // do nothing
                     }
-                    pos += length;
-                }
+                    response.setHeader("Content-Disposition", "attachment;filename=" + '"' + name + '"');
             }
-            else
-            {
-                response.setHeader("Content-Length", String.valueOf(this.bitstreamSize));
 
-                while ((length = this.bitstreamInputStream.read(buffer)) > -1)
-                {
-                    out.write(buffer, 0, length);
-                }
-                out.flush();
-            }
+            this.delivery.write(out);
         }
         finally
         {
+            // Close the bitstream so that we don't leak a file descriptor
+            this.delivery.close();
+
             try
             {
-                // Close the bitstream input stream so that we don't leak a file descriptor
-                this.bitstreamInputStream.close();
-                
                 // Close the output stream as per Cocoon docs: http://cocoon.apache.org/2.2/core-modules/core/2.2/681_1_1.html
                 out.close();
             } 
@@ -743,7 +671,8 @@ public class BitstreamReader extends AbstractReader implements Recyclable
      */
     public String getMimeType()
     {
-        return this.bitstreamMimeType;
+        // multipart/byteranges when several ranges were requested
+        return (this.delivery != null) ? this.delivery.getContentType() : this.bitstreamMimeType;
     }
     
     /**
@@ -752,7 +681,11 @@ public class BitstreamReader extends AbstractReader implements Recyclable
     public void recycle() {
         this.response = null;
         this.request = null;
-        this.bitstreamInputStream = null;
+        if (this.delivery != null)
+        {
+            this.delivery.close();
+        }
+        this.delivery = null;
         this.bitstreamSize = 0;
         this.bitstreamMimeType = null;
         this.bitstreamName = null;
@@ -20,6 +20,9 @@ import org.dspace.content.Community;
 import org.dspace.content.Metadatum;
 import org.dspace.content.DSpaceObject;
 import org.dspace.content.Item;
+import org.dspace.content.VersionStamps;
+import org.dspace.core.ConfigurationManager;
+import org.dspace.core.Constants;
 import org.dspace.eperson.EPerson;
 import org.dspace.eperson.Group;
 
@@ -64,6 +67,9 @@ public class DSpaceValidity implements SourceValidity
     /** The length of time that a cache is assumed to be valid */
     protected long assumedValidityDelay = 0;
 
+    /** Whether objects are added by their version stamps rather than their contents */
+    private static final boolean useStamps = ConfigurationManager.getBooleanProperty("xmlui.validity.stamps", false);
+
     /**
      * Create a new DSpace validity object. 
      * 
@@ -219,6 +225,10 @@ public class DSpaceValidity implements SourceValidity
      * Bundles -> bitstreams
      * EPeople -> groups
      * 
+     * If xmlui.validity.stamps is on, each object is added by its 
+     * version stamp instead, which changes whenever the object or 
+     * any of the objects above changes; see VersionStamps.
+     * 
      * @param dso
      *          The object to add to the validity.
      */
@@ -233,6 +243,12 @@ public class DSpaceValidity implements SourceValidity
         {
           this.validityKey.append("null");  
         }
+        else if (useStamps && isStamped(dso.getType()))
+        {
+            validityKey.append("Stamp:");
+            validityKey.append(dso.getType()).append(":").append(dso.getID());
+            validityKey.append("=").append(VersionStamps.getStamp(dso));
+        }
         else if (dso instanceof Community)
         {
             Community community = (Community) dso;
@@ -366,6 +382,27 @@ public class DSpaceValidity implements SourceValidity
         }    
     }
     
+    /**
+     * Whether objects of a type are given version stamps by the
+     * VersionStampConsumer.
+     */
+    private static boolean isStamped(int type)
+    {
+        switch (type)
+        {
+            case Constants.COMMUNITY:
+            case Constants.COLLECTION:
+            case Constants.ITEM:
+            case Constants.BUNDLE:
+            case Constants.BITSTREAM:
+            case Constants.EPERSON:
+            case Constants.GROUP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Add a non-DSpaceObject to the validity, the object should be 
      * serialized into a string form. The order in which objects 